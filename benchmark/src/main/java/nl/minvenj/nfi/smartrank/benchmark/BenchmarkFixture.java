@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2015 Netherlands Forensic Institute
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package nl.minvenj.nfi.smartrank.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import nl.minvenj.nfi.smartrank.domain.AnalysisParameters;
+import nl.minvenj.nfi.smartrank.domain.Allele;
+import nl.minvenj.nfi.smartrank.domain.DefenseHypothesis;
+import nl.minvenj.nfi.smartrank.domain.Locus;
+import nl.minvenj.nfi.smartrank.domain.PopulationStatistics;
+import nl.minvenj.nfi.smartrank.domain.ProsecutionHypothesis;
+import nl.minvenj.nfi.smartrank.domain.Sample;
+import nl.minvenj.nfi.smartrank.io.statistics.defaultcsv.DefaultStatisticsReader;
+import nl.minvenj.nfi.smartrank.messages.data.EnabledLociMessage;
+import nl.minvenj.nfi.smartrank.raven.messages.MessageBus;
+import nl.minvenj.nfi.smartrank.tools.DatabaseGenerator;
+import nl.minvenj.nfi.smartrank.tools.DatabaseMixProfileGenerator;
+
+/**
+ * Builds the case data used by the benchmarks. A database is generated with {@link DatabaseGenerator}, donors are
+ * drawn from it and the replicates of the crime scene profile are mixed from these donors with
+ * {@link DatabaseMixProfileGenerator}. All randomness is derived from a fixed seed, so every run of a benchmark works
+ * on the same data.
+ */
+public final class BenchmarkFixture {
+
+    /**
+     * The loci available to the benchmarks, in the order in which they are enabled. All of these loci are typed by the
+     * NGM kit and are present in the population statistics.
+     */
+    public static final List<String> LOCI = Collections.unmodifiableList(Arrays.asList(
+        "VWA", "TH01", "D21S11", "FGA", "D8S1179", "D3S1358", "D18S51", "D16S539", "D2S1338", "D19S433", "D1S1656", "D2S441", "D10S1248", "D22S1045", "D12S391"));
+
+    public static final long SEED = 20151109L;
+
+    private static final String STATISTICS_RESOURCE = "STRBASE_frequencies_2015-02-09_Europe.csv";
+    private static final int DATABASE_SIZE = 1000;
+    private static final int DONOR_COUNT = 2;
+    private static final double DONOR_DROPOUT = 0.1;
+    private static final double CANDIDATE_DROPOUT = 0.1;
+    private static final double UNKNOWN_DROPOUT = 0.15;
+    private static final double DROPIN = 0.05;
+
+    private final PopulationStatistics _statistics;
+    private final List<String> _loci;
+    private final List<Sample> _donors;
+    private final List<Sample> _replicates;
+
+    private BenchmarkFixture(final PopulationStatistics statistics, final List<String> loci, final List<Sample> donors, final List<Sample> replicates) {
+        _statistics = statistics;
+        _loci = loci;
+        _donors = donors;
+        _replicates = replicates;
+    }
+
+    /**
+     * Creates a fixture. The crime scene profile is a mixture of two donors from a generated database, and the first
+     * donor is used as the candidate.
+     *
+     * @param replicateCount the number of replicates of the crime scene profile
+     * @param locusCount the number of loci to enable, at most the size of {@link #LOCI}
+     * @return a new fixture
+     * @throws IOException if the statistics could not be read or the database could not be generated
+     */
+    public static BenchmarkFixture create(final int replicateCount, final int locusCount) throws IOException {
+        if (locusCount < 1 || locusCount > LOCI.size()) {
+            throw new IllegalArgumentException("Locus count must be between 1 and " + LOCI.size() + " but was " + locusCount);
+        }
+        final Random random = new Random(SEED);
+        final PopulationStatistics statistics = loadStatistics();
+        final File database = generateDatabase(statistics, DATABASE_SIZE);
+        try {
+            final List<String> loci = new ArrayList<>(LOCI.subList(0, locusCount));
+            final String[] columnLoci = DatabaseMixProfileGenerator.readLoci(database);
+
+            // Draw donors until enough of them are typed at all enabled loci
+            final List<String> donorRecords = new ArrayList<>();
+            final List<Sample> donors = new ArrayList<>();
+            while (donors.size() < DONOR_COUNT) {
+                final String record = DatabaseMixProfileGenerator.selectDonors(database, 1, random).get(0);
+                final Sample donor = toSample(columnLoci, record);
+                if (!donorRecords.contains(record) && isTyped(donor, loci)) {
+                    donorRecords.add(record);
+                    donors.add(donor);
+                }
+            }
+
+            final double[] dropouts = new double[DONOR_COUNT];
+            Arrays.fill(dropouts, DONOR_DROPOUT);
+            final List<Sample> replicates = new ArrayList<>();
+            for (int idx = 0; idx < replicateCount; idx++) {
+                final Map<String, ArrayList<String>> mix = DatabaseMixProfileGenerator.composeMixProfile(columnLoci, donorRecords, dropouts, random);
+                final Sample replicate = new Sample("Replicate" + (idx + 1), "Replicate" + (idx + 1) + ".csv");
+                for (final String locusName : loci) {
+                    final Locus locus = new Locus(locusName);
+                    for (final Map.Entry<String, ArrayList<String>> entry : mix.entrySet()) {
+                        if (Locus.normalize(entry.getKey()).equals(locus.getName())) {
+                            for (final String allele : entry.getValue()) {
+                                locus.addAllele(new Allele(allele));
+                            }
+                        }
+                    }
+                    replicate.addLocus(locus);
+                }
+                replicates.add(replicate);
+            }
+
+            return new BenchmarkFixture(statistics, loci, donors, replicates);
+        }
+        finally {
+            database.delete();
+        }
+    }
+
+    /**
+     * Loads the population statistics bundled with the benchmarks.
+     *
+     * @return the population statistics
+     * @throws IOException if the statistics could not be read
+     */
+    public static PopulationStatistics loadStatistics() throws IOException {
+        try (final InputStream is = BenchmarkFixture.class.getResourceAsStream(STATISTICS_RESOURCE)) {
+            return new DefaultStatisticsReader(STATISTICS_RESOURCE, is).getStatistics();
+        }
+    }
+
+    /**
+     * Generates a database in CODIS format in a temporary file. The caller is responsible for deleting the file.
+     *
+     * @param statistics the statistics to draw the alleles from
+     * @param recordCount the number of profiles in the database
+     * @return the generated file
+     * @throws IOException if the file could not be written
+     */
+    public static File generateDatabase(final PopulationStatistics statistics, final int recordCount) throws IOException {
+        final File database = File.createTempFile("database_generated_" + recordCount + "_", ".csv");
+        database.deleteOnExit();
+        try (final OutputStream os = new FileOutputStream(database)) {
+            DatabaseGenerator.generate(statistics, recordCount, new Random(SEED), os);
+        }
+        return database;
+    }
+
+    /**
+     * Publishes the loci of this fixture as the enabled loci.
+     */
+    public void enableLoci() {
+        MessageBus.getInstance().send(this, new EnabledLociMessage(new ArrayList<>(_loci)));
+    }
+
+    /**
+     * @return the enabled loci
+     */
+    public List<String> getLoci() {
+        return _loci;
+    }
+
+    /**
+     * @return the population statistics
+     */
+    public PopulationStatistics getStatistics() {
+        return _statistics;
+    }
+
+    /**
+     * @return the profile of the donor that acts as candidate
+     */
+    public Sample getCandidate() {
+        return _donors.get(0);
+    }
+
+    /**
+     * @return the replicates of the crime scene profile
+     */
+    public List<Sample> getReplicates() {
+        return _replicates;
+    }
+
+    /**
+     * Creates the analysis parameters for this fixture.
+     *
+     * @return analysis parameters with all replicates enabled
+     */
+    public AnalysisParameters createParameters() {
+        final AnalysisParameters parameters = new AnalysisParameters();
+        parameters.setEnabledCrimesceneProfiles(_replicates);
+        return parameters;
+    }
+
+    /**
+     * Creates a prosecution hypothesis with the first donor as candidate.
+     *
+     * @param unknownCount the number of unknown contributors
+     * @param theta the theta correction. A value of 0 selects the Hardy-Weinberg genotype calculator.
+     * @return a new prosecution hypothesis
+     */
+    public ProsecutionHypothesis createProsecutionHypothesis(final int unknownCount, final double theta) {
+        final ProsecutionHypothesis hp = new ProsecutionHypothesis();
+        hp.setStatistics(_statistics);
+        hp.setCandidate(getCandidate());
+        hp.setCandidateDropout(CANDIDATE_DROPOUT);
+        hp.setUnknownCount(unknownCount);
+        hp.setUnknownDropoutProbability(UNKNOWN_DROPOUT);
+        hp.setDropInProbability(DROPIN);
+        hp.setThetaCorrection(theta);
+        return hp;
+    }
+
+    /**
+     * Creates a defense hypothesis that explains the evidence with one unknown more than the prosecution hypothesis.
+     *
+     * @param unknownCount the number of unknown contributors under the prosecution hypothesis
+     * @param theta the theta correction
+     * @return a new defense hypothesis
+     */
+    public DefenseHypothesis createDefenseHypothesis(final int unknownCount, final double theta) {
+        final DefenseHypothesis hd = new DefenseHypothesis();
+        hd.setStatistics(_statistics);
+        hd.setUnknownCount(unknownCount + 1);
+        hd.setUnknownDropoutProbability(UNKNOWN_DROPOUT);
+        hd.setDropInProbability(DROPIN);
+        hd.setThetaCorrection(theta);
+        return hd;
+    }
+
+    /**
+     * Composes all genotypes that unknown contributors can have at a locus, given the alleles observed in the
+     * replicates.
+     *
+     * @param locusName the name of the locus
+     * @return an array containing a {@link Locus} for each genotype
+     */
+    public Locus[] getPossibleAlleleCombinations(final String locusName) {
+        final List<String> alleles = new ArrayList<>();
+        for (final Sample replicate : _replicates) {
+            for (final Allele allele : replicate.getLocus(locusName).getAlleles()) {
+                if (!alleles.contains(allele.getAllele())) {
+                    alleles.add(allele.getAllele());
+                }
+            }
+        }
+        Collections.sort(alleles);
+
+        final List<Locus> combinations = new ArrayList<>();
+        for (int allele1Idx = 0; allele1Idx < alleles.size(); allele1Idx++) {
+            for (int allele2Idx = allele1Idx; allele2Idx < alleles.size(); allele2Idx++) {
+                final Locus locus = new Locus(locusName);
+                locus.addAllele(new Allele(alleles.get(allele1Idx)));
+                locus.addAllele(new Allele(alleles.get(allele2Idx)));
+                combinations.add(locus);
+            }
+        }
+        return combinations.toArray(new Locus[combinations.size()]);
+    }
+
+    private static Sample toSample(final String[] columnLoci, final String record) {
+        final String[] fields = record.split(",");
+        final Sample sample = new Sample(fields[0], "database_generated.csv");
+        for (int idx = 1; idx < fields.length; idx++) {
+            if (!fields[idx].equalsIgnoreCase("NULL")) {
+                Locus locus = sample.getLocus(Locus.normalize(columnLoci[idx - 1]));
+                if (locus == null) {
+                    locus = new Locus(columnLoci[idx - 1]);
+                    sample.addLocus(locus);
+                }
+                locus.addAllele(new Allele(fields[idx]));
+            }
+        }
+
+        // Loci with one allele are homozygotic
+        for (final Locus locus : sample.getLoci()) {
+            if (locus.size() == 1) {
+                locus.addAllele(new Allele(locus.getAlleles().iterator().next().getAllele()));
+            }
+        }
+        return sample;
+    }
+
+    private static boolean isTyped(final Sample sample, final List<String> loci) {
+        for (final String locus : loci) {
+            if (!sample.hasLocus(locus)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015 Netherlands Forensic Institute
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package nl.minvenj.nfi.smartrank.io.databases.codis;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import nl.minvenj.nfi.smartrank.analysis.ExcludedProfile;
+import nl.minvenj.nfi.smartrank.benchmark.BenchmarkFixture;
+import nl.minvenj.nfi.smartrank.domain.AnalysisParameters;
+import nl.minvenj.nfi.smartrank.domain.ProsecutionHypothesis;
+import nl.minvenj.nfi.smartrank.io.CSVReader;
+import nl.minvenj.nfi.smartrank.messages.data.AnalysisParametersMessage;
+import nl.minvenj.nfi.smartrank.messages.data.EnabledLociMessage;
+import nl.minvenj.nfi.smartrank.messages.data.ProsecutionHypothesisMessage;
+import nl.minvenj.nfi.smartrank.raven.messages.MessageBus;
+
+/**
+ * Measures reading a generated CODIS database, both as raw fields through {@link CSVReader} and as profiles through
+ * {@link CodisProfileIterator}, reading either through a shared {@link CSVReader} or through a {@link MappedCodisFile}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CodisProfileIteratorBenchmark {
+
+    @Param({"1000", "10000"})
+    public int recordCount;
+
+    private File _database;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        _database = BenchmarkFixture.generateDatabase(BenchmarkFixture.loadStatistics(), recordCount);
+        MessageBus.getInstance().send(this, new EnabledLociMessage(new ArrayList<>(BenchmarkFixture.LOCI)));
+        MessageBus.getInstance().send(this, new AnalysisParametersMessage(new AnalysisParameters()));
+        MessageBus.getInstance().send(this, new ProsecutionHypothesisMessage(new ProsecutionHypothesis()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        _database.delete();
+    }
+
+    @Benchmark
+    public int csvReader(final Blackhole blackhole) throws IOException {
+        final CSVReader reader = new CSVReader(_database);
+        int records = 0;
+        String[] fields;
+        while ((fields = reader.readFields()) != null) {
+            blackhole.consume(fields);
+            records++;
+        }
+        return records;
+    }
+
+    @Benchmark
+    public int codisProfileIterator(final Blackhole blackhole) throws IOException {
+        final CodisProfileIterator iterator = new CodisProfileIterator(new CSVReader(_database), recordCount, new ArrayList<ExcludedProfile>());
+        int profiles = 0;
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.next());
+            profiles++;
+        }
+        return profiles;
+    }
+
+    @Benchmark
+    public int mappedCodisProfileIterator(final Blackhole blackhole) throws IOException {
+        final CodisProfileIterator iterator = new CodisProfileIterator(new MappedCodisFile(_database), recordCount, new ArrayList<ExcludedProfile>());
+        int profiles = 0;
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.next());
+            profiles++;
+        }
+        return profiles;
+    }
+}
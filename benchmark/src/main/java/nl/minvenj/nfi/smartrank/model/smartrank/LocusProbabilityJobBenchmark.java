@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2015 Netherlands Forensic Institute
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package nl.minvenj.nfi.smartrank.model.smartrank;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.minvenj.nfi.smartrank.benchmark.BenchmarkFixture;
+import nl.minvenj.nfi.smartrank.domain.AnalysisParameters;
+import nl.minvenj.nfi.smartrank.domain.Hypothesis;
+import nl.minvenj.nfi.smartrank.domain.Locus;
+
+/**
+ * Measures {@link LocusProbabilityJob#call()} for all batches of a single locus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LocusProbabilityJobBenchmark {
+
+    @Param({"1", "2", "3"})
+    public int unknownCount;
+
+    @Param({"1", "2", "3"})
+    public int replicateCount;
+
+    @Param({"0", "0.01"})
+    public double theta;
+
+    private String _locusName;
+    private Hypothesis _hypothesis;
+    private AnalysisParameters _parameters;
+    private Locus[] _possibleAlleleCombinations;
+    private List<LocusProbabilityJob> _jobs;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final BenchmarkFixture fixture = BenchmarkFixture.create(replicateCount, 1);
+        _locusName = fixture.getLoci().get(0);
+        _hypothesis = fixture.createProsecutionHypothesis(unknownCount, theta);
+        _parameters = fixture.createParameters();
+        _possibleAlleleCombinations = fixture.getPossibleAlleleCombinations(_locusName);
+    }
+
+    @Setup(Level.Invocation)
+    public void createJobs() {
+        _jobs = LocusProbabilityJobGenerator.generate(_locusName, _parameters, _possibleAlleleCombinations, _hypothesis);
+    }
+
+    @Benchmark
+    public double call() throws Exception {
+        double probability = 0;
+        for (final LocusProbabilityJob job : _jobs) {
+            probability += job.call().getValue();
+        }
+        return probability;
+    }
+}
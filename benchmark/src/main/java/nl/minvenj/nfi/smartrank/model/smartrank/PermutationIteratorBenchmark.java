@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2015 Netherlands Forensic Institute
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package nl.minvenj.nfi.smartrank.model.smartrank;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import nl.minvenj.nfi.smartrank.benchmark.BenchmarkFixture;
+import nl.minvenj.nfi.smartrank.domain.Locus;
+
+/**
+ * Measures the enumeration of all genotype permutations of a single locus by {@link PermutationIteratorPlain}, both
+ * through the allocation-free cursor and through {@link PermutationIteratorPlain#next()}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PermutationIteratorBenchmark {
+
+    @Param({"1", "2", "3", "4"})
+    public int unknownCount;
+
+    @Param({"1", "3"})
+    public int replicateCount;
+
+    private Locus[] _possibleAlleleCombinations;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final BenchmarkFixture fixture = BenchmarkFixture.create(replicateCount, 1);
+        _possibleAlleleCombinations = fixture.getPossibleAlleleCombinations(fixture.getLoci().get(0));
+    }
+
+    @Benchmark
+    public long advance(final Blackhole blackhole) {
+        long permutations = 0;
+        for (int batch = 0; batch < _possibleAlleleCombinations.length; batch++) {
+            final PermutationIteratorPlain iterator = new PermutationIteratorPlain(unknownCount, _possibleAlleleCombinations, batch);
+            while (iterator.advance()) {
+                blackhole.consume(iterator.getCurrentLoci());
+                permutations += iterator.getCurrentPermutationFactor();
+            }
+        }
+        return permutations;
+    }
+
+    @Benchmark
+    public long next(final Blackhole blackhole) {
+        long permutations = 0;
+        for (int batch = 0; batch < _possibleAlleleCombinations.length; batch++) {
+            final PermutationIteratorPlain iterator = new PermutationIteratorPlain(unknownCount, _possibleAlleleCombinations, batch);
+            while (iterator.hasNext()) {
+                final Permutation permutation = iterator.next();
+                blackhole.consume(permutation.getLoci());
+                permutations += permutation.getPermutationFactor();
+            }
+        }
+        return permutations;
+    }
+}
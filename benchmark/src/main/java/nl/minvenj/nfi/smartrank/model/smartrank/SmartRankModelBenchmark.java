@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 Netherlands Forensic Institute
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package nl.minvenj.nfi.smartrank.model.smartrank;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.minvenj.nfi.smartrank.benchmark.BenchmarkFixture;
+import nl.minvenj.nfi.smartrank.domain.AnalysisParameters;
+import nl.minvenj.nfi.smartrank.domain.DefenseHypothesis;
+import nl.minvenj.nfi.smartrank.domain.LocusLikelihoods;
+import nl.minvenj.nfi.smartrank.domain.PopulationStatistics;
+import nl.minvenj.nfi.smartrank.domain.ProsecutionHypothesis;
+
+/**
+ * Measures {@link SmartRankModel#calculateLikelihood} end to end for the prosecution and the defense hypothesis. Each
+ * invocation uses a new model and result cache, so no results are carried over between invocations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SmartRankModelBenchmark {
+
+    @Param({"1", "2"})
+    public int unknownCount;
+
+    @Param({"1", "3"})
+    public int replicateCount;
+
+    @Param({"5", "10", "15"})
+    public int locusCount;
+
+    @Param({"0.01"})
+    public double theta;
+
+    private BenchmarkFixture _fixture;
+    private AnalysisParameters _parameters;
+    private ProsecutionHypothesis _hp;
+    private DefenseHypothesis _hd;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        _fixture = BenchmarkFixture.create(replicateCount, locusCount);
+        _fixture.enableLoci();
+        _parameters = _fixture.createParameters();
+        _hp = _fixture.createProsecutionHypothesis(unknownCount, theta);
+        _hd = _fixture.createDefenseHypothesis(unknownCount, theta);
+    }
+
+    /**
+     * The model adds the combined frequency of unobserved alleles to the statistics of a hypothesis, so each
+     * invocation starts from a fresh copy.
+     */
+    @Setup(Level.Invocation)
+    public void resetStatistics() {
+        _hp.setStatistics(new PopulationStatistics(_fixture.getStatistics()));
+        _hd.setStatistics(new PopulationStatistics(_fixture.getStatistics()));
+    }
+
+    @Benchmark
+    public LocusLikelihoods prosecution() throws InterruptedException {
+        return new SmartRankModel(new GenotypeResultCache()).calculateLikelihood(_hp, _parameters);
+    }
+
+    @Benchmark
+    public LocusLikelihoods defense() throws InterruptedException {
+        return new SmartRankModel(new GenotypeResultCache()).calculateLikelihood(_hd, _parameters);
+    }
+}
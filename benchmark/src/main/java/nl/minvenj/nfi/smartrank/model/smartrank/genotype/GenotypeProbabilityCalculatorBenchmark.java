@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 Netherlands Forensic Institute
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package nl.minvenj.nfi.smartrank.model.smartrank.genotype;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.minvenj.nfi.smartrank.benchmark.BenchmarkFixture;
+import nl.minvenj.nfi.smartrank.domain.Allele;
+import nl.minvenj.nfi.smartrank.domain.Locus;
+
+/**
+ * Measures the {@link HardyWeinbergGenotypeProbabilityCalculator} and the
+ * {@link SplitDropGenotypeProbabilityCalculator} over all genotypes that unknown contributors can have at the enabled
+ * loci, and compares them with a {@link GenotypeProbabilityTable} per locus for the same genotypes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GenotypeProbabilityCalculatorBenchmark {
+
+    @Param({"1", "3"})
+    public int replicateCount;
+
+    @Param({"5", "15"})
+    public int locusCount;
+
+    private GenotypeProbabilityCalculator _hardyWeinberg;
+    private GenotypeProbabilityCalculator _splitDrop;
+    private Locus[] _genotypes;
+    private int[] _alleleCounts;
+    private GenotypeProbabilityTable[] _hardyWeinbergTables;
+    private GenotypeProbabilityTable[] _splitDropTables;
+    private int[] _genotypeCounts;
+    private int[] _localAlleleCounts;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final BenchmarkFixture fixture = BenchmarkFixture.create(replicateCount, locusCount);
+        _hardyWeinberg = GenotypeProbabilityCalculatorFactory.getUnrelatedGenotypeProbabilityCalculator(fixture.createProsecutionHypothesis(1, 0));
+        _splitDrop = GenotypeProbabilityCalculatorFactory.getUnrelatedGenotypeProbabilityCalculator(fixture.createProsecutionHypothesis(1, 0.01));
+
+        final List<Locus> genotypes = new ArrayList<>();
+        final List<String> loci = fixture.getLoci();
+        _hardyWeinbergTables = new GenotypeProbabilityTable[loci.size()];
+        _splitDropTables = new GenotypeProbabilityTable[loci.size()];
+        _genotypeCounts = new int[loci.size()];
+        for (int locusIndex = 0; locusIndex < loci.size(); locusIndex++) {
+            final Locus[] locusGenotypes = fixture.getPossibleAlleleCombinations(loci.get(locusIndex));
+            genotypes.addAll(Arrays.asList(locusGenotypes));
+            final LocalAlleleIndex alleles = LocalAlleleIndex.of(locusGenotypes);
+            final double[] frequencies = new double[alleles.size()];
+            for (final Locus genotype : locusGenotypes) {
+                for (final Allele allele : genotype.getAlleles()) {
+                    frequencies[alleles.getLocalIndex(allele.getId())] = fixture.getStatistics().getProbability(genotype, allele);
+                }
+            }
+            _hardyWeinbergTables[locusIndex] = GenotypeProbabilityCalculatorFactory.getGenotypeProbabilityTable(0, locusGenotypes, alleles, frequencies);
+            _splitDropTables[locusIndex] = GenotypeProbabilityCalculatorFactory.getGenotypeProbabilityTable(0.01, locusGenotypes, alleles, frequencies);
+            _genotypeCounts[locusIndex] = locusGenotypes.length;
+        }
+        _genotypes = genotypes.toArray(new Locus[genotypes.size()]);
+        _alleleCounts = new int[Allele.getRegisteredAlleleCount()];
+        _localAlleleCounts = new int[Allele.getRegisteredAlleleCount()];
+    }
+
+    @Benchmark
+    public double hardyWeinberg() {
+        return calculate(_hardyWeinberg);
+    }
+
+    @Benchmark
+    public double splitDrop() {
+        return calculate(_splitDrop);
+    }
+
+    @Benchmark
+    public double hardyWeinbergTable() {
+        return calculate(_hardyWeinbergTables);
+    }
+
+    @Benchmark
+    public double splitDropTable() {
+        return calculate(_splitDropTables);
+    }
+
+    private double calculate(final GenotypeProbabilityTable[] tables) {
+        double probability = 0;
+        for (int locusIndex = 0; locusIndex < tables.length; locusIndex++) {
+            final GenotypeProbabilityTable table = tables[locusIndex];
+            for (int genotypeIndex = 0; genotypeIndex < _genotypeCounts[locusIndex]; genotypeIndex++) {
+                Arrays.fill(_localAlleleCounts, 0, table.getAlleleCount(), 0);
+                probability += table.calculate(_localAlleleCounts, genotypeIndex);
+            }
+        }
+        return probability;
+    }
+
+    private double calculate(final GenotypeProbabilityCalculator calculator) {
+        double probability = 0;
+        for (final Locus genotype : _genotypes) {
+            Arrays.fill(_alleleCounts, 0);
+            probability += calculator.calculate(_alleleCounts, genotype);
+        }
+        return probability;
+    }
+}
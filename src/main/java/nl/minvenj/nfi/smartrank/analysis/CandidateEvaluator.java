@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015 Netherlands Forensic Institute
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package nl.minvenj.nfi.smartrank.analysis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.minvenj.nfi.smartrank.domain.AnalysisParameters;
+import nl.minvenj.nfi.smartrank.domain.CandidateProfile;
+import nl.minvenj.nfi.smartrank.domain.DefenseHypothesis;
+import nl.minvenj.nfi.smartrank.domain.Hypothesis;
+import nl.minvenj.nfi.smartrank.domain.LikelihoodRatio;
+import nl.minvenj.nfi.smartrank.domain.LocusLikelihoods;
+import nl.minvenj.nfi.smartrank.domain.ProsecutionHypothesis;
+import nl.minvenj.nfi.smartrank.domain.Sample;
+import nl.minvenj.nfi.smartrank.model.StatisticalModel;
+
+/**
+ * Evaluates database candidates against the hypotheses of a search. Each evaluator holds its own copy of the
+ * prosecution hypothesis and its own statistical model, so several evaluators can run concurrently. The model keeps
+ * its compiled hypotheses between candidates, so only the genotype of each candidate needs to be bound to them. The
+ * genotype is bound straight from the {@link CandidateProfile}, so no {@link Sample} is created for a candidate.
+ */
+class CandidateEvaluator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CandidateEvaluator.class);
+
+    private final StatisticalModel _model;
+    private final ProsecutionHypothesis _hp;
+    // The defense hypothesis with the candidate as a non-contributor, or null if Pr(E|Hd) is calculated once
+    private final Hypothesis _hdWithCandidate;
+    private final AnalysisParameters _parameters;
+    private final LocusLikelihoods _prD;
+
+    /**
+     * Creates a new evaluator.
+     *
+     * @param model the model used to calculate likelihoods. This model must not be shared with other evaluators.
+     * @param hp the prosecution hypothesis. The evaluator works on a copy of this hypothesis.
+     * @param hd the defense hypothesis
+     * @param parameters the parameters of the search
+     * @param prD the likelihoods under Hd if these are calculated once for the whole search, <code>null</code> otherwise
+     */
+    CandidateEvaluator(final StatisticalModel model, final ProsecutionHypothesis hp, final DefenseHypothesis hd, final AnalysisParameters parameters, final LocusLikelihoods prD) {
+        _model = model;
+        _hp = (ProsecutionHypothesis) hp.copy();
+        if (parameters.isCalculateHdOnce()) {
+            _hdWithCandidate = null;
+        }
+        else {
+            _hdWithCandidate = hd.copy();
+            _hdWithCandidate.addCandidateNonContributor(Hypothesis.DEFAULT_SAMPLE, _hp.getCandidateDropout());
+        }
+        _parameters = parameters;
+        _prD = prD;
+    }
+
+    /**
+     * Calculates the likelihood ratio for the supplied candidate.
+     *
+     * @param candidateProfile the candidate to evaluate
+     * @return a {@link LikelihoodRatio} for the candidate, or <code>null</code> if Pr(E|Hp) could not be calculated
+     * @throws InterruptedException if the calculation was interrupted
+     */
+    LikelihoodRatio evaluate(final CandidateProfile candidateProfile) throws InterruptedException {
+        LocusLikelihoods prD = _prD;
+        if (_hdWithCandidate != null) {
+            prD = _model.calculateLikelihood(_hdWithCandidate, candidateProfile, _parameters);
+        }
+
+        try {
+            final LocusLikelihoods prP = _model.calculateLikelihood(_hp, candidateProfile, _parameters);
+            return new LikelihoodRatio(candidateProfile, prP, prD);
+        }
+        catch (final InterruptedException ie) {
+            throw ie;
+        }
+        catch (final Throwable t) {
+            LOG.error("Error evaluating candidate {}!", candidateProfile.getName(), t);
+            return null;
+        }
+    }
+
+    /**
+     * Interrupts any calculation currently running in this evaluator.
+     */
+    void interrupt() {
+        _model.interrupt();
+    }
+}
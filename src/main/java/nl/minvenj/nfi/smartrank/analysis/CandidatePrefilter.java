@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2015 Netherlands Forensic Institute
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package nl.minvenj.nfi.smartrank.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+import nl.minvenj.nfi.smartrank.domain.Allele;
+import nl.minvenj.nfi.smartrank.domain.AnalysisParameters;
+import nl.minvenj.nfi.smartrank.domain.CandidateProfile;
+import nl.minvenj.nfi.smartrank.domain.Contributor;
+import nl.minvenj.nfi.smartrank.domain.Hypothesis;
+import nl.minvenj.nfi.smartrank.domain.Locus;
+import nl.minvenj.nfi.smartrank.domain.LocusLikelihoods;
+import nl.minvenj.nfi.smartrank.domain.PopulationStatistics;
+import nl.minvenj.nfi.smartrank.domain.ProsecutionHypothesis;
+import nl.minvenj.nfi.smartrank.domain.Sample;
+
+/**
+ * Calculates a cheap upper bound on the likelihood ratio of a candidate, so candidates that cannot exceed the LR
+ * threshold can be skipped without calculating Pr(E|Hp).
+ * <p>
+ * At each locus, Pr(E|Hp) is a sum over the genotypes of the unknown contributors. Every term is the product of a
+ * genotype probability and a replicate probability. Apart from the dropout probability of each candidate allele that
+ * is missing from a replicate, all factors of the replicate probability are probabilities and therefore at most 1.
+ * With the Q designation shut down, the genotypes of the unknowns are drawn from the alleles observed in the
+ * replicates, and the genotype probabilities of all unknowns sum to at most <code>max(1, P)^(2 * unknowns)</code>,
+ * where P is the summed frequency of the observed alleles. Dividing by the Pr(E|Hd) of the locus gives a bound on the
+ * locus LR that only depends on which replicates miss each candidate allele.
+ */
+final class CandidatePrefilter {
+
+    // The relative margin in log10 units that protects the comparison against rounding in the full calculation
+    private static final double LOG10_MARGIN = 1.0E-6;
+
+    private final int[] _locusIds;
+    private final double[] _log10Scales;
+    private final int[][] _missingCounts;
+    private final int _replicateCount;
+    private final double _log10Dropout;
+    private final double _log10DropoutHomozygote;
+    private final double _log10Threshold;
+
+    private CandidatePrefilter(final List<String> locusNames, final List<Double> log10Scales, final List<int[]> missingCounts, final int replicateCount, final double candidateDropout, final int threshold) {
+        _locusIds = new int[locusNames.size()];
+        for (int idx = 0; idx < _locusIds.length; idx++) {
+            _locusIds[idx] = Locus.getId(locusNames.get(idx));
+        }
+        _log10Scales = new double[log10Scales.size()];
+        for (int idx = 0; idx < _log10Scales.length; idx++) {
+            _log10Scales[idx] = log10Scales.get(idx);
+        }
+        _missingCounts = missingCounts.toArray(new int[missingCounts.size()][]);
+        _replicateCount = replicateCount;
+        final Contributor candidate = new Contributor(Hypothesis.DEFAULT_SAMPLE, candidateDropout);
+        _log10Dropout = Math.log10(candidate.getDropOutProbability(false));
+        _log10DropoutHomozygote = Math.log10(candidate.getDropOutProbability(true));
+        _log10Threshold = Math.log10(threshold);
+    }
+
+    /**
+     * Creates a prefilter for a search.
+     *
+     * @param hp the prosecution hypothesis
+     * @param parameters the parameters of the search
+     * @param enabledLoci the names of the enabled loci
+     * @param prD the likelihoods under Hd, calculated once for the whole search
+     * @return a {@link CandidatePrefilter}, or <code>null</code> if no bound can be calculated for this search because
+     *         Pr(E|Hd) depends on the candidate or the Q designation is used under Hp
+     */
+    static CandidatePrefilter create(final ProsecutionHypothesis hp, final AnalysisParameters parameters, final Collection<String> enabledLoci, final LocusLikelihoods prD) {
+        if (prD == null || !hp.isQDesignationShutdown()) {
+            return null;
+        }
+
+        final Collection<Sample> replicates = parameters.getEnabledCrimesceneProfiles();
+        final PopulationStatistics statistics = hp.getPopulationStatistics();
+        final List<String> locusNames = new ArrayList<>();
+        final List<Double> log10Scales = new ArrayList<>();
+        final List<int[]> missingCounts = new ArrayList<>();
+        for (final String locusName : enabledLoci) {
+            final Double locusPrD = prD.getLocusProbability(locusName);
+            if (locusPrD == null) {
+                continue;
+            }
+
+            final BitSet observed = new BitSet();
+            double observedFrequency = 0;
+            for (final Sample replicate : replicates) {
+                final Locus replicateLocus = replicate.getLocus(locusName);
+                if (replicateLocus != null) {
+                    for (final Allele allele : replicateLocus.getAlleles()) {
+                        if (!observed.get(allele.getId())) {
+                            observed.set(allele.getId());
+                            observedFrequency += statistics.getProbability(replicateLocus, allele);
+                        }
+                    }
+                }
+            }
+
+            // Count the replicates that miss each observed allele. Alleles outside the array are missing from all replicates.
+            final int[] missing = new int[observed.length()];
+            Arrays.fill(missing, replicates.size());
+            for (final Sample replicate : replicates) {
+                final Locus replicateLocus = replicate.getLocus(locusName);
+                if (replicateLocus != null) {
+                    final BitSet present = new BitSet();
+                    for (final Allele allele : replicateLocus.getAlleles()) {
+                        if (!present.get(allele.getId())) {
+                            present.set(allele.getId());
+                            missing[allele.getId()]--;
+                        }
+                    }
+                }
+            }
+
+            final double genotypeWeight = 2 * hp.getUnknownCount() * Math.log10(Math.max(1.0, observedFrequency));
+            final double log10Scale = locusPrD > 0 ? genotypeWeight - Math.log10(locusPrD) : Double.POSITIVE_INFINITY;
+            locusNames.add(locusName);
+            log10Scales.add(Double.isNaN(log10Scale) ? Double.POSITIVE_INFINITY : log10Scale);
+            missingCounts.add(missing);
+        }
+        return new CandidatePrefilter(locusNames, log10Scales, missingCounts, replicates.size(), hp.getCandidateDropout(), parameters.getLrThreshold());
+    }
+
+    /**
+     * Calculates an upper bound on the likelihood ratio of a candidate.
+     *
+     * @param candidate the candidate
+     * @return the log10 of a value that is not smaller than the likelihood ratio of the candidate. This can be positive
+     *         infinity if no useful bound can be given.
+     */
+    double getLog10UpperBound(final CandidateProfile candidate) {
+        double bound = 0;
+        for (int idx = 0; idx < _locusIds.length; idx++) {
+            // Select the loci in the same way as the model does, which uses Sample.hasLocus. That does not find the
+            // locus of a sample with a single locus.
+            final int locusIndex = candidate.getLocusCount() > 1 ? candidate.indexOf(_locusIds[idx]) : -1;
+            if (locusIndex < 0) {
+                continue;
+            }
+
+            bound += _log10Scales[idx];
+            final boolean homozygote = candidate.isHomozygote(locusIndex);
+            // Alleles from homozygote loci only count once
+            for (int alleleIndex = 0; alleleIndex < (homozygote ? 1 : 2); alleleIndex++) {
+                final int missing = getMissingCount(idx, candidate.getAlleleId(locusIndex, alleleIndex));
+                if (missing > 0) {
+                    bound += missing * (homozygote ? _log10DropoutHomozygote : _log10Dropout);
+                }
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * Determines whether a candidate can be skipped.
+     *
+     * @param candidate the candidate
+     * @return <code>true</code> if the likelihood ratio of the candidate cannot exceed the LR threshold
+     */
+    boolean isBelowThreshold(final CandidateProfile candidate) {
+        return getLog10UpperBound(candidate) + LOG10_MARGIN <= _log10Threshold;
+    }
+
+    private int getMissingCount(final int locusIndex, final int alleleId) {
+        final int[] missing = _missingCounts[locusIndex];
+        if (alleleId < missing.length) {
+            return missing[alleleId];
+        }
+        return _replicateCount;
+    }
+}
@@ -212,12 +212,7 @@ public class CaseLogger {
             _caseLogger.info("  Analysis Completed");
             _caseLogger.info("  Number of specimens: {}", specimenCount);
             _caseLogger.info("");
-            int count = 0;
-            for (final LikelihoodRatio lr : searchResults.getPositiveLRs()) {
-                if (lr.getOverallRatio().getRatio() > searchResults.getParameters().getLrThreshold()) {
-                    count++;
-                }
-            }
+            final int count = searchResults.getNumberOfLRsOverThreshold();
             final Map<String, Map<String, Integer>> metadataStatistics = searchResults.getProfileMetadataStatistics();
             for (final String statType : metadataStatistics.keySet()) {
                 final Map<String, Integer> statValues = metadataStatistics.get(statType);
@@ -250,12 +245,7 @@ public class CaseLogger {
             else
                 _caseLogger.info("  Analysis encountered an error: {}", searchResults.getFailureReason().getMessage(), searchResults.getFailureReason());
 
-            int count = 0;
-            for (final LikelihoodRatio lr : searchResults.getPositiveLRs()) {
-                if (lr.getOverallRatio().getRatio() > searchResults.getParameters().getLrThreshold()) {
-                    count++;
-                }
-            }
+            final int count = searchResults.getNumberOfLRsOverThreshold();
             _caseLogger.info("  Number of LRs over {}: {}", searchResults.getParameters().getLrThreshold(), count);
             _caseLogger.info("  Running time: {}", formatDuration(runningTime));
             resetLogger();
@@ -369,6 +359,9 @@ public class CaseLogger {
             if (automaticDropoutEstimation != null) {
                 _caseLogger.info("Parameter estimation was performed automatically.");
                 _caseLogger.info("  Iterations:           {}", automaticDropoutEstimation.getIterations());
+                if (!Double.isNaN(automaticDropoutEstimation.getPrecision())) {
+                    _caseLogger.info("  Precision:            {} (width of the 95% confidence interval of the {}% percentile)", automaticDropoutEstimation.getPrecision(), automaticDropoutEstimation.getDropoutEstimationPercentile());
+                }
                 _caseLogger.info("  Dropout Distribution: {}", automaticDropoutEstimation);
                 _caseLogger.info("  SmartRank is configured to use the {}% percentile of the dropout distribution", automaticDropoutEstimation.getDropoutEstimationPercentile());
                 _caseLogger.info("  The dropout value at this percentile is {}", automaticDropoutEstimation.getEstimatedDropout());
@@ -378,6 +371,9 @@ public class CaseLogger {
                 if (manualEstimate != null) {
                     _caseLogger.info("Parameter estimation was performed manually.");
                     _caseLogger.info("  Iterations: {}", manualEstimate.getIterations());
+                    if (!Double.isNaN(manualEstimate.getPrecision())) {
+                        _caseLogger.info("  Precision: {} (width of the 95% confidence interval of the {}% percentile)", manualEstimate.getPrecision(), manualEstimate.getDropoutEstimationPercentile());
+                    }
                     _caseLogger.info("  Dropout Distribution: {}", manualEstimate);
                     _caseLogger.info("  SmartRank is configured to use the % percentile of the dropout distribution", manualEstimate.getDropoutEstimationPercentile());
                     _caseLogger.info("  The dropout value at this percentile is {}", manualEstimate.getEstimatedDropout());
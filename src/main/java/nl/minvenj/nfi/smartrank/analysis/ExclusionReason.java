@@ -11,6 +11,7 @@ public enum ExclusionReason {
     REQUIRES_DROPOUT("dropout required to explain evidence, but dropout set to 0.00 in Hp"),
     NOT_ENOUGH_LOCI("insufficient loci in common with crimescene samples (minimum=SmartRankRestrictions.getMinimumNumberOfLoci())"),
     UNEXPECTED_NUMBER_OF_FIELDS("number of fields in record not consistent with file header"),
+    LR_UPPER_BOUND_BELOW_THRESHOLD("upper bound of the likelihood ratio does not exceed the LR threshold"),
     OTHER("record could not be processed");
 
     private final String _description;
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2015 Netherlands Forensic Institute
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package nl.minvenj.nfi.smartrank.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.math3.stat.descriptive.rank.Percentile;
+
+/**
+ * Summarizes the distribution of the likelihood ratios calculated during a search in a bounded amount of memory.
+ * <p>
+ * The first {@link #EXACT_CAPACITY} values are kept as they are, so percentiles of small searches are exact. Once
+ * more values are added, all values are counted in a histogram with {@link #BINS_PER_DECADE} logarithmic bins per
+ * decade, and percentiles are estimated from the bins to within about 1.2 percent. Two distributions can be merged.
+ */
+public final class LRDistribution {
+
+    /**
+     * The number of values that is stored exactly.
+     */
+    public static final int EXACT_CAPACITY = 1 << 16;
+
+    /**
+     * The number of histogram bins per factor 10.
+     */
+    public static final int BINS_PER_DECADE = 100;
+
+    private long _count;
+    private long _over1;
+    private double _min = Double.MAX_VALUE;
+    private double _max = Double.MIN_VALUE;
+
+    // The exact values, or null once the distribution is kept as a histogram
+    private double[] _values = new double[16];
+    private int _valueCount;
+
+    // The histogram. Bin i holds the values v with floor(log10(v) * BINS_PER_DECADE) == i + _firstBin.
+    private long[] _bins;
+    private int _firstBin;
+    private long _zeroCount;
+    private long _positiveInfinityCount;
+    private long _nanCount;
+
+    /**
+     * Adds a likelihood ratio to the distribution.
+     *
+     * @param ratio the ratio to add
+     */
+    public void add(final double ratio) {
+        _count++;
+        if (!Double.isNaN(ratio) && !Double.isInfinite(ratio)) {
+            _max = Math.max(ratio, _max);
+            _min = Math.min(ratio, _min);
+            if (ratio > 1) {
+                _over1++;
+            }
+        }
+
+        if (_values != null) {
+            if (_valueCount < EXACT_CAPACITY) {
+                if (_valueCount == _values.length) {
+                    _values = Arrays.copyOf(_values, Math.min(EXACT_CAPACITY, _values.length * 2));
+                }
+                _values[_valueCount++] = ratio;
+                return;
+            }
+            toHistogram();
+        }
+        count(ratio, 1);
+    }
+
+    /**
+     * Adds all values of another distribution to this distribution.
+     *
+     * @param other the distribution to merge into this one
+     */
+    public void merge(final LRDistribution other) {
+        _count += other._count;
+        _over1 += other._over1;
+        _max = Math.max(other._max, _max);
+        _min = Math.min(other._min, _min);
+
+        if (_values != null && other._values != null && _valueCount + other._valueCount <= EXACT_CAPACITY) {
+            _values = Arrays.copyOf(_values, Math.max(_values.length, _valueCount + other._valueCount));
+            System.arraycopy(other._values, 0, _values, _valueCount, other._valueCount);
+            _valueCount += other._valueCount;
+            return;
+        }
+
+        toHistogram();
+        if (other._values != null) {
+            for (int idx = 0; idx < other._valueCount; idx++) {
+                count(other._values[idx], 1);
+            }
+        }
+        else {
+            for (int idx = 0; idx < other._bins.length; idx++) {
+                if (other._bins[idx] > 0) {
+                    countBin(other._firstBin + idx, other._bins[idx]);
+                }
+            }
+            _zeroCount += other._zeroCount;
+            _positiveInfinityCount += other._positiveInfinityCount;
+            _nanCount += other._nanCount;
+        }
+    }
+
+    /**
+     * @return the number of values in the distribution
+     */
+    public long getCount() {
+        return _count;
+    }
+
+    /**
+     * @return the number of values greater than 1
+     */
+    public long getCountOver1() {
+        return _over1;
+    }
+
+    /**
+     * @return the largest finite value, or {@link Double#MIN_VALUE} if no finite values were added
+     */
+    public double getMax() {
+        return _max;
+    }
+
+    /**
+     * @return the smallest finite value, or {@link Double#MAX_VALUE} if no finite values were added
+     */
+    public double getMin() {
+        return _min;
+    }
+
+    /**
+     * @return <code>true</code> if all values are stored exactly
+     */
+    public boolean isExact() {
+        return _values != null;
+    }
+
+    /**
+     * Gets a percentile of the distribution. The percentile is calculated in the same way as by {@link Percentile}.
+     *
+     * @param percentile the requested percentile, between 0 (exclusive) and 100 (inclusive)
+     * @return the percentile value, which is estimated if the distribution is kept as a histogram
+     */
+    public double getPercentile(final double percentile) {
+        if (_values != null) {
+            final double[] sorted = Arrays.copyOf(_values, _valueCount);
+            Arrays.sort(sorted);
+            final Percentile p = new Percentile(percentile);
+            p.setData(sorted);
+            return p.evaluate();
+        }
+
+        final long n = _zeroCount + _positiveInfinityCount + _nanCount + sum(_bins);
+        final double pos = percentile * (n + 1) / 100;
+        if (pos < 1) {
+            return getValueAtRank(1);
+        }
+        if (pos >= n) {
+            return getValueAtRank(n);
+        }
+        final long rank = (long) Math.floor(pos);
+        final double lower = getValueAtRank(rank);
+        final double upper = getValueAtRank(rank + 1);
+        return lower + (pos - rank) * (upper - lower);
+    }
+
+    /**
+     * Gets the values in this distribution.
+     *
+     * @return the values in the order in which they were added if the distribution is exact. Otherwise
+     *         {@link #EXACT_CAPACITY} evenly spaced quantiles of the distribution, in ascending order.
+     */
+    public List<Double> getValues() {
+        final List<Double> values = new ArrayList<>();
+        if (_values != null) {
+            for (int idx = 0; idx < _valueCount; idx++) {
+                values.add(_values[idx]);
+            }
+        }
+        else {
+            final long n = _zeroCount + _positiveInfinityCount + _nanCount + sum(_bins);
+            for (int idx = 0; idx < EXACT_CAPACITY; idx++) {
+                values.add(getValueAtRank(1 + (idx * (n - 1)) / (EXACT_CAPACITY - 1)));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Gets the value with the given rank in ascending order, in which NaN sorts after positive infinity.
+     */
+    private double getValueAtRank(final long rank) {
+        long remaining = rank - _zeroCount;
+        if (remaining <= 0) {
+            return 0;
+        }
+        for (int idx = 0; idx < _bins.length; idx++) {
+            remaining -= _bins[idx];
+            if (remaining <= 0) {
+                final double center = Math.pow(10, (_firstBin + idx + 0.5) / BINS_PER_DECADE);
+                return Math.max(_min, Math.min(_max, center));
+            }
+        }
+        remaining -= _positiveInfinityCount;
+        return remaining <= 0 ? Double.POSITIVE_INFINITY : Double.NaN;
+    }
+
+    private void toHistogram() {
+        if (_values != null) {
+            _bins = new long[0];
+            for (int idx = 0; idx < _valueCount; idx++) {
+                count(_values[idx], 1);
+            }
+            _values = null;
+            _valueCount = 0;
+        }
+    }
+
+    private void count(final double ratio, final long count) {
+        if (Double.isNaN(ratio)) {
+            _nanCount += count;
+        }
+        else if (ratio == Double.POSITIVE_INFINITY) {
+            _positiveInfinityCount += count;
+        }
+        else if (ratio <= 0) {
+            _zeroCount += count;
+        }
+        else {
+            countBin((int) Math.floor(Math.log10(ratio) * BINS_PER_DECADE), count);
+        }
+    }
+
+    private void countBin(final int bin, final long count) {
+        if (_bins.length == 0) {
+            _bins = new long[BINS_PER_DECADE];
+            _firstBin = bin;
+        }
+        else if (bin < _firstBin) {
+            final int shift = Math.max(_firstBin - bin, BINS_PER_DECADE);
+            final long[] bins = new long[_bins.length + shift];
+            System.arraycopy(_bins, 0, bins, shift, _bins.length);
+            _bins = bins;
+            _firstBin -= shift;
+        }
+        else if (bin - _firstBin >= _bins.length) {
+            _bins = Arrays.copyOf(_bins, Math.max(bin - _firstBin + 1, _bins.length + BINS_PER_DECADE));
+        }
+        _bins[bin - _firstBin] += count;
+    }
+
+    private static long sum(final long[] values) {
+        long sum = 0;
+        for (final long value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+}
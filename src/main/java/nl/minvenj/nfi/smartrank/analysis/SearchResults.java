@@ -24,12 +24,13 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-
-import org.apache.commons.math3.stat.descriptive.rank.Percentile;
+import java.util.PriorityQueue;
 
 import nl.minvenj.nfi.smartrank.domain.AnalysisParameters;
+import nl.minvenj.nfi.smartrank.domain.CandidateProfile;
 import nl.minvenj.nfi.smartrank.domain.DatabaseConfiguration;
 import nl.minvenj.nfi.smartrank.domain.DefenseHypothesis;
 import nl.minvenj.nfi.smartrank.domain.Hypothesis;
@@ -42,18 +43,35 @@ import nl.minvenj.nfi.smartrank.domain.Sample;
  * Contains the results of the last search action.
  */
 public class SearchResults {
-    private final List<Double> _lrs;
-    private Double _maxRatio;
-    private Double _minRatio;
+
+    /**
+     * Orders ranked results from the lowest to the highest LR. Of two equal LRs, the one added last is the lowest.
+     */
+    private static final Comparator<RankedLR> ASCENDING = new Comparator<RankedLR>() {
+        @Override
+        public int compare(final RankedLR o1, final RankedLR o2) {
+            final int result = o1.getLR().compareTo(o2.getLR());
+            if (result != 0) {
+                return result;
+            }
+            return Long.compare(o2.getSequence(), o1.getSequence());
+        }
+    };
+
+    private final LRDistribution _distribution;
     private long _duration;
-    private int _resultsOver1;
     private String _logfileName;
     private boolean _succeeded;
     private Throwable _failureReason;
-    private final List<LikelihoodRatio> _positiveLRs;
+    private final PriorityQueue<RankedLR> _topLRs;
+    private long _addedLRs;
+    private int _resultsOverThreshold;
+    private int[] _resultsOverThresholdPerNumberOfLoci;
+    private List<LikelihoodRatio> _positiveLRs;
     private DefenseHypothesis _hd;
     private ProsecutionHypothesis _hp;
     private final ArrayList<ExcludedProfile> _excludedProfiles;
+    private final HashSet<ExcludedProfile> _excludedProfileIndex;
     private String _reportFileName;
     private final long _startTime;
     private AnalysisParameters _parameters;
@@ -67,14 +85,15 @@ public class SearchResults {
      */
     public SearchResults(final DatabaseConfiguration config) {
         _excludedProfiles = new ArrayList<>();
-        _positiveLRs = new ArrayList<>();
-        _minRatio = Double.MAX_VALUE;
-        _maxRatio = Double.MIN_VALUE;
+        _excludedProfileIndex = new HashSet<>();
+        _topLRs = new PriorityQueue<>(11, ASCENDING);
+        _positiveLRs = Collections.emptyList();
+        _resultsOverThresholdPerNumberOfLoci = new int[0];
         _startTime = System.currentTimeMillis();
         _exclusionStats = new HashMap<>();
         _metadataStatistics = new HashMap<>();
         _config = config;
-        _lrs = new ArrayList<>();
+        _distribution = new LRDistribution();
     }
 
     /**
@@ -93,8 +112,8 @@ public class SearchResults {
      *
      * @return The number of search result LRs stored
      */
-    public int getNumberOfLRs() {
-        return _lrs.size();
+    public synchronized int getNumberOfLRs() {
+        return (int) _distribution.getCount();
     }
 
     /**
@@ -102,56 +121,102 @@ public class SearchResults {
      *
      * @return The number of LRs that have a value over 1.0 (i.e. where the evaluation results in a value in favour of the prosecution)
      */
-    public int getNumberOfLRsOver1() {
-        return _resultsOver1;
+    public synchronized int getNumberOfLRsOver1() {
+        return (int) _distribution.getCountOver1();
     }
 
     /**
-     * Adds a {@link LikelihoodRatio} to the search results.
+     * Gets the number of stored search results that exceed the LR threshold of the search parameters.
+     *
+     * @return The number of LRs that have a value over the LR threshold
+     */
+    public synchronized int getNumberOfLRsOverThreshold() {
+        return _resultsOverThreshold;
+    }
+
+    /**
+     * Adds a {@link LikelihoodRatio} to the search results. The value of the LR is added to the distribution of all
+     * results. A positive LR is only kept if it is among the highest {@link AnalysisParameters#getMaximumNumberOfResults()}
+     * LRs added so far.
      *
      * @param lr the {@link LikelihoodRatio} to add to the results
      */
     synchronized void addLR(final LikelihoodRatio lr) {
-        final Double ratio = lr.getOverallRatio().getRatio();
-        _lrs.add(ratio);
-
-        if (!ratio.isNaN() && !ratio.isInfinite()) {
-            _maxRatio = Math.max(ratio, _maxRatio);
-            _minRatio = Math.min(ratio, _minRatio);
+        final double ratio = lr.getOverallRatioValue();
+        _distribution.add(ratio);
+
+        if (!Double.isNaN(ratio) && !Double.isInfinite(ratio)) {
+            if (ratio > getLrThreshold()) {
+                _resultsOverThreshold++;
+                final int numberOfLoci = lr.getProfileLocusCount();
+                if (numberOfLoci >= _resultsOverThresholdPerNumberOfLoci.length) {
+                    _resultsOverThresholdPerNumberOfLoci = Arrays.copyOf(_resultsOverThresholdPerNumberOfLoci, numberOfLoci + 1);
+                }
+                _resultsOverThresholdPerNumberOfLoci[numberOfLoci]++;
+            }
 
             if (ratio > 1) {
-                _positiveLRs.add(lr);
-                _positiveLRsUpdated = true;
-                _resultsOver1++;
+                final RankedLR ranked = new RankedLR(lr, _addedLRs++);
+                if (_topLRs.size() < getMaximumNumberOfResults()) {
+                    keep(ranked);
+                }
+                else if (ASCENDING.compare(ranked, _topLRs.peek()) > 0) {
+                    _topLRs.poll();
+                    keep(ranked);
+                }
             }
         }
     }
 
     /**
-     * Gets the collection of positive LR results, in descending order order.
+     * Adds a result to the highest LRs. The sample of a database candidate is only created once its LR is kept, so the
+     * results that are shown and reported have their sample ready.
+     */
+    private void keep(final RankedLR ranked) {
+        ranked.getLR().getProfile();
+        _topLRs.add(ranked);
+        _positiveLRsUpdated = true;
+    }
+
+    /**
+     * Gets the collection of positive LR results, in descending order order. Only the highest
+     * {@link AnalysisParameters#getMaximumNumberOfResults()} LRs are kept.
      *
      * @return a {@link Collection} containing the LRs greater than 1 resulting from the search in descending order.
      */
     public synchronized List<LikelihoodRatio> getPositiveLRs() {
         if (_positiveLRsUpdated) {
-            Collections.sort(_positiveLRs, new Comparator<LikelihoodRatio>() {
-                @Override
-                public int compare(final LikelihoodRatio o1, final LikelihoodRatio o2) {
-                    return -o1.compareTo(o2);
-                }
-            });
+            final RankedLR[] ranked = _topLRs.toArray(new RankedLR[_topLRs.size()]);
+            Arrays.sort(ranked, Collections.reverseOrder(ASCENDING));
+            final List<LikelihoodRatio> positiveLRs = new ArrayList<>(ranked.length);
+            for (final RankedLR lr : ranked) {
+                positiveLRs.add(lr.getLR());
+            }
+            _positiveLRs = Collections.unmodifiableList(positiveLRs);
             _positiveLRsUpdated = false;
         }
-        return Collections.unmodifiableList(_positiveLRs);
+        return _positiveLRs;
+    }
+
+    /**
+     * Gets the values of the LRs stored in this object.
+     *
+     * @return a {@link List} of LR values. If more than {@link LRDistribution#EXACT_CAPACITY} LRs were stored, this
+     *         is a list of evenly spaced quantiles of the LR distribution.
+     */
+    public synchronized List<Double> getLRs() {
+        return Collections.unmodifiableList(_distribution.getValues());
     }
 
     /**
-     * Gets the {@link LikelihoodRatio}s stored in this object.
+     * Gets the distribution of the LRs stored in this object.
      *
-     * @return a {@link Collection} of {@link LikelihoodRatio} objects reflecting the search results
+     * @return a copy of the {@link LRDistribution} of all LRs added to this object
      */
-    public List<Double> getLRs() {
-        return Collections.unmodifiableList(_lrs);
+    public synchronized LRDistribution getDistribution() {
+        final LRDistribution copy = new LRDistribution();
+        copy.merge(_distribution);
+        return copy;
     }
 
     /**
@@ -159,8 +224,8 @@ public class SearchResults {
      *
      * @return a Double holding the highest LR in the results object
      */
-    public Double getMaxRatio() {
-        return _maxRatio;
+    public synchronized Double getMaxRatio() {
+        return _distribution.getMax();
     }
 
     /**
@@ -168,8 +233,8 @@ public class SearchResults {
      *
      * @return a Double holding the lowest LR in the results object
      */
-    public Double getMinRatio() {
-        return _minRatio;
+    public synchronized Double getMinRatio() {
+        return _distribution.getMin();
     }
 
     /**
@@ -195,12 +260,19 @@ public class SearchResults {
      *
      * @return a {@link Collection} of {@link ResultsPerLocus} objects holding the number of results per evaluated number of loci
      */
-    public Collection<ResultsPerLocus> getResultsPerNumberOfLoci(final int threshold) {
+    public synchronized Collection<ResultsPerLocus> getResultsPerNumberOfLoci(final int threshold) {
         final ArrayList<ResultsPerLocus> results = new ArrayList<>();
-        final int[] resultsPerNumberOfLoci = new int[Locus.getRegisteredLocusCount() + 1];
-        for (final LikelihoodRatio lr : _positiveLRs) {
-            if (lr.getOverallRatio().getRatio() > threshold) {
-                resultsPerNumberOfLoci[lr.getProfile().size()]++;
+        final int[] resultsPerNumberOfLoci;
+        if (threshold == getLrThreshold()) {
+            resultsPerNumberOfLoci = _resultsOverThresholdPerNumberOfLoci;
+        }
+        else {
+            // Other thresholds can only be counted for the positive LRs that were kept
+            resultsPerNumberOfLoci = new int[Locus.getRegisteredLocusCount() + 1];
+            for (final RankedLR lr : _topLRs) {
+                if (lr.getLR().getOverallRatioValue() > threshold) {
+                    resultsPerNumberOfLoci[lr.getLR().getProfileLocusCount()]++;
+                }
             }
         }
 
@@ -219,15 +291,8 @@ public class SearchResults {
      *
      * @return The computed percentile value of the results
      */
-    public double getPercentile(final int percentile) {
-        final Percentile p = new Percentile(percentile);
-        final double[] sorted = new double[_lrs.size()];
-        for (int idx = 0; idx < _lrs.size(); idx++) {
-            sorted[idx] = _lrs.get(idx);
-        }
-        Arrays.sort(sorted);
-        p.setData(sorted);
-        return p.evaluate();
+    public synchronized double getPercentile(final int percentile) {
+        return _distribution.getPercentile(percentile);
     }
 
     /**
@@ -336,8 +401,22 @@ public class SearchResults {
      * @param reason the {@link ExclusionReason} why this profile is ignored
      */
     public void addExcludedProfile(final Sample profile, final ExclusionReason reason) {
-        final ExcludedProfile ignoredProfile = new ExcludedProfile(profile, reason);
-        if (!_excludedProfiles.contains(ignoredProfile)) {
+        addExcludedProfile(new ExcludedProfile(profile, reason));
+    }
+
+    /**
+     * Indicates that a database profile was ignored in the search, with a corresponding reason.
+     *
+     * @param profile the {@link CandidateProfile} that was ignored
+     * @param reason the {@link ExclusionReason} why this profile is ignored
+     */
+    public void addExcludedProfile(final CandidateProfile profile, final ExclusionReason reason) {
+        addExcludedProfile(new ExcludedProfile(profile.getName(), reason));
+    }
+
+    private void addExcludedProfile(final ExcludedProfile ignoredProfile) {
+        final ExclusionReason reason = ignoredProfile.getReason();
+        if (_excludedProfileIndex.add(ignoredProfile)) {
             _excludedProfiles.add(ignoredProfile);
             ExcludedProfileStatistic excludedProfileStatistic = _exclusionStats.get(reason);
             if (excludedProfileStatistic == null) {
@@ -389,6 +468,7 @@ public class SearchResults {
      */
     public void addExcludedProfiles(final List<ExcludedProfile> badRecordList) {
         _excludedProfiles.addAll(badRecordList);
+        _excludedProfileIndex.addAll(badRecordList);
         for (final ExcludedProfile excludedProfile : badRecordList) {
             ExcludedProfileStatistic excludedProfileStatistic = _exclusionStats.get(excludedProfile.getReason());
             if (excludedProfileStatistic == null) {
@@ -459,4 +539,36 @@ public class SearchResults {
     public DatabaseConfiguration getDatabaseConfiguration() {
         return _config;
     }
+
+    private int getLrThreshold() {
+        return _parameters == null ? 0 : _parameters.getLrThreshold();
+    }
+
+    private int getMaximumNumberOfResults() {
+        if (_parameters == null || _parameters.getMaximumNumberOfResults() <= 0) {
+            return Integer.MAX_VALUE;
+        }
+        return _parameters.getMaximumNumberOfResults();
+    }
+
+    /**
+     * A positive LR together with the order in which it was added.
+     */
+    private static final class RankedLR {
+        private final LikelihoodRatio _lr;
+        private final long _sequence;
+
+        RankedLR(final LikelihoodRatio lr, final long sequence) {
+            _lr = lr;
+            _sequence = sequence;
+        }
+
+        public LikelihoodRatio getLR() {
+            return _lr;
+        }
+
+        public long getSequence() {
+            return _sequence;
+        }
+    }
 }
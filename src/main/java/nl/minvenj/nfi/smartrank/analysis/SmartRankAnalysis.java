@@ -18,19 +18,28 @@
 package nl.minvenj.nfi.smartrank.analysis;
 
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import nl.minvenj.nfi.smartrank.analysis.parameterestimation.DropoutEstimation;
 import nl.minvenj.nfi.smartrank.analysis.parameterestimation.DropoutEstimator;
+import nl.minvenj.nfi.smartrank.analysis.scheduler.ComputeScheduler;
+import nl.minvenj.nfi.smartrank.analysis.scheduler.TaskGroup;
 import nl.minvenj.nfi.smartrank.domain.AnalysisParameters;
+import nl.minvenj.nfi.smartrank.domain.CandidateProfile;
 import nl.minvenj.nfi.smartrank.domain.Contributor;
 import nl.minvenj.nfi.smartrank.domain.DNADatabase;
 import nl.minvenj.nfi.smartrank.domain.DefenseHypothesis;
@@ -55,6 +64,7 @@ import nl.minvenj.nfi.smartrank.messages.status.PercentReadyMessage;
 import nl.minvenj.nfi.smartrank.messages.status.SearchAbortedMessage;
 import nl.minvenj.nfi.smartrank.messages.status.SearchCompletedMessage;
 import nl.minvenj.nfi.smartrank.model.StatisticalModel;
+import nl.minvenj.nfi.smartrank.model.smartrank.GenotypeResultCache;
 import nl.minvenj.nfi.smartrank.model.smartrank.SmartRankModel;
 import nl.minvenj.nfi.smartrank.raven.ApplicationStatus;
 import nl.minvenj.nfi.smartrank.raven.messages.MessageBus;
@@ -65,13 +75,15 @@ public class SmartRankAnalysis extends Thread {
 
     private static final Logger LOG = LoggerFactory.getLogger(SmartRankAnalysis.class);
     private final CaseLogger _caseLogger;
-    private boolean _interrupted;
+    private final TaskGroup _group;
     private StatisticalModel _model;
+    private GenotypeResultCache _resultCache;
     private final MessageBus _messageBus;
 
     public SmartRankAnalysis() {
         setName("SmartRankAnalysis");
         _messageBus = MessageBus.getInstance();
+        _group = ComputeScheduler.getInstance().createGroup();
         _messageBus.send(this, new SearchResultsMessage(null));
         try {
             _caseLogger = new CaseLogger();
@@ -86,8 +98,10 @@ public class SmartRankAnalysis extends Thread {
     public void interrupt() {
         super.interrupt();
         LOG.info("Interrupted!");
-        _interrupted = true;
-        _model.interrupt();
+        _group.cancel();
+        if (_model != null) {
+            _model.interrupt();
+        }
     }
 
     @Override
@@ -112,7 +126,8 @@ public class SmartRankAnalysis extends Thread {
             hp = _messageBus.query(ProsecutionHypothesisMessage.class);
             hd = _messageBus.query(DefenseHypothesisMessage.class);
 
-            _model = new SmartRankModel();
+            _resultCache = new GenotypeResultCache();
+            _model = new SmartRankModel(_resultCache);
 
             performDropoutEstimation(hp, hd, searchResults, parameters);
 
@@ -144,7 +159,7 @@ public class SmartRankAnalysis extends Thread {
 
             analysedSpecimens = iterateOverSpecimens(hp, hd, db, searchResults, parameters, prD);
 
-            if (isInterrupted() || _interrupted) {
+            if (isInterrupted() || _group.isCancelled()) {
                 throw new InterruptedException();
             }
 
@@ -224,7 +239,7 @@ public class SmartRankAnalysis extends Thread {
                             final LikelihoodRatio lr = positiveLRs.get(idx);
                             final Sample profile = lr.getProfile();
 
-                            if (lr.getOverallRatio().getRatio() < searchResults.getParameters().getLrThreshold()) {
+                            if (lr.getOverallRatioValue() < searchResults.getParameters().getLrThreshold()) {
                                 overThreshold = false;
                                 break;
                             }
@@ -247,47 +262,121 @@ public class SmartRankAnalysis extends Thread {
     }
 
     private int iterateOverSpecimens(final ProsecutionHypothesis hp, final DefenseHypothesis hd, final DNADatabase db, final SearchResults searchResults, final AnalysisParameters parameters, final LocusLikelihoods prD) throws InterruptedException {
-        LocusLikelihoods localPrD = prD;
+        // A search always needs at least one worker, whatever the restrictions file says
+        final int workerCount = Math.max(1, SmartRankRestrictions.getSearchWorkerCount());
+        final int maximumInFlight = Math.max(workerCount, SmartRankRestrictions.getSearchMaximumCandidatesInFlight());
+
+        final BlockingQueue<CandidateEvaluator> evaluators = new ArrayBlockingQueue<>(workerCount);
+        for (int idx = 0; idx < workerCount; idx++) {
+            evaluators.add(new CandidateEvaluator(idx == 0 ? _model : new SmartRankModel(_resultCache), hp, hd, parameters, prD));
+        }
+
+        LOG.info("Evaluating candidates using {} worker(s) with at most {} candidates in flight", workerCount, maximumInFlight);
+        final TaskGroup candidates = _group.createChild();
+
+        final CandidatePrefilter prefilter = createPrefilter(hp, parameters, prD);
         int specimenCount = 0;
-        final Iterator<Sample> samplesIterator = db.iterator(parameters.getProperties());
-        while (!_interrupted && !isInterrupted() && samplesIterator.hasNext()) {
-            final Sample candidateSample = samplesIterator.next();
-            LOG.debug("Handling sample {}", candidateSample);
-
-            if (!parameters.isCalculateHdOnce()) {
-                _messageBus.send(this, new DetailStringMessage("Calculating Pr(E|Hd) for " + candidateSample));
-                final Hypothesis realHd = hd.copy();
-                realHd.addNonContributor(candidateSample, hp.getCandidateDropout());
-                localPrD = _model.calculateLikelihood(realHd, parameters);
-                _model.reset();
+        int skippedCount = 0;
+        final ArrayDeque<PendingCandidate> pending = new ArrayDeque<>();
+        try {
+            final Iterator<CandidateProfile> profiles = db.profileIterator(parameters.getProperties());
+            while (!candidates.isCancelled() && !isInterrupted() && profiles.hasNext()) {
+                final CandidateProfile candidateProfile = profiles.next();
+                LOG.debug("Handling sample {}", candidateProfile);
+                if (prefilter != null && prefilter.isBelowThreshold(candidateProfile)) {
+                    pending.add(new PendingCandidate(candidateProfile, null));
+                    skippedCount++;
+                }
+                else {
+                    pending.add(new PendingCandidate(candidateProfile, submit(candidateProfile, evaluators, candidates)));
+                }
+
+                if (pending.size() >= maximumInFlight) {
+                    mergeResult(pending.remove(), ++specimenCount, db, searchResults);
+                }
             }
 
-            hp.setCandidate(candidateSample);
-            specimenCount++;
+            // Results are merged in the order in which the candidates were read from the database
+            while (!candidates.isCancelled() && !isInterrupted() && !pending.isEmpty()) {
+                mergeResult(pending.remove(), ++specimenCount, db, searchResults);
+            }
+        }
+        finally {
+            candidates.close();
+            LOG.info("Genotype result cache: {}", _resultCache);
+            if (prefilter != null) {
+                LOG.info("Candidates skipped because their LR cannot exceed the threshold: {}", skippedCount);
+            }
+        }
+        return specimenCount;
+    }
 
-            LocusLikelihoods prP = null;
-            try {
-                _messageBus.send(this, new PercentReadyMessage((int) ((specimenCount * 100L) / db.getRecordCount())));
-                _messageBus.send(this, new DetailStringMessage("Calculating Pr(E|Hp) for " + candidateSample));
-                prP = _model.calculateLikelihood(hp, parameters);
+    /**
+     * Submits a candidate for evaluation. An evaluator is taken before the task is submitted, so the calculation threads
+     * never wait for one.
+     */
+    private Future<LikelihoodRatio> submit(final CandidateProfile candidateProfile, final BlockingQueue<CandidateEvaluator> evaluators, final TaskGroup candidates) throws InterruptedException {
+        final CandidateEvaluator evaluator = evaluators.take();
+        return candidates.submit(new Callable<LikelihoodRatio>() {
+            @Override
+            public LikelihoodRatio call() throws Exception {
+                try {
+                    return evaluator.evaluate(candidateProfile);
+                }
+                finally {
+                    evaluators.add(evaluator);
+                }
             }
-            catch (final Throwable t) {
-                LOG.error("Error evaluating candidate {}!", candidateSample.getName(), t);
+        });
+    }
+
+    private CandidatePrefilter createPrefilter(final ProsecutionHypothesis hp, final AnalysisParameters parameters, final LocusLikelihoods prD) {
+        if (!SmartRankRestrictions.isSearchPrefilterEnabled() || SmartRankRestrictions.isAllLRsStored()) {
+            return null;
+        }
+        final CandidatePrefilter prefilter = CandidatePrefilter.create(hp, parameters, _messageBus.query(EnabledLociMessage.class), prD);
+        if (prefilter == null) {
+            LOG.info("Candidate prefilter not used: it requires Pr(E|Hd) to be calculated once and the Q designation to be shut down for Hp");
+        }
+        return prefilter;
+    }
+
+    private void mergeResult(final PendingCandidate candidate, final int specimenCount, final DNADatabase db, final SearchResults searchResults) throws InterruptedException {
+        final CandidateProfile candidateProfile = candidate.getProfile();
+        _messageBus.send(this, new PercentReadyMessage((int) ((specimenCount * 100L) / db.getRecordCount())));
+        if (candidate.isSkipped()) {
+            searchResults.addExcludedProfile(candidateProfile, ExclusionReason.LR_UPPER_BOUND_BELOW_THRESHOLD);
+            return;
+        }
+        _messageBus.send(this, new DetailStringMessage("Calculating Pr(E|Hp) for " + candidateProfile));
+
+        final LikelihoodRatio lr;
+        try {
+            lr = candidate.getResult().get();
+        }
+        catch (final ExecutionException e) {
+            if (e.getCause() instanceof InterruptedException) {
+                throw (InterruptedException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
-            if (prP != null) {
-                final LikelihoodRatio lr = new LikelihoodRatio(candidateSample, prP, localPrD);
-                LOG.debug(" {} = {}", candidateSample, lr.getOverallRatio());
-                updateResults(candidateSample, searchResults, lr);
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
             }
-            _model.reset();
+            throw new IllegalStateException(e.getCause());
+        }
+
+        if (lr != null) {
+            LOG.debug(" {} = {}", candidateProfile, lr.getOverallRatio());
+            updateResults(searchResults, lr);
         }
-        return specimenCount;
     }
 
-    private void updateResults(final Sample candidateSample, final SearchResults searchResults, final LikelihoodRatio lr) {
+    private void updateResults(final SearchResults searchResults, final LikelihoodRatio lr) {
         searchResults.addLR(lr);
-        if (SmartRankRestrictions.isAllLRsStored() || (lr.getOverallRatio().isReal() && lr.getOverallRatio().getRatio() > searchResults.getParameters().getLrThreshold())) {
-            _caseLogger.logResult(candidateSample, lr);
+        if (SmartRankRestrictions.isAllLRsStored() || (!Double.isNaN(lr.getOverallRatioValue()) && !Double.isInfinite(lr.getOverallRatioValue()) && lr.getOverallRatioValue() > searchResults.getParameters().getLrThreshold())) {
+            _caseLogger.logResult(lr.getProfile(), lr);
         }
         _messageBus.send(this, new SearchResultsMessage(searchResults));
     }
@@ -303,4 +392,30 @@ public class SmartRankAnalysis extends Thread {
             }
         }
     }
+
+    /**
+     * A candidate that was submitted for evaluation but whose result was not yet merged into the search results. A
+     * candidate that was skipped by the prefilter has no result.
+     */
+    private static final class PendingCandidate {
+        private final CandidateProfile _profile;
+        private final Future<LikelihoodRatio> _result;
+
+        PendingCandidate(final CandidateProfile profile, final Future<LikelihoodRatio> result) {
+            _profile = profile;
+            _result = result;
+        }
+
+        public CandidateProfile getProfile() {
+            return _profile;
+        }
+
+        public Future<LikelihoodRatio> getResult() {
+            return _result;
+        }
+
+        public boolean isSkipped() {
+            return _result == null;
+        }
+    }
 }
@@ -34,6 +34,7 @@ public class DropoutEstimation {
 
     private int _replicateCount;
     private int _iterations;
+    private double _precision = Double.NaN;
     private List<DropoutEstimationValue> _data;
     private double[] _doubleData;
     private final int _percentile;
@@ -83,6 +84,25 @@ public class DropoutEstimation {
         return _iterations;
     }
 
+    /**
+     * Sets the precision reached by an adaptive dropout estimation.
+     *
+     * @param precision the width of the 95% confidence interval of the configured percentile
+     */
+    public void setPrecision(final double precision) {
+        _precision = precision;
+    }
+
+    /**
+     * Gets the precision reached by an adaptive dropout estimation.
+     *
+     * @return the width of the 95% confidence interval of the configured percentile, or {@link Double#NaN} if the
+     *         estimation ran a fixed number of iterations
+     */
+    public double getPrecision() {
+        return _precision;
+    }
+
     /**
      * Gets the count for each dropout value of the number of iterations of the monte carlo simulation where the observed number of alleles was recovered.
      *
@@ -17,96 +17,52 @@
 package nl.minvenj.nfi.smartrank.analysis.parameterestimation;
 
 import java.math.BigDecimal;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.SplittableRandom;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 
-import nl.minvenj.nfi.smartrank.domain.Allele;
-import nl.minvenj.nfi.smartrank.domain.Contributor;
-import nl.minvenj.nfi.smartrank.domain.Hypothesis;
-import nl.minvenj.nfi.smartrank.domain.Locus;
+import nl.minvenj.nfi.smartrank.analysis.scheduler.TaskGroup;
 
 /**
- * A job that performs dropout estimation for a single hypothesis, generating random profiles and applying dropin and
+ * A job that performs a single iteration of a dropout estimation, simulating a mixture of random profiles and the
+ * known contributors and applying dropout and drop-in for each dropout step.
  */
 public class DropoutEstimationJob implements Callable<ArrayList<BigDecimal>> {
 
-    private final Collection<String> _enabledLoci;
+    private final DropoutSimulation _simulation;
+    private final SplittableRandom _rnd;
     private final int[] _result;
-    private final Hypothesis _hypothesis;
     private final int _observedAlleleCount;
     private final DropoutProgressListener _progressListener;
 
     /**
      * Constructor.
      *
-     * @param result an array that will receive the number of surviving alleles per iteration
-     * @param hypo the hypothesis for which to perform the estimation
-     * @param enabledLoci a collection containing the names of the enabled loci
+     * @param result an array that will receive the number of surviving alleles per dropout step
+     * @param simulation the simulation compiled for the hypothesis and the enabled loci
+     * @param rnd the source of randomness for this iteration, split from that of the estimation
      * @param observedAlleleCount the number of observed alleles in the crime sample(s)
      * @param progress a {@link DropoutProgressListener} to report progress
      */
-    DropoutEstimationJob(final int[] result, final Hypothesis hypo, final Collection<String> enabledLoci, final int observedAlleleCount, final DropoutProgressListener progress) {
+    DropoutEstimationJob(final int[] result, final DropoutSimulation simulation, final SplittableRandom rnd, final int observedAlleleCount, final DropoutProgressListener progress) {
         _result = result;
-        _hypothesis = hypo;
-        _enabledLoci = enabledLoci;
+        _simulation = simulation;
+        _rnd = rnd;
         _observedAlleleCount = observedAlleleCount;
         _progressListener = progress;
     }
 
     @Override
     public ArrayList<BigDecimal> call() throws Exception {
-        final ArrayList<Contributor> mixture = new ArrayList<>();
-        final SecureRandom rnd = new SecureRandom();
-        rnd.setSeed(System.currentTimeMillis());
-        final RandomProfileGenerator randomDudeGenerator = new RandomProfileGenerator(_enabledLoci, _hypothesis.getPopulationStatistics(), rnd);
-        final ArrayList<BigDecimal> succesfulDropouts = new ArrayList<>();
-
-        // Simulate a mixture by adding a random profile for each unknown
-        for (int randomDude = 0; randomDude < _hypothesis.getUnknownCount(); randomDude++) {
-            try {
-                final Contributor randomContributor = new Contributor(randomDudeGenerator.getRandomSample(), 0);
-                mixture.add(randomContributor);
-            } catch (final NoSuchAlgorithmException ex) {
-                throw new IllegalArgumentException(ex);
-            }
-        }
-
-        // Add contributors to the mixture
-        for (final Contributor contributor : _hypothesis.getContributors()) {
-            mixture.add(new Contributor(contributor));
-        }
-
-        // Vary dropout probability for persons of interest and unknowns
-        for (int step = 0; step < 100; step++) {
-            final BigDecimal dropout = new BigDecimal(step).divide(new BigDecimal(100));
-            if (Thread.interrupted()) {
-                throw new InterruptedException();
-            }
-
-            final ArrayList<String> survivingAlleles = new ArrayList<>();
-
-            // Set the dropout for persons of interest and random dudes
-            for (final Contributor contributor : mixture) {
-                contributor.setDropoutProbability(dropout.doubleValue());
-            }
-
-            applyDropout(rnd, mixture, survivingAlleles);
+        checkCancelled();
+        _simulation.simulate(_rnd, _result);
 
-            // Apply dropIn probability
-            if (_hypothesis.getDropInProbability() > 0) {
-                applyDropin(rnd, randomDudeGenerator, survivingAlleles);
-            }
-
-            // Store surviving alleles
-            _result[step] = survivingAlleles.size();
-
-            // If surviving alleles count matches the observed count, record the current dropout value
-            final int simulatedAlleleCount = survivingAlleles.size();
-            if (simulatedAlleleCount == _observedAlleleCount) {
-                succesfulDropouts.add(dropout);
+        // Record the dropout values at which the surviving allele count matches the observed count
+        final ArrayList<BigDecimal> succesfulDropouts = new ArrayList<>();
+        for (int step = 0; step < DropoutSimulation.STEPS; step++) {
+            if (_result[step] == _observedAlleleCount) {
+                succesfulDropouts.add(DropoutSimulation.getDropout(step));
             }
         }
         if (_progressListener != null) {
@@ -116,48 +72,18 @@ public class DropoutEstimationJob implements Callable<ArrayList<BigDecimal>> {
     }
 
     /**
-     * Applies dropout to the alleles in a mixture.
+     * Stops the estimation if it was interrupted or its task group was cancelled.
      *
-     * @param rnd a {@link SecureRandom} class to generate randomness for dropout
-     * @param mixture A {@link Collection} of {@link Contributor}s representing the samples on which to apply dropout
-     * @param survivingAlleles an {@link ArrayList} that will receive the surviving alleles
-     * @throws InterruptedException if the analysis is aborted
+     * @throws InterruptedException if the current thread was interrupted
+     * @throws CancellationException if the task group of this job was cancelled
      */
-    protected void applyDropout(final SecureRandom rnd, final ArrayList<Contributor> mixture, final ArrayList<String> survivingAlleles) throws InterruptedException {
-        // Apply dropout probability to all alleles in the active loci
-        for (final Contributor contributor : mixture) {
-            for (final String locusName : _enabledLoci) {
-                final Locus locus = contributor.getSample().getLocus(locusName);
-                if (locus != null) {
-                    for (final Allele allele : locus.getAlleles()) {
-                        if (rnd.nextDouble() > contributor.getDropoutProbability() && !survivingAlleles.contains(locus.getName() + "." + allele.getAllele())) {
-                            survivingAlleles.add(locus.getName() + "." + allele.getAllele());
-                            if (Thread.interrupted()) {
-                                throw new InterruptedException();
-                            }
-                        }
-                    }
-                }
-            }
+    private static void checkCancelled() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
         }
-    }
-
-    /**
-     * Applies dropin to a mixture.
-     *
-     * @param rnd a {@link SecureRandom} to supply randomness
-     * @param randomDudeGenerator a {@link RandomProfileGenerator} that supplies random alleles
-     * @param survivingAlleles an {@link ArrayList} that contains the surviving alleles after dropout. The dropped in allele (if any) will be added to this list.
-     */
-    protected void applyDropin(final SecureRandom rnd, final RandomProfileGenerator randomDudeGenerator, final ArrayList<String> survivingAlleles) {
-        for (final String locusName : _enabledLoci) {
-            if (rnd.nextDouble() < _hypothesis.getDropInProbability()) {
-                final String dropinAllele = locusName + "." + randomDudeGenerator.getRandomAllele(locusName).getAllele();
-                if (!survivingAlleles.contains(dropinAllele)) {
-                    final String droppedIn = locusName + "." + randomDudeGenerator.getRandomAllele(locusName).getAllele();
-                    survivingAlleles.add(droppedIn);
-                }
-            }
+        final TaskGroup group = TaskGroup.current();
+        if (group != null && group.isCancelled()) {
+            throw new CancellationException();
         }
     }
 }
@@ -17,17 +17,18 @@
 package nl.minvenj.nfi.smartrank.analysis.parameterestimation;
 
 import java.math.BigDecimal;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.SplittableRandom;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import nl.minvenj.nfi.smartrank.analysis.scheduler.ComputeScheduler;
+import nl.minvenj.nfi.smartrank.analysis.scheduler.TaskGroup;
 import nl.minvenj.nfi.smartrank.domain.Hypothesis;
 import nl.minvenj.nfi.smartrank.domain.Locus;
 import nl.minvenj.nfi.smartrank.domain.Sample;
@@ -41,10 +42,16 @@ import nl.minvenj.nfi.smartrank.raven.messages.MessageBus;
  */
 public class DropoutEstimator extends Thread {
     private static final Logger LOG = LoggerFactory.getLogger(DropoutEstimator.class);
+    // The number of iterations an adaptive estimation runs between checks of the confidence interval
+    private static final int ADAPTIVE_BATCH_SIZE = 500;
     private final int _iterations;
+    private final boolean _adaptive;
+    private final int _minimumIterations;
+    private final double _tolerance;
     private final DropoutProgressListener _progressListener;
-    private final ExecutorService _service;
+    private final TaskGroup _group;
     private final MessageBus _messageBus;
+    private final long _seed;
 
     /**
      * Constructor.
@@ -52,19 +59,35 @@ public class DropoutEstimator extends Thread {
      * @param progress a {@link DropoutProgressListener} to report progress of the estimation
      */
     public DropoutEstimator(final DropoutProgressListener progress) {
+        this(progress, new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Constructor for an estimation that can be reproduced.
+     *
+     * @param progress a {@link DropoutProgressListener} to report progress of the estimation
+     * @param seed the seed from which the randomness of all iterations is derived
+     */
+    public DropoutEstimator(final DropoutProgressListener progress, final long seed) {
         LOG.trace("DropoutEstimator");
+        _seed = seed;
         setName("Dropout Estimator");
         _progressListener = progress;
         _messageBus = MessageBus.getInstance();
         _iterations = SmartRankRestrictions.getParameterEstimationIterations();
+        _adaptive = SmartRankRestrictions.isParameterEstimationAdaptive();
+        _minimumIterations = Math.min(_iterations, SmartRankRestrictions.getParameterEstimationMinimumIterations());
+        _tolerance = SmartRankRestrictions.getParameterEstimationTolerance();
         if (_progressListener != null) {
             _progressListener.setIterations(_iterations);
         }
-        _service = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        _group = ComputeScheduler.getInstance().createGroup();
     }
 
     /**
-     * Performs estimation of dropout.
+     * Performs estimation of dropout. In adaptive mode, the iterations are run in batches and the estimation stops
+     * once the 95% confidence interval of the configured dropout percentile is narrower than the configured tolerance,
+     * or when the configured number of iterations is reached.
      *
      * @param hypo the {@link Hypothesis} for which to perform dropout estimation
      * @param enabledLoci a {@link Collection} of enabled loci
@@ -73,42 +96,61 @@ public class DropoutEstimator extends Thread {
      */
     public DropoutEstimation estimate(final Hypothesis hypo, final Collection<String> enabledLoci, final Collection<Sample> crimesceneProfiles) {
         final DropoutEstimation estimate = new DropoutEstimation();
-        estimate.setIterations(_iterations);
 
         // This arraylist is used to store all dropouts at which a monte carlo simulation yields a number of surviving alleles that matches the observed allele count
         final ArrayList<BigDecimal> succesfulDropouts = new ArrayList<>();
-        final int[][] results = new int[_iterations][100];
-        final ArrayList<Future<ArrayList<BigDecimal>>> futures = new ArrayList<>();
+        final DropoutPercentileTracker tracker = new DropoutPercentileTracker();
+        final ArrayDeque<Future<ArrayList<BigDecimal>>> futures = new ArrayDeque<>();
+        final int batchSize = _adaptive ? ADAPTIVE_BATCH_SIZE : _iterations;
 
         final int observedAlleleCount = getObservedAlleleCount(enabledLoci, crimesceneProfiles);
-        // Perform the dropout estimation using the configured number of iterations
-        for (int iteration = 0; iteration < _iterations; iteration++) {
-            futures.add(_service.submit(new DropoutEstimationJob(results[iteration], hypo, enabledLoci, observedAlleleCount, _progressListener)));
-        }
-
-        _service.shutdown();
-
-        for (int iteration = 0; iteration < _iterations; iteration++) {
-            try {
-                final Future<ArrayList<BigDecimal>> future = futures.remove(0);
-                final ArrayList<BigDecimal> iterationResults = future.get();
-                if (!iterationResults.isEmpty()) {
-                    LOG.debug("Iteration {} resulted in {} Succesful dropouts: {}", iteration, iterationResults.size(), iterationResults);
-                    succesfulDropouts.addAll(iterationResults);
-                }
-                _messageBus.send(this, new DetailStringMessage(iteration + "/" + _iterations));
-                _messageBus.send(this, new PercentReadyMessage(iteration * 100 / _iterations));
+        final DropoutSimulation simulation = new DropoutSimulation(hypo, enabledLoci);
+
+        // Perform the dropout estimation using the configured number of iterations. Each iteration gets its own random
+        // generator split from the seeded one, so the estimation does not depend on the order in which jobs run.
+        LOG.debug("Estimating dropout with seed {}", _seed);
+        final SplittableRandom rnd = new SplittableRandom(_seed);
+        int iteration = 0;
+        double precision = Double.POSITIVE_INFINITY;
+        while (iteration < _iterations) {
+            final int batchEnd = Math.min(_iterations, iteration + batchSize);
+            for (int idx = iteration; idx < batchEnd; idx++) {
+                futures.add(_group.submit(new DropoutEstimationJob(new int[DropoutSimulation.STEPS], simulation, rnd.split(), observedAlleleCount, _progressListener)));
             }
-            catch (final Throwable t) {
-                _service.shutdownNow();
+
+            for (; iteration < batchEnd; iteration++) {
                 try {
-                    _service.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+                    final Future<ArrayList<BigDecimal>> future = futures.poll();
+                    final ArrayList<BigDecimal> iterationResults = ComputeScheduler.await(future);
+                    if (!iterationResults.isEmpty()) {
+                        LOG.debug("Iteration {} resulted in {} Succesful dropouts: {}", iteration, iterationResults.size(), iterationResults);
+                        succesfulDropouts.addAll(iterationResults);
+                    }
+                    tracker.add(iterationResults);
+                    _messageBus.send(this, new DetailStringMessage(iteration + "/" + _iterations));
+                    _messageBus.send(this, new PercentReadyMessage(iteration * 100 / _iterations));
+                }
+                catch (final Throwable t) {
+                    _group.close();
+                    throw new IllegalArgumentException(t);
                 }
-                catch (final InterruptedException ex1) {
+            }
+
+            if (_adaptive) {
+                precision = tracker.getConfidenceIntervalWidth(estimate.getDropoutEstimationPercentile());
+                LOG.debug("After {} iterations the {}% percentile is {} with a confidence interval of width {}", iteration, estimate.getDropoutEstimationPercentile(), tracker.getPercentile(estimate.getDropoutEstimationPercentile()), precision);
+                if (iteration >= _minimumIterations && precision <= _tolerance) {
+                    break;
                 }
-                throw new IllegalArgumentException(t);
             }
         }
+        _group.close();
+
+        estimate.setIterations(iteration);
+        if (_adaptive) {
+            estimate.setPrecision(precision);
+            LOG.info("Adaptive dropout estimation ran {} of at most {} iterations, confidence interval width {}", iteration, _iterations, precision);
+        }
 
         _messageBus.send(this, new DetailStringMessage(""));
 
@@ -154,7 +196,7 @@ public class DropoutEstimator extends Thread {
     @Override
     public void interrupt() {
         super.interrupt();
-        _service.shutdownNow();
+        _group.cancel();
     }
 
 }
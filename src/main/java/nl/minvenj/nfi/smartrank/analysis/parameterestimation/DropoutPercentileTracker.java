@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2013-2015 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.smartrank.analysis.parameterestimation;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+
+/**
+ * Tracks a percentile of the successful dropouts while a dropout estimation is running. Dropouts only take the values
+ * of the {@link DropoutSimulation#STEPS} dropout steps, so a histogram of the steps holds all information needed to
+ * find any percentile exactly.
+ * <p>
+ * The confidence interval of a percentile is taken from the order statistics of the distribution: for percentile p and
+ * n observations, it runs from the value at level p - z * sqrt(p * (1 - p) / n) to the value at level
+ * p + z * sqrt(p * (1 - p) / n). The dropouts of a single iteration come from the same simulated mixture and are not
+ * independent, so n is the number of iterations that contributed dropouts rather than the number of dropouts.
+ */
+final class DropoutPercentileTracker {
+
+    // The z value of a two-sided 95% confidence interval
+    private static final double Z_95 = 1.959964;
+
+    private final long[] _stepCounts = new long[DropoutSimulation.STEPS];
+    private long _dropoutCount;
+    private int _iterationCount;
+    private int _contributingIterationCount;
+
+    /**
+     * Adds the successful dropouts of an iteration.
+     *
+     * @param succesfulDropouts the dropouts at which the iteration recovered the observed number of alleles
+     */
+    void add(final Collection<BigDecimal> succesfulDropouts) {
+        _iterationCount++;
+        if (!succesfulDropouts.isEmpty()) {
+            _contributingIterationCount++;
+            for (final BigDecimal dropout : succesfulDropouts) {
+                _stepCounts[dropout.multiply(new BigDecimal(DropoutSimulation.STEPS)).intValue()]++;
+                _dropoutCount++;
+            }
+        }
+    }
+
+    /**
+     * @return the number of iterations that were added
+     */
+    int getIterationCount() {
+        return _iterationCount;
+    }
+
+    /**
+     * Gets the dropout at a percentile of the successful dropouts.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the lowest dropout for which at least the percentile of the dropouts is at or below it, or
+     *         {@link Double#NaN} if there are no dropouts yet
+     */
+    double getPercentile(final double percentile) {
+        return _dropoutCount == 0 ? Double.NaN : DropoutSimulation.getDropout(getStepAtLevel(percentile / 100)).doubleValue();
+    }
+
+    /**
+     * Gets the width of the 95% confidence interval of a percentile.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the difference between the upper and lower bound of the interval, or {@link Double#POSITIVE_INFINITY} if
+     *         there are no dropouts yet
+     */
+    double getConfidenceIntervalWidth(final double percentile) {
+        if (_dropoutCount == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        final double level = percentile / 100;
+        final double halfWidth = Z_95 * Math.sqrt(level * (1 - level) / _contributingIterationCount);
+        return (double) (getStepAtLevel(Math.min(1, level + halfWidth)) - getStepAtLevel(Math.max(0, level - halfWidth))) / DropoutSimulation.STEPS;
+    }
+
+    /**
+     * Gets the lowest step at which the fraction of dropouts at or below the step is at least the supplied level.
+     */
+    private int getStepAtLevel(final double level) {
+        final long rank = Math.max(1, (long) Math.ceil(level * _dropoutCount));
+        long cumulativeCount = 0;
+        for (int step = 0; step < _stepCounts.length; step++) {
+            cumulativeCount += _stepCounts[step];
+            if (cumulativeCount >= rank) {
+                return step;
+            }
+        }
+        return _stepCounts.length - 1;
+    }
+}
@@ -0,0 +1,241 @@
+/**
+ * Copyright (C) 2013-2015 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.smartrank.analysis.parameterestimation;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.SplittableRandom;
+
+import nl.minvenj.nfi.smartrank.domain.Allele;
+import nl.minvenj.nfi.smartrank.domain.Contributor;
+import nl.minvenj.nfi.smartrank.domain.Hypothesis;
+import nl.minvenj.nfi.smartrank.domain.Locus;
+import nl.minvenj.nfi.smartrank.domain.LocusFrequencies;
+
+/**
+ * The Monte Carlo simulation behind a dropout estimation, compiled once for a hypothesis and shared by all iterations.
+ * <p>
+ * Each allele that can occur at an enabled locus gets a position in a bit set: first the alleles in the population
+ * statistics, then the alleles of the known contributors that are not in the statistics. An iteration draws the
+ * profiles of the unknowns, and draws a single uniform value for each allele of the mixture. An allele survives at a
+ * dropout step if that value exceeds the dropout probability of the step, so the highest value drawn for a position
+ * gives the number of steps at which it survives. The surviving allele counts of all 100 steps then follow from a
+ * histogram of these step counts, instead of repeating the dropout draws for every step. At each step, the chance that
+ * an allele survives is the same as when the dropout draws are repeated.
+ * <p>
+ * Drop-in is simulated for each step and locus, as before: a dropped in allele adds to the count if it did not survive
+ * dropout.
+ */
+final class DropoutSimulation {
+
+    /**
+     * The number of dropout probabilities that are tried, from 0 to 0.99 in steps of 0.01.
+     */
+    static final int STEPS = 100;
+
+    private static final double[] DROPOUTS = new double[STEPS];
+    private static final BigDecimal[] DROPOUT_VALUES = new BigDecimal[STEPS];
+
+    static {
+        for (int step = 0; step < STEPS; step++) {
+            DROPOUT_VALUES[step] = new BigDecimal(step).divide(new BigDecimal(STEPS));
+            DROPOUTS[step] = DROPOUT_VALUES[step].doubleValue();
+        }
+    }
+
+    // The allele frequencies of each enabled locus and the position of its first allele in the bit set
+    private final LocusFrequencies[] _frequencies;
+    private final int[] _locusOffsets;
+    private final int _positionCount;
+    // The positions of all alleles of the known contributors at the enabled loci. Homozygotes have both alleles listed.
+    private final int[] _contributorPositions;
+    private final int _unknownCount;
+    private final double _dropInProbability;
+
+    /**
+     * Compiles the simulation for a hypothesis.
+     *
+     * @param hypothesis the hypothesis, whose contributors and unknowns make up the simulated mixtures
+     * @param enabledLoci the names of the enabled loci
+     * @throws IllegalArgumentException if random alleles are needed for a locus that has no allele frequencies
+     */
+    DropoutSimulation(final Hypothesis hypothesis, final Collection<String> enabledLoci) {
+        _unknownCount = hypothesis.getUnknownCount();
+        _dropInProbability = hypothesis.getDropInProbability();
+
+        final String[] loci = enabledLoci.toArray(new String[enabledLoci.size()]);
+        _frequencies = new LocusFrequencies[loci.length];
+        _locusOffsets = new int[loci.length];
+        final ArrayList<Integer> contributorPositions = new ArrayList<>();
+        int positionCount = 0;
+        for (int locusIndex = 0; locusIndex < loci.length; locusIndex++) {
+            final LocusFrequencies frequencies = hypothesis.getPopulationStatistics().getLocusFrequencies(loci[locusIndex]);
+            if ((frequencies == null || frequencies.size() == 0) && (_unknownCount > 0 || _dropInProbability > 0)) {
+                throw new IllegalArgumentException("No allele frequencies for locus " + loci[locusIndex]);
+            }
+            _frequencies[locusIndex] = frequencies;
+            _locusOffsets[locusIndex] = positionCount;
+            final int statisticAlleleCount = frequencies == null ? 0 : frequencies.size();
+
+            // Alleles of the contributors that are not in the statistics get positions after those of the statistics
+            final ArrayList<Integer> extraAlleleIds = new ArrayList<>();
+            for (final Contributor contributor : hypothesis.getContributors()) {
+                final Locus locus = contributor.getSample().getLocus(loci[locusIndex]);
+                if (locus != null) {
+                    for (final Allele allele : locus.getAlleles()) {
+                        int localIndex = frequencies == null ? -1 : frequencies.indexOf(allele.getId());
+                        if (localIndex < 0) {
+                            int extraIndex = extraAlleleIds.indexOf(allele.getId());
+                            if (extraIndex < 0) {
+                                extraIndex = extraAlleleIds.size();
+                                extraAlleleIds.add(allele.getId());
+                            }
+                            localIndex = statisticAlleleCount + extraIndex;
+                        }
+                        contributorPositions.add(positionCount + localIndex);
+                    }
+                }
+            }
+            positionCount += statisticAlleleCount + extraAlleleIds.size();
+        }
+        _positionCount = positionCount;
+        _contributorPositions = new int[contributorPositions.size()];
+        for (int idx = 0; idx < _contributorPositions.length; idx++) {
+            _contributorPositions[idx] = contributorPositions.get(idx);
+        }
+    }
+
+    /**
+     * @param step a dropout step
+     * @return the dropout probability of the step
+     */
+    static BigDecimal getDropout(final int step) {
+        return DROPOUT_VALUES[step];
+    }
+
+    /**
+     * @return the number of allele positions in the bit set
+     */
+    int getPositionCount() {
+        return _positionCount;
+    }
+
+    /**
+     * Simulates a single mixture and counts the alleles that survive at each dropout step.
+     *
+     * @param rnd the source of randomness for this iteration
+     * @param survivingAlleleCounts an array that receives the number of surviving alleles for each of the {@link #STEPS}
+     *            dropout steps
+     */
+    void simulate(final SplittableRandom rnd, final int[] survivingAlleleCounts) {
+        // The positions in the mixture and the highest value drawn for each
+        final long[] present = new long[(_positionCount + 63) >>> 6];
+        final double[] highestValues = new double[_positionCount];
+
+        // The unknowns are random profiles with two alleles at each enabled locus
+        for (int unknown = 0; unknown < _unknownCount; unknown++) {
+            for (int locusIndex = 0; locusIndex < _frequencies.length; locusIndex++) {
+                final int first = _locusOffsets[locusIndex] + getRandomAllele(rnd, _frequencies[locusIndex]);
+                final int second = _locusOffsets[locusIndex] + getRandomAllele(rnd, _frequencies[locusIndex]);
+                draw(rnd, first, present, highestValues);
+                draw(rnd, second, present, highestValues);
+            }
+        }
+        for (final int position : _contributorPositions) {
+            draw(rnd, position, present, highestValues);
+        }
+
+        // Count the positions by the number of steps at which they survive, and add up the counts from the last step
+        final int[] stepCounts = new int[STEPS + 1];
+        for (int word = 0; word < present.length; word++) {
+            long bits = present[word];
+            while (bits != 0) {
+                final int position = (word << 6) + Long.numberOfTrailingZeros(bits);
+                stepCounts[getSurvivingSteps(highestValues[position])]++;
+                bits &= bits - 1;
+            }
+        }
+        int surviving = 0;
+        for (int step = STEPS - 1; step >= 0; step--) {
+            surviving += stepCounts[step + 1];
+            survivingAlleleCounts[step] = surviving;
+        }
+
+        if (_dropInProbability > 0) {
+            applyDropIn(rnd, highestValues, survivingAlleleCounts);
+        }
+    }
+
+    /**
+     * Draws the value that decides at which steps an allele survives dropout.
+     */
+    private static void draw(final SplittableRandom rnd, final int position, final long[] present, final double[] highestValues) {
+        final double value = rnd.nextDouble();
+        present[position >>> 6] |= 1L << position;
+        if (value > highestValues[position]) {
+            highestValues[position] = value;
+        }
+    }
+
+    /**
+     * Adds the alleles that drop in at each step. A dropped in allele only adds to the count if it did not survive
+     * dropout at that step.
+     */
+    private void applyDropIn(final SplittableRandom rnd, final double[] highestValues, final int[] survivingAlleleCounts) {
+        for (int step = 0; step < STEPS; step++) {
+            for (int locusIndex = 0; locusIndex < _frequencies.length; locusIndex++) {
+                if (rnd.nextDouble() < _dropInProbability) {
+                    final int position = _locusOffsets[locusIndex] + getRandomAllele(rnd, _frequencies[locusIndex]);
+                    if (!(highestValues[position] > DROPOUTS[step])) {
+                        survivingAlleleCounts[step]++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of steps at which an allele survives, which is the number of dropout probabilities below the
+     * highest value drawn for the allele.
+     */
+    private static int getSurvivingSteps(final double highestValue) {
+        int steps = Math.min(STEPS, (int) (highestValue * STEPS));
+        while (steps < STEPS && DROPOUTS[steps] < highestValue) {
+            steps++;
+        }
+        while (steps > 0 && DROPOUTS[steps - 1] >= highestValue) {
+            steps--;
+        }
+        return steps;
+    }
+
+    /**
+     * Draws a random allele from the frequencies of a locus, drawing again if the value exceeds the sum of the
+     * frequencies.
+     *
+     * @return the local index of the allele
+     */
+    private static int getRandomAllele(final SplittableRandom rnd, final LocusFrequencies frequencies) {
+        while (true) {
+            final int localIndex = frequencies.indexOfCumulativeFrequency(rnd.nextDouble());
+            if (localIndex >= 0) {
+                return localIndex;
+            }
+        }
+    }
+}
@@ -22,6 +22,7 @@ import java.util.Collection;
 
 import nl.minvenj.nfi.smartrank.domain.Allele;
 import nl.minvenj.nfi.smartrank.domain.Locus;
+import nl.minvenj.nfi.smartrank.domain.LocusFrequencies;
 import nl.minvenj.nfi.smartrank.domain.PopulationStatistics;
 import nl.minvenj.nfi.smartrank.domain.Sample;
 
@@ -67,16 +68,16 @@ public class RandomProfileGenerator {
      * @return a randomly generated allele
      */
     public Allele getRandomAllele(final String locusName) {
+        final LocusFrequencies frequencies = _stats.getLocusFrequencies(locusName);
+        if (frequencies == null || frequencies.size() == 0) {
+            throw new IllegalArgumentException("No allele frequencies for locus " + locusName);
+        }
 
+        // Draw again if the value exceeds the sum of the frequencies
         while (true) {
-            final double randomValue = _rnd.nextDouble();
-            double threshold = 0.0;
-
-            for (final String allele : _stats.getAlleles(locusName)) {
-                threshold += _stats.getProbability(locusName, allele).doubleValue();
-                if (randomValue <= threshold) {
-                    return new Allele(allele);
-                }
+            final int localIndex = frequencies.indexOfCumulativeFrequency(_rnd.nextDouble());
+            if (localIndex >= 0) {
+                return new Allele(frequencies.getAllele(localIndex));
             }
         }
     }
@@ -0,0 +1,246 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.smartrank.analysis.scheduler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.minvenj.nfi.smartrank.domain.AnalysisParameters;
+import nl.minvenj.nfi.smartrank.messages.data.AnalysisParametersMessage;
+import nl.minvenj.nfi.smartrank.raven.messages.MessageBus;
+
+/**
+ * Schedules all background work of SmartRank. Calculations run in a compute pool with one thread per configured
+ * processor. Work that mostly waits for a disk or a database runs in a separate I/O pool, so it does not take threads
+ * away from the calculations. Work is submitted through a {@link TaskGroup}, which can be cancelled as a whole.
+ * <p>
+ * There is one scheduler per thread count, so all searches in the same process share the same threads. Idle threads
+ * are released after a while.
+ */
+public final class ComputeScheduler {
+
+    private static final int MINIMUM_IO_THREAD_COUNT = 2;
+    private static final long IO_THREAD_KEEPALIVE_SECONDS = 60;
+    private static final HashMap<Integer, ComputeScheduler> SCHEDULERS = new HashMap<>();
+    private static final ScheduledExecutorService TIMER = createTimer();
+
+    private final ForkJoinPool _computePool;
+    private final ThreadPoolExecutor _ioPool;
+
+    private ComputeScheduler(final int threadCount) {
+        _computePool = new ForkJoinPool(threadCount);
+        final int ioThreadCount = Math.max(MINIMUM_IO_THREAD_COUNT, threadCount / 2);
+        _ioPool = new ThreadPoolExecutor(ioThreadCount, ioThreadCount, IO_THREAD_KEEPALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("SmartRank I/O"));
+        _ioPool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Gets the scheduler for the thread count in the analysis parameters that are currently on the message bus.
+     *
+     * @return the scheduler
+     */
+    public static ComputeScheduler getInstance() {
+        return getInstance(MessageBus.getInstance().query(AnalysisParametersMessage.class));
+    }
+
+    /**
+     * Gets the scheduler for the thread count in the supplied analysis parameters.
+     *
+     * @param parameters the parameters of the analysis, or <code>null</code> to use all processors
+     * @return the scheduler
+     */
+    public static ComputeScheduler getInstance(final AnalysisParameters parameters) {
+        return getInstance(parameters == null ? 0 : parameters.getThreadCount());
+    }
+
+    /**
+     * Gets the scheduler for a thread count.
+     *
+     * @param threadCount the number of calculation threads, or 0 to use all processors
+     * @return the scheduler
+     */
+    public static synchronized ComputeScheduler getInstance(final int threadCount) {
+        final int resolvedThreadCount = resolveThreadCount(threadCount);
+        ComputeScheduler scheduler = SCHEDULERS.get(resolvedThreadCount);
+        if (scheduler == null) {
+            scheduler = new ComputeScheduler(resolvedThreadCount);
+            SCHEDULERS.put(resolvedThreadCount, scheduler);
+        }
+        return scheduler;
+    }
+
+    /**
+     * Determines the number of calculation threads for a configured thread count.
+     *
+     * @param threadCount the configured thread count
+     * @return the configured thread count if it is positive, otherwise the number of available processors
+     */
+    public static int resolveThreadCount(final int threadCount) {
+        return threadCount > 0 ? threadCount : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @return the number of threads that perform calculations
+     */
+    public int getParallelism() {
+        return _computePool.getParallelism();
+    }
+
+    /**
+     * Creates a group for tasks that are cancelled together. If this method is called from a task in another group,
+     * the new group is a child of that group, and is cancelled when that group is cancelled.
+     *
+     * @return a new task group
+     */
+    public TaskGroup createGroup() {
+        return new TaskGroup(this, TaskGroup.current());
+    }
+
+    ForkJoinPool getComputePool() {
+        return _computePool;
+    }
+
+    ExecutorService getIoPool() {
+        return _ioPool;
+    }
+
+    /**
+     * Runs a task once after a delay. The task runs on a single timer thread, so it should be short.
+     *
+     * @param task the task to run
+     * @param delay the delay
+     * @param unit the unit of the delay
+     * @return a future that can be used to cancel the task
+     */
+    public static ScheduledFuture<?> schedule(final Runnable task, final long delay, final TimeUnit unit) {
+        return TIMER.schedule(task, delay, unit);
+    }
+
+    /**
+     * Runs a task periodically until it is cancelled. The task runs on a single timer thread, so it should be short.
+     *
+     * @param task the task to run
+     * @param period the time between runs
+     * @param unit the unit of the period
+     * @return a future that can be used to cancel the task
+     */
+    public static ScheduledFuture<?> scheduleAtFixedRate(final Runnable task, final long period, final TimeUnit unit) {
+        return TIMER.scheduleAtFixedRate(task, 0, period, unit);
+    }
+
+    /**
+     * Waits for a future to complete. If this is called from a calculation thread, the compute pool adds a thread for
+     * as long as the wait lasts, so that waiting for work in the same pool cannot starve it.
+     *
+     * @param future the future to wait for
+     * @return the result of the future
+     * @throws InterruptedException if the wait was interrupted
+     * @throws ExecutionException if the task failed
+     * @throws CancellationException if the task was cancelled
+     */
+    public static <T> T await(final Future<T> future) throws InterruptedException, ExecutionException {
+        if (!future.isDone()) {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                @Override
+                public boolean block() throws InterruptedException {
+                    try {
+                        future.get();
+                    }
+                    catch (final ExecutionException | CancellationException e) {
+                        // Reported by the get below
+                    }
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    return future.isDone();
+                }
+            });
+        }
+        return future.get();
+    }
+
+    /**
+     * Takes the next element from a queue, waiting for one to become available. If this is called from a calculation
+     * thread, the compute pool adds a thread for as long as the wait lasts.
+     *
+     * @param queue the queue
+     * @return the head of the queue
+     * @throws InterruptedException if the wait was interrupted
+     */
+    public static <T> T take(final BlockingQueue<T> queue) throws InterruptedException {
+        final ArrayList<T> taken = new ArrayList<>(1);
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+            @Override
+            public boolean block() throws InterruptedException {
+                if (taken.isEmpty()) {
+                    taken.add(queue.take());
+                }
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                if (taken.isEmpty()) {
+                    final T element = queue.poll();
+                    if (element != null) {
+                        taken.add(element);
+                    }
+                }
+                return !taken.isEmpty();
+            }
+        });
+        return taken.get(0);
+    }
+
+    private static ScheduledExecutorService createTimer() {
+        final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("SmartRank timer"));
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final String _name;
+        private final AtomicInteger _count = new AtomicInteger();
+
+        NamedThreadFactory(final String name) {
+            _name = name;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, _name + " " + _count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.smartrank.analysis.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A group of tasks that are cancelled together. Cancelling a group cancels the tasks that have not started yet, and
+ * running tasks see the cancellation through {@link #isCancelled()} on the group returned by {@link #current()}. A task
+ * that stops because its group was cancelled throws a {@link CancellationException}, so its future reports it as
+ * cancelled.
+ * <p>
+ * Groups form a tree: cancelling a group also cancels its children. Closing a group cancels whatever is still running
+ * and removes it from its parent, so no task outlives the code that created its group.
+ */
+public final class TaskGroup implements AutoCloseable {
+
+    private static final ThreadLocal<TaskGroup> CURRENT = new ThreadLocal<>();
+
+    private final ComputeScheduler _scheduler;
+    private final TaskGroup _parent;
+
+    // Guarded by this
+    private final Set<Task<?>> _tasks = Collections.newSetFromMap(new IdentityHashMap<Task<?>, Boolean>());
+    private final ArrayList<Future<?>> _futures = new ArrayList<>();
+    private final ArrayList<TaskGroup> _children = new ArrayList<>();
+
+    private volatile boolean _cancelled;
+
+    TaskGroup(final ComputeScheduler scheduler, final TaskGroup parent) {
+        _scheduler = scheduler;
+        _parent = parent;
+        if (parent != null) {
+            parent.addChild(this);
+        }
+    }
+
+    /**
+     * @return the group of the task that is running in the current thread, or <code>null</code> if the current thread
+     *         is not running a task
+     */
+    public static TaskGroup current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Creates a group whose tasks are cancelled when the tasks in this group are cancelled.
+     *
+     * @return the new group
+     */
+    public TaskGroup createChild() {
+        return new TaskGroup(_scheduler, this);
+    }
+
+    /**
+     * Submits a calculation to the compute pool.
+     *
+     * @param task the calculation
+     * @return a future for the result of the calculation
+     */
+    public <T> Future<T> submit(final Callable<T> task) {
+        return submit(task, null, _scheduler.getComputePool(), false);
+    }
+
+    /**
+     * Submits a calculation to the compute pool. Its future is added to a queue when the calculation completes, fails
+     * or is cancelled.
+     *
+     * @param task the calculation
+     * @param completionQueue the queue that receives the future of the calculation when it is done
+     * @return a future for the result of the calculation
+     */
+    public <T> Future<T> submit(final Callable<T> task, final BlockingQueue<? super Future<T>> completionQueue) {
+        return submit(task, completionQueue, _scheduler.getComputePool(), false);
+    }
+
+    /**
+     * Submits a task that waits for a disk or database to the I/O pool. Cancelling the group interrupts the task.
+     *
+     * @param task the task
+     * @return a future for the result of the task
+     */
+    public <T> Future<T> submitIo(final Callable<T> task) {
+        return submit(task, null, _scheduler.getIoPool(), true);
+    }
+
+    private <T> Future<T> submit(final Callable<T> callable, final BlockingQueue<? super Future<T>> completionQueue, final Executor executor, final boolean interruptible) {
+        final Task<T> task = new Task<>(callable, completionQueue, interruptible);
+        synchronized (this) {
+            if (_cancelled) {
+                task.cancel(false);
+                return task;
+            }
+            _tasks.add(task);
+        }
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Adds a future that was not submitted through this group, but must be cancelled together with its tasks.
+     *
+     * @param future the future
+     */
+    public void add(final Future<?> future) {
+        synchronized (this) {
+            if (!_cancelled) {
+                _futures.add(future);
+                return;
+            }
+        }
+        future.cancel(false);
+    }
+
+    /**
+     * Cancels all tasks in this group and its children.
+     */
+    public void cancel() {
+        final ArrayList<Task<?>> tasks;
+        final ArrayList<Future<?>> futures;
+        final ArrayList<TaskGroup> children;
+        synchronized (this) {
+            if (_cancelled) {
+                return;
+            }
+            _cancelled = true;
+            tasks = new ArrayList<>(_tasks);
+            futures = new ArrayList<>(_futures);
+            children = new ArrayList<>(_children);
+            _futures.clear();
+        }
+        for (final Task<?> task : tasks) {
+            task.cancel(task._interruptible);
+        }
+        for (final Future<?> future : futures) {
+            future.cancel(false);
+        }
+        for (final TaskGroup child : children) {
+            child.cancel();
+        }
+    }
+
+    /**
+     * @return true if this group or one of its ancestors was cancelled
+     */
+    public boolean isCancelled() {
+        return _cancelled;
+    }
+
+    /**
+     * Cancels any tasks that are still running and removes this group from its parent.
+     */
+    @Override
+    public void close() {
+        cancel();
+        if (_parent != null) {
+            _parent.removeChild(this);
+        }
+    }
+
+    private void addChild(final TaskGroup child) {
+        synchronized (this) {
+            if (!_cancelled) {
+                _children.add(child);
+                return;
+            }
+        }
+        child.cancel();
+    }
+
+    private synchronized void removeChild(final TaskGroup child) {
+        _children.remove(child);
+    }
+
+    private synchronized void removeTask(final Task<?> task) {
+        _tasks.remove(task);
+    }
+
+    /**
+     * A task in this group. The task makes the group available through {@link TaskGroup#current()} while it runs.
+     */
+    private final class Task<T> extends FutureTask<T> {
+        private final BlockingQueue<? super Future<T>> _completionQueue;
+        private final boolean _interruptible;
+
+        Task(final Callable<T> callable, final BlockingQueue<? super Future<T>> completionQueue, final boolean interruptible) {
+            super(callable);
+            _completionQueue = completionQueue;
+            _interruptible = interruptible;
+        }
+
+        @Override
+        public void run() {
+            final TaskGroup previous = CURRENT.get();
+            CURRENT.set(TaskGroup.this);
+            try {
+                super.run();
+            }
+            finally {
+                if (previous == null) {
+                    CURRENT.remove();
+                }
+                else {
+                    CURRENT.set(previous);
+                }
+            }
+        }
+
+        @Override
+        protected void setException(final Throwable t) {
+            if (t instanceof CancellationException) {
+                cancel(false);
+            }
+            else {
+                super.setException(t);
+            }
+        }
+
+        @Override
+        protected void done() {
+            removeTask(this);
+            if (_completionQueue != null) {
+                _completionQueue.add(this);
+            }
+        }
+    }
+}
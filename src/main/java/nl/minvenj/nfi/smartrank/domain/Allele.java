@@ -16,7 +16,6 @@
  */
 package nl.minvenj.nfi.smartrank.domain;
 
-import java.util.ArrayList;
 import java.util.Objects;
 
 /**
@@ -29,17 +28,24 @@ public class Allele {
     private Locus _locus;
     private final int _hashCode;
     private final int _id;
-    private static final ArrayList<String> REGISTERED_ALLELES = new ArrayList<>();
-
-    public static synchronized int getId(final String allele) {
-        final String normalizedAllele = normalize(allele);
-        final int index = REGISTERED_ALLELES.indexOf(normalizedAllele);
-        if (index >= 0) {
-            return index;
+    private static final NameRegistry REGISTERED_ALLELES = new NameRegistry() {
+        @Override
+        protected String normalize(final String name) {
+            return Allele.normalize(name);
         }
+    };
+
+    public static int getId(final String allele) {
+        return REGISTERED_ALLELES.get(allele).getId();
+    }
 
-        REGISTERED_ALLELES.add(normalizedAllele);
-        return REGISTERED_ALLELES.indexOf(normalizedAllele);
+    /**
+     * @param id the id of a registered allele
+     * @return the normalized value of the allele
+     * @throws IllegalArgumentException if no allele was registered under the id
+     */
+    public static String getNameForId(final int id) {
+        return REGISTERED_ALLELES.getName(id);
     }
 
     public static int getRegisteredAlleleCount() {
@@ -47,7 +53,10 @@ public class Allele {
     }
 
     public static String normalize(final String allele) {
-        return allele.replaceAll("\\.0$", "");
+        if (allele.endsWith(".0")) {
+            return allele.substring(0, allele.length() - 2);
+        }
+        return allele;
     }
 
     /**
@@ -66,9 +75,10 @@ public class Allele {
      * @param peak The peak value of this allele
      */
     public Allele(final String allele, final float peak) {
-        _allele = normalize(allele);
+        final NameRegistry.Entry entry = REGISTERED_ALLELES.get(allele);
+        _allele = entry.getName();
         _hashCode = 23 * 7 + Objects.hashCode(_allele);
-        _id = getId(allele);
+        _id = entry.getId();
         _peak = peak;
     }
 
@@ -38,15 +38,20 @@ public class AnalysisParameters {
     public AnalysisParameters() {
         _enabledCrimesceneProfiles = new ArrayList<>();
         _maximumNumberOfResults = SmartRankRestrictions.getMaximumStoredResults();
+        _threadCount = SmartRankRestrictions.getComputeThreadCount();
     }
 
     public AnalysisParameters(final AnalysisParameters parameters) {
         _lrThreshold = parameters._lrThreshold;
+        _threadCount = parameters._threadCount;
         _enabledCrimesceneProfiles = new ArrayList<>(parameters._enabledCrimesceneProfiles);
         _manualEstimate = parameters._manualEstimate;
         _calculateHdOnce = parameters._calculateHdOnce;
         _automaticParameterEstimationToBePerformed = parameters._automaticParameterEstimationToBePerformed;
         _maximumNumberOfResults = parameters._maximumNumberOfResults;
+        if (parameters._properties != null) {
+            setProperties(parameters._properties);
+        }
     }
 
     public int getLrThreshold() {
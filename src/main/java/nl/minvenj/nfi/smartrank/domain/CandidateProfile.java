@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.smartrank.domain;
+
+import java.util.Iterator;
+
+/**
+ * A compact, immutable profile of a database specimen. Every locus of the profile has exactly two alleles, which are
+ * the same for homozygotes. The loci and alleles are kept as the ids under which they are registered with
+ * {@link Locus} and {@link Allele}, so a profile takes three small objects instead of a {@link Sample} holding a map
+ * of {@link Locus} objects that each hold a list of {@link Allele} objects.
+ * <p>
+ * A full {@link Sample} is only created by {@link #toSample()}, when the result for the profile is kept or reported.
+ * The statistical model evaluates the profile from its ids.
+ */
+public final class CandidateProfile {
+
+    private final String _name;
+    private final String _additionalData;
+    private final int[] _locusIds;
+    // The ids of the two alleles of each locus, at index 2 * locus index and 2 * locus index + 1
+    private final int[] _alleleIds;
+
+    /**
+     * Creates a profile.
+     *
+     * @param name the name of the specimen
+     * @param additionalData additional data to show with the specimen, or <code>null</code>
+     * @param locusIds the ids of the loci of the profile, in the order in which they were read
+     * @param alleleIds the ids of the two alleles of each locus. The array holds twice as many ids as there are loci.
+     * @throws IllegalArgumentException if the number of allele ids is not twice the number of locus ids
+     */
+    public CandidateProfile(final String name, final String additionalData, final int[] locusIds, final int[] alleleIds) {
+        if (alleleIds.length != 2 * locusIds.length) {
+            throw new IllegalArgumentException("Expected " + (2 * locusIds.length) + " allele ids for profile " + name + " but got " + alleleIds.length);
+        }
+        _name = name;
+        _additionalData = additionalData;
+        _locusIds = locusIds;
+        _alleleIds = alleleIds;
+    }
+
+    /**
+     * Creates a profile holding the loci of a sample.
+     *
+     * @param sample the sample
+     * @return a profile with the name, loci and alleles of the sample
+     * @throws IllegalArgumentException if a locus of the sample does not have exactly two alleles
+     */
+    public static CandidateProfile of(final Sample sample) {
+        final int[] locusIds = new int[sample.size()];
+        final int[] alleleIds = new int[2 * locusIds.length];
+        int locusIndex = 0;
+        for (final Locus locus : sample.getLoci()) {
+            if (locus.size() != 2) {
+                throw new IllegalArgumentException("Cannot process locus " + locus.getName() + " of sample " + sample.getName() + ". Expected 2 alleles but found " + locus.size() + ": " + locus.getAlleles());
+            }
+            final Iterator<Allele> alleles = locus.getAlleles().iterator();
+            locusIds[locusIndex] = locus.getId();
+            alleleIds[2 * locusIndex] = alleles.next().getId();
+            alleleIds[2 * locusIndex + 1] = alleles.next().getId();
+            locusIndex++;
+        }
+        return new CandidateProfile(sample.getName(), sample.getAdditionalData().isEmpty() ? null : sample.getAdditionalData(), locusIds, alleleIds);
+    }
+
+    /**
+     * @return the name of the specimen
+     */
+    public String getName() {
+        return _name;
+    }
+
+    /**
+     * @return the number of loci in the profile
+     */
+    public int getLocusCount() {
+        return _locusIds.length;
+    }
+
+    /**
+     * @param locusIndex the index of a locus in the profile
+     * @return the id of the locus
+     */
+    public int getLocusId(final int locusIndex) {
+        return _locusIds[locusIndex];
+    }
+
+    /**
+     * @param locusIndex the index of a locus in the profile
+     * @param alleleIndex 0 for the first and 1 for the second allele of the locus
+     * @return the id of the allele
+     */
+    public int getAlleleId(final int locusIndex, final int alleleIndex) {
+        return _alleleIds[2 * locusIndex + alleleIndex];
+    }
+
+    /**
+     * @param locusIndex the index of a locus in the profile
+     * @return <code>true</code> if both alleles of the locus are the same
+     */
+    public boolean isHomozygote(final int locusIndex) {
+        return _alleleIds[2 * locusIndex] == _alleleIds[2 * locusIndex + 1];
+    }
+
+    /**
+     * Finds a locus in the profile.
+     *
+     * @param locusId the id of the locus
+     * @return the index of the locus in the profile, or -1 if the profile does not have the locus
+     */
+    public int indexOf(final int locusId) {
+        for (int idx = 0; idx < _locusIds.length; idx++) {
+            if (_locusIds[idx] == locusId) {
+                return idx;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Creates a sample holding the loci and alleles of this profile. Each call creates a new sample.
+     *
+     * @return a new {@link Sample}
+     */
+    public Sample toSample() {
+        final Sample sample = new Sample(_name);
+        sample.setAdditionalData(_additionalData);
+        for (int idx = 0; idx < _locusIds.length; idx++) {
+            final Locus locus = new Locus(Locus.getNameForId(_locusIds[idx]));
+            sample.addLocus(locus);
+            final Allele first = new Allele(Allele.getNameForId(_alleleIds[2 * idx]));
+            locus.addAllele(first);
+            locus.addAllele(isHomozygote(idx) ? first : new Allele(Allele.getNameForId(_alleleIds[2 * idx + 1])));
+        }
+        return sample;
+    }
+
+    @Override
+    public String toString() {
+        return _name;
+    }
+}
@@ -142,6 +142,15 @@ public class DNADatabase {
         return _reader.iterator(properties);
     }
 
+    /**
+     * Gets an iterator over the specimens in the database as compact profiles.
+     *
+     * @return an {@link Iterator} over the {@link CandidateProfile}s in the database
+     */
+    public Iterator<CandidateProfile> profileIterator(final Properties properties) {
+        return _reader.profileIterator(properties);
+    }
+
     /**
      * Gets a list of records that are to be ignored due to formatting issues.
      *
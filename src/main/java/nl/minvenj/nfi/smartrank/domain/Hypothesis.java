@@ -79,6 +79,22 @@ public abstract class Hypothesis {
         }
     }
 
+    /**
+     * Adds a database candidate as a non-contributor. The statistical model can recognise the candidate and evaluate
+     * the rest of the hypothesis once for all candidates.
+     *
+     * @param candidateSample the sample of the candidate
+     * @param dropOutProbability the dropout probability of the candidate
+     */
+    public void addCandidateNonContributor(final Sample candidateSample, final double dropOutProbability) {
+        if (!_allSamples.contains(candidateSample)) {
+            _allSamples.add(candidateSample);
+            _nonContributors.add(new Contributor(candidateSample, dropOutProbability, true));
+        } else {
+            addNonContributor(candidateSample, dropOutProbability);
+        }
+    }
+
     public int getUnknownCount() {
         return _unknownContributors;
     }
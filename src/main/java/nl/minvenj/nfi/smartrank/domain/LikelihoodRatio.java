@@ -16,9 +16,10 @@
  */
 package nl.minvenj.nfi.smartrank.domain;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import org.slf4j.Logger;
@@ -28,21 +29,61 @@ import nl.minvenj.nfi.smartrank.raven.numberformat.NumberUtils;
 
 /**
  * Contains the likelihood ratio for two hypotheses accessible per locus and as
- * an overall value
+ * an overall value. The values of the loci are kept in primitive arrays, and the
+ * overall ratio is updated as loci are added. {@link Ratio} objects are only
+ * created when they are requested.
+ * <p>
+ * The ratio of a database candidate keeps the {@link CandidateProfile} of the
+ * candidate. The {@link Sample} of the candidate is only created when the
+ * result is kept or reported.
  */
 public class LikelihoodRatio implements Comparable<LikelihoodRatio> {
 
     private static final Logger LOG = LoggerFactory.getLogger(LikelihoodRatio.class);
-    private final HashMap<String, Ratio> _ratios = new LinkedHashMap<>();
-    private final Sample _profile;
+    private static final int INITIAL_CAPACITY = 32;
+
+    // Flags for the values of a locus that are not known
+    private static final byte PROSECUTION_MISSING = 1;
+    private static final byte DEFENSE_MISSING = 2;
+    private static final byte RATIO_MISSING = 4;
+
+    private final CandidateProfile _candidate;
+    private Sample _profile;
+
+    // The id, name, probabilities, ratio and missing values of each locus, in the order in which the loci were added
+    private int[] _locusIds = new int[INITIAL_CAPACITY];
+    private String[] _locusNames = new String[INITIAL_CAPACITY];
+    private double[] _prosecutionProbabilities = new double[INITIAL_CAPACITY];
+    private double[] _defenseProbabilities = new double[INITIAL_CAPACITY];
+    private double[] _ratios = new double[INITIAL_CAPACITY];
+    private byte[] _missing = new byte[INITIAL_CAPACITY];
+    private int _locusCount;
+
+    // The products of the known values of all loci, and the sum of the log10 of the known ratios
+    private double _overallProsecutionProbability;
+    private double _overallDefenseProbability;
+    private double _overallRatioValue;
+    private double _log10OverallRatio;
     private Ratio _overallRatio;
 
     public LikelihoodRatio(final Sample candidateSample, final LocusLikelihoods prP, final LocusLikelihoods prD) {
+        this(null, candidateSample, prP, prD);
+    }
+
+    public LikelihoodRatio(final CandidateProfile candidate, final LocusLikelihoods prP, final LocusLikelihoods prD) {
+        this(candidate, null, prP, prD);
+    }
+
+    private LikelihoodRatio(final CandidateProfile candidate, final Sample candidateSample, final LocusLikelihoods prP, final LocusLikelihoods prD) {
+        _candidate = candidate;
         _profile = candidateSample;
-        for (final String locusName : prP.getLoci()) {
-            if (prD.getLocusProbability(locusName) != null) {
-                _overallRatio = null;
-                _ratios.put(locusName, new Ratio(locusName, prP.getLocusProbability(locusName), prD.getLocusProbability(locusName)));
+        resetOverallRatio();
+        for (int idx = 0; idx < prP.getLocusCount(); idx++) {
+            final int locusId = prP.getLocusId(idx);
+            if (prD.hasLocus(locusId)) {
+                final double prosecution = prP.getLocusProbability(locusId);
+                final double defense = prD.getLocusProbability(locusId);
+                put(locusId, prP.getLocusName(locusId), prosecution, defense, prosecution / defense, 0);
             }
         }
     }
@@ -55,18 +96,102 @@ public class LikelihoodRatio implements Comparable<LikelihoodRatio> {
         if (defense == null) {
             throw new IllegalArgumentException("Defense locus probabilities are null!");
         }
+        for (int idx = 0; idx < prosecution.getLocusCount(); idx++) {
+            final int locusId = prosecution.getLocusId(idx);
+            final double prosecutionProbability = prosecution.getLocusProbability(locusId);
+            if (defense.hasLocus(locusId)) {
+                final double defenseProbability = defense.getLocusProbability(locusId);
+                put(locusId, prosecution.getLocusName(locusId), prosecutionProbability, defenseProbability, prosecutionProbability / defenseProbability, 0);
+            }
+            else {
+                // Like a Ratio without a defense probability, the ratio of the locus is not a number
+                put(locusId, prosecution.getLocusName(locusId), prosecutionProbability, 0, Double.NaN, DEFENSE_MISSING);
+            }
+        }
+    }
+
+    /**
+     * Stores the values of a locus. A locus that was added before keeps its position, and the overall values are
+     * recalculated. Otherwise the values of the locus are multiplied into the overall values.
+     */
+    private void put(final int locusId, final String locusName, final double prosecution, final double defense, final double ratio, final int missing) {
+        int position = indexOf(locusId);
+        final boolean added = position < 0;
+        if (added) {
+            if (_locusCount == _locusIds.length) {
+                grow();
+            }
+            position = _locusCount++;
+            _locusIds[position] = locusId;
+            _locusNames[position] = locusName;
+        }
+        _prosecutionProbabilities[position] = prosecution;
+        _defenseProbabilities[position] = defense;
+        _ratios[position] = ratio;
+        _missing[position] = (byte) missing;
         _overallRatio = null;
-        for (final String locus : prosecution.getLoci()) {
-            _ratios.put(locus, new Ratio(locus, prosecution.getLocusProbability(locus), defense.getLocusProbability(locus)));
+
+        if (added) {
+            accumulate(position);
+        }
+        else {
+            resetOverallRatio();
+            for (int idx = 0; idx < _locusCount; idx++) {
+                accumulate(idx);
+            }
+        }
+    }
+
+    private int indexOf(final int locusId) {
+        for (int idx = 0; idx < _locusCount; idx++) {
+            if (_locusIds[idx] == locusId) {
+                return idx;
+            }
+        }
+        return -1;
+    }
+
+    private void grow() {
+        final int capacity = _locusIds.length * 2;
+        _locusIds = Arrays.copyOf(_locusIds, capacity);
+        _locusNames = Arrays.copyOf(_locusNames, capacity);
+        _prosecutionProbabilities = Arrays.copyOf(_prosecutionProbabilities, capacity);
+        _defenseProbabilities = Arrays.copyOf(_defenseProbabilities, capacity);
+        _ratios = Arrays.copyOf(_ratios, capacity);
+        _missing = Arrays.copyOf(_missing, capacity);
+    }
+
+    private void resetOverallRatio() {
+        _overallProsecutionProbability = 1;
+        _overallDefenseProbability = 1;
+        _overallRatioValue = 1;
+        _log10OverallRatio = 0;
+    }
+
+    private void accumulate(final int position) {
+        final int missing = _missing[position];
+        if ((missing & RATIO_MISSING) == 0) {
+            _overallRatioValue *= _ratios[position];
+            _log10OverallRatio += Math.log10(_ratios[position]);
+        }
+        if ((missing & DEFENSE_MISSING) == 0) {
+            _overallDefenseProbability *= _defenseProbabilities[position];
+        }
+        if ((missing & PROSECUTION_MISSING) == 0) {
+            _overallProsecutionProbability *= _prosecutionProbabilities[position];
         }
     }
 
     public Set<String> getLoci() {
-        return _ratios.keySet();
+        final Set<String> loci = new LinkedHashSet<>();
+        for (int idx = 0; idx < _locusCount; idx++) {
+            loci.add(_locusNames[idx]);
+        }
+        return loci;
     }
 
     public int getLocusCount() {
-        return _ratios.size();
+        return _locusCount;
     }
 
     /**
@@ -77,57 +202,102 @@ public class LikelihoodRatio implements Comparable<LikelihoodRatio> {
      * not present in the results.
      */
     public Ratio getRatio(final String locus) {
-        if (!_ratios.containsKey(locus)) {
-            return null;
+        for (int idx = 0; idx < _locusCount; idx++) {
+            if (_locusNames[idx].equals(locus)) {
+                return createRatio(idx);
+            }
         }
-        return _ratios.get(locus);
+        return null;
     }
 
     public void putRatio(final Ratio ratio) {
-        _overallRatio = null;
-        _ratios.put(ratio.getLocusName(), ratio);
+        int missing = 0;
+        if (ratio.getProsecutionProbability() == null) {
+            missing |= PROSECUTION_MISSING;
+        }
+        if (ratio.getDefenseProbability() == null) {
+            missing |= DEFENSE_MISSING;
+        }
+        if (ratio.getRatio() == null) {
+            missing |= RATIO_MISSING;
+        }
+        put(Locus.getId(ratio.getLocusName()), ratio.getLocusName(),
+            (missing & PROSECUTION_MISSING) == 0 ? ratio.getProsecutionProbability() : 0,
+            (missing & DEFENSE_MISSING) == 0 ? ratio.getDefenseProbability() : 0,
+            (missing & RATIO_MISSING) == 0 ? ratio.getRatio() : 0,
+            missing);
+    }
+
+    private Ratio createRatio(final int position) {
+        final int missing = _missing[position];
+        return new Ratio(_locusNames[position],
+                         (missing & PROSECUTION_MISSING) == 0 ? _prosecutionProbabilities[position] : null,
+                         (missing & DEFENSE_MISSING) == 0 ? _defenseProbabilities[position] : null,
+                         (missing & RATIO_MISSING) == 0 ? _ratios[position] : null);
     }
 
     public Ratio getOverallRatio() {
-        if(_overallRatio == null) {
-            Double prD = 1.0;
-            Double prP = 1.0;
-            Double r = 1.0;
-            for (final Ratio ratio : _ratios.values()) {
-                if (ratio.getRatio() != null) {
-                    r *= ratio.getRatio();
-                }
-                if (ratio.getDefenseProbability() != null) {
-                    prD *= ratio.getDefenseProbability();
-                }
-                if (ratio.getProsecutionProbability() != null) {
-                    prP *= ratio.getProsecutionProbability();
-                }
-            }
-            _overallRatio = new Ratio("Overall", prP, prD, r);
+        if (_overallRatio == null) {
+            _overallRatio = new Ratio("Overall", _overallProsecutionProbability, _overallDefenseProbability, _overallRatioValue);
         }
         return _overallRatio;
     }
 
+    /**
+     * @return the product of the ratios of all loci
+     */
+    public double getOverallRatioValue() {
+        return _overallRatioValue;
+    }
+
+    /**
+     * @return the sum of the log10 of the ratios of all loci. This is finite for candidates whose overall ratio is too
+     *         small or too large to be represented as a double.
+     */
+    public double getLog10OverallRatio() {
+        return _log10OverallRatio;
+    }
+
     /**
      * @return A Collection of Ratio objects, each containing a locus name and a
      * likelihood ratio for that locus
      */
     public Collection<Ratio> getRatios() {
-        return _ratios.values();
+        final ArrayList<Ratio> ratios = new ArrayList<>(_locusCount);
+        for (int idx = 0; idx < _locusCount; idx++) {
+            ratios.add(createRatio(idx));
+        }
+        return ratios;
     }
 
-    public Sample getProfile() {
+    /**
+     * Gets the sample of the candidate. For a database candidate, the sample is
+     * created from its profile when this method is first called.
+     *
+     * @return the sample of the candidate
+     */
+    public synchronized Sample getProfile() {
+        if (_profile == null) {
+            _profile = _candidate.toSample();
+        }
         return _profile;
     }
 
+    /**
+     * @return the number of loci of the candidate, without creating the sample
+     *         of a database candidate
+     */
+    public synchronized int getProfileLocusCount() {
+        return _profile == null ? _candidate.getLocusCount() : _profile.size();
+    }
+
     @Override
     public int compareTo(final LikelihoodRatio o) {
-        return getOverallRatio().getRatio().compareTo(o.getOverallRatio().getRatio());
+        return Double.compare(_overallRatioValue, o._overallRatioValue);
     }
 
     @Override
     public String toString() {
-        return NumberUtils.format(4, getOverallRatio().getRatio());
+        return NumberUtils.format(4, _overallRatioValue);
     }
 }
@@ -19,12 +19,15 @@ package nl.minvenj.nfi.smartrank.domain;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Objects;
-import java.util.regex.Pattern;
 
 public class Locus {
 
-    private static final Pattern LOCUS_NORMALIZATION_PATTERN = Pattern.compile("[^a-zA-Z0-9]");
-    private static final ArrayList<String> REGISTERED_LOCI = new ArrayList<>();
+    private static final NameRegistry REGISTERED_LOCI = new NameRegistry() {
+        @Override
+        protected String normalize(final String name) {
+            return Locus.normalize(name);
+        }
+    };
     private final String _name;
     private final ArrayList<Allele> _alleles;
     private final int _id;
@@ -32,19 +35,47 @@ public class Locus {
     private Sample _sample;
     private int _hashCode;
 
-    public static synchronized int getId(final String name) {
-        final String normalized = normalize(name);
-        final int index = REGISTERED_LOCI.indexOf(normalized);
-        if (index >= 0) {
-            return index;
+    public static int getId(final String name) {
+        return REGISTERED_LOCI.get(name).getId();
+    }
+
+    /**
+     * Removes all characters other than letters and digits from a locus name, and converts it to upper case.
+     *
+     * @param name the name of a locus
+     * @return the normalized name
+     */
+    public static String normalize(final String name) {
+        // Most names are already normalized, so only copy the name if it contains a character that must change
+        int idx = 0;
+        while (idx < name.length() && isNormalized(name.charAt(idx))) {
+            idx++;
+        }
+        if (idx == name.length()) {
+            return name;
         }
+        final StringBuilder normalized = new StringBuilder(name.length());
+        normalized.append(name, 0, idx);
+        for (; idx < name.length(); idx++) {
+            final char c = name.charAt(idx);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+                normalized.append(c);
+            }
+        }
+        return normalized.toString().toUpperCase();
+    }
 
-        REGISTERED_LOCI.add(normalized);
-        return REGISTERED_LOCI.indexOf(normalized);
+    private static boolean isNormalized(final char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
     }
 
-    public static String normalize(final String name) {
-        return LOCUS_NORMALIZATION_PATTERN.matcher(name).replaceAll("").toUpperCase();
+    /**
+     * @param id the id of a registered locus
+     * @return the normalized name of the locus
+     * @throws IllegalArgumentException if no locus was registered under the id
+     */
+    public static String getNameForId(final int id) {
+        return REGISTERED_LOCI.getName(id);
     }
 
     public static int getRegisteredLocusCount() {
@@ -53,8 +84,9 @@ public class Locus {
 
     public Locus(final String name) {
         _alleles = new ArrayList<>();
-        _name = normalize(name);
-        _id = getId(name);
+        final NameRegistry.Entry entry = REGISTERED_LOCI.get(name);
+        _name = entry.getName();
+        _id = entry.getId();
         updateHashCode();
     }
 
@@ -0,0 +1,199 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.smartrank.domain;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The frequencies of the alleles recorded for a single locus in the population statistics. The alleles are kept in
+ * the order in which they were added, and each allele is identified by its local index in that order. Next to the
+ * frequencies, the table holds the cumulative frequencies for drawing random alleles.
+ * <p>
+ * Instances are immutable, so they can be shared by threads and by copies of the statistics. Adding an allele creates
+ * a new table.
+ */
+public final class LocusFrequencies {
+
+    private final String _locusName;
+    // The name, id, frequency and cumulative frequency of each allele, indexed by local index
+    private final String[] _alleles;
+    private final int[] _alleleIds;
+    private final double[] _frequencies;
+    private final double[] _cumulativeFrequencies;
+    // The allele ids in ascending order and the local index of each, for looking up alleles by id
+    private final int[] _sortedAlleleIds;
+    private final int[] _sortedLocalIndices;
+
+    /**
+     * Creates an empty table.
+     *
+     * @param locusName the normalized name of the locus
+     */
+    LocusFrequencies(final String locusName) {
+        this(locusName, new String[0], new int[0], new double[0]);
+    }
+
+    private LocusFrequencies(final String locusName, final String[] alleles, final int[] alleleIds, final double[] frequencies) {
+        _locusName = locusName;
+        _alleles = alleles;
+        _alleleIds = alleleIds;
+        _frequencies = frequencies;
+
+        _cumulativeFrequencies = new double[frequencies.length];
+        double cumulativeFrequency = 0.0;
+        for (int idx = 0; idx < frequencies.length; idx++) {
+            cumulativeFrequency += frequencies[idx];
+            _cumulativeFrequencies[idx] = cumulativeFrequency;
+        }
+
+        final long[] sorted = new long[alleleIds.length];
+        for (int idx = 0; idx < alleleIds.length; idx++) {
+            sorted[idx] = ((long) alleleIds[idx] << 32) | idx;
+        }
+        Arrays.sort(sorted);
+        _sortedAlleleIds = new int[sorted.length];
+        _sortedLocalIndices = new int[sorted.length];
+        for (int idx = 0; idx < sorted.length; idx++) {
+            _sortedAlleleIds[idx] = (int) (sorted[idx] >>> 32);
+            _sortedLocalIndices[idx] = (int) sorted[idx];
+        }
+    }
+
+    /**
+     * Creates a table with the frequency of an allele added or replaced.
+     *
+     * @param allele the normalized name of the allele
+     * @param alleleId the id of the allele
+     * @param frequency the frequency of the allele
+     * @return a new table. This table is not changed.
+     */
+    LocusFrequencies withFrequency(final String allele, final int alleleId, final double frequency) {
+        final int localIndex = indexOf(alleleId);
+        if (localIndex >= 0) {
+            final double[] frequencies = _frequencies.clone();
+            frequencies[localIndex] = frequency;
+            return new LocusFrequencies(_locusName, _alleles, _alleleIds, frequencies);
+        }
+        final String[] alleles = Arrays.copyOf(_alleles, _alleles.length + 1);
+        final int[] alleleIds = Arrays.copyOf(_alleleIds, _alleleIds.length + 1);
+        final double[] frequencies = Arrays.copyOf(_frequencies, _frequencies.length + 1);
+        alleles[_alleles.length] = allele;
+        alleleIds[_alleles.length] = alleleId;
+        frequencies[_alleles.length] = frequency;
+        return new LocusFrequencies(_locusName, alleles, alleleIds, frequencies);
+    }
+
+    /**
+     * @return the normalized name of the locus
+     */
+    public String getLocusName() {
+        return _locusName;
+    }
+
+    /**
+     * @return the number of alleles recorded for the locus
+     */
+    public int size() {
+        return _alleles.length;
+    }
+
+    /**
+     * @return the normalized names of the alleles, in the order in which they were added
+     */
+    public List<String> getAlleles() {
+        return Collections.unmodifiableList(Arrays.asList(_alleles));
+    }
+
+    /**
+     * @param localIndex the local index of an allele
+     * @return the normalized name of the allele
+     */
+    public String getAllele(final int localIndex) {
+        return _alleles[localIndex];
+    }
+
+    /**
+     * @param localIndex the local index of an allele
+     * @return the id of the allele
+     */
+    public int getAlleleId(final int localIndex) {
+        return _alleleIds[localIndex];
+    }
+
+    /**
+     * @param localIndex the local index of an allele
+     * @return the frequency of the allele
+     */
+    public double getFrequency(final int localIndex) {
+        return _frequencies[localIndex];
+    }
+
+    /**
+     * @param localIndex the local index of an allele
+     * @return the sum of the frequencies of the alleles up to and including the allele
+     */
+    public double getCumulativeFrequency(final int localIndex) {
+        return _cumulativeFrequencies[localIndex];
+    }
+
+    /**
+     * Finds an allele by its id.
+     *
+     * @param alleleId the id of the allele
+     * @return the local index of the allele, or -1 if the allele is not recorded for the locus
+     */
+    public int indexOf(final int alleleId) {
+        final int position = Arrays.binarySearch(_sortedAlleleIds, alleleId);
+        return position < 0 ? -1 : _sortedLocalIndices[position];
+    }
+
+    /**
+     * Finds the first allele whose cumulative frequency is at least the supplied value. For a value drawn uniformly
+     * from [0, 1), the alleles are found with the probabilities given by their frequencies.
+     *
+     * @param value the value
+     * @return the local index of the allele, or -1 if the value exceeds the sum of all frequencies
+     */
+    public int indexOfCumulativeFrequency(final double value) {
+        int low = 0;
+        int high = _cumulativeFrequencies.length - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (_cumulativeFrequencies[mid] < value) {
+                low = mid + 1;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        return low < _cumulativeFrequencies.length ? low : -1;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder(_locusName).append('{');
+        for (int idx = 0; idx < _alleles.length; idx++) {
+            if (idx > 0) {
+                builder.append(", ");
+            }
+            builder.append(_alleles[idx]).append('=').append(_frequencies[idx]);
+        }
+        return builder.append('}').toString();
+    }
+}
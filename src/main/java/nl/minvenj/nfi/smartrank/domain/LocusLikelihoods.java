@@ -16,15 +16,67 @@
  */
 package nl.minvenj.nfi.smartrank.domain;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 
+/**
+ * The probabilities of the evidence at each locus. The probabilities are kept in an array indexed by locus id, and the
+ * loci are listed in the order in which they were added.
+ */
 public class LocusLikelihoods {
 
-    private final HashMap<String, Double> _probabilities = new HashMap<>();
+    // The probability and the name of each locus, indexed by locus id. Only loci with a name have a probability.
+    private double[] _probabilities;
+    private String[] _names;
+    // The ids of the loci in the order in which they were added
+    private int[] _locusIds;
+    private int _locusCount;
 
-    public void addLocusProbability(final String locus, final Double probability) {
-        _probabilities.put(locus, probability);
+    public LocusLikelihoods() {
+        final int capacity = Math.max(16, Locus.getRegisteredLocusCount());
+        _probabilities = new double[capacity];
+        _names = new String[capacity];
+        _locusIds = new int[capacity];
+    }
+
+    public void addLocusProbability(final String locus, final double probability) {
+        final int locusId = Locus.getId(locus);
+        if (!hasLocus(locusId)) {
+            register(locusId, locus);
+        }
+        _probabilities[locusId] = probability;
+    }
+
+    /**
+     * Adds a value to the probability of a locus. A locus that has no probability yet gets the value as its
+     * probability.
+     *
+     * @param locus the name of the locus
+     * @param value the value to add
+     */
+    public void addToLocusProbability(final String locus, final double value) {
+        final int locusId = Locus.getId(locus);
+        if (hasLocus(locusId)) {
+            _probabilities[locusId] += value;
+        }
+        else {
+            register(locusId, locus);
+            _probabilities[locusId] = value;
+        }
+    }
+
+    private void register(final int locusId, final String locus) {
+        if (locusId >= _names.length) {
+            final int capacity = Math.max(_names.length * 2, locusId + 1);
+            _probabilities = Arrays.copyOf(_probabilities, capacity);
+            _names = Arrays.copyOf(_names, capacity);
+        }
+        if (_locusCount == _locusIds.length) {
+            _locusIds = Arrays.copyOf(_locusIds, _locusCount * 2);
+        }
+        _names[locusId] = locus;
+        _locusIds[_locusCount++] = locusId;
     }
 
     /**
@@ -32,7 +84,43 @@ public class LocusLikelihoods {
      * which a probability is known in this object
      */
     public Collection<String> getLoci() {
-        return _probabilities.keySet();
+        final ArrayList<String> loci = new ArrayList<>(_locusCount);
+        for (int idx = 0; idx < _locusCount; idx++) {
+            loci.add(_names[_locusIds[idx]]);
+        }
+        return loci;
+    }
+
+    /**
+     * @return the number of loci for which a probability is known
+     */
+    public int getLocusCount() {
+        return _locusCount;
+    }
+
+    /**
+     * @param index the index of a locus, in the order in which the loci were added
+     * @return the id of the locus
+     */
+    public int getLocusId(final int index) {
+        return _locusIds[index];
+    }
+
+    /**
+     * @param locusId the id of a locus
+     * @return <code>true</code> if a probability is known for the locus
+     */
+    public boolean hasLocus(final int locusId) {
+        return locusId < _names.length && _names[locusId] != null;
+    }
+
+    /**
+     * @param locusId the id of a locus
+     * @return the name under which the probability of the locus was added, or <code>null</code> if the locus has no
+     *         probability
+     */
+    public String getLocusName(final int locusId) {
+        return hasLocus(locusId) ? _names[locusId] : null;
     }
 
     /**
@@ -44,7 +132,16 @@ public class LocusLikelihoods {
      * is not present.
      */
     public Double getLocusProbability(final String locus) {
-        return _probabilities.get(locus);
+        final int locusId = Locus.getId(locus);
+        return hasLocus(locusId) ? _probabilities[locusId] : null;
+    }
+
+    /**
+     * @param locusId the id of a locus
+     * @return the probability of the locus, or {@link Double#NaN} if the locus has no probability
+     */
+    public double getLocusProbability(final int locusId) {
+        return hasLocus(locusId) ? _probabilities[locusId] : Double.NaN;
     }
 
     /**
@@ -54,15 +151,22 @@ public class LocusLikelihoods {
      * @return The product of all locus probabilities
      */
     public Double getGlobalProbability() {
-        Double retval = new Double(1);
-        for (final Double locus : _probabilities.values()) {
-            retval *= locus;
+        double retval = 1;
+        for (int idx = 0; idx < _locusCount; idx++) {
+            retval *= _probabilities[_locusIds[idx]];
         }
         return retval;
     }
 
     @Override
     public String toString() {
-        return _probabilities.toString();
+        final StringBuilder builder = new StringBuilder("{");
+        for (int idx = 0; idx < _locusCount; idx++) {
+            if (idx > 0) {
+                builder.append(", ");
+            }
+            builder.append(_names[_locusIds[idx]]).append('=').append(_probabilities[_locusIds[idx]]);
+        }
+        return builder.append('}').toString();
     }
 }
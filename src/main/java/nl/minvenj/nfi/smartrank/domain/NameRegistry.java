@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.smartrank.domain;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Assigns dense integer ids to normalized names, in the order in which the names are first registered. Names are looked
+ * up in concurrent hash maps, so threads that parse samples at the same time do not wait for each other. The normalized
+ * form of each name is remembered together with its id, so a name that was seen before is not normalized again, and
+ * all objects with the same name share a single string.
+ */
+abstract class NameRegistry {
+
+    // The entry of each name as it was passed to get, and of each normalized name
+    private final ConcurrentHashMap<String, Entry> _byName = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Entry> _byNormalizedName = new ConcurrentHashMap<>();
+    private final AtomicInteger _count = new AtomicInteger();
+    // The entry of each id. Only written while registering a name, which is rare.
+    private volatile Entry[] _entries = new Entry[64];
+
+    /**
+     * Normalizes a name, so that different spellings of the same name get the same id.
+     *
+     * @param name the name
+     * @return the normalized name
+     */
+    protected abstract String normalize(String name);
+
+    /**
+     * Gets the entry of a name, registering the name if it was not seen before.
+     *
+     * @param name the name
+     * @return the entry holding the normalized name and its id
+     */
+    Entry get(final String name) {
+        Entry entry = _byName.get(name);
+        if (entry == null) {
+            entry = register(normalize(name));
+            _byName.putIfAbsent(name, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Gets the normalized name that was registered under an id.
+     *
+     * @param id the id
+     * @return the normalized name
+     * @throws IllegalArgumentException if no name was registered under the id
+     */
+    String getName(final int id) {
+        final Entry[] entries = _entries;
+        if (id < 0 || id >= entries.length || entries[id] == null) {
+            throw new IllegalArgumentException("No name was registered under id " + id);
+        }
+        return entries[id].getName();
+    }
+
+    /**
+     * @return the number of registered names, which is one more than the highest id
+     */
+    int size() {
+        return _count.get();
+    }
+
+    private Entry register(final String normalizedName) {
+        final Entry entry = _byNormalizedName.get(normalizedName);
+        if (entry != null) {
+            return entry;
+        }
+        // The id is taken while the map holds the lock on the bin of the name, so each name is assigned exactly one id
+        return _byNormalizedName.computeIfAbsent(normalizedName, new Function<String, Entry>() {
+            @Override
+            public Entry apply(final String key) {
+                final Entry entry = new Entry(key, _count.getAndIncrement());
+                store(entry);
+                return entry;
+            }
+        });
+    }
+
+    private synchronized void store(final Entry entry) {
+        Entry[] entries = _entries;
+        if (entry.getId() >= entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(entries.length * 2, entry.getId() + 1));
+        }
+        entries[entry.getId()] = entry;
+        _entries = entries;
+    }
+
+    /**
+     * A registered name and its id.
+     */
+    static final class Entry {
+        private final String _name;
+        private final int _id;
+
+        Entry(final String name, final int id) {
+            _name = name;
+            _id = id;
+        }
+
+        String getName() {
+            return _name;
+        }
+
+        int getId() {
+            return _id;
+        }
+    }
+}
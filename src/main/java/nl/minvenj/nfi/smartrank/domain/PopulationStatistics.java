@@ -23,6 +23,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Objects;
 
+/**
+ * The frequencies of alleles in a population, as read from a statistics file. The frequencies of each locus are held
+ * in a compact {@link LocusFrequencies} table. Alleles that are not recorded for a locus get the rare allele frequency.
+ */
 public class PopulationStatistics {
 
     // The default probability for a rare allele is 1 / (2 * N)
@@ -32,23 +36,32 @@ public class PopulationStatistics {
     private static final double DEFAULT_FREQUENCY = 1.0 / (2 * DEFAULT_POPULATION_STUDY_SIZE);
 
     private final ArrayList<String> _loci;
-    private final ArrayList<String> _allelesForLocus;
     private final String _fileName;
 
     private String _fileHash;
-    private final double[][] _probs = new double[1024][1024];
-    private final boolean[][] _rare = new boolean[1024][1024];
-    private double _rareAlleleFrequency = DEFAULT_FREQUENCY;
+    // The frequency table of each locus, indexed by locus id. The tables are immutable and replaced when an allele is
+    // added, so lookups need no locking and copies of the statistics can share them.
+    private volatile LocusFrequencies[] _frequencies = new LocusFrequencies[0];
+    private volatile double _rareAlleleFrequency = DEFAULT_FREQUENCY;
 
     public PopulationStatistics(final String fileNamez) {
         _loci = new ArrayList<>();
-        _allelesForLocus = new ArrayList<>();
-        for (int idx = 0; idx < _rare.length; idx++) {
-            Arrays.fill(_rare[idx], true);
-        }
         _fileName = fileNamez;
     }
 
+    /**
+     * Creates a copy of the supplied population statistics. The copy can be modified independently of the original.
+     *
+     * @param original the statistics to copy
+     */
+    public PopulationStatistics(final PopulationStatistics original) {
+        _loci = new ArrayList<>(original._loci);
+        _frequencies = original._frequencies.clone();
+        _fileName = original._fileName;
+        _fileHash = original._fileHash;
+        _rareAlleleFrequency = original._rareAlleleFrequency;
+    }
+
     /**
      * @return The frequency of rare alleles (i.e. alleles that are not recorded
      * in the population statistics file)
@@ -66,24 +79,62 @@ public class PopulationStatistics {
      * @param probability The probability that the allele is observed at the
      * locus
      */
-    public void addStatistic(final String locusName, final String alleleName, final BigDecimal probability) {
+    public synchronized void addStatistic(final String locusName, final String alleleName, final BigDecimal probability) {
         final String normalizedAllele = Allele.normalize(alleleName);
         final String normalizedLocusName = Locus.normalize(locusName);
-        if (!_loci.contains(normalizedLocusName)) {
-            _loci.add(normalizedLocusName);
-        }
         final int locusId = Locus.getId(normalizedLocusName);
         final int alleleId = Allele.getId(normalizedAllele);
-        _probs[locusId][alleleId] = probability.doubleValue();
-        _rare[locusId][alleleId] = false;
-        _allelesForLocus.add(normalizedLocusName + normalizedAllele);
+
+        LocusFrequencies[] frequencies = _frequencies;
+        if (locusId >= frequencies.length) {
+            frequencies = Arrays.copyOf(frequencies, Math.max(locusId + 1, frequencies.length * 2));
+        }
+        else {
+            frequencies = frequencies.clone();
+        }
+        if (frequencies[locusId] == null) {
+            _loci.add(normalizedLocusName);
+            frequencies[locusId] = new LocusFrequencies(normalizedLocusName);
+        }
+        frequencies[locusId] = frequencies[locusId].withFrequency(normalizedAllele, alleleId, probability.doubleValue());
+        _frequencies = frequencies;
+    }
+
+    /**
+     * Gets the frequency table of a locus.
+     *
+     * @param locusName the name of the locus
+     * @return the frequencies of the alleles recorded for the locus, or <code>null</code> if no alleles are recorded
+     */
+    public LocusFrequencies getLocusFrequencies(final String locusName) {
+        return getLocusFrequencies(Locus.getId(locusName));
     }
 
-    private Double getProbability(final int locusId, final int alleleId) {
-        if (_rare[locusId][alleleId]) {
+    /**
+     * Gets the frequency table of a locus by its id.
+     *
+     * @param locusId the id of the locus
+     * @return the frequencies of the alleles recorded for the locus, or <code>null</code> if no alleles are recorded
+     */
+    public LocusFrequencies getLocusFrequencies(final int locusId) {
+        final LocusFrequencies[] frequencies = _frequencies;
+        return locusId < frequencies.length ? frequencies[locusId] : null;
+    }
+
+    /**
+     * Gets the probability of an allele at a locus by their ids, without boxing the result.
+     *
+     * @param locusId the id of the locus
+     * @param alleleId the id of the allele
+     * @return the probability of the allele, or the rare allele frequency if the allele is not recorded at the locus
+     */
+    public double getProbability(final int locusId, final int alleleId) {
+        final LocusFrequencies frequencies = getLocusFrequencies(locusId);
+        final int localIndex = frequencies == null ? -1 : frequencies.indexOf(alleleId);
+        if (localIndex < 0) {
             return _rareAlleleFrequency;
         }
-        return _probs[locusId][alleleId];
+        return frequencies.getFrequency(localIndex);
     }
 
     public Double getProbability(final Locus locus, final Allele allele) {
@@ -95,14 +146,11 @@ public class PopulationStatistics {
     }
 
     public Collection<String> getAlleles(final String locusName) {
-        final ArrayList<String> alleles = new ArrayList<>();
-        final String normalizedLocusName = Locus.normalize(locusName);
-        for (final String locus : _allelesForLocus) {
-            if (locus.startsWith(normalizedLocusName)) {
-                alleles.add(locus.substring(normalizedLocusName.length()));
-            }
+        final LocusFrequencies frequencies = getLocusFrequencies(locusName);
+        if (frequencies == null) {
+            return Collections.emptyList();
         }
-        return alleles;
+        return frequencies.getAlleles();
     }
 
     public String getFileName() {
@@ -168,7 +216,19 @@ public class PopulationStatistics {
      * @return true if the supplied allele is rare
      */
     public boolean isRareAllele(final Allele allele) {
-        return _rare[allele.getLocus().getId()][allele.getId()];
+        return isRareAllele(allele.getLocus().getId(), allele.getId());
+    }
+
+    /**
+     * Determines if an allele at a locus is rare by their ids.
+     *
+     * @param locusId the id of the locus
+     * @param alleleId the id of the allele
+     * @return true if the allele is not recorded at the locus
+     */
+    public boolean isRareAllele(final int locusId, final int alleleId) {
+        final LocusFrequencies frequencies = getLocusFrequencies(locusId);
+        return frequencies == null || frequencies.indexOf(alleleId) < 0;
     }
 
     public void setRareAlleleFrequency(final double frequency) {
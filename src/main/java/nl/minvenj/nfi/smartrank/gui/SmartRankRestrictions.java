@@ -50,6 +50,9 @@ public class SmartRankRestrictions {
     private static final String MANUAL_PARAMETER_ESTIMATION_ENABLED = "interactiveParameterEstimationEnabled";
     private static final String PARAMETER_ESTIMATION_ITERATIONS = "parameterEstimationIterations";
     private static final String PARAMETER_ESTIMATION_DROPOUT_PERCENTILE = "parameterEstimationDropoutPercentile";
+    private static final String PARAMETER_ESTIMATION_ADAPTIVE = "parameterEstimationAdaptive";
+    private static final String PARAMETER_ESTIMATION_MINIMUM_ITERATIONS = "parameterEstimationMinimumIterations";
+    private static final String PARAMETER_ESTIMATION_TOLERANCE = "parameterEstimationTolerance";
     private static final String REPORT_TEMPLATE_FILENAME = "reportTemplateFilename";
     private static final String REPORT_FILENAME = "reportFilename";
     private static final String REPORT_GENERATION_ENABLED = "reportGenerationEnabled";
@@ -66,6 +69,11 @@ public class SmartRankRestrictions {
     private static final String BATCH_AUTOSTART_MODE = "batchMode.autoStart";
     private static final String BATCHMODE_JOB_RETENTION_DAYS = "batchmode.retentiondays";
     private static final String SETTINGS_UPDATABLE = "restrictionsUpdatable";
+    private static final String SEARCH_WORKER_COUNT = "searchWorkerCount";
+    private static final String SEARCH_MAXIMUM_CANDIDATES_IN_FLIGHT = "searchMaximumCandidatesInFlight";
+    private static final String COMPUTE_THREAD_COUNT = "computeThreadCount";
+    private static final String PROFILE_STORE_FOLDER = "profileStoreFolder";
+    private static final String SEARCH_PREFILTER_ENABLED = "searchPrefilterEnabled";
 
     private static String _propertiesFileName = System.getProperty("smartrankRestrictions");
 
@@ -173,6 +181,27 @@ public class SmartRankRestrictions {
         return getInt(PARAMETER_ESTIMATION_DROPOUT_PERCENTILE, 95);
     }
 
+    /**
+     * @return true if a dropout estimation stops as soon as the configured percentile is known precisely enough, instead of always running the configured number of iterations
+     */
+    public static boolean isParameterEstimationAdaptive() {
+        return Boolean.parseBoolean(get(PARAMETER_ESTIMATION_ADAPTIVE, "false"));
+    }
+
+    /**
+     * @return the number of iterations an adaptive dropout estimation runs before it checks whether it can stop
+     */
+    public static int getParameterEstimationMinimumIterations() {
+        return getInt(PARAMETER_ESTIMATION_MINIMUM_ITERATIONS, 1000);
+    }
+
+    /**
+     * @return the width of the 95% confidence interval of the dropout percentile at which an adaptive dropout estimation stops
+     */
+    public static double getParameterEstimationTolerance() {
+        return getDouble(PARAMETER_ESTIMATION_TOLERANCE, 0.02);
+    }
+
     public static int getMaximumPathLength() {
         return getInt(MAXIMUM_PATH_LENGTH, 128);
     }
@@ -197,6 +226,41 @@ public class SmartRankRestrictions {
         return Boolean.parseBoolean(get(REPORT_GENERATION_ENABLED, "true"));
     }
 
+    /**
+     * @return the number of database candidates that are evaluated concurrently during a search
+     */
+    public static int getSearchWorkerCount() {
+        return getInt(SEARCH_WORKER_COUNT, 1);
+    }
+
+    /**
+     * @return the maximum number of candidates that are read from the database but not yet merged into the search results
+     */
+    public static int getSearchMaximumCandidatesInFlight() {
+        return getInt(SEARCH_MAXIMUM_CANDIDATES_IN_FLIGHT, 256);
+    }
+
+    /**
+     * @return the number of threads that perform calculations, or 0 to use one thread per available processor
+     */
+    public static int getComputeThreadCount() {
+        return getInt(COMPUTE_THREAD_COUNT, 0);
+    }
+
+    /**
+     * @return the folder where binary copies of validated Codis databases are kept, or an empty string if databases are always read from the original file
+     */
+    public static String getProfileStoreFolder() {
+        return get(PROFILE_STORE_FOLDER, "");
+    }
+
+    /**
+     * @return true if candidates whose likelihood ratio cannot exceed the LR threshold are skipped during a search
+     */
+    public static boolean isSearchPrefilterEnabled() {
+        return Boolean.parseBoolean(get(SEARCH_PREFILTER_ENABLED, "false"));
+    }
+
     private static String get(final String key, final String defaultValue) {
         String value = System.getProperty(key);
         if (value == null) {
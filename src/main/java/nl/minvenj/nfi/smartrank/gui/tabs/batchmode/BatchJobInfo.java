@@ -143,11 +143,7 @@ public class BatchJobInfo {
             }
 
             _threshold = results.getParameters().getLrThreshold();
-            for (final Double lr : results.getLRs()) {
-                if (lr > results.getParameters().getThreadCount()) {
-                    _numberOfLRsOverThreshold++;
-                }
-            }
+            _numberOfLRsOverThreshold = results.getNumberOfLRsOverThreshold();
         }
         else {
             _logFileName = null;
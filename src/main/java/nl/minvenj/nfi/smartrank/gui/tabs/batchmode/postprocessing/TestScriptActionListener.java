@@ -92,6 +92,17 @@ public class TestScriptActionListener implements ActionListener {
                     return 5;
                 }
 
+                @Override
+                public int getNumberOfLRsOverThreshold() {
+                    int count = 0;
+                    for (final Double lr : getLRs()) {
+                        if (lr > searchCriteriaReader.getLRThreshold()) {
+                            count++;
+                        }
+                    }
+                    return count;
+                }
+
                 @Override
                 public boolean isSucceeded() {
                     return true;
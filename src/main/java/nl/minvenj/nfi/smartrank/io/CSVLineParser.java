@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2015 Netherlands Forensic Institute
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package nl.minvenj.nfi.smartrank.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import com.opencsv.CSVParser;
+
+/**
+ * Splits a single line of CSV text into fields. The separator is determined for every line and can be a comma, a tab
+ * or a semicolon. Field values are trimmed and stripped of quotes.
+ */
+public class CSVLineParser {
+
+    private static final char[] SEPARATORS = {',', '\t', ';'};
+
+    private final CSVParser[] _parsers = new CSVParser[SEPARATORS.length];
+    private final boolean _returnEmptyFields;
+
+    /**
+     * Constructor.
+     *
+     * @param returnEmptyFields If true, empty fields are returned as empty strings. If false, empty fields are skipped.
+     */
+    public CSVLineParser(final boolean returnEmptyFields) {
+        _returnEmptyFields = returnEmptyFields;
+    }
+
+    /**
+     * Gets the separator used in a line of text. If more than one of the supported separators occurs in the line,
+     * the last one in the order comma, tab, semicolon is used.
+     *
+     * @param hasComma true if the line contains a comma
+     * @param hasTab true if the line contains a tab
+     * @param hasSemicolon true if the line contains a semicolon
+     * @return the separator for the line
+     * @throws IllegalArgumentException if the line contains none of the supported separators
+     */
+    public static char getSeparator(final boolean hasComma, final boolean hasTab, final boolean hasSemicolon) {
+        if (hasSemicolon) {
+            return ';';
+        }
+        if (hasTab) {
+            return '\t';
+        }
+        if (hasComma) {
+            return ',';
+        }
+        throw new IllegalArgumentException("Unknown file format! Only Comma Separated and Tab Separated files are supported.");
+    }
+
+    /**
+     * Parses a line of CSV text.
+     *
+     * @param csvLine the line to parse
+     * @return an array containing the field values found in the line
+     * @throws IOException if the line could not be parsed
+     */
+    public String[] parse(final String csvLine) throws IOException {
+        final int separatorIndex = getSeparatorIndex(csvLine);
+        if (_parsers[separatorIndex] == null) {
+            _parsers[separatorIndex] = new CSVParser(SEPARATORS[separatorIndex]);
+        }
+
+        final String[] parsedLine = _parsers[separatorIndex].parseLine(csvLine);
+
+        final ArrayList<String> fields = new ArrayList<>(parsedLine.length);
+        for (int idx = 0; idx < parsedLine.length; idx++) {
+            String fieldValue = removeQuotes(parsedLine[idx].trim());
+            if (fieldValue.startsWith("\ufffe") || fieldValue.startsWith("\ufeff")) {
+                fieldValue = fieldValue.substring(1);
+            }
+
+            if (_returnEmptyFields || !fieldValue.isEmpty()) {
+                fields.add(fieldValue);
+            }
+        }
+
+        return fields.toArray(new String[fields.size()]);
+    }
+
+    private static int getSeparatorIndex(final String csvLine) {
+        final char separator = getSeparator(csvLine.indexOf(',') >= 0, csvLine.indexOf('\t') >= 0, csvLine.indexOf(';') >= 0);
+        for (int idx = 0; idx < SEPARATORS.length; idx++) {
+            if (SEPARATORS[idx] == separator) {
+                return idx;
+            }
+        }
+        throw new IllegalStateException("Unsupported separator: " + separator);
+    }
+
+    private static String removeQuotes(final String value) {
+        if (value.indexOf('"') < 0) {
+            return value;
+        }
+        final StringBuilder builder = new StringBuilder(value.length());
+        for (int idx = 0; idx < value.length(); idx++) {
+            final char c = value.charAt(idx);
+            if (c != '"') {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -16,17 +16,11 @@ import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLDecoder;
-import java.util.ArrayList;
-import java.util.HashMap;
 
-import com.opencsv.CSVParser;
-
-public class CSVReader {
-    private static char[] _separators = {',', '\t', ';'};
+public class CSVReader implements FieldReader {
     private final HashingReader _hashingReader;
     private final BufferedReader _reader;
-    private final HashMap<Character, CSVParser> _parserHash;
-    private final boolean _returnEmptyFields;
+    private final CSVLineParser _lineParser;
 
     private File _file;
 
@@ -98,9 +92,7 @@ public class CSVReader {
     private CSVReader(final Reader reader, final boolean returnEmptyFields) throws IOException {
         this._hashingReader = new HashingReader(reader);
         this._reader = new BufferedReader(_hashingReader);
-        this._parserHash = new HashMap<>();
-
-        this._returnEmptyFields = returnEmptyFields;
+        this._lineParser = new CSVLineParser(returnEmptyFields);
     }
 
     private static String resolveFileName(final String fileName) {
@@ -129,7 +121,8 @@ public class CSVReader {
      * of the input file, or null if the end of the file is reached.
      * @throws IOException If there was an error reading from the file.
      */
-    public String[] readFields() throws IOException {
+    @Override
+    public synchronized String[] readFields() throws IOException {
         String line;
         do {
             line = _reader.readLine();
@@ -157,63 +150,19 @@ public class CSVReader {
         return _hashingReader.getOffset();
     }
 
+    @Override
     public String getFileName() {
         return "" + _file;
     }
 
     /**
-     * Determines the separator used for the string. Upon encountering a new
-     * separator, it is added to a hashmap containing a parser for that specific
-     * separator.
+     * Parses a line of CSV text.
      *
-     * @param csvText The string for which to determine the separator
+     * @param csvLine the line to parse
+     * @return an array containing the field values found in the line
+     * @throws IOException if the line could not be parsed
      */
-    private Character determineSeparator(final String csvText) throws IOException {
-        final int separatorIndex = Integer.MAX_VALUE;
-        Character separator = null;
-
-        for (int idx = 0; idx < _separators.length; idx++) {
-            if (csvText.contains(String.valueOf(_separators[idx]))) {
-                final int occurrenceIndex = csvText.indexOf(_separators[idx]);
-                if (occurrenceIndex < separatorIndex) {
-                    separator = _separators[idx];
-                }
-            }
-        }
-        if (separator == null) {
-            throw new IllegalArgumentException("Unknown file format! Only Comma Separated and Tab Separated files are supported.");
-        }
-        return separator;
-    }
-
     public String[] parse(final String csvLine) throws IOException {
-        final Character separator = determineSeparator(csvLine);
-        final ArrayList<String> fields = new ArrayList<>();
-
-        if (!_parserHash.containsKey(separator)) {
-            _parserHash.put(separator, new CSVParser(separator));
-        }
-
-        final String[] parsedLine = _parserHash.get(separator).parseLine(csvLine);
-
-        for (int idx = 0; idx < parsedLine.length; idx++) {
-            String fieldValue = parsedLine[idx].trim().replaceAll("\"", "");
-            if (fieldValue.startsWith("\ufffe") || fieldValue.startsWith("\ufeff")) {
-                fieldValue = fieldValue.substring(1);
-            }
-
-            if (fieldValue.matches("")) {
-                if (_returnEmptyFields) {
-                    fields.add(fieldValue);
-                }
-            }
-
-            else {
-                fields.add(fieldValue);
-            }
-
-        }
-
-        return fields.toArray(new String[fields.size()]);
+        return _lineParser.parse(csvLine);
     }
 }
\ No newline at end of file
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2015 Netherlands Forensic Institute
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package nl.minvenj.nfi.smartrank.io;
+
+import java.io.IOException;
+
+/**
+ * A source of records that are read as arrays of field values.
+ */
+public interface FieldReader {
+
+    /**
+     * Reads the next record.
+     *
+     * @return An array of strings containing the fields of the next record, or null if there are no more records.
+     * @throws IOException If there was an error reading the record.
+     */
+    String[] readFields() throws IOException;
+
+    /**
+     * @return the name of the file the records are read from
+     */
+    String getFileName();
+}
@@ -28,6 +28,7 @@ public class HashingReader extends Reader {
     private MessageDigest _hasher;
     private String _hash = null;
     private long _offset;
+    private byte[] _bytes = new byte[0];
 
     public HashingReader(final Reader parent) {
         _parent = parent;
@@ -41,42 +42,53 @@ public class HashingReader extends Reader {
 
     public String getHash() {
         if (_hash == null) {
-            final StringBuilder builder = new StringBuilder(_hasher.getAlgorithm()).append("/");
-            final byte[] digestBytes = _hasher.digest();
-            for (int idx = 0; idx < digestBytes.length; idx++) {
-                builder.append(HEXDIGITS[(digestBytes[idx] >> 4) & 0x0F]).append(HEXDIGITS[digestBytes[idx] & 0x0F]);
-            }
-            _hash = builder.toString();
+            _hash = formatHash(_hasher.getAlgorithm(), _hasher.digest());
         }
 
         return _hash;
     }
 
+    /**
+     * Formats a digest in the form ALGORITHM/HASHVALUE, where HASHVALUE is the hex representation of the digest.
+     *
+     * @param algorithm the name of the algorithm used to calculate the digest
+     * @param digestBytes the digest
+     * @return a String containing the formatted digest
+     */
+    public static String formatHash(final String algorithm, final byte[] digestBytes) {
+        final StringBuilder builder = new StringBuilder(algorithm).append("/");
+        for (int idx = 0; idx < digestBytes.length; idx++) {
+            builder.append(HEXDIGITS[(digestBytes[idx] >> 4) & 0x0F]).append(HEXDIGITS[digestBytes[idx] & 0x0F]);
+        }
+        return builder.toString();
+    }
+
     @Override
     public int read(final char[] cbuf, final int off, final int len) throws IOException {
-        final char[] temp = new char[len];
-        final int charsRead = _parent.read(temp, 0, len);
+        final int charsRead = _parent.read(cbuf, off, len);
         int reportedLength = charsRead;
         if (charsRead >= 0) {
-            final byte[] bytes = new byte[charsRead];
+            if (_bytes.length < charsRead) {
+                _bytes = new byte[charsRead];
+            }
             for (int idx = 0; idx < charsRead; idx++) {
-                bytes[idx] = (byte) temp[idx];
+                _bytes[idx] = (byte) cbuf[off + idx];
             }
-            _hasher.update(bytes, 0, charsRead);
+            _hasher.update(_bytes, 0, charsRead);
 
-            int copyFromIdx = 0;
             if (_offset == 0) {
-                // Skip any non-printable characters at the start of the string and copy the rest to the output
-                while (copyFromIdx < charsRead && temp[copyFromIdx] >= 0x007F) {
+                // Skip any non-printable characters at the start of the string and move the rest to the start of the output
+                int copyFromIdx = 0;
+                while (copyFromIdx < charsRead && cbuf[off + copyFromIdx] >= 0x007F) {
                     copyFromIdx++;
                 }
-            }
-
-            // Adjust the number of characters that we will report to the caller to compensate for any non-character bytes we skipped
-            reportedLength -= copyFromIdx;
 
-            // Copy the characters we read to the output array, skipping any non-character data prefix
-            System.arraycopy(temp, copyFromIdx, cbuf, off, len - copyFromIdx);
+                // Adjust the number of characters that we will report to the caller to compensate for any non-character bytes we skipped
+                if (copyFromIdx > 0) {
+                    reportedLength -= copyFromIdx;
+                    System.arraycopy(cbuf, off + copyFromIdx, cbuf, off, reportedLength);
+                }
+            }
             _offset += charsRead;
             _hash = null;
         }
@@ -25,6 +25,7 @@ import java.util.Map;
 import java.util.Properties;
 
 import nl.minvenj.nfi.smartrank.analysis.ExcludedProfile;
+import nl.minvenj.nfi.smartrank.domain.CandidateProfile;
 import nl.minvenj.nfi.smartrank.domain.Sample;
 
 /**
@@ -94,6 +95,15 @@ public interface DatabaseReader extends Iterable<Sample> {
 
     Iterator<Sample> iterator(Properties properties);
 
+    /**
+     * Gets an iterator over the specimens in the database as compact {@link CandidateProfile}s, which is how a search
+     * reads the database.
+     *
+     * @param properties the properties used to query the database
+     * @return an {@link Iterator} over the profiles of the specimens in the database
+     */
+    Iterator<CandidateProfile> profileIterator(Properties properties);
+
     @Override
     Iterator<Sample> iterator();
 
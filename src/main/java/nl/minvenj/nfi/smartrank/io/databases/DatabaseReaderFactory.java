@@ -23,7 +23,9 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 
 import nl.minvenj.nfi.smartrank.domain.DatabaseConfiguration;
+import nl.minvenj.nfi.smartrank.gui.SmartRankRestrictions;
 import nl.minvenj.nfi.smartrank.io.databases.codis.CodisDatabaseReader;
+import nl.minvenj.nfi.smartrank.io.databases.codis.CodisProfileStoreReader;
 import nl.minvenj.nfi.smartrank.io.databases.jdbc.JDBCReader;
 
 public class DatabaseReaderFactory {
@@ -32,6 +34,10 @@ public class DatabaseReaderFactory {
         if (config.getConnectString().startsWith("jdbc:")) {
             return new JDBCReader(config);
         }
+        final String storeFolder = SmartRankRestrictions.getProfileStoreFolder();
+        if (!storeFolder.isEmpty()) {
+            return new CodisProfileStoreReader(new File(config.getConnectString()), new File(storeFolder));
+        }
         return new CodisDatabaseReader(new File(config.getConnectString()));
     }
 
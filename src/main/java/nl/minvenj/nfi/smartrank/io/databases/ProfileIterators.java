@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 Netherlands Forensic Institute
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package nl.minvenj.nfi.smartrank.io.databases;
+
+import java.util.Iterator;
+
+import nl.minvenj.nfi.smartrank.domain.CandidateProfile;
+import nl.minvenj.nfi.smartrank.domain.Sample;
+
+/**
+ * Converts between iterators over {@link Sample}s and iterators over {@link CandidateProfile}s, for database readers
+ * that produce one of the two.
+ */
+public final class ProfileIterators {
+
+    private ProfileIterators() {
+    }
+
+    /**
+     * Creates an iterator that materializes a {@link Sample} for each profile.
+     *
+     * @param profiles the profiles
+     * @return an iterator over the samples of the profiles
+     */
+    public static Iterator<Sample> toSamples(final Iterator<CandidateProfile> profiles) {
+        return new Iterator<Sample>() {
+            @Override
+            public boolean hasNext() {
+                return profiles.hasNext();
+            }
+
+            @Override
+            public Sample next() {
+                return profiles.next().toSample();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Remove is not supported.");
+            }
+        };
+    }
+
+    /**
+     * Creates an iterator that converts each sample to a {@link CandidateProfile}.
+     *
+     * @param samples the samples, whose loci must each have two alleles
+     * @return an iterator over the profiles of the samples
+     */
+    public static Iterator<CandidateProfile> toProfiles(final Iterator<Sample> samples) {
+        return new Iterator<CandidateProfile>() {
+            @Override
+            public boolean hasNext() {
+                return samples.hasNext();
+            }
+
+            @Override
+            public CandidateProfile next() {
+                return CandidateProfile.of(samples.next());
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Remove is not supported.");
+            }
+        };
+    }
+}
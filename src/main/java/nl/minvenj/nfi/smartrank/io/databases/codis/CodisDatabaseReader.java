@@ -27,19 +27,24 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.io.FilenameUtils;
 
 import nl.minvenj.nfi.smartrank.analysis.ExcludedProfile;
+import nl.minvenj.nfi.smartrank.analysis.scheduler.ComputeScheduler;
+import nl.minvenj.nfi.smartrank.analysis.scheduler.TaskGroup;
+import nl.minvenj.nfi.smartrank.domain.CandidateProfile;
 import nl.minvenj.nfi.smartrank.domain.Sample;
-import nl.minvenj.nfi.smartrank.io.CSVReader;
 import nl.minvenj.nfi.smartrank.io.databases.DatabaseReader;
 import nl.minvenj.nfi.smartrank.io.databases.DatabaseStatistics;
 import nl.minvenj.nfi.smartrank.io.databases.DatabaseValidationEventListener;
+import nl.minvenj.nfi.smartrank.io.databases.ProfileIterators;
 
 /**
  * Reads a database in Codis format from a file.
@@ -48,6 +53,8 @@ public class CodisDatabaseReader implements DatabaseReader, Iterable<Sample> {
 
     private static final String LOCUS_FIELD_REGEX = "[\\w ]+_\\d+";
     private static final String SPECIMEN_ID_FIELD_REGEX = "specimenId";
+    private static final long PROGRESS_INTERVAL_MILLIS = 100;
+    private static final int VALIDATION_REGION_SIZE = 16 * 1024 * 1024;
     private boolean _validated;
     private String[] _headers;
     private int _recordCount;
@@ -68,17 +75,13 @@ public class CodisDatabaseReader implements DatabaseReader, Iterable<Sample> {
 
     @Override
     public void validate(final DatabaseValidationEventListener listener) throws IOException, InterruptedException {
-        final String extension = FilenameUtils.getExtension(_file.getAbsolutePath()).toLowerCase();
-
-        if (!extension.equals("csv") && !extension.equals("txt") && !extension.equals("xml")) {
-            throw new IllegalArgumentException("Invalid file format. Only .csv, .txt or .xml formats are supported!");
-        }
+        validateExtension(_file);
 
         if (!_validated) {
-            final CSVReader validationReader = new CSVReader(_file);
+            final MappedCodisFile mappedFile = new MappedCodisFile(_file);
 
-            validateHeaders(validationReader);
-            validateRecords(validationReader, listener);
+            validateHeaders(mappedFile);
+            validateRecords(mappedFile, listener);
 
             _lastModifiedTimeWhenValidated = _file.lastModified();
             _validated = true;
@@ -97,8 +100,16 @@ public class CodisDatabaseReader implements DatabaseReader, Iterable<Sample> {
         }
     }
 
-    private void validateHeaders(final CSVReader validationReader) throws IOException, IllegalArgumentException {
-        _headers = validationReader.readFields();
+    static void validateExtension(final File file) throws IllegalArgumentException {
+        final String extension = FilenameUtils.getExtension(file.getAbsolutePath()).toLowerCase();
+
+        if (!extension.equals("csv") && !extension.equals("txt") && !extension.equals("xml")) {
+            throw new IllegalArgumentException("Invalid file format. Only .csv, .txt or .xml formats are supported!");
+        }
+    }
+
+    private void validateHeaders(final MappedCodisFile mappedFile) throws IllegalArgumentException {
+        _headers = mappedFile.getHeaders();
 
         // Do sanity check on the header fields (if any)
         if (_headers.length == 0) {
@@ -136,26 +147,38 @@ public class CodisDatabaseReader implements DatabaseReader, Iterable<Sample> {
         return "CODIS";
     }
 
-    private void validateRecords(final CSVReader validationReader, final DatabaseValidationEventListener listener) throws IOException, InterruptedException {
-        final ExecutorService pool = Executors.newCachedThreadPool();
+    private void validateRecords(final MappedCodisFile mappedFile, final DatabaseValidationEventListener listener) throws IOException, InterruptedException {
+        final TaskGroup group = ComputeScheduler.getInstance().createGroup();
+        final AtomicLong validatedBytes = new AtomicLong();
+        final Future<String> fileHash = group.submitIo(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return mappedFile.computeHash();
+            }
+        });
+
+        // Each region of the file is validated by its own validator, so no reader is shared between threads
         final ArrayList<Future<DatabaseStatistics>> futures = new ArrayList<>();
-        for (int idx = 0; idx < 8; idx++) {
-            futures.add(pool.submit(new CodisRecordValidator(_headers, validationReader, listener)));
+        for (final MappedCodisFile.Region region : mappedFile.getRegions(VALIDATION_REGION_SIZE)) {
+            futures.add(group.submit(new Callable<DatabaseStatistics>() {
+                @Override
+                public DatabaseStatistics call() throws Exception {
+                    final DatabaseStatistics stat = new CodisRecordValidator(_headers, region.open(), listener).call();
+                    validatedBytes.addAndGet(region.getLength());
+                    return stat;
+                }
+            }));
         }
 
-        final Thread progressReporter = new Thread() {
+        final ScheduledFuture<?> progressReporter = ComputeScheduler.scheduleAtFixedRate(new Runnable() {
             @Override
             public void run() {
-                while (!isInterrupted()) {
-                    listener.onProgress(validationReader.getOffset(), _file.length());
-                }
+                listener.onProgress(validatedBytes.get(), mappedFile.getLength());
             }
-        };
+        }, PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
 
-        progressReporter.start();
-
-        for (final Future<DatabaseStatistics> future : futures) {
-            try {
+        try {
+            for (final Future<DatabaseStatistics> future : futures) {
                 final DatabaseStatistics stat = future.get();
                 final List<Integer> counts = stat.getSpecimenCountPerNumberOfLoci();
                 while (_specimenCountPerNumberOfLoci.size() < counts.size() + 1) {
@@ -177,22 +200,27 @@ public class CodisDatabaseReader implements DatabaseReader, Iterable<Sample> {
                 }
                 _recordCount += stat.getRecordCount();
             }
-            catch (final ExecutionException e) {
-                pool.shutdown();
-                throw new IOException(e);
-            }
+            _fileHash = fileHash.get();
+        }
+        catch (final ExecutionException e) {
+            throw new IOException(e);
+        }
+        finally {
+            group.close();
+            progressReporter.cancel(false);
         }
-        pool.shutdown();
-        progressReporter.interrupt();
-
-        _fileHash = validationReader.getFileHash();
     }
 
     @Override
     public Iterator<Sample> iterator() {
+        return ProfileIterators.toSamples(profileIterator(null));
+    }
+
+    @Override
+    public Iterator<CandidateProfile> profileIterator(final Properties properties) {
         try {
             _badRecordList.clear();
-            return new CodisSampleIterator(new CSVReader(_file), _recordCount, _badRecordList);
+            return new CodisProfileIterator(new MappedCodisFile(_file), _recordCount, _badRecordList);
         }
         catch (final IOException ex) {
             throw new IllegalArgumentException("Cannot create an iterator for '" + _file + "'", ex);
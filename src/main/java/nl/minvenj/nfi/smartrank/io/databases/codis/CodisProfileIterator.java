@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2015 Netherlands Forensic Institute
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package nl.minvenj.nfi.smartrank.io.databases.codis;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.minvenj.nfi.smartrank.analysis.ExcludedProfile;
+import nl.minvenj.nfi.smartrank.analysis.scheduler.ComputeScheduler;
+import nl.minvenj.nfi.smartrank.analysis.scheduler.TaskGroup;
+import nl.minvenj.nfi.smartrank.domain.AnalysisParameters;
+import nl.minvenj.nfi.smartrank.domain.CandidateProfile;
+import nl.minvenj.nfi.smartrank.domain.ProsecutionHypothesis;
+import nl.minvenj.nfi.smartrank.domain.Sample;
+import nl.minvenj.nfi.smartrank.gui.SmartRankRestrictions;
+import nl.minvenj.nfi.smartrank.io.CSVReader;
+import nl.minvenj.nfi.smartrank.io.FieldReader;
+import nl.minvenj.nfi.smartrank.messages.data.AnalysisParametersMessage;
+import nl.minvenj.nfi.smartrank.messages.data.EnabledLociMessage;
+import nl.minvenj.nfi.smartrank.messages.data.ProsecutionHypothesisMessage;
+import nl.minvenj.nfi.smartrank.messages.status.DetailStringMessage;
+import nl.minvenj.nfi.smartrank.messages.status.PercentReadyMessage;
+import nl.minvenj.nfi.smartrank.raven.messages.MessageBus;
+
+/**
+ * Iterates over the profiles in a database in Codis format. The records are decoded by {@link CodisRecordReader}s in
+ * tasks that read ahead of the iterator, and are returned in file order.
+ */
+class CodisProfileIterator implements Iterator<CandidateProfile> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CodisProfileIterator.class);
+
+    private static final int BATCH_SIZE = 256;
+    private static final int REGION_SIZE = 1024 * 1024;
+    private static final long IDLE_TIMEOUT_MILLIS = 30000;
+
+    private final FieldReader _sharedReader;
+    private final Iterator<? extends RecordRegion> _regions;
+    private boolean _sharedReaderExhausted;
+    private final String[] _headers;
+    private final Collection<String> _enabledLoci;
+    private CandidateProfile _nextProfile;
+    private final List<ExcludedProfile> _badRecords;
+    private final TaskGroup _group;
+    private final ArrayDeque<Future<List<CodisRecord>>> _futures;
+    private Iterator<CodisRecord> _currentBatch;
+    private volatile long _lastAccessTime;
+    private volatile ScheduledFuture<?> _watchDog;
+    private final int _minimumNumberOfLoci;
+    private final Collection<Sample> _enabledCrimesceneProfiles;
+    private final boolean _dropoutAllowed;
+    private final int _dbRecordCount;
+
+    private long _specimenIndex;
+
+    /**
+     * Creates an iterator that reads records from a shared reader. Records are read in batches by several tasks.
+     *
+     * @param csvReader the reader positioned at the header line of the database
+     * @param recordCount the number of records in the database, used for progress reporting
+     * @param badRecords a list that receives the records that were excluded
+     * @throws IOException if the header line could not be read
+     */
+    public CodisProfileIterator(final CSVReader csvReader, final int recordCount, final List<ExcludedProfile> badRecords) throws IOException {
+        this(csvReader, csvReader.readFields(), null, recordCount, badRecords);
+    }
+
+    /**
+     * Creates an iterator that reads the records of a memory mapped file. Each region of the file is parsed by its own
+     * task, and profiles are returned in file order.
+     *
+     * @param file the database file
+     * @param recordCount the number of records in the database, used for progress reporting
+     * @param badRecords a list that receives the records that were excluded
+     * @throws IOException if the file could not be divided into regions
+     */
+    CodisProfileIterator(final MappedCodisFile file, final int recordCount, final List<ExcludedProfile> badRecords) throws IOException {
+        this(file.getHeaders(), file.getRegions(REGION_SIZE), recordCount, badRecords);
+    }
+
+    /**
+     * Creates an iterator that reads the records of a number of regions. Each region is parsed by its own task, and
+     * profiles are returned in the order of the regions.
+     *
+     * @param headers the header fields of the database
+     * @param regions the regions holding the records of the database
+     * @param recordCount the number of records in the database, used for progress reporting
+     * @param badRecords a list that receives the records that were excluded
+     */
+    CodisProfileIterator(final String[] headers, final List<? extends RecordRegion> regions, final int recordCount, final List<ExcludedProfile> badRecords) {
+        this(null, headers, regions.iterator(), recordCount, badRecords);
+    }
+
+    private CodisProfileIterator(final FieldReader sharedReader, final String[] headers, final Iterator<? extends RecordRegion> regions, final int recordCount, final List<ExcludedProfile> badRecords) {
+        _sharedReader = sharedReader;
+        _regions = regions;
+        _badRecords = badRecords;
+
+        _headers = headers;
+        for (int headerIdx = 0; headerIdx < _headers.length; headerIdx++) {
+            _headers[headerIdx] = _headers[headerIdx].replaceFirst("_[1234]$", "").toUpperCase();
+        }
+
+        _enabledLoci = MessageBus.getInstance().query(EnabledLociMessage.class);
+        _minimumNumberOfLoci = SmartRankRestrictions.getMinimumNumberOfLoci();
+        final AnalysisParameters params = MessageBus.getInstance().query(AnalysisParametersMessage.class);
+        _enabledCrimesceneProfiles = params.getEnabledCrimesceneProfiles();
+        final ProsecutionHypothesis prosecutionHypothesis = MessageBus.getInstance().query(ProsecutionHypothesisMessage.class);
+        _dropoutAllowed = prosecutionHypothesis.getCandidateDropout() > 0;
+        _dbRecordCount = recordCount;
+
+        // One batch is read ahead for each calculation thread
+        final ComputeScheduler scheduler = ComputeScheduler.getInstance(params);
+        _group = scheduler.createGroup();
+        _futures = new ArrayDeque<>();
+        _currentBatch = Collections.<CodisRecord>emptyList().iterator();
+        for (int idx = 0; idx < scheduler.getParallelism(); idx++) {
+            submitNextBatch();
+        }
+
+        _lastAccessTime = System.currentTimeMillis();
+        _specimenIndex = 0;
+        scheduleWatchDog(IDLE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Schedules a check that stops reading ahead if the iterator has not been used for a while.
+     *
+     * @param delay the time until the check in milliseconds
+     */
+    private void scheduleWatchDog(final long delay) {
+        _watchDog = ComputeScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                final long idleTime = System.currentTimeMillis() - _lastAccessTime;
+                if (idleTime < IDLE_TIMEOUT_MILLIS) {
+                    scheduleWatchDog(IDLE_TIMEOUT_MILLIS - idleTime);
+                }
+                else if (!_group.isCancelled()) {
+                    LOG.info("Cancelling reading of records due to timeout");
+                    _group.close();
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Submits a task that reads the next batch of records, if any records remain.
+     */
+    private void submitNextBatch() {
+        if (_regions != null) {
+            if (_regions.hasNext()) {
+                final RecordRegion region = _regions.next();
+                _futures.add(_group.submit(new Callable<List<CodisRecord>>() {
+                    @Override
+                    public List<CodisRecord> call() throws Exception {
+                        return readRecords(region.open(), Integer.MAX_VALUE);
+                    }
+                }));
+            }
+        }
+        else if (!_sharedReaderExhausted) {
+            _futures.add(_group.submit(new Callable<List<CodisRecord>>() {
+                @Override
+                public List<CodisRecord> call() throws Exception {
+                    return readRecords(_sharedReader, BATCH_SIZE);
+                }
+            }));
+        }
+    }
+
+    /**
+     * Reads records until the reader is exhausted or the maximum number of records is read. If the reader is
+     * exhausted, the returned list ends with {@link CodisRecord#END_OF_FILE}.
+     */
+    private List<CodisRecord> readRecords(final FieldReader reader, final int maxRecords) {
+        final CodisRecordReader recordReader = new CodisRecordReader(reader, _headers, _enabledLoci, _enabledCrimesceneProfiles, _minimumNumberOfLoci, _dropoutAllowed);
+        final List<CodisRecord> records = new ArrayList<>();
+        while (records.size() < maxRecords) {
+            final CodisRecord record = recordReader.call();
+            records.add(record);
+            if (record.isEndOfFile()) {
+                break;
+            }
+        }
+        return records;
+    }
+
+    @Override
+    public boolean hasNext() {
+        _lastAccessTime = System.currentTimeMillis();
+        try {
+            while (_nextProfile == null && !_group.isCancelled() && (_currentBatch.hasNext() || !_futures.isEmpty())) {
+                if (!_currentBatch.hasNext()) {
+                    _currentBatch = _futures.remove().get().iterator();
+                    submitNextBatch();
+                    continue;
+                }
+
+                final CodisRecord codisRecord = _currentBatch.next();
+                if (codisRecord.isEndOfFile()) {
+                    _sharedReaderExhausted = true;
+                }
+                else {
+                    final int percentReady = (int) ((_specimenIndex++ * 100) / _dbRecordCount);
+                    MessageBus.getInstance().send(this, new PercentReadyMessage(percentReady));
+
+                    MessageBus.getInstance().send(this, new DetailStringMessage(codisRecord.getSpecimenName()));
+
+                    if (codisRecord.isSuccess()) {
+                        _nextProfile = codisRecord.getProfile();
+                    }
+                    else {
+                        _badRecords.add(new ExcludedProfile(codisRecord.getSpecimenName(), codisRecord.getExclusionReason()));
+                    }
+                }
+                _lastAccessTime = System.currentTimeMillis();
+            }
+        }
+        catch (final CancellationException e) {
+            LOG.debug("Reading of records was cancelled", e);
+        }
+        catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+        if (_nextProfile != null)
+            return true;
+        LOG.info("Stopping reading of records due to last record reached");
+        _watchDog.cancel(false);
+        _group.close();
+        return false;
+    }
+
+    @Override
+    public CandidateProfile next() {
+        _lastAccessTime = System.currentTimeMillis();
+        final CandidateProfile next = _nextProfile;
+        _nextProfile = null;
+        return next;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Remove is not supported.");
+    }
+}
@@ -0,0 +1,420 @@
+/*
+ * Copyright (C) 2015 Netherlands Forensic Institute
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package nl.minvenj.nfi.smartrank.io.databases.codis;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import nl.minvenj.nfi.smartrank.domain.ProblemLocation;
+import nl.minvenj.nfi.smartrank.io.FieldReader;
+
+/**
+ * A binary copy of a validated database in Codis format. The store holds the results of the validation and the fields
+ * of all records, so a later search on an unchanged database can skip parsing and validating the original file.
+ * <p>
+ * The records are kept in primitive columns: the number of fields of each record, the offsets of each record into the
+ * field columns and into the specimen ids, and for each field that is not NULL the index of its column and the id of
+ * its value. Values are kept once in a dictionary, so records share their allele strings. Records are read back as the
+ * same fields that were read from the original file, so they pass through the same {@link CodisRecordReader} and
+ * produce the same samples.
+ */
+final class CodisProfileStore {
+
+    /**
+     * The extension of store files. A store is named after the content hash of the database it was built from.
+     */
+    static final String EXTENSION = ".srps";
+
+    private static final int MAGIC = 0x53525053;
+    private static final int VERSION = 1;
+    private static final int PREAMBLE_SIZE = 12;
+    private static final int BUILD_REGION_SIZE = 16 * 1024 * 1024;
+    private static final String NULL_VALUE = "NULL";
+
+    private final File _file;
+    private final ByteBuffer _buffer;
+    private final String _contentHash;
+    private final String[] _headers;
+    private final int _recordCount;
+    private final List<Integer> _specimenCountPerNumberOfLoci;
+    private final Map<String, Integer> _specimenCountPerLocus;
+    private final List<ProblemLocation> _problems;
+    private final String[] _values;
+    private final int _lineCount;
+    private final int _fieldCountsStart;
+    private final int _fieldOffsetsStart;
+    private final int _specimenOffsetsStart;
+    private final int _valueIdsStart;
+    private final int _columnIdsStart;
+    private final int _specimenIdsStart;
+
+    /**
+     * Opens an existing store.
+     *
+     * @param file the store file
+     * @throws IOException if the file could not be read or is not a complete store of the current version
+     */
+    CodisProfileStore(final File file) throws IOException {
+        _file = file;
+        final long length = file.length();
+        if (length < PREAMBLE_SIZE || length > Integer.MAX_VALUE) {
+            throw new IOException(file + " is not a profile store");
+        }
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            _buffer = channel.map(MapMode.READ_ONLY, 0, length);
+        }
+        if (_buffer.getInt(0) != MAGIC || _buffer.getInt(4) != VERSION) {
+            throw new IOException(file + " is not a profile store of version " + VERSION);
+        }
+
+        final byte[] header = new byte[_buffer.getInt(8)];
+        final ByteBuffer headerBuffer = _buffer.duplicate();
+        headerBuffer.position(PREAMBLE_SIZE);
+        headerBuffer.get(header);
+        final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(header));
+        _contentHash = dis.readUTF();
+        _headers = new String[dis.readInt()];
+        for (int idx = 0; idx < _headers.length; idx++) {
+            _headers[idx] = dis.readUTF();
+        }
+        _recordCount = dis.readInt();
+        final int countsPerNumberOfLoci = dis.readInt();
+        _specimenCountPerNumberOfLoci = new ArrayList<>(countsPerNumberOfLoci);
+        for (int idx = 0; idx < countsPerNumberOfLoci; idx++) {
+            _specimenCountPerNumberOfLoci.add(dis.readInt());
+        }
+        final int countsPerLocus = dis.readInt();
+        _specimenCountPerLocus = new HashMap<>();
+        for (int idx = 0; idx < countsPerLocus; idx++) {
+            _specimenCountPerLocus.put(dis.readUTF(), dis.readInt());
+        }
+        final int problemCount = dis.readInt();
+        _problems = new ArrayList<>(problemCount);
+        for (int idx = 0; idx < problemCount; idx++) {
+            _problems.add(new ProblemLocation(dis.readUTF(), dis.readUTF(), dis.readUTF()));
+        }
+        _values = new String[dis.readInt()];
+        for (int idx = 0; idx < _values.length; idx++) {
+            _values[idx] = dis.readUTF();
+        }
+        _lineCount = dis.readInt();
+        final int fieldCount = dis.readInt();
+        final int specimenIdBytes = dis.readInt();
+
+        _fieldCountsStart = PREAMBLE_SIZE + header.length;
+        _fieldOffsetsStart = _fieldCountsStart + 4 * _lineCount;
+        _specimenOffsetsStart = _fieldOffsetsStart + 4 * (_lineCount + 1);
+        _valueIdsStart = _specimenOffsetsStart + 4 * (_lineCount + 1);
+        _columnIdsStart = _valueIdsStart + 4 * fieldCount;
+        _specimenIdsStart = _columnIdsStart + 2 * fieldCount;
+        if (_specimenIdsStart + (long) specimenIdBytes != length) {
+            throw new IOException(file + " is not a complete profile store");
+        }
+    }
+
+    /**
+     * Writes a store for a database that was validated by a {@link CodisDatabaseReader}.
+     *
+     * @param file the file to write the store to
+     * @param source the database file
+     * @param validatedReader the reader that validated the database
+     * @param problems the problems reported during validation
+     * @throws IOException if the database could not be read or the store could not be written
+     */
+    static void write(final File file, final MappedCodisFile source, final CodisDatabaseReader validatedReader, final List<ProblemLocation> problems) throws IOException {
+        final Map<String, Integer> valueIds = new LinkedHashMap<>();
+        final IntColumn fieldCounts = new IntColumn();
+        final IntColumn fieldOffsets = new IntColumn();
+        final IntColumn specimenOffsets = new IntColumn();
+        final IntColumn valueIdColumn = new IntColumn();
+        final IntColumn columnIds = new IntColumn();
+        final ByteArrayOutputStream specimenIds = new ByteArrayOutputStream();
+
+        fieldOffsets.add(0);
+        specimenOffsets.add(0);
+        for (final MappedCodisFile.Region region : source.getRegions(BUILD_REGION_SIZE)) {
+            final FieldReader reader = region.open();
+            while (true) {
+                String[] fields;
+                try {
+                    fields = reader.readFields();
+                    if (fields == null) {
+                        break;
+                    }
+                }
+                catch (final IllegalArgumentException e) {
+                    fields = null;
+                }
+
+                if (fields == null) {
+                    fieldCounts.add(-1);
+                }
+                else {
+                    if (fields.length > 0xFFFF) {
+                        throw new IOException("A record in " + source.getFile() + " has too many fields to be stored: " + fields.length);
+                    }
+                    fieldCounts.add(fields.length);
+                    if (fields.length > 0) {
+                        specimenIds.write(fields[0].getBytes(StandardCharsets.UTF_8));
+                    }
+                    for (int idx = 1; idx < fields.length; idx++) {
+                        if (!fields[idx].equalsIgnoreCase(NULL_VALUE)) {
+                            Integer valueId = valueIds.get(fields[idx]);
+                            if (valueId == null) {
+                                valueId = valueIds.size();
+                                valueIds.put(fields[idx], valueId);
+                            }
+                            valueIdColumn.add(valueId);
+                            columnIds.add(idx);
+                        }
+                    }
+                }
+                fieldOffsets.add(valueIdColumn.size());
+                specimenOffsets.add(specimenIds.size());
+            }
+        }
+
+        final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        final DataOutputStream hos = new DataOutputStream(header);
+        hos.writeUTF(validatedReader.getContentHash());
+        final String[] headers = source.getHeaders();
+        hos.writeInt(headers.length);
+        for (final String field : headers) {
+            hos.writeUTF(field);
+        }
+        hos.writeInt(validatedReader.getRecordCount());
+        hos.writeInt(validatedReader.getSpecimenCountPerNumberOfLoci().size());
+        for (final Integer count : validatedReader.getSpecimenCountPerNumberOfLoci()) {
+            hos.writeInt(count);
+        }
+        hos.writeInt(validatedReader.getSpecimenCountsPerLocus().size());
+        for (final Map.Entry<String, Integer> entry : validatedReader.getSpecimenCountsPerLocus().entrySet()) {
+            hos.writeUTF(entry.getKey());
+            hos.writeInt(entry.getValue());
+        }
+        hos.writeInt(problems.size());
+        for (final ProblemLocation problem : problems) {
+            hos.writeUTF(problem.getSpecimen());
+            hos.writeUTF(problem.getLocus());
+            hos.writeUTF(problem.getDescription());
+        }
+        hos.writeInt(valueIds.size());
+        for (final String value : valueIds.keySet()) {
+            hos.writeUTF(value);
+        }
+        hos.writeInt(fieldCounts.size());
+        hos.writeInt(valueIdColumn.size());
+        hos.writeInt(specimenIds.size());
+        hos.flush();
+
+        try (final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeInt(header.size());
+            header.writeTo(dos);
+            fieldCounts.writeInts(dos);
+            fieldOffsets.writeInts(dos);
+            specimenOffsets.writeInts(dos);
+            valueIdColumn.writeInts(dos);
+            columnIds.writeShorts(dos);
+            specimenIds.writeTo(dos);
+        }
+    }
+
+    /**
+     * @return the store file
+     */
+    File getFile() {
+        return _file;
+    }
+
+    /**
+     * @return the content hash of the database the store was built from
+     */
+    String getContentHash() {
+        return _contentHash;
+    }
+
+    /**
+     * @return a copy of the header fields of the database
+     */
+    String[] getHeaders() {
+        return _headers.clone();
+    }
+
+    /**
+     * @return the number of valid records found during validation
+     */
+    int getRecordCount() {
+        return _recordCount;
+    }
+
+    List<Integer> getSpecimenCountPerNumberOfLoci() {
+        return Collections.unmodifiableList(_specimenCountPerNumberOfLoci);
+    }
+
+    Map<String, Integer> getSpecimenCountsPerLocus() {
+        return Collections.unmodifiableMap(_specimenCountPerLocus);
+    }
+
+    /**
+     * @return the problems that were reported when the database was validated
+     */
+    List<ProblemLocation> getProblems() {
+        return Collections.unmodifiableList(_problems);
+    }
+
+    /**
+     * Divides the records into regions of at most the given number of records.
+     *
+     * @param recordsPerRegion the maximum number of records in a region
+     * @return a list of regions covering all records in the store
+     */
+    List<RecordRegion> getRegions(final int recordsPerRegion) {
+        final List<RecordRegion> regions = new ArrayList<>();
+        for (int first = 0; first < _lineCount; first += recordsPerRegion) {
+            regions.add(new StoreRegion(first, (int) Math.min(_lineCount, (long) first + recordsPerRegion)));
+        }
+        return regions;
+    }
+
+    /**
+     * A range of records in the store.
+     */
+    private final class StoreRegion implements RecordRegion {
+        private final int _first;
+        private final int _end;
+
+        private StoreRegion(final int first, final int end) {
+            _first = first;
+            _end = end;
+        }
+
+        @Override
+        public long getLength() {
+            return _end - _first;
+        }
+
+        @Override
+        public FieldReader open() {
+            return new StoreReader(_first, _end);
+        }
+    }
+
+    /**
+     * Reads the fields of a range of records from the columns of the store.
+     */
+    private final class StoreReader implements FieldReader {
+        private final ByteBuffer _columns;
+        private final int _end;
+        private int _line;
+        private byte[] _specimenId;
+
+        private StoreReader(final int first, final int end) {
+            _columns = _buffer.duplicate();
+            _line = first;
+            _end = end;
+            _specimenId = new byte[64];
+        }
+
+        @Override
+        public String[] readFields() {
+            if (_line >= _end) {
+                return null;
+            }
+            final int line = _line++;
+            final int fieldCount = _columns.getInt(_fieldCountsStart + 4 * line);
+            if (fieldCount < 0) {
+                throw new IllegalArgumentException("Record " + (line + 1) + " of " + _file.getName() + " could not be read when the store was built");
+            }
+
+            final String[] fields = new String[fieldCount];
+            if (fieldCount > 0) {
+                final int specimenStart = _columns.getInt(_specimenOffsetsStart + 4 * line);
+                final int specimenLength = _columns.getInt(_specimenOffsetsStart + 4 * (line + 1)) - specimenStart;
+                if (_specimenId.length < specimenLength) {
+                    _specimenId = new byte[specimenLength];
+                }
+                _columns.position(_specimenIdsStart + specimenStart);
+                _columns.get(_specimenId, 0, specimenLength);
+                fields[0] = new String(_specimenId, 0, specimenLength, StandardCharsets.UTF_8);
+                Arrays.fill(fields, 1, fieldCount, NULL_VALUE);
+
+                final int fieldEnd = _columns.getInt(_fieldOffsetsStart + 4 * (line + 1));
+                for (int field = _columns.getInt(_fieldOffsetsStart + 4 * line); field < fieldEnd; field++) {
+                    fields[_columns.getShort(_columnIdsStart + 2 * field) & 0xFFFF] = _values[_columns.getInt(_valueIdsStart + 4 * field)];
+                }
+            }
+            return fields;
+        }
+
+        @Override
+        public String getFileName() {
+            return _file.getName();
+        }
+    }
+
+    /**
+     * A growable column of ints used while building a store.
+     */
+    private static final class IntColumn {
+        private int[] _values = new int[1024];
+        private int _size;
+
+        void add(final int value) {
+            if (_size == _values.length) {
+                _values = Arrays.copyOf(_values, _size * 2);
+            }
+            _values[_size++] = value;
+        }
+
+        int size() {
+            return _size;
+        }
+
+        void writeInts(final DataOutputStream dos) throws IOException {
+            for (int idx = 0; idx < _size; idx++) {
+                dos.writeInt(_values[idx]);
+            }
+        }
+
+        void writeShorts(final DataOutputStream dos) throws IOException {
+            for (int idx = 0; idx < _size; idx++) {
+                dos.writeShort(_values[idx]);
+            }
+        }
+    }
+}
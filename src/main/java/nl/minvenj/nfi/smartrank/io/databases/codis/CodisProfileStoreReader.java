@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2015 Netherlands Forensic Institute
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package nl.minvenj.nfi.smartrank.io.databases.codis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.minvenj.nfi.smartrank.analysis.ExcludedProfile;
+import nl.minvenj.nfi.smartrank.domain.CandidateProfile;
+import nl.minvenj.nfi.smartrank.domain.ProblemLocation;
+import nl.minvenj.nfi.smartrank.domain.Sample;
+import nl.minvenj.nfi.smartrank.io.databases.DatabaseReader;
+import nl.minvenj.nfi.smartrank.io.databases.DatabaseValidationEventListener;
+import nl.minvenj.nfi.smartrank.io.databases.ProfileIterators;
+
+/**
+ * Reads a database in Codis format through a binary profile store. The first time a database is validated, it is
+ * validated by a {@link CodisDatabaseReader} and its records are written to a store in the store folder. Later
+ * validations of a database with the same content hash read the validation results and records from the store, so the
+ * original file is only hashed and not parsed or validated again.
+ */
+public class CodisProfileStoreReader implements DatabaseReader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CodisProfileStoreReader.class);
+
+    private static final int REGION_RECORD_COUNT = 4096;
+
+    private final File _file;
+    private final File _storeFolder;
+    private final List<ExcludedProfile> _badRecordList;
+    private CodisProfileStore _store;
+    private CodisDatabaseReader _fallbackReader;
+    private long _lastModifiedTimeWhenValidated;
+
+    /**
+     * Creates a reader for a database file.
+     *
+     * @param dbFile the database file
+     * @param storeFolder the folder holding the profile stores
+     */
+    public CodisProfileStoreReader(final File dbFile, final File storeFolder) {
+        _file = dbFile;
+        _storeFolder = storeFolder;
+        _badRecordList = new ArrayList<>();
+        _lastModifiedTimeWhenValidated = -1L;
+    }
+
+    @Override
+    public void validate(final DatabaseValidationEventListener listener) throws IOException, InterruptedException {
+        if (_store != null || _fallbackReader != null) {
+            return;
+        }
+
+        CodisDatabaseReader.validateExtension(_file);
+        final long lastModified = _file.lastModified();
+        final MappedCodisFile mappedFile = new MappedCodisFile(_file);
+        final String contentHash = mappedFile.computeHash();
+        final File storeFile = new File(_storeFolder, contentHash.replaceAll("[^\\w-]", "_") + CodisProfileStore.EXTENSION);
+
+        if (storeFile.isFile()) {
+            try {
+                final CodisProfileStore store = new CodisProfileStore(storeFile);
+                if (store.getContentHash().equals(contentHash)) {
+                    LOG.info("Reading {} from profile store {}", _file, storeFile);
+                    for (final ProblemLocation problem : store.getProblems()) {
+                        listener.onProblem(problem.getSpecimen(), problem.getLocus(), problem.getDescription());
+                    }
+                    listener.onProgress(1, 1);
+                    _store = store;
+                    _lastModifiedTimeWhenValidated = lastModified;
+                    return;
+                }
+                LOG.warn("Profile store {} does not hold the contents of {}", storeFile, _file);
+            }
+            catch (final IOException e) {
+                LOG.warn("Profile store {} could not be read: {}", storeFile, e.getMessage());
+            }
+        }
+
+        final List<ProblemLocation> problems = Collections.synchronizedList(new ArrayList<ProblemLocation>());
+        final CodisDatabaseReader reader = new CodisDatabaseReader(_file);
+        reader.validate(new DatabaseValidationEventListener() {
+            @Override
+            public void onProgress(final long current, final long max) {
+                listener.onProgress(current, max);
+            }
+
+            @Override
+            public void onProblem(final String specimen, final String locus, final String message) {
+                problems.add(new ProblemLocation(specimen, locus, message));
+                listener.onProblem(specimen, locus, message);
+            }
+        });
+
+        try {
+            _store = buildStore(storeFile, mappedFile, reader, problems);
+        }
+        catch (final IOException e) {
+            LOG.warn("Profile store for {} could not be written to {}: {}", _file, storeFile, e.getMessage());
+            _fallbackReader = reader;
+        }
+        _lastModifiedTimeWhenValidated = lastModified;
+    }
+
+    private CodisProfileStore buildStore(final File storeFile, final MappedCodisFile mappedFile, final CodisDatabaseReader reader, final List<ProblemLocation> problems) throws IOException {
+        LOG.info("Writing profile store {} for {}", storeFile, _file);
+        if (!_storeFolder.isDirectory() && !_storeFolder.mkdirs()) {
+            throw new IOException("Folder " + _storeFolder + " could not be created");
+        }
+
+        // Write to a temporary file first, so an interrupted build never leaves a partial store under the final name
+        final File tempFile = File.createTempFile(storeFile.getName(), ".tmp", _storeFolder);
+        try {
+            CodisProfileStore.write(tempFile, mappedFile, reader, problems);
+            Files.move(tempFile.toPath(), storeFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            tempFile.delete();
+        }
+        return new CodisProfileStore(storeFile);
+    }
+
+    @Override
+    public void revalidate(final DatabaseValidationEventListener listener) throws IOException, InterruptedException {
+        if (_file.exists() && _file.lastModified() != _lastModifiedTimeWhenValidated) {
+            _store = null;
+            _fallbackReader = null;
+            _badRecordList.clear();
+            validate(listener);
+        }
+    }
+
+    @Override
+    public int getRecordCount() {
+        if (_fallbackReader != null) {
+            return _fallbackReader.getRecordCount();
+        }
+        return _store == null ? 0 : _store.getRecordCount();
+    }
+
+    @Override
+    public String getContentHash() {
+        if (_fallbackReader != null) {
+            return _fallbackReader.getContentHash();
+        }
+        return _store == null ? null : _store.getContentHash();
+    }
+
+    @Override
+    public String getFormatName() {
+        return "CODIS";
+    }
+
+    @Override
+    public List<ExcludedProfile> getBadRecordList() {
+        if (_fallbackReader != null) {
+            return _fallbackReader.getBadRecordList();
+        }
+        return _badRecordList;
+    }
+
+    @Override
+    public List<Integer> getSpecimenCountPerNumberOfLoci() {
+        if (_fallbackReader != null) {
+            return _fallbackReader.getSpecimenCountPerNumberOfLoci();
+        }
+        return _store == null ? new ArrayList<Integer>() : _store.getSpecimenCountPerNumberOfLoci();
+    }
+
+    @Override
+    public Map<String, Integer> getSpecimenCountsPerLocus() {
+        if (_fallbackReader != null) {
+            return _fallbackReader.getSpecimenCountsPerLocus();
+        }
+        return _store == null ? new HashMap<String, Integer>() : _store.getSpecimenCountsPerLocus();
+    }
+
+    @Override
+    public Map<String, Map<String, Integer>> getMetadataStatistics() {
+        return new HashMap<>();
+    }
+
+    @Override
+    public Iterator<Sample> iterator() {
+        return ProfileIterators.toSamples(profileIterator(null));
+    }
+
+    @Override
+    public Iterator<CandidateProfile> profileIterator(final Properties properties) {
+        if (_fallbackReader != null) {
+            return _fallbackReader.profileIterator(properties);
+        }
+        if (_store == null) {
+            throw new IllegalStateException("Database '" + _file + "' has not been validated");
+        }
+        _badRecordList.clear();
+        return new CodisProfileIterator(_store.getHeaders(), _store.getRegions(REGION_RECORD_COUNT), _store.getRecordCount(), _badRecordList);
+    }
+
+    @Override
+    public Iterator<Sample> iterator(final Properties properties) {
+        return iterator();
+    }
+}
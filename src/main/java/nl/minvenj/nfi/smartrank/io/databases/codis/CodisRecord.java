@@ -1,33 +1,37 @@
 package nl.minvenj.nfi.smartrank.io.databases.codis;
 
 import nl.minvenj.nfi.smartrank.analysis.ExclusionReason;
-import nl.minvenj.nfi.smartrank.domain.Sample;
+import nl.minvenj.nfi.smartrank.domain.CandidateProfile;
 
 public class CodisRecord {
 
     static final CodisRecord END_OF_FILE = new CodisRecord(true);
     static final CodisRecord INVALID = new CodisRecord(false);
 
-    private final Sample _sample;
+    private final String _specimenName;
+    private final CandidateProfile _profile;
     private boolean _endOfFile;
     private final boolean _success;
     private final ExclusionReason _exclusionReason;
 
-    public CodisRecord(final Sample sample) {
-        _sample = sample;
+    public CodisRecord(final CandidateProfile profile) {
+        _specimenName = profile.getName();
+        _profile = profile;
         _success = true;
         _exclusionReason = null;
     }
 
-    public CodisRecord(final Sample sample, final ExclusionReason reason) {
-        _sample = sample;
+    public CodisRecord(final String specimenName, final ExclusionReason reason) {
+        _specimenName = specimenName;
+        _profile = null;
         _success = false;
         _exclusionReason = reason;
     }
 
     private CodisRecord(final boolean isEof) {
         _endOfFile = isEof;
-        _sample = null;
+        _specimenName = null;
+        _profile = null;
         _success = false;
         _exclusionReason = null;
     }
@@ -44,7 +48,14 @@ public class CodisRecord {
         return _exclusionReason;
     }
 
-    public Sample getSample() {
-        return _sample;
+    public String getSpecimenName() {
+        return _specimenName;
+    }
+
+    /**
+     * @return the profile read from the record, or <code>null</code> if the record was excluded
+     */
+    public CandidateProfile getProfile() {
+        return _profile;
     }
 }
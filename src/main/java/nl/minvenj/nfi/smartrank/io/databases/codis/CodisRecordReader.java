@@ -1,122 +1,172 @@
 package nl.minvenj.nfi.smartrank.io.databases.codis;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.Callable;
 
 import nl.minvenj.nfi.smartrank.analysis.ExclusionReason;
 import nl.minvenj.nfi.smartrank.domain.Allele;
+import nl.minvenj.nfi.smartrank.domain.CandidateProfile;
 import nl.minvenj.nfi.smartrank.domain.Locus;
 import nl.minvenj.nfi.smartrank.domain.Sample;
-import nl.minvenj.nfi.smartrank.io.CSVReader;
+import nl.minvenj.nfi.smartrank.io.FieldReader;
 
 /**
- * Reads a single record from a CSV reader and decodes the fields into a Sample object.
+ * Reads a single record from a CSV reader and decodes the fields into a {@link CandidateProfile}. Loci and alleles are
+ * looked up by id, so no {@link Sample}, {@link Locus} or {@link Allele} objects are created for a record.
  */
 public class CodisRecordReader implements Callable<CodisRecord> {
 
-    private final String[] _headers;
-    private final CSVReader _reader;
-    private final Collection<String> _enabledLoci;
+    private final FieldReader _reader;
+    // The id of the locus of each field. The first field holds the specimen id and has no locus.
+    private final int[] _fieldLocusIds;
+    // Indexed by locus id
+    private final boolean[] _enabledLoci;
     private final int _minimumNumberOfLoci;
     private final boolean _dropoutAllowed;
-    private final Collection<Sample> _crimesceneProfiles;
+    // For each enabled locus id, the allele ids of that locus in each crime scene profile that has the locus
+    private final BitSet[][] _crimesceneAlleles;
 
-    public CodisRecordReader(final CSVReader reader, final String[] headers, final Collection<String> enabledLoci, final Collection<Sample> crimesceneProfiles, final int minimumNumberOfLoci, final boolean dropoutAllowed) {
+    // The slot of each locus id in the record being decoded, or -1
+    private final int[] _slots;
+    // The locus id, the number of alleles and the first two allele ids of each slot
+    private final int[] _slotLocusIds;
+    private final int[] _slotAlleleCounts;
+    private final int[] _slotAlleleIds;
+
+    public CodisRecordReader(final FieldReader reader, final String[] headers, final Collection<String> enabledLoci, final Collection<Sample> crimesceneProfiles, final int minimumNumberOfLoci, final boolean dropoutAllowed) {
         _reader = reader;
-        _headers = headers;
-        _enabledLoci = enabledLoci;
-        _crimesceneProfiles = crimesceneProfiles;
         _minimumNumberOfLoci = minimumNumberOfLoci;
         _dropoutAllowed = dropoutAllowed;
-    }
 
-    private CodisRecord buildSample(final String[] fields) {
-        Sample sample = null;
-        sample = new Sample(fields[0].trim());
+        _fieldLocusIds = new int[headers.length];
+        for (int idx = 1; idx < headers.length; idx++) {
+            _fieldLocusIds[idx] = Locus.getId(headers[idx]);
+        }
+        final int[] enabledLocusIds = new int[enabledLoci.size()];
+        int enabledIdx = 0;
+        for (final String locusName : enabledLoci) {
+            enabledLocusIds[enabledIdx++] = Locus.getId(locusName);
+        }
 
-        try {
-            if (fields.length != _headers.length) {
-                throw new IndexOutOfBoundsException();
+        final int locusCount = Locus.getRegisteredLocusCount();
+        _enabledLoci = new boolean[locusCount];
+        _crimesceneAlleles = new BitSet[locusCount][];
+        for (final int locusId : enabledLocusIds) {
+            _enabledLoci[locusId] = true;
+            final List<BitSet> alleleSets = new ArrayList<>();
+            for (final Sample stain : crimesceneProfiles) {
+                final Locus stainLocus = stain.getLocus(Locus.getNameForId(locusId));
+                if (stainLocus != null) {
+                    final BitSet alleles = new BitSet();
+                    for (final Allele allele : stainLocus.getAlleles()) {
+                        alleles.set(allele.getId());
+                    }
+                    alleleSets.add(alleles);
+                }
             }
+            _crimesceneAlleles[locusId] = alleleSets.toArray(new BitSet[alleleSets.size()]);
+        }
+
+        _slots = new int[locusCount];
+        Arrays.fill(_slots, -1);
+        _slotLocusIds = new int[headers.length];
+        _slotAlleleCounts = new int[headers.length];
+        _slotAlleleIds = new int[2 * headers.length];
+    }
 
-            int idx = 1;
-            while (idx < fields.length) {
+    private CodisRecord buildProfile(final String[] fields) {
+        final String specimenName = fields[0].trim();
+        if (fields.length != _fieldLocusIds.length) {
+            return new CodisRecord(specimenName, ExclusionReason.UNEXPECTED_NUMBER_OF_FIELDS);
+        }
+
+        int slotCount = 0;
+        try {
+            for (int idx = 1; idx < fields.length; idx++) {
                 final String allele = fields[idx].trim();
                 if (!allele.equalsIgnoreCase("NULL")) {
-                    final String locusName = _headers[idx];
-                    Locus locus = sample.getLocus(locusName);
-                    if (locus == null) {
-                        locus = new Locus(locusName);
-                        sample.addLocus(locus);
+                    final int locusId = _fieldLocusIds[idx];
+                    int slot = _slots[locusId];
+                    if (slot < 0) {
+                        slot = slotCount++;
+                        _slots[locusId] = slot;
+                        _slotLocusIds[slot] = locusId;
+                        _slotAlleleCounts[slot] = 0;
                     }
-                    if (allele.matches(CodisRecordValidator.VALID_ALLELE_REGEX)) {
-                        locus.addAllele(new Allele(allele));
+                    if (CodisRecordValidator.isValidAllele(allele)) {
+                        final int alleleIndex = _slotAlleleCounts[slot]++;
+                        if (alleleIndex < 2) {
+                            _slotAlleleIds[2 * slot + alleleIndex] = Allele.getId(allele);
+                        }
                     }
                 }
-                idx++;
             }
 
-            // Perform a sanity check on the loci in the sample.
-            final Collection<Locus> loci = new ArrayList<>(sample.getLoci()); // Note: Wrap in a new ArrayList to allow the remove to work
-            for (final Locus locus : loci) {
-                // Empty loci and loci with more than 2 alleles are removed
-                if (locus.size() == 0 || locus.size() > 2) {
-                    sample.removeLocus(locus);
+            // Empty loci and loci with more than 2 alleles are removed. Loci with one allele are assumed to be homozygotic.
+            int locusCount = 0;
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (_slotAlleleCounts[slot] == 1 || _slotAlleleCounts[slot] == 2) {
+                    locusCount++;
                 }
-                // Loci with one allele are assumed to be homozygotic
-                if (locus.size() == 1) {
-                    locus.addAllele(locus.getAlleles().iterator().next());
+            }
+            final int[] locusIds = new int[locusCount];
+            final int[] alleleIds = new int[2 * locusCount];
+            int locusIndex = 0;
+            for (int slot = 0; slot < slotCount; slot++) {
+                final int alleleCount = _slotAlleleCounts[slot];
+                if (alleleCount == 1 || alleleCount == 2) {
+                    locusIds[locusIndex] = _slotLocusIds[slot];
+                    alleleIds[2 * locusIndex] = _slotAlleleIds[2 * slot];
+                    alleleIds[2 * locusIndex + 1] = _slotAlleleIds[2 * slot + alleleCount - 1];
+                    locusIndex++;
                 }
             }
 
-            // Check that the specimen has sufficient overlap with the sample
-            if (getEnabledLocusCount(sample) < _minimumNumberOfLoci) {
-                return new CodisRecord(sample, ExclusionReason.NOT_ENOUGH_LOCI);
+            // Check that the specimen has sufficient overlap with the sample. As with Sample.hasLocus, the loci of a
+            // specimen are only counted if more than one locus was read.
+            if ((slotCount > 1 ? getEnabledLocusCount(locusIds) : 0) < _minimumNumberOfLoci) {
+                return new CodisRecord(specimenName, ExclusionReason.NOT_ENOUGH_LOCI);
             }
 
             // Check that the specimen does not need dropout to explain the evidence if PrD is set to 0
-            if (!_dropoutAllowed && needsDropout(sample)) {
-                return new CodisRecord(sample, ExclusionReason.REQUIRES_DROPOUT);
+            if (!_dropoutAllowed && needsDropout(locusIds, alleleIds)) {
+                return new CodisRecord(specimenName, ExclusionReason.REQUIRES_DROPOUT);
             }
-            return new CodisRecord(sample);
-        }
-        catch (final IndexOutOfBoundsException iobe) {
-            return new CodisRecord(sample, ExclusionReason.UNEXPECTED_NUMBER_OF_FIELDS);
+            return new CodisRecord(new CandidateProfile(specimenName, null, locusIds, alleleIds));
         }
         catch (final Throwable t) {
             t.printStackTrace();
-            return new CodisRecord(sample, ExclusionReason.OTHER);
+            return new CodisRecord(specimenName, ExclusionReason.OTHER);
         }
-    }
-
-    private boolean needsDropout(final Sample reference) {
-        for (final String locus : _enabledLoci) {
-            final Locus referenceLocus = reference.getLocus(locus);
-            if (referenceLocus != null && needsDropout(referenceLocus)) {
-                return true;
+        finally {
+            for (int slot = 0; slot < slotCount; slot++) {
+                _slots[_slotLocusIds[slot]] = -1;
             }
         }
-        return false;
     }
 
-    private boolean needsDropout(final Locus locus) {
-        for (final Sample stain : _crimesceneProfiles) {
-            final Locus stainLocus = stain.getLocus(locus.getName());
-            if (stainLocus != null) {
-                for (final Allele refAllele : locus.getAlleles()) {
-                    if (!stainLocus.hasAllele(refAllele.getAllele()))
+    private boolean needsDropout(final int[] locusIds, final int[] alleleIds) {
+        for (int idx = 0; idx < locusIds.length; idx++) {
+            final BitSet[] crimesceneAlleles = _crimesceneAlleles[locusIds[idx]];
+            if (crimesceneAlleles != null) {
+                for (final BitSet alleles : crimesceneAlleles) {
+                    if (!alleles.get(alleleIds[2 * idx]) || !alleles.get(alleleIds[2 * idx + 1])) {
                         return true;
+                    }
                 }
             }
         }
         return false;
     }
 
-    private int getEnabledLocusCount(final Sample profile) {
+    private int getEnabledLocusCount(final int[] locusIds) {
         int count = 0;
-        for (final String locus : _enabledLoci) {
-            if (profile.hasLocus(locus)) {
+        for (final int locusId : locusIds) {
+            if (_enabledLoci[locusId]) {
                 count++;
             }
         }
@@ -130,7 +180,7 @@ public class CodisRecordReader implements Callable<CodisRecord> {
             if (fields == null) {
                 return CodisRecord.END_OF_FILE;
             }
-            return buildSample(fields);
+            return buildProfile(fields);
         }
         catch (final Throwable t) {
             return new CodisRecord(null, ExclusionReason.OTHER);
@@ -24,7 +24,7 @@ import java.util.concurrent.Callable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import nl.minvenj.nfi.smartrank.io.CSVReader;
+import nl.minvenj.nfi.smartrank.io.FieldReader;
 import nl.minvenj.nfi.smartrank.io.databases.DatabaseStatistics;
 import nl.minvenj.nfi.smartrank.io.databases.DatabaseValidationEventListener;
 import nl.minvenj.nfi.smartrank.messages.status.ErrorStringMessage;
@@ -41,9 +41,9 @@ public class CodisRecordValidator implements Callable<DatabaseStatistics> {
     private final DatabaseValidationEventListener _listener;
     private final String[] _locusNames;
     private final String[] _alleleOrdinals;
-    private final CSVReader _reader;
+    private final FieldReader _reader;
 
-    public CodisRecordValidator(final String[] headers, final CSVReader validationReader, final DatabaseValidationEventListener listener) {
+    public CodisRecordValidator(final String[] headers, final FieldReader validationReader, final DatabaseValidationEventListener listener) {
         _reader = validationReader;
         _listener = listener;
         _locusNames = new String[headers.length];
@@ -94,7 +94,7 @@ public class CodisRecordValidator implements Callable<DatabaseStatistics> {
                             final String alleleOrdinal = _alleleOrdinals[fieldIndex];
                             if (!fields[fieldIndex].equalsIgnoreCase("NULL")) {
                                 final String alleleValue = fields[fieldIndex].trim();
-                                if (alleleValue.matches(VALID_ALLELE_REGEX)) {
+                                if (isValidAllele(alleleValue)) {
                                     alleleValues.add(alleleValue);
                                     numberOfAllelesPerLocus++;
                                 }
@@ -122,12 +122,32 @@ public class CodisRecordValidator implements Callable<DatabaseStatistics> {
             }
         }
         catch (final IOException e) {
-            LOG.error("Error reading from file '{}'");
+            LOG.error("Error reading from file '{}'", _reader.getFileName(), e);
             MessageBus.getInstance().send(this, new ErrorStringMessage("Error reading from file '" + _reader.getFileName() + "'\n " + e.getMessage()));
         }
         return stat;
     }
 
+    /**
+     * Checks whether a value is a valid allele. This is equivalent to matching the value against
+     * {@link #VALID_ALLELE_REGEX}.
+     *
+     * @param value the value to check
+     * @return true if the value is a valid allele
+     */
+    public static boolean isValidAllele(final String value) {
+        final int length = value.length();
+        int idx = 0;
+        while (idx < length && idx < 2 && isDigit(value.charAt(idx))) {
+            idx++;
+        }
+        return idx == length || (idx + 2 == length && value.charAt(idx) == '.' && isDigit(value.charAt(idx + 1)));
+    }
+
+    private static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+
     private void updateLocusStats(final DatabaseStatistics stat, final String currentLocusName, final ArrayList<String> loci, final int numberOfAllelesPerLocus) {
         if (numberOfAllelesPerLocus > 0) {
             loci.add(currentLocusName);
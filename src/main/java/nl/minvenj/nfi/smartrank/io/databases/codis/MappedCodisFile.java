@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2015 Netherlands Forensic Institute
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package nl.minvenj.nfi.smartrank.io.databases.codis;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import nl.minvenj.nfi.smartrank.io.CSVLineParser;
+import nl.minvenj.nfi.smartrank.io.CSVReader;
+import nl.minvenj.nfi.smartrank.io.FieldReader;
+import nl.minvenj.nfi.smartrank.io.HashingReader;
+
+/**
+ * A database file in Codis format that is read through memory mappings. The records in the file are divided into
+ * regions that start and end on line boundaries, so each region can be parsed by its own thread. Lines that contain
+ * only ASCII characters and no quotes or escapes are split directly on the mapped bytes. Other lines are decoded and
+ * parsed by a {@link CSVLineParser}, so the fields are always the same as those returned by a {@link CSVReader}.
+ */
+class MappedCodisFile {
+
+    private static final int HEADER_WINDOW = 1 << 16;
+    private static final int HASH_WINDOW = 1 << 26;
+    private static final int INTERN_TABLE_SIZE = 1 << 10;
+    private static final int INTERN_MAX_PROBES = 8;
+
+    private final File _file;
+    private final long _length;
+    private final String[] _headers;
+    private final long _recordsStart;
+
+    MappedCodisFile(final File file) throws IOException {
+        _file = file;
+        _length = file.length();
+
+        try (final FileChannel channel = open()) {
+            long window = Math.min(_length, HEADER_WINDOW);
+            int start;
+            int end;
+            ByteBuffer buffer;
+            do {
+                buffer = channel.map(MapMode.READ_ONLY, 0, window);
+
+                // Skip any non-printable characters (e.g. a byte order mark) at the start of the file, and any empty lines
+                start = 0;
+                while (start < window && (buffer.get(start) & 0xFF) >= 0x7F) {
+                    start++;
+                }
+                while (start < window && isLineTerminator(buffer.get(start))) {
+                    start++;
+                }
+
+                end = start;
+                while (end < window && !isLineTerminator(buffer.get(end))) {
+                    end++;
+                }
+                window = Math.min(_length, window * 2);
+            } while (end == buffer.limit() && buffer.limit() < _length);
+
+            if (start == end) {
+                throw new IllegalArgumentException("This is not a Codis Database file. No line header found!");
+            }
+            final byte[] headerBytes = new byte[end - start];
+            for (int idx = start; idx < end; idx++) {
+                headerBytes[idx - start] = buffer.get(idx);
+            }
+            _headers = new CSVLineParser(false).parse(new String(headerBytes, StandardCharsets.UTF_8));
+            _recordsStart = end;
+        }
+    }
+
+    /**
+     * @return the file
+     */
+    File getFile() {
+        return _file;
+    }
+
+    /**
+     * @return the length of the file in bytes
+     */
+    long getLength() {
+        return _length;
+    }
+
+    /**
+     * @return the fields of the header line
+     */
+    String[] getHeaders() {
+        return _headers.clone();
+    }
+
+    /**
+     * Divides the records in the file into regions.
+     *
+     * @param regionSize the preferred size of a region in bytes. Regions are extended to the end of the line in which
+     *            they would otherwise end.
+     * @return a list of regions in file order
+     * @throws IOException if an error occurs reading the file
+     */
+    List<Region> getRegions(final int regionSize) throws IOException {
+        final List<Region> regions = new ArrayList<>();
+        try (final FileChannel channel = open()) {
+            final ByteBuffer buffer = ByteBuffer.allocate(4096);
+            long start = _recordsStart;
+            while (start < _length) {
+                final long end = findRegionEnd(channel, buffer, Math.min(_length, start + regionSize));
+                if (end - start > Integer.MAX_VALUE) {
+                    throw new IOException("Line too long in '" + _file + "' at offset " + start);
+                }
+                regions.add(new Region(start, end));
+                start = end;
+            }
+        }
+        return regions;
+    }
+
+    /**
+     * Calculates the hash of the file contents. The hash is the same as that reported by
+     * {@link CSVReader#getFileHash()} after reading the whole file.
+     *
+     * @return a String containing the hash in the form ALGORITHM/HASHVALUE
+     * @throws IOException if an error occurs reading the file
+     */
+    String computeHash() throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        }
+        catch (final NoSuchAlgorithmException e) {
+            return computeDecodedHash();
+        }
+
+        final byte[] chunk = new byte[1 << 16];
+        try (final FileChannel channel = open()) {
+            long position = 0;
+            while (position < _length) {
+                final long size = Math.min(HASH_WINDOW, _length - position);
+                final ByteBuffer buffer = channel.map(MapMode.READ_ONLY, position, size);
+                while (buffer.hasRemaining()) {
+                    final int count = Math.min(chunk.length, buffer.remaining());
+                    buffer.get(chunk, 0, count);
+                    for (int idx = 0; idx < count; idx++) {
+                        // The legacy hash is calculated over decoded characters, which only equal the bytes for ASCII files
+                        if (chunk[idx] < 0) {
+                            return computeDecodedHash();
+                        }
+                    }
+                    digest.update(chunk, 0, count);
+                }
+                position += size;
+            }
+        }
+        return HashingReader.formatHash(digest.getAlgorithm(), digest.digest());
+    }
+
+    private String computeDecodedHash() throws IOException {
+        try (final HashingReader reader = new HashingReader(new InputStreamReader(new FileInputStream(_file), StandardCharsets.UTF_8))) {
+            final char[] buffer = new char[8192];
+            while (reader.read(buffer, 0, buffer.length) >= 0) {
+            }
+            return reader.getHash();
+        }
+    }
+
+    private FileChannel open() throws IOException {
+        return FileChannel.open(_file.toPath(), StandardOpenOption.READ);
+    }
+
+    private long findRegionEnd(final FileChannel channel, final ByteBuffer buffer, final long end) throws IOException {
+        long position = end - 1;
+        while (end < _length && position < _length) {
+            buffer.clear();
+            final int count = channel.read(buffer, position);
+            if (count <= 0) {
+                break;
+            }
+            for (int idx = 0; idx < count; idx++) {
+                if (isLineTerminator(buffer.get(idx))) {
+                    return position + idx + 1;
+                }
+            }
+            position += count;
+        }
+        return end < _length ? _length : end;
+    }
+
+    private static boolean isLineTerminator(final byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    /**
+     * A part of the file that starts at the beginning of a line and ends at the end of a line.
+     */
+    final class Region implements RecordRegion {
+        private final long _start;
+        private final long _end;
+
+        private Region(final long start, final long end) {
+            _start = start;
+            _end = end;
+        }
+
+        /**
+         * @return the length of the region in bytes
+         */
+        @Override
+        public long getLength() {
+            return _end - _start;
+        }
+
+        /**
+         * Maps the region into memory.
+         *
+         * @return a reader for the records in the region
+         * @throws IOException if the region could not be mapped
+         */
+        @Override
+        public FieldReader open() throws IOException {
+            try (final FileChannel channel = MappedCodisFile.this.open()) {
+                return new RegionReader(channel.map(MapMode.READ_ONLY, _start, _end - _start));
+            }
+        }
+    }
+
+    /**
+     * Reads the records of a single region. Field values that occur often, such as allele values, are shared between
+     * records instead of being created for each record.
+     */
+    private final class RegionReader implements FieldReader {
+        private final ByteBuffer _buffer;
+        private final int _limit;
+        private final CSVLineParser _lineParser;
+        private final String[] _internedValues;
+        private int _position;
+        private int[] _fieldStarts;
+        private int[] _fieldEnds;
+        private byte[] _scratch;
+
+        RegionReader(final ByteBuffer buffer) {
+            _buffer = buffer;
+            _limit = buffer.limit();
+            _lineParser = new CSVLineParser(false);
+            _internedValues = new String[INTERN_TABLE_SIZE];
+            _fieldStarts = new int[_headers.length];
+            _fieldEnds = new int[_headers.length];
+            _scratch = new byte[64];
+        }
+
+        @Override
+        public String[] readFields() throws IOException {
+            while (_position < _limit && isLineTerminator(_buffer.get(_position))) {
+                _position++;
+            }
+            if (_position >= _limit) {
+                return null;
+            }
+
+            final int lineStart = _position;
+            int lineEnd = lineStart;
+            boolean hasComma = false;
+            boolean hasTab = false;
+            boolean hasSemicolon = false;
+            boolean simple = true;
+            while (lineEnd < _limit) {
+                final byte b = _buffer.get(lineEnd);
+                if (b == '\n' || b == '\r') {
+                    break;
+                }
+                switch (b) {
+                    case ',':
+                        hasComma = true;
+                        break;
+                    case '\t':
+                        hasTab = true;
+                        break;
+                    case ';':
+                        hasSemicolon = true;
+                        break;
+                    case '"':
+                    case '\\':
+                        simple = false;
+                        break;
+                    default:
+                        simple &= b >= 0;
+                }
+                lineEnd++;
+            }
+            _position = lineEnd;
+
+            if (!simple) {
+                return _lineParser.parse(toString(lineStart, lineEnd, true));
+            }
+
+            final byte separator = (byte) CSVLineParser.getSeparator(hasComma, hasTab, hasSemicolon);
+            int fieldCount = 0;
+            int fieldStart = lineStart;
+            for (int idx = lineStart; idx <= lineEnd; idx++) {
+                if (idx == lineEnd || _buffer.get(idx) == separator) {
+                    int start = fieldStart;
+                    int end = idx;
+                    while (start < end && _buffer.get(start) <= ' ') {
+                        start++;
+                    }
+                    while (end > start && _buffer.get(end - 1) <= ' ') {
+                        end--;
+                    }
+                    if (end > start) {
+                        if (fieldCount == _fieldStarts.length) {
+                            _fieldStarts = Arrays.copyOf(_fieldStarts, fieldCount * 2 + 1);
+                            _fieldEnds = Arrays.copyOf(_fieldEnds, fieldCount * 2 + 1);
+                        }
+                        _fieldStarts[fieldCount] = start;
+                        _fieldEnds[fieldCount] = end;
+                        fieldCount++;
+                    }
+                    fieldStart = idx + 1;
+                }
+            }
+
+            final String[] fields = new String[fieldCount];
+            for (int idx = 0; idx < fieldCount; idx++) {
+                // The first field holds the specimen id, which is unique for each record
+                fields[idx] = idx == 0 ? toString(_fieldStarts[idx], _fieldEnds[idx], false) : intern(_fieldStarts[idx], _fieldEnds[idx]);
+            }
+            return fields;
+        }
+
+        @Override
+        public String getFileName() {
+            return "" + _file;
+        }
+
+        private String intern(final int start, final int end) {
+            int hash = 0;
+            for (int idx = start; idx < end; idx++) {
+                hash = 31 * hash + _buffer.get(idx);
+            }
+            int slot = (hash ^ (hash >>> 16)) & (INTERN_TABLE_SIZE - 1);
+            for (int probe = 0; probe < INTERN_MAX_PROBES; probe++) {
+                final String candidate = _internedValues[slot];
+                if (candidate == null) {
+                    final String value = toString(start, end, false);
+                    _internedValues[slot] = value;
+                    return value;
+                }
+                if (candidate.hashCode() == hash && matches(candidate, start, end)) {
+                    return candidate;
+                }
+                slot = (slot + 1) & (INTERN_TABLE_SIZE - 1);
+            }
+            return toString(start, end, false);
+        }
+
+        private boolean matches(final String value, final int start, final int end) {
+            if (value.length() != end - start) {
+                return false;
+            }
+            for (int idx = start; idx < end; idx++) {
+                if (value.charAt(idx - start) != _buffer.get(idx)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private String toString(final int start, final int end, final boolean decode) {
+            final int length = end - start;
+            if (_scratch.length < length) {
+                _scratch = new byte[length];
+            }
+            for (int idx = 0; idx < length; idx++) {
+                _scratch[idx] = _buffer.get(start + idx);
+            }
+            return new String(_scratch, 0, length, decode ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+        }
+    }
+}
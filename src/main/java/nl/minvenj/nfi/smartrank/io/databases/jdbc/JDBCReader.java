@@ -39,11 +39,13 @@ import org.slf4j.LoggerFactory;
 
 import nl.minvenj.nfi.smartrank.analysis.ExcludedProfile;
 import nl.minvenj.nfi.smartrank.domain.Allele;
+import nl.minvenj.nfi.smartrank.domain.CandidateProfile;
 import nl.minvenj.nfi.smartrank.domain.DatabaseConfiguration;
 import nl.minvenj.nfi.smartrank.domain.Locus;
 import nl.minvenj.nfi.smartrank.domain.Sample;
 import nl.minvenj.nfi.smartrank.io.databases.DatabaseReader;
 import nl.minvenj.nfi.smartrank.io.databases.DatabaseValidationEventListener;
+import nl.minvenj.nfi.smartrank.io.databases.ProfileIterators;
 import nl.minvenj.nfi.smartrank.io.databases.codis.CodisRecordValidator;
 import nl.minvenj.nfi.smartrank.messages.status.DetailStringMessage;
 import nl.minvenj.nfi.smartrank.messages.status.PercentReadyMessage;
@@ -79,6 +81,11 @@ public class JDBCReader implements DatabaseReader {
         return new JDBCSampleIterator(this);
     }
 
+    @Override
+    public Iterator<CandidateProfile> profileIterator(final Properties properties) {
+        return ProfileIterators.toProfiles(iterator(properties));
+    }
+
     @Override
     public void validate(final DatabaseValidationEventListener listener) throws IOException, InterruptedException {
         LOG.info("Validating database");
@@ -304,7 +311,7 @@ public class JDBCReader implements DatabaseReader {
                     locus = new Locus(locusName);
                     sample.addLocus(locus);
                 }
-                if (!validationMode || allele.matches(CodisRecordValidator.VALID_ALLELE_REGEX)) {
+                if (!validationMode || CodisRecordValidator.isValidAllele(allele)) {
                     locus.addAllele(new Allele(allele));
                 }
             }
@@ -360,7 +367,7 @@ public class JDBCReader implements DatabaseReader {
             final String alleles = resultSet.getString("allele").trim();
             final String[] splitAlleles = alleles.split(" ");
             for (final String allele : splitAlleles) {
-                if (!validationMode || allele.matches(CodisRecordValidator.VALID_ALLELE_REGEX)) {
+                if (!validationMode || CodisRecordValidator.isValidAllele(allele)) {
                     locus.addAllele(new Allele(allele));
 //                    LOG.debug("  Adding allele {}.{}", locus.getName(), allele);
                 }
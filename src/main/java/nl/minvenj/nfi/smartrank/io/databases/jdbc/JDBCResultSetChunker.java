@@ -30,13 +30,13 @@ import java.util.Properties;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import nl.minvenj.nfi.smartrank.analysis.scheduler.ComputeScheduler;
+import nl.minvenj.nfi.smartrank.analysis.scheduler.TaskGroup;
 import nl.minvenj.nfi.smartrank.domain.DatabaseConfiguration;
 import nl.minvenj.nfi.smartrank.gui.SmartRankGUISettings;
 import nl.minvenj.nfi.smartrank.messages.status.DetailStringMessage;
@@ -48,7 +48,6 @@ import nl.minvenj.nfi.smartrank.utils.QueryPreprocessor;
 public class JDBCResultSetChunker implements AutoCloseable {
 
     private static final Logger LOG = LoggerFactory.getLogger(JDBCResultSetChunker.class);
-    private static final ExecutorService SERVICE = Executors.newFixedThreadPool(2);
     private static final double QUERY_DURATION_OUTLIER_FACTOR = 10;
     private static final int MINIMUM_NUMBER_OF_QUERIES = 20;
 
@@ -62,6 +61,7 @@ public class JDBCResultSetChunker implements AutoCloseable {
     private long _numberOfSpecimens;
     private String _contentHash;
     private final BlockingQueue<Future<ResultSet>> _futures;
+    private final TaskGroup _group;
     private String _specimenQuery;
     private Average _averageDuration;
 
@@ -98,6 +98,7 @@ public class JDBCResultSetChunker implements AutoCloseable {
     public JDBCResultSetChunker(final Connection connection, final DatabaseConfiguration config, final Properties properties) throws SQLException {
         _connection = connection;
         _futures = new ArrayBlockingQueue<>(4);
+        _group = ComputeScheduler.getInstance().createGroup();
         _curPos = 0;
         _config = config;
         _averageDuration = new Average();
@@ -121,7 +122,7 @@ public class JDBCResultSetChunker implements AutoCloseable {
             final Object toId = _ids.get(_curPos);
             _curPos++;
 
-            _futures.add(SERVICE.submit(new ResultSetFetcher(fromId, toId)));
+            _futures.add(_group.submitIo(new ResultSetFetcher(fromId, toId)));
         }
     }
 
@@ -208,6 +209,7 @@ public class JDBCResultSetChunker implements AutoCloseable {
 
     @Override
     public void close() {
+        _group.close();
         if (_resultSet != null) {
             try {
                 _resultSet.getStatement().getConnection().close();
@@ -19,10 +19,12 @@ package nl.minvenj.nfi.smartrank.io.databases.jdbc;
 
 import java.sql.SQLException;
 import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import nl.minvenj.nfi.smartrank.analysis.scheduler.ComputeScheduler;
 import nl.minvenj.nfi.smartrank.domain.Sample;
 import nl.minvenj.nfi.smartrank.messages.status.ErrorStringMessage;
 import nl.minvenj.nfi.smartrank.raven.messages.MessageBus;
@@ -30,37 +32,38 @@ import nl.minvenj.nfi.smartrank.raven.messages.MessageBus;
 public class JDBCSampleIterator implements Iterator<Sample> {
 
     private static final Logger LOG = LoggerFactory.getLogger(JDBCSampleIterator.class);
+    private static final long INITIAL_TIMEOUT_MILLIS = 300000;
+    private static final long IDLE_TIMEOUT_MILLIS = 30000;
 
     private JDBCResultSetChunker _resultSet;
     private final JDBCReader _reader;
-    private Sample _nextSample;
-    private long _lastAccessTime;
+    private volatile Sample _nextSample;
+    private volatile long _lastAccessTime;
 
     public JDBCSampleIterator(final JDBCReader reader) {
         _reader = reader;
         _lastAccessTime = System.currentTimeMillis();
+        scheduleWatchDog(INITIAL_TIMEOUT_MILLIS);
+    }
 
-        final Thread watchDog = new Thread() {
-
+    /**
+     * Schedules a check that closes the reader if the iterator has not been used for a while.
+     *
+     * @param delay the time until the check in milliseconds
+     */
+    private void scheduleWatchDog(final long delay) {
+        ComputeScheduler.schedule(new Runnable() {
             @Override
             public void run() {
-                int timeout = 300000;
-                while (!isInterrupted() && (System.currentTimeMillis() - _lastAccessTime < timeout)) {
-                    try {
-                        Thread.sleep(timeout);
-                    }
-                    catch (final InterruptedException e) {
-                    }
-                    timeout = 30000;
+                if (System.currentTimeMillis() - _lastAccessTime < IDLE_TIMEOUT_MILLIS) {
+                    scheduleWatchDog(IDLE_TIMEOUT_MILLIS);
                 }
-                if (_nextSample != null) {
+                else if (_nextSample != null) {
                     LOG.info("Shutting down JDBC reader due to timeout");
                     _reader.close();
                 }
             }
-        };
-
-        watchDog.start();
+        }, delay, TimeUnit.MILLISECONDS);
     }
 
     @Override
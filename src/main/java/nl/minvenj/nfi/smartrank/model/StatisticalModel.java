@@ -21,6 +21,7 @@ package nl.minvenj.nfi.smartrank.model;
 import java.security.Policy.Parameters;
 
 import nl.minvenj.nfi.smartrank.domain.AnalysisParameters;
+import nl.minvenj.nfi.smartrank.domain.CandidateProfile;
 import nl.minvenj.nfi.smartrank.domain.Hypothesis;
 import nl.minvenj.nfi.smartrank.domain.LocusLikelihoods;
 
@@ -36,6 +37,18 @@ public interface StatisticalModel {
      */
     public LocusLikelihoods calculateLikelihood(Hypothesis hd, AnalysisParameters parameters) throws InterruptedException;
 
+    /**
+     * Calculates the likelihood of the evidence for a database candidate. The candidate takes the place of the candidate
+     * contributor or candidate non-contributor of the hypothesis, so the sample of that contributor is not used.
+     *
+     * @param hypothesis the {@link Hypothesis} for which to calculate the likelihood. The hypothesis must have a candidate.
+     * @param candidate the profile of the database candidate
+     * @param parameters the {@link Parameters} describing the evidence and search parameters.
+     *
+     * @return a {@link LocusLikelihoods} object containing the likelihood of the evidence under the given hypothesis.
+     */
+    public LocusLikelihoods calculateLikelihood(Hypothesis hypothesis, CandidateProfile candidate, AnalysisParameters parameters) throws InterruptedException;
+
     /**
      * Interrupts the calculation of the likelihood.
      */
@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.smartrank.model.smartrank;
+
+import nl.minvenj.nfi.smartrank.domain.Allele;
+import nl.minvenj.nfi.smartrank.domain.CandidateProfile;
+import nl.minvenj.nfi.smartrank.domain.Contributor;
+import nl.minvenj.nfi.smartrank.domain.Hypothesis;
+import nl.minvenj.nfi.smartrank.domain.Locus;
+import nl.minvenj.nfi.smartrank.domain.Sample;
+
+/**
+ * The candidate that is bound to a compiled hypothesis for a single evaluation. The genotype of the candidate is
+ * available as the allele ids at each locus, taken either from the sample of the candidate contributor or
+ * non-contributor of the hypothesis, or from a database profile. A database profile therefore does not need to be
+ * converted to a {@link Sample} to be evaluated.
+ */
+final class BoundCandidate {
+
+    private final Contributor _contributor;
+    private final CandidateProfile _profile;
+
+    private BoundCandidate(final Contributor contributor, final CandidateProfile profile) {
+        _contributor = contributor;
+        _profile = profile;
+    }
+
+    /**
+     * Gets the candidate of a hypothesis.
+     *
+     * @param hypothesis the hypothesis
+     * @return the candidate contributor or non-contributor of the hypothesis with the genotype of its sample, or
+     *         <code>null</code> if the hypothesis has no candidate
+     */
+    static BoundCandidate of(final Hypothesis hypothesis) {
+        final Contributor contributor = CompiledHypothesis.getCandidate(hypothesis);
+        return contributor == null ? null : new BoundCandidate(contributor, null);
+    }
+
+    /**
+     * Gets a database candidate that takes the place of the candidate of a hypothesis.
+     *
+     * @param hypothesis the hypothesis. The sample of its candidate is ignored.
+     * @param profile the profile of the database candidate
+     * @return the candidate contributor or non-contributor of the hypothesis with the genotype of the profile
+     * @throws IllegalArgumentException if the hypothesis has no candidate
+     */
+    static BoundCandidate of(final Hypothesis hypothesis, final CandidateProfile profile) {
+        final Contributor contributor = CompiledHypothesis.getCandidate(hypothesis);
+        if (contributor == null) {
+            throw new IllegalArgumentException("Cannot evaluate profile " + profile.getName() + " under hypothesis " + hypothesis.getId() + ": the hypothesis has no candidate");
+        }
+        return new BoundCandidate(contributor, profile);
+    }
+
+    /**
+     * @return the name of the candidate
+     */
+    String getName() {
+        return _profile == null ? _contributor.getSample().getName() : _profile.getName();
+    }
+
+    /**
+     * @return the number of loci of the candidate
+     */
+    int getLocusCount() {
+        return _profile == null ? _contributor.getSample().size() : _profile.getLocusCount();
+    }
+
+    /**
+     * @param homozygote <code>true</code> for an allele of a homozygote locus
+     * @return the dropout probability of the candidate
+     */
+    double getDropOutProbability(final boolean homozygote) {
+        return _contributor.getDropOutProbability(homozygote);
+    }
+
+    /**
+     * Gets the genotype of the candidate at a locus. A homozygote has the same id twice.
+     *
+     * @param locusId the id of the locus
+     * @return the ids of the alleles of the candidate at the locus, or <code>null</code> if the candidate does not have
+     *         the locus. Only a non-contributor that is not a database profile can have other than two alleles.
+     */
+    int[] getAlleleIds(final int locusId) {
+        if (_profile != null) {
+            final int locusIndex = _profile.indexOf(locusId);
+            return locusIndex < 0 ? null : new int[]{_profile.getAlleleId(locusIndex, 0), _profile.getAlleleId(locusIndex, 1)};
+        }
+
+        final Locus locus = _contributor.getSample().getLocus(Locus.getNameForId(locusId));
+        if (locus == null) {
+            return null;
+        }
+        final int[] alleleIds = new int[locus.size()];
+        int idx = 0;
+        for (final Allele allele : locus.getAlleles()) {
+            alleleIds[idx++] = allele.getId();
+        }
+        return alleleIds;
+    }
+}
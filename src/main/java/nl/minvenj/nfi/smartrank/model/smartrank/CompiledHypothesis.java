@@ -0,0 +1,218 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.smartrank.model.smartrank;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+
+import nl.minvenj.nfi.smartrank.domain.AnalysisParameters;
+import nl.minvenj.nfi.smartrank.domain.Contributor;
+import nl.minvenj.nfi.smartrank.domain.Hypothesis;
+import nl.minvenj.nfi.smartrank.domain.Locus;
+import nl.minvenj.nfi.smartrank.domain.PopulationStatistics;
+import nl.minvenj.nfi.smartrank.domain.Sample;
+
+/**
+ * The parts of a hypothesis that do not depend on the candidate, compiled once per search. The loci are compiled when
+ * they are first evaluated. A compiled hypothesis is only valid for hypotheses with the same fingerprint.
+ * <p>
+ * The fingerprint is built once, when the hypothesis is compiled. To check whether a later evaluation can reuse the
+ * compiled hypothesis, the values the fingerprint was built from are compared directly instead.
+ */
+final class CompiledHypothesis {
+
+    private final int _fingerprintId;
+    private CompiledLocus[] _loci = new CompiledLocus[Locus.getRegisteredLocusCount()];
+
+    // The values the fingerprint was built from. The samples of candidates are null.
+    private final int _unknownCount;
+    private final double _unknownDropout;
+    private final double _dropIn;
+    private final double _theta;
+    private final boolean _qDesignationShutdown;
+    private final PopulationStatistics _statistics;
+    private final String _statisticsHash;
+    private final Double _rareAlleleFrequency;
+    private final Sample[] _contributors;
+    private final double[] _contributorDropouts;
+    private final Sample[] _nonContributors;
+    private final Sample[] _replicates;
+
+    /**
+     * Creates a compiled hypothesis.
+     *
+     * @param hypothesis the hypothesis to compile
+     * @param parameters the parameters of the current analysis
+     * @param resultCache the cache that assigns the id of the fingerprint
+     */
+    CompiledHypothesis(final Hypothesis hypothesis, final AnalysisParameters parameters, final GenotypeResultCache resultCache) {
+        _fingerprintId = resultCache.getFingerprintId(getFingerprint(hypothesis, parameters));
+        _unknownCount = hypothesis.getUnknownCount();
+        _unknownDropout = hypothesis.getUnknownDropoutProbability();
+        _dropIn = hypothesis.getDropInProbability();
+        _theta = hypothesis.getThetaCorrection();
+        _qDesignationShutdown = hypothesis.isQDesignationShutdown();
+        _statistics = hypothesis.getPopulationStatistics();
+        _statisticsHash = _statistics.getFileHash();
+        _rareAlleleFrequency = _statistics.getRareAlleleFrequency();
+
+        _contributors = new Sample[hypothesis.getContributors().size()];
+        _contributorDropouts = new double[_contributors.length];
+        int idx = 0;
+        for (final Contributor contributor : hypothesis.getContributors()) {
+            _contributors[idx] = contributor.isCandidate() ? null : contributor.getSample();
+            _contributorDropouts[idx++] = contributor.getDropoutProbability();
+        }
+        _nonContributors = new Sample[hypothesis.getNonContributors().size()];
+        idx = 0;
+        for (final Contributor nonContributor : hypothesis.getNonContributors()) {
+            _nonContributors[idx++] = nonContributor.isCandidate() ? null : nonContributor.getSample();
+        }
+        _replicates = parameters.getEnabledCrimesceneProfiles().toArray(new Sample[0]);
+    }
+
+    /**
+     * @return the id of the fingerprint in the result cache
+     */
+    int getFingerprintId() {
+        return _fingerprintId;
+    }
+
+    /**
+     * Checks whether this compiled hypothesis is valid for a hypothesis, which is the case if the hypothesis would get
+     * the same fingerprint. The hypothesis must have the id of the compiled hypothesis.
+     *
+     * @param hypothesis the hypothesis being evaluated
+     * @param parameters the parameters of the current analysis
+     * @return <code>true</code> if the compiled hypothesis can be used to evaluate the hypothesis
+     */
+    boolean isValidFor(final Hypothesis hypothesis, final AnalysisParameters parameters) {
+        final PopulationStatistics statistics = hypothesis.getPopulationStatistics();
+        if (hypothesis.getUnknownCount() != _unknownCount
+            || hypothesis.getUnknownDropoutProbability() != _unknownDropout
+            || hypothesis.getDropInProbability() != _dropIn
+            || hypothesis.getThetaCorrection() != _theta
+            || hypothesis.isQDesignationShutdown() != _qDesignationShutdown
+            || statistics != _statistics
+            || !Objects.equals(statistics.getFileHash(), _statisticsHash)
+            || !Objects.equals(statistics.getRareAlleleFrequency(), _rareAlleleFrequency)
+            || hypothesis.getContributors().size() != _contributors.length
+            || hypothesis.getNonContributors().size() != _nonContributors.length) {
+            return false;
+        }
+        int idx = 0;
+        for (final Contributor contributor : hypothesis.getContributors()) {
+            if ((contributor.isCandidate() ? null : contributor.getSample()) != _contributors[idx] || contributor.getDropoutProbability() != _contributorDropouts[idx]) {
+                return false;
+            }
+            idx++;
+        }
+        idx = 0;
+        for (final Contributor nonContributor : hypothesis.getNonContributors()) {
+            if ((nonContributor.isCandidate() ? null : nonContributor.getSample()) != _nonContributors[idx++]) {
+                return false;
+            }
+        }
+        final Collection<Sample> replicates = parameters.getEnabledCrimesceneProfiles();
+        if (replicates.size() != _replicates.length) {
+            return false;
+        }
+        idx = 0;
+        for (final Sample replicate : replicates) {
+            if (replicate != _replicates[idx++]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets a compiled locus, compiling it if this has not been done before.
+     *
+     * @param locusName the name of the locus
+     * @param hypothesis the hypothesis, which must have the fingerprint of this compiled hypothesis
+     * @param parameters the parameters of the current analysis
+     * @return the compiled locus
+     */
+    CompiledLocus getLocus(final String locusName, final Hypothesis hypothesis, final AnalysisParameters parameters) {
+        final int locusId = Locus.getId(locusName);
+        if (locusId >= _loci.length) {
+            _loci = Arrays.copyOf(_loci, Math.max(locusId + 1, Locus.getRegisteredLocusCount()));
+        }
+        if (_loci[locusId] == null) {
+            _loci[locusId] = new CompiledLocus(locusName, parameters.getEnabledCrimesceneProfiles(), hypothesis, true);
+        }
+        return _loci[locusId];
+    }
+
+    /**
+     * Gets the contributor that is bound to the compiled loci for each evaluation.
+     *
+     * @param hypothesis the hypothesis
+     * @return the candidate contributor or non-contributor of the hypothesis, or <code>null</code> if it has none
+     */
+    static Contributor getCandidate(final Hypothesis hypothesis) {
+        for (final Contributor contributor : hypothesis.getContributors()) {
+            if (contributor.isCandidate()) {
+                return contributor;
+            }
+        }
+        for (final Contributor nonContributor : hypothesis.getNonContributors()) {
+            if (nonContributor.isCandidate()) {
+                return nonContributor;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Builds a description of everything a per-locus result depends on apart from the genotype of the candidate.
+     *
+     * @param hypothesis the hypothesis being evaluated
+     * @param parameters the parameters of the current analysis
+     * @return a String that is equal for any two evaluations whose per-locus results differ only by candidate genotype
+     */
+    private static String getFingerprint(final Hypothesis hypothesis, final AnalysisParameters parameters) {
+        final StringBuilder builder = new StringBuilder(hypothesis.getId());
+        builder.append('/').append(hypothesis.getUnknownCount())
+            .append('/').append(hypothesis.getUnknownDropoutProbability())
+            .append('/').append(hypothesis.getDropInProbability())
+            .append('/').append(hypothesis.getThetaCorrection())
+            .append('/').append(hypothesis.isQDesignationShutdown())
+            .append('/').append(hypothesis.getPopulationStatistics().getFileName())
+            .append('/').append(hypothesis.getPopulationStatistics().getFileHash())
+            .append('/').append(hypothesis.getPopulationStatistics().getRareAlleleFrequency());
+        for (final Contributor contributor : hypothesis.getContributors()) {
+            builder.append("/C:");
+            if (!contributor.isCandidate()) {
+                builder.append(contributor.getSample().getName()).append('@').append(contributor.getSample().getSourceFile());
+            }
+            builder.append('=').append(contributor.getDropoutProbability());
+        }
+        for (final Contributor nonContributor : hypothesis.getNonContributors()) {
+            builder.append("/N:");
+            if (!nonContributor.isCandidate()) {
+                builder.append(nonContributor.getSample().getName()).append('@').append(nonContributor.getSample().getSourceFile());
+            }
+        }
+        for (final Sample replicate : parameters.getEnabledCrimesceneProfiles()) {
+            builder.append("/R:").append(replicate.getName()).append('@').append(replicate.getSourceFile());
+        }
+        return builder.toString();
+    }
+}
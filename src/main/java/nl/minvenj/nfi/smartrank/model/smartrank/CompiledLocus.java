@@ -0,0 +1,585 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.smartrank.model.smartrank;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.minvenj.nfi.smartrank.domain.Allele;
+import nl.minvenj.nfi.smartrank.domain.Contributor;
+import nl.minvenj.nfi.smartrank.domain.Hypothesis;
+import nl.minvenj.nfi.smartrank.domain.Locus;
+import nl.minvenj.nfi.smartrank.domain.LocusFrequencies;
+import nl.minvenj.nfi.smartrank.domain.PopulationStatistics;
+import nl.minvenj.nfi.smartrank.domain.Sample;
+import nl.minvenj.nfi.smartrank.model.smartrank.genotype.GenotypeProbabilityCalculatorFactory;
+import nl.minvenj.nfi.smartrank.model.smartrank.genotype.GenotypeProbabilityTable;
+import nl.minvenj.nfi.smartrank.model.smartrank.genotype.LocalAlleleIndex;
+
+/**
+ * The state of a hypothesis at a single locus that does not depend on the genotype of the candidate: the compiled
+ * replicates, the alleles, allele counts and dropout probabilities of the known contributors and non-contributors, the
+ * theta denominator and the allele combinations available to the unknown contributors. The jobs for a candidate bind the
+ * alleles of the candidate to this state. The candidate can be either a contributor or a non-contributor.
+ */
+final class CompiledLocus {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CompiledLocus.class);
+
+    // The number of allele combination tables kept for candidates that add alleles to the combinations
+    private static final int CANDIDATE_COMBINATIONS_CACHE_SIZE = 32;
+
+    private final String _locusName;
+    private final int _locusId;
+    private final PopulationStatistics _statistics;
+    private final boolean _qDesignationShutdown;
+    private final Locus[] _replicateLoci;
+    private final CompiledReplicate[] _compiledReplicates;
+    private final int _maxReplicateAlleleCount;
+    // The index of the first replicate that is identical to each replicate, so identical replicates are calculated once
+    private final int[] _firstIdenticalReplicates;
+    // The drop-in factor of each allele in each replicate, indexed by replicate and local allele index
+    private final double[][] _dropInFactors;
+    private final double _noDropInFactor;
+    private final boolean _candidateBound;
+    private final boolean _candidateContributes;
+
+    // The alleles of the known contributors (alleles of homozygote loci only once) with their dropout probabilities
+    private final int[] _contributorAlleleIds;
+    private final boolean[] _contributorHomozygotes;
+    private final double[] _contributorDropouts;
+    private final String[] _contributorNames;
+
+    // The alleles of the known contributors and non-contributors, and their counts indexed by local allele index
+    private final LocalAlleleIndex _knownAlleles;
+    private final int[] _knownAlleleCounts;
+    private final int _totalAlleleCount;
+    private final double _thetaCorrection;
+    private final int _unknownCount;
+    private final double _denominator;
+
+    // The alleles available to unknowns regardless of the candidate, and the alleles and frequencies from the statistics
+    private final HashSet<String> _alleleNames;
+    private final String[] _statisticAlleles;
+    private final double[] _statisticFrequencies;
+    private AlleleCombinations _combinations;
+    private final Map<Long, AlleleCombinations> _candidateCombinations;
+
+    /**
+     * Compiles a locus of a hypothesis.
+     *
+     * @param locusName the name of the locus
+     * @param replicates the replicates of the crime scene profile
+     * @param hypothesis the hypothesis
+     * @param candidateBound <code>true</code> if the locus is compiled for a search: the candidate contributor is left out and bound for each evaluation, and the allele combinations of the unknowns can
+     *            be requested.
+     *            <code>false</code> if the locus is compiled for a single job and the current candidate is compiled like
+     *            any other contributor.
+     */
+    CompiledLocus(final String locusName, final Collection<Sample> replicates, final Hypothesis hypothesis, final boolean candidateBound) {
+        if (locusName == null) {
+            throw new IllegalArgumentException("No locus name specified!");
+        }
+
+        if (replicates == null || replicates.isEmpty()) {
+            throw new IllegalArgumentException("No replicates specified!");
+        }
+
+        _locusName = locusName;
+        _locusId = Locus.getId(locusName);
+        _replicateLoci = new Locus[replicates.size()];
+        _compiledReplicates = new CompiledReplicate[replicates.size()];
+        int maxReplicateAlleleCount = 0;
+        int replicateIndex = 0;
+        for (final Sample replicate : replicates) {
+            Locus locus = replicate.getLocus(locusName);
+            if (locus == null) {
+                locus = new Locus(locusName);
+                locus.setSample(replicate);
+            }
+            _replicateLoci[replicateIndex] = locus;
+            _compiledReplicates[replicateIndex] = new CompiledReplicate(locus);
+            maxReplicateAlleleCount = Math.max(maxReplicateAlleleCount, _compiledReplicates[replicateIndex].size());
+            replicateIndex++;
+        }
+        _maxReplicateAlleleCount = maxReplicateAlleleCount;
+
+        _statistics = hypothesis.getPopulationStatistics();
+        _qDesignationShutdown = hypothesis.isQDesignationShutdown();
+
+        final double dropInProbability = hypothesis.getDropInProbability();
+        _noDropInFactor = 1 - dropInProbability;
+        _dropInFactors = new double[_replicateLoci.length][];
+        _firstIdenticalReplicates = new int[_replicateLoci.length];
+        for (int idx = 0; idx < _replicateLoci.length; idx++) {
+            final CompiledReplicate replicate = _compiledReplicates[idx];
+            _dropInFactors[idx] = new double[replicate.size()];
+            for (int localIndex = 0; localIndex < replicate.size(); localIndex++) {
+                _dropInFactors[idx][localIndex] = dropInProbability * _statistics.getProbability(_replicateLoci[idx], replicate.getAllele(localIndex));
+            }
+            int first = 0;
+            while (!_replicateLoci[first].equals(_replicateLoci[idx])) {
+                first++;
+            }
+            _firstIdenticalReplicates[idx] = first;
+        }
+
+        boolean candidateContributes = false;
+        for (final Contributor contributor : hypothesis.getContributors()) {
+            candidateContributes |= contributor.isCandidate();
+        }
+        boolean candidateDoesNotContribute = false;
+        for (final Contributor nonContributor : hypothesis.getNonContributors()) {
+            candidateDoesNotContribute |= nonContributor.isCandidate();
+        }
+        _candidateBound = candidateBound && (candidateContributes || candidateDoesNotContribute);
+        _candidateContributes = _candidateBound && candidateContributes;
+
+        // Collect the counted alleles and the dropout probabilities of the known contributors
+        final ArrayList<Allele> countedAlleles = new ArrayList<>();
+        final ArrayList<Allele> contributorAlleles = new ArrayList<>();
+        final ArrayList<Double> contributorDropouts = new ArrayList<>();
+        final ArrayList<String> contributorNames = new ArrayList<>();
+        for (final Contributor contributor : hypothesis.getContributors()) {
+            if (_candidateBound && contributor.isCandidate()) {
+                continue;
+            }
+
+            Locus locus = contributor.getSample().getLocus(locusName);
+            if (locus == null) {
+                locus = new Locus(locusName);
+            }
+
+            boolean skipHomozygotes = false;
+            for (final Allele allele : locus.getAlleles()) {
+                countedAlleles.add(allele);
+                if (!skipHomozygotes) {
+                    contributorAlleles.add(allele);
+                    contributorDropouts.add(getDropout(hypothesis, allele));
+                    contributorNames.add(allele.getLocus().getSample() == null ? null : allele.getLocus().getSample().getName());
+                    skipHomozygotes = allele.isHomozygote();
+                }
+            }
+        }
+        for (final Contributor nonContributor : hypothesis.getNonContributors()) {
+            if (_candidateBound && nonContributor.isCandidate()) {
+                continue;
+            }
+
+            Locus locus = nonContributor.getSample().getLocus(locusName);
+            if (locus == null) {
+                locus = new Locus(locusName);
+            }
+            countedAlleles.addAll(locus.getAlleles());
+        }
+        final int[] countedAlleleIds = new int[countedAlleles.size()];
+        for (int idx = 0; idx < countedAlleleIds.length; idx++) {
+            countedAlleleIds[idx] = countedAlleles.get(idx).getId();
+        }
+        _knownAlleles = new LocalAlleleIndex(countedAlleleIds);
+        _knownAlleleCounts = new int[_knownAlleles.size()];
+        for (final int alleleId : countedAlleleIds) {
+            _knownAlleleCounts[_knownAlleles.getLocalIndex(alleleId)]++;
+        }
+        _contributorAlleleIds = new int[contributorAlleles.size()];
+        _contributorHomozygotes = new boolean[contributorAlleles.size()];
+        _contributorDropouts = new double[contributorDropouts.size()];
+        for (int idx = 0; idx < _contributorDropouts.length; idx++) {
+            _contributorAlleleIds[idx] = contributorAlleles.get(idx).getId();
+            _contributorHomozygotes[idx] = contributorAlleles.get(idx).isHomozygote();
+            _contributorDropouts[idx] = contributorDropouts.get(idx);
+        }
+        _contributorNames = contributorNames.toArray(new String[contributorNames.size()]);
+
+        // A bound candidate nearly always has two alleles at the locus
+        _totalAlleleCount = countedAlleleIds.length;
+        _thetaCorrection = hypothesis.getThetaCorrection();
+        _unknownCount = hypothesis.getUnknownCount();
+        _denominator = calculateDenominator(_candidateBound ? 2 : 0);
+
+        // The allele combinations are only needed when compiling for a search
+        if (candidateBound) {
+            _alleleNames = new HashSet<>();
+            for (final Locus replicateLocus : _replicateLoci) {
+                for (final Allele replicateAllele : replicateLocus.getAlleles()) {
+                    _alleleNames.add(replicateAllele.getAllele());
+                }
+            }
+        }
+        else {
+            _alleleNames = null;
+        }
+
+        // If Q is not shut down, add the non-rare alleles of the known contributors and non-contributors
+        if (candidateBound && !_qDesignationShutdown) {
+            for (final Contributor con : hypothesis.getContributors()) {
+                if (!(_candidateBound && con.isCandidate())) {
+                    addNonRareAlleles(con.getSample().getLocus(locusName));
+                }
+            }
+            for (final Contributor nonCon : hypothesis.getNonContributors()) {
+                if (!(_candidateBound && nonCon.isCandidate())) {
+                    addNonRareAlleles(nonCon.getSample().getLocus(locusName));
+                }
+            }
+
+            final LocusFrequencies frequencies = _statistics.getLocusFrequencies(locusName);
+            final int alleleCount = frequencies == null ? 0 : frequencies.size();
+            final String[] statisticAlleles = new String[alleleCount];
+            final double[] statisticFrequencies = new double[alleleCount];
+            int statisticAlleleCount = 0;
+            for (int idx = 0; idx < alleleCount; idx++) {
+                if (!frequencies.getAllele(idx).endsWith("-other")) {
+                    statisticAlleles[statisticAlleleCount] = frequencies.getAllele(idx);
+                    statisticFrequencies[statisticAlleleCount++] = frequencies.getFrequency(idx);
+                }
+            }
+            _statisticAlleles = Arrays.copyOf(statisticAlleles, statisticAlleleCount);
+            _statisticFrequencies = Arrays.copyOf(statisticFrequencies, statisticAlleleCount);
+        }
+        else {
+            _statisticAlleles = new String[0];
+            _statisticFrequencies = new double[0];
+        }
+
+        _candidateCombinations = new LinkedHashMap<Long, AlleleCombinations>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Long, AlleleCombinations> eldest) {
+                return size() > CANDIDATE_COMBINATIONS_CACHE_SIZE;
+            }
+        };
+    }
+
+    private double calculateDenominator(final int candidateAlleleCount) {
+        final int totalAlleleCount = _totalAlleleCount + candidateAlleleCount;
+        double denominator = 1;
+        if (_thetaCorrection > 0) {
+            for (int i = totalAlleleCount; i < totalAlleleCount + _unknownCount * 2; i++) {
+                denominator *= (1 + (i - 1) * _thetaCorrection);
+            }
+        }
+        return denominator;
+    }
+
+    private void addNonRareAlleles(final Locus locus) {
+        if (locus != null) {
+            for (final Allele allele : locus.getAlleles()) {
+                if (!_statistics.isRareAllele(allele)) {
+                    _alleleNames.add(allele.getAllele());
+                }
+            }
+        }
+    }
+
+    private double getDropout(final Hypothesis hypothesis, final Allele allele) {
+        if (allele.getLocus().getSample() == null) {
+            final double dropout = hypothesis.getUnknownDropoutProbability();
+            return allele.isHomozygote() ? dropout * dropout : dropout;
+        }
+
+        // Hypothesis.getContributor(Allele) finds the first contributor with the name of the sample
+        if (_candidateBound) {
+            for (final Contributor contributor : hypothesis.getContributors()) {
+                if (!contributor.isCandidate() && contributor.getSample().getName().equals(allele.getLocus().getSample().getName())) {
+                    return contributor.getDropOutProbability(allele.isHomozygote());
+                }
+            }
+        }
+        return hypothesis.getContributor(allele).getDropOutProbability(allele.isHomozygote());
+    }
+
+    String getLocusName() {
+        return _locusName;
+    }
+
+    int getLocusId() {
+        return _locusId;
+    }
+
+    Locus[] getReplicateLoci() {
+        return _replicateLoci;
+    }
+
+    CompiledReplicate[] getCompiledReplicates() {
+        return _compiledReplicates;
+    }
+
+    int getMaxReplicateAlleleCount() {
+        return _maxReplicateAlleleCount;
+    }
+
+    /**
+     * @param replicateIndex the index of a replicate
+     * @return the index of the first replicate that is identical to the replicate, which can be the replicate itself
+     */
+    int getFirstIdenticalReplicate(final int replicateIndex) {
+        return _firstIdenticalReplicates[replicateIndex];
+    }
+
+    /**
+     * Gets the factors for alleles of a replicate that have dropped in: the drop-in probability multiplied by the
+     * frequency of the allele.
+     *
+     * @param replicateIndex the index of the replicate
+     * @return the drop-in factor of each allele in the replicate, indexed by local allele index
+     */
+    double[] getDropInFactors(final int replicateIndex) {
+        return _dropInFactors[replicateIndex];
+    }
+
+    /**
+     * @return the factor for a replicate in which no allele has dropped in
+     */
+    double getNoDropInFactor() {
+        return _noDropInFactor;
+    }
+
+    /**
+     * Gets the product of the theta correction terms that the genotype probability of the unknowns is divided by.
+     *
+     * @param candidateAlleleIds the ids of the alleles of the bound candidate at this locus, or <code>null</code>
+     * @return the denominator for the candidate
+     */
+    double getDenominator(final int[] candidateAlleleIds) {
+        if (!_candidateBound) {
+            return _denominator;
+        }
+        final int candidateAlleleCount = candidateAlleleIds == null ? 0 : candidateAlleleIds.length;
+        return candidateAlleleCount == 2 ? _denominator : calculateDenominator(candidateAlleleCount);
+    }
+
+    /**
+     * @return <code>true</code> if the alleles of the candidate are not part of the compiled state
+     */
+    boolean isCandidateBound() {
+        return _candidateBound;
+    }
+
+    /**
+     * @return <code>true</code> if the bound candidate is a contributor, <code>false</code> if it is a non-contributor or
+     *         if no candidate is bound
+     */
+    boolean isCandidateContributing() {
+        return _candidateContributes;
+    }
+
+    /**
+     * @return the ids of the alleles of the known contributors, with the alleles of homozygote loci only once
+     */
+    int[] getContributorAlleleIds() {
+        return _contributorAlleleIds;
+    }
+
+    /**
+     * Gets the dropout probabilities of the alleles of the known contributors.
+     *
+     * @param candidate the bound candidate, or <code>null</code>
+     * @return the dropout probability of each allele in {@link #getContributorAlleleIds()}. The array must not be
+     *         modified.
+     */
+    double[] getContributorDropouts(final BoundCandidate candidate) {
+        if (!_candidateContributes || candidate == null) {
+            return _contributorDropouts;
+        }
+
+        // The candidate is the first contributor, so it takes precedence if a known contributor has the same name
+        final String candidateName = candidate.getName();
+        double[] dropouts = _contributorDropouts;
+        for (int idx = 0; idx < dropouts.length; idx++) {
+            if (candidateName.equals(_contributorNames[idx])) {
+                if (dropouts == _contributorDropouts) {
+                    dropouts = _contributorDropouts.clone();
+                }
+                dropouts[idx] = candidate.getDropOutProbability(_contributorHomozygotes[idx]);
+            }
+        }
+        return dropouts;
+    }
+
+    /**
+     * @return the alleles of the known contributors and non-contributors
+     */
+    LocalAlleleIndex getKnownAlleles() {
+        return _knownAlleles;
+    }
+
+    /**
+     * @return the counts of the alleles of the known contributors and non-contributors, indexed by the local index of
+     *         {@link #getKnownAlleles()}
+     */
+    int[] getKnownAlleleCounts() {
+        return _knownAlleleCounts;
+    }
+
+    /**
+     * Gets the allele combinations that are available to the unknown contributors.
+     *
+     * @param candidateAlleleIds the ids of the alleles of the bound candidate at this locus, or <code>null</code>
+     * @return the allele combinations for the candidate
+     * @throws IllegalStateException if the locus was not compiled for a search
+     */
+    AlleleCombinations getCombinations(final int[] candidateAlleleIds) {
+        if (_alleleNames == null) {
+            throw new IllegalStateException("Locus " + _locusName + " was not compiled for a search!");
+        }
+
+        // With the Q designation shut down, the alleles of the candidate are not added
+        int extra1 = -1;
+        int extra2 = -1;
+        boolean cacheable = true;
+        if (_candidateBound && !_qDesignationShutdown && candidateAlleleIds != null) {
+            for (final int id : candidateAlleleIds) {
+                if (id != extra1 && id != extra2 && !_alleleNames.contains(Allele.getNameForId(id)) && !_statistics.isRareAllele(_locusId, id)) {
+                    if (extra1 < 0) {
+                        extra1 = id;
+                    }
+                    else if (extra2 < 0) {
+                        extra2 = id;
+                    }
+                    else {
+                        // Only non-contributors can have more than two alleles at a locus
+                        cacheable = false;
+                    }
+                }
+            }
+        }
+
+        if (extra1 < 0) {
+            if (_combinations == null) {
+                _combinations = composeCombinations(_alleleNames);
+            }
+            return _combinations;
+        }
+
+        if (!cacheable) {
+            final HashSet<String> alleleNames = new HashSet<>(_alleleNames);
+            for (final int id : candidateAlleleIds) {
+                if (!_statistics.isRareAllele(_locusId, id)) {
+                    alleleNames.add(Allele.getNameForId(id));
+                }
+            }
+            return composeCombinations(alleleNames);
+        }
+
+        final long key = ((long) Math.min(extra1, extra2 < 0 ? extra1 : extra2) << 32) | Math.max(extra1, extra2);
+        AlleleCombinations combinations = _candidateCombinations.get(key);
+        if (combinations == null) {
+            final HashSet<String> alleleNames = new HashSet<>(_alleleNames);
+            for (final int id : candidateAlleleIds) {
+                if (id == extra1 || id == extra2) {
+                    alleleNames.add(Allele.getNameForId(id));
+                }
+            }
+            combinations = composeCombinations(alleleNames);
+            _candidateCombinations.put(key, combinations);
+        }
+        return combinations;
+    }
+
+    private AlleleCombinations composeCombinations(final Collection<String> alleleNames) {
+        final ArrayList<String> alleleCollection = new ArrayList<>(alleleNames);
+
+        // Add a single allele that has the combined probabilities of all alleles not in the samples and profiles
+        double otherFrequency = 0.0;
+        for (int idx = 0; idx < _statisticAlleles.length; idx++) {
+            if (!alleleNames.contains(_statisticAlleles[idx])) {
+                otherFrequency += _statisticFrequencies[idx];
+            }
+        }
+
+        // Do not add the combined allele if its frequency is not a number, infinity or zero
+        final String otherAllele = _locusName + "-other";
+        final boolean hasOther = !_qDesignationShutdown && !Double.isInfinite(otherFrequency) && !Double.isNaN(otherFrequency) && otherFrequency > 0;
+        if (hasOther) {
+            alleleCollection.add(otherAllele);
+        }
+
+        // Convert the collection of allele values to a list of Locus classes
+        final HashMap<String, Locus> possibleAlleleCombinations = new HashMap<>();
+        final String[] alleles = alleleCollection.toArray(new String[0]);
+        Arrays.sort(alleles);
+        for (int allele1Idx = 0; allele1Idx < alleles.length; allele1Idx++) {
+            for (int allele2Idx = allele1Idx; allele2Idx < alleles.length; allele2Idx++) {
+                final String name = allele1Idx + "." + allele2Idx;
+                if (!possibleAlleleCombinations.containsKey(name)) {
+                    final Locus newLocus = new Locus(_locusName);
+                    newLocus.addAllele(new Allele(alleles[allele1Idx]));
+                    newLocus.addAllele(new Allele(alleles[allele2Idx]));
+                    possibleAlleleCombinations.put(name, newLocus);
+                }
+            }
+        }
+        final Locus[] combinations = possibleAlleleCombinations.values().toArray(new Locus[possibleAlleleCombinations.size()]);
+        LOG.debug("Possible Allele Combinations: {}", (Object) combinations);
+
+        // Look up the frequency of each allele once. The '-other' allele gets its frequency here instead of through the
+        // population statistics.
+        final int otherId = hasOther ? Allele.getId(otherAllele) : -1;
+        final int locusId = Locus.getId(_locusName);
+        final LocalAlleleIndex alleleIndex = LocalAlleleIndex.of(combinations);
+        final double[] frequencies = new double[alleleIndex.size()];
+        for (int localIndex = 0; localIndex < frequencies.length; localIndex++) {
+            final int alleleId = alleleIndex.getAlleleId(localIndex);
+            frequencies[localIndex] = alleleId == otherId ? otherFrequency : _statistics.getProbability(locusId, alleleId);
+        }
+        return new AlleleCombinations(combinations, GenotypeProbabilityCalculatorFactory.getGenotypeProbabilityTable(_thetaCorrection, combinations, alleleIndex, frequencies));
+    }
+
+    /**
+     * The genotypes available to each unknown contributor at a locus, with a table of their probabilities.
+     */
+    static final class AlleleCombinations {
+        private final Locus[] _loci;
+        private final GenotypeProbabilityTable _genotypeTable;
+        private final ConcurrentLongDoubleMap _replicateProbabilities = new ConcurrentLongDoubleMap();
+
+        private AlleleCombinations(final Locus[] loci, final GenotypeProbabilityTable genotypeTable) {
+            _loci = loci;
+            _genotypeTable = genotypeTable;
+        }
+
+        Locus[] getLoci() {
+            return _loci;
+        }
+
+        /**
+         * @return the genotype probabilities of the combinations, indexed like {@link #getLoci()}
+         */
+        GenotypeProbabilityTable getGenotypeTable() {
+            return _genotypeTable;
+        }
+
+        /**
+         * Gets the replicate probabilities by the signature of the alleles of the unknowns, for jobs whose contributors
+         * do not depend on the candidate. The signatures refer to the local allele indices of the genotype table, so the
+         * probabilities are kept with the combinations.
+         *
+         * @return the replicate probabilities shared by all jobs that use these combinations
+         */
+        ConcurrentLongDoubleMap getReplicateProbabilities() {
+            return _replicateProbabilities;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.smartrank.model.smartrank;
+
+import java.util.ArrayList;
+
+import nl.minvenj.nfi.smartrank.domain.Allele;
+import nl.minvenj.nfi.smartrank.domain.Locus;
+
+/**
+ * The alleles of a replicate locus, compiled into a bit mask over the global allele ids. Within a replicate, each distinct
+ * allele has a local index that reflects the order of the global allele ids. Instances are immutable, so they can be
+ * shared by all jobs that evaluate the same locus.
+ */
+final class CompiledReplicate {
+    private final long[] _mask;
+    private final int[] _ranks;
+    private final Allele[] _alleles;
+    private final int[] _orderOfAppearance;
+
+    CompiledReplicate(final Locus replicateLocus) {
+        _mask = new long[(Allele.getRegisteredAlleleCount() + 63) >>> 6];
+        final ArrayList<Allele> distinct = new ArrayList<>();
+        for (final Allele allele : replicateLocus.getAlleles()) {
+            final int id = allele.getId();
+            if ((_mask[id >>> 6] & (1L << id)) == 0) {
+                _mask[id >>> 6] |= 1L << id;
+                distinct.add(allele);
+            }
+        }
+
+        _ranks = new int[_mask.length];
+        for (int word = 1; word < _mask.length; word++) {
+            _ranks[word] = _ranks[word - 1] + Long.bitCount(_mask[word - 1]);
+        }
+
+        _alleles = new Allele[distinct.size()];
+        _orderOfAppearance = new int[distinct.size()];
+        for (int idx = 0; idx < distinct.size(); idx++) {
+            final int localIndex = getLocalIndex(distinct.get(idx).getId());
+            _alleles[localIndex] = distinct.get(idx);
+            _orderOfAppearance[idx] = localIndex;
+        }
+    }
+
+    /**
+     * @return the number of distinct alleles in the replicate
+     */
+    int size() {
+        return _alleles.length;
+    }
+
+    /**
+     * Gets the local index of an allele.
+     *
+     * @param alleleId the global id of the allele
+     * @return the local index of the allele, or -1 if the allele is not present in the replicate
+     */
+    int getLocalIndex(final int alleleId) {
+        final int word = alleleId >>> 6;
+        final long bit = 1L << alleleId;
+        if (word >= _mask.length || (_mask[word] & bit) == 0) {
+            return -1;
+        }
+        return _ranks[word] + Long.bitCount(_mask[word] & (bit - 1));
+    }
+
+    Allele getAllele(final int localIndex) {
+        return _alleles[localIndex];
+    }
+
+    /**
+     * @return the local index of the n-th distinct allele in the order in which the alleles appear in the replicate
+     */
+    int getOrderOfAppearance(final int n) {
+        return _orderOfAppearance[n];
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015 Netherlands Forensic Institute
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package nl.minvenj.nfi.smartrank.model.smartrank;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A thread-safe open-addressing hash table from primitive long keys to double values. The key 0 marks an empty slot and
+ * cannot be stored. Lookups use an optimistic read, so they do not block unless a value is being added at the same
+ * time.
+ */
+final class ConcurrentLongDoubleMap {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final StampedLock _lock = new StampedLock();
+    private Table _table = new Table(INITIAL_CAPACITY);
+    private int _size;
+
+    /**
+     * Gets a value.
+     *
+     * @param key the key, which must not be 0
+     * @return the value stored under the key, or {@link Double#NaN} if there is none
+     */
+    double get(final long key) {
+        long stamp = _lock.tryOptimisticRead();
+        double value = _table.find(key);
+        if (!_lock.validate(stamp)) {
+            stamp = _lock.readLock();
+            try {
+                value = _table.find(key);
+            }
+            finally {
+                _lock.unlockRead(stamp);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Stores a value, replacing any value that was stored under the same key.
+     *
+     * @param key the key, which must not be 0
+     * @param value the value
+     */
+    void put(final long key, final double value) {
+        final long stamp = _lock.writeLock();
+        try {
+            if (_table.insert(key, value)) {
+                _size++;
+                if (_size * 2 > _table._keys.length) {
+                    final Table grown = new Table(_table._keys.length * 2);
+                    for (int idx = 0; idx < _table._keys.length; idx++) {
+                        if (_table._keys[idx] != 0) {
+                            grown.insert(_table._keys[idx], _table._values[idx]);
+                        }
+                    }
+                    _table = grown;
+                }
+            }
+        }
+        finally {
+            _lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return the number of keys in the map
+     */
+    int size() {
+        final long stamp = _lock.readLock();
+        try {
+            return _size;
+        }
+        finally {
+            _lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Scrambles the bits of a key, so that keys that only differ in a few bits are spread over the table.
+     *
+     * @param key the key
+     * @return the hash of the key
+     */
+    static long mix(final long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        return h * 0x9E3779B97F4A7C15L;
+    }
+
+    private static final class Table {
+        private final long[] _keys;
+        private final double[] _values;
+        private final int _mask;
+
+        Table(final int capacity) {
+            _keys = new long[capacity];
+            _values = new double[capacity];
+            _mask = capacity - 1;
+        }
+
+        double find(final long key) {
+            int idx = (int) mix(key) & _mask;
+            for (int probes = 0; probes <= _mask; probes++) {
+                final long current = _keys[idx];
+                if (current == key) {
+                    return _values[idx];
+                }
+                if (current == 0) {
+                    break;
+                }
+                idx = (idx + 1) & _mask;
+            }
+            return Double.NaN;
+        }
+
+        /**
+         * Stores a value.
+         *
+         * @return true if a new key was added, false if the value of an existing key was replaced
+         */
+        boolean insert(final long key, final double value) {
+            int idx = (int) mix(key) & _mask;
+            while (_keys[idx] != 0 && _keys[idx] != key) {
+                idx = (idx + 1) & _mask;
+            }
+            final boolean added = _keys[idx] == 0;
+            _values[idx] = value;
+            _keys[idx] = key;
+            return added;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015 Netherlands Forensic Institute
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package nl.minvenj.nfi.smartrank.model.smartrank;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe cache of per-locus probabilities keyed by the genotype of the candidate at that locus. Entries are
+ * stored under a primitive key composed of a hypothesis fingerprint, the locus id and the ids of both alleles, so a
+ * single cache can be shared by all models taking part in a search. A genotype is unordered, so the order in which
+ * the allele ids are supplied does not matter. Lookups do not block as long as no entry is
+ * being added to the same segment.
+ */
+public final class GenotypeResultCache {
+
+    private static final int FINGERPRINT_BITS = 20;
+    private static final int LOCUS_BITS = 12;
+    private static final int ALLELE_BITS = 16;
+    private static final int SEGMENT_COUNT = 64;
+
+    // The ids of the hypothesis fingerprints seen by this cache. The cache lives as long as a search, so the ids do
+    // not run out during a long session.
+    private final ConcurrentHashMap<String, Integer> _fingerprints = new ConcurrentHashMap<>();
+    private final AtomicInteger _nextFingerprintId = new AtomicInteger(1);
+    private final ConcurrentLongDoubleMap[] _segments;
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+
+    public GenotypeResultCache() {
+        _segments = new ConcurrentLongDoubleMap[SEGMENT_COUNT];
+        for (int idx = 0; idx < SEGMENT_COUNT; idx++) {
+            _segments[idx] = new ConcurrentLongDoubleMap();
+        }
+    }
+
+    /**
+     * Gets the numeric id for a hypothesis fingerprint. Within this cache, equal fingerprints always get the same id
+     * and different fingerprints never share an id.
+     *
+     * @param fingerprint a string describing everything a cached result depends on, apart from the candidate genotype
+     * @return an id for the fingerprint, to be used in calls to {@link #get(int, int, int, int)} and
+     *         {@link #put(int, int, int, int, double)}
+     */
+    public int getFingerprintId(final String fingerprint) {
+        Integer id = _fingerprints.get(fingerprint);
+        if (id == null) {
+            final Integer newId = _nextFingerprintId.getAndIncrement();
+            id = _fingerprints.putIfAbsent(fingerprint, newId);
+            if (id == null) {
+                id = newId;
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Gets a cached result.
+     *
+     * @param fingerprintId the id of the hypothesis fingerprint
+     * @param locusId the id of the locus
+     * @param allele1Id the id of the first allele of the genotype
+     * @param allele2Id the id of the second allele of the genotype
+     * @return the cached value, or {@link Double#NaN} if no value is cached for the supplied key
+     */
+    public double get(final int fingerprintId, final int locusId, final int allele1Id, final int allele2Id) {
+        if (!isCacheable(fingerprintId, locusId, allele1Id, allele2Id)) {
+            _misses.increment();
+            return Double.NaN;
+        }
+        final long key = toKey(fingerprintId, locusId, allele1Id, allele2Id);
+        final double value = getSegment(key).get(key);
+        if (Double.isNaN(value)) {
+            _misses.increment();
+        }
+        else {
+            _hits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Stores a result in the cache. Values that cannot be represented in the key space of the cache, and NaN values,
+     * are silently ignored.
+     *
+     * @param fingerprintId the id of the hypothesis fingerprint
+     * @param locusId the id of the locus
+     * @param allele1Id the id of the first allele of the genotype
+     * @param allele2Id the id of the second allele of the genotype
+     * @param value the value to store
+     */
+    public void put(final int fingerprintId, final int locusId, final int allele1Id, final int allele2Id, final double value) {
+        if (!Double.isNaN(value) && isCacheable(fingerprintId, locusId, allele1Id, allele2Id)) {
+            final long key = toKey(fingerprintId, locusId, allele1Id, allele2Id);
+            getSegment(key).put(key, value);
+        }
+    }
+
+    /**
+     * @return the number of lookups that returned a cached value
+     */
+    public long getHitCount() {
+        return _hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that did not return a cached value
+     */
+    public long getMissCount() {
+        return _misses.sum();
+    }
+
+    /**
+     * @return the number of entries in the cache
+     */
+    public int size() {
+        int size = 0;
+        for (final ConcurrentLongDoubleMap segment : _segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return size() + " entries, " + getHitCount() + " hits, " + getMissCount() + " misses";
+    }
+
+    private static boolean isCacheable(final int fingerprintId, final int locusId, final int allele1Id, final int allele2Id) {
+        return fingerprintId > 0 && fingerprintId < (1 << FINGERPRINT_BITS)
+            && locusId >= 0 && locusId < (1 << LOCUS_BITS)
+            && allele1Id >= 0 && allele1Id < (1 << ALLELE_BITS)
+            && allele2Id >= 0 && allele2Id < (1 << ALLELE_BITS);
+    }
+
+    private static long toKey(final int fingerprintId, final int locusId, final int allele1Id, final int allele2Id) {
+        final int lowId = Math.min(allele1Id, allele2Id);
+        final int highId = Math.max(allele1Id, allele2Id);
+        return ((long) fingerprintId << (LOCUS_BITS + 2 * ALLELE_BITS)) | ((long) locusId << (2 * ALLELE_BITS)) | ((long) lowId << ALLELE_BITS) | highId;
+    }
+
+    private ConcurrentLongDoubleMap getSegment(final long key) {
+        return _segments[(int) (ConcurrentLongDoubleMap.mix(key) >>> 58)];
+    }
+}
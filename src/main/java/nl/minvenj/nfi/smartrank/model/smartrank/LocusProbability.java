@@ -40,7 +40,7 @@ class LocusProbability {
         _value += otherValue;
     }
 
-    Double getValue() {
+    double getValue() {
         return _value;
     }
 
@@ -16,22 +16,23 @@
  */
 package nl.minvenj.nfi.smartrank.model.smartrank;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.NoSuchElementException;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import nl.minvenj.nfi.smartrank.analysis.scheduler.TaskGroup;
 import nl.minvenj.nfi.smartrank.domain.Allele;
-import nl.minvenj.nfi.smartrank.domain.Contributor;
 import nl.minvenj.nfi.smartrank.domain.Hypothesis;
 import nl.minvenj.nfi.smartrank.domain.Locus;
 import nl.minvenj.nfi.smartrank.domain.Sample;
 import nl.minvenj.nfi.smartrank.model.smartrank.genotype.GenotypeProbabilityCalculator;
 import nl.minvenj.nfi.smartrank.model.smartrank.genotype.GenotypeProbabilityCalculatorFactory;
+import nl.minvenj.nfi.smartrank.model.smartrank.genotype.GenotypeProbabilityTable;
+import nl.minvenj.nfi.smartrank.model.smartrank.genotype.LocalAlleleIndex;
 
 /**
  * This class performs probability calculations at a single locus for a single
@@ -41,308 +42,480 @@ public class LocusProbabilityJob implements Callable<LocusProbability> {
 
     private static final Logger LOG = LoggerFactory.getLogger(LocusProbabilityJob.class);
 
-    private final Hypothesis _hypothesis;
+    // Each allele of an unknown takes 7 bits in a signature, and a signature holds the alleles of up to 4 unknowns
+    private static final int SIGNATURE_CODE_BITS = 7;
+    private static final int MAX_SIGNATURE_UNKNOWNS = 4;
+
     private final LocusProbability _locusProbability;
     private final PermutationIterator _permutationIterator;
-    private final Collection<Locus> _replicateLoci;
+    private final PartitionedLocusProbability _partition;
+    private final CompiledReplicate[] _compiledReplicates;
     private final String _locusName;
-    // Set A is the drop-out set. These alleles are present in the reference sample, but not the replicate
-    private final Allele[] _droppedOutA = new Allele[Allele.getRegisteredAlleleCount()];
-    private int _droppedOutACount = 0;
-    // This array holds the product of all dropout probabilitities for all alleles that are present in one or more profile
-    private final double[] _presentBProbabilities = new double[Allele.getRegisteredAlleleCount()];
-    // Set C is the set of of alleles that are present in the replicate, but not the reference sample
-    private final Allele[] _droppedInC = new Allele[Allele.getRegisteredAlleleCount()];
-    private int _droppedInCCount = 0;
 
-    private int _presentMinId;
-    private int _presentMaxId;
+    // The index of the first identical replicate and the drop-in factors of each replicate, taken from the compiled locus
+    private final int[] _firstIdenticalReplicates;
+    private final double[][] _dropInFactors;
+    private final double _noDropInFactor;
+    // The probability of each replicate for the current alleles. Only set for the first of identical replicates.
+    private final double[] _replicateProbabilities;
+
+    // The product of all dropout probabilities for each allele in the current replicate that is also present in one or more profiles, indexed by local allele index
+    private final double[] _presentBProbabilities;
+    // Bit mask of the local allele indices in the current replicate that are present in one or more profiles
+    private final long[] _presentB;
+    // Set C is the set of alleles that are present in the replicate, but not the reference sample. Holds local allele indices.
+    private final int[] _droppedInC;
+    // The position of each local allele index in set C
+    private final int[] _droppedInCPositions;
+    private int _droppedInCCount = 0;
 
-    // This array contains all alleles for all contributors augmented with the alleles for the current permutation
-    private final Allele[] _allAlleles = new Allele[Allele.getRegisteredAlleleCount() * 2];
+    // The ids of all alleles for all contributors augmented with the alleles for the current permutation
+    private final int[] _allAlleleIds;
+    // The dropout probability of each allele in _allAlleleIds, with the homozygote dropout for alleles of homozygotes
+    private final double[] _allAlleleDropouts;
     private int _allAlleleCount = 0;
 
-// Cache for locus results. This to be able to skip recalculation for identical replicate loci
-    private final HashMap<Locus, Double> _locusProbabilities;
-
     private final double _dropOutProbability;
     private final double _dropOutProbabilityHomozygote;
-    private final double _presentMultipleProbability;
-    private final double _presentMultipleProbabilityHomozygote;
-    private double _denominator;
+    private final double _denominator;
 
-    private int _totalAlleleCount;
-    private final int[] _alleleCounts = new int[Allele.getRegisteredAlleleCount()];
-    private final int[] _localAlleleCounts = new int[Allele.getRegisteredAlleleCount()];
+    // The allele counts indexed by allele id and the calculator using them. Only used without a genotype table.
+    private final int[] _alleleCounts;
+    private final int[] _localAlleleCounts;
     private int _currentAlleleCount;
     private final GenotypeProbabilityCalculator _genotypeCalculator;
 
-    private boolean _interrupted;
+    // The table of genotype probabilities, with the allele counts indexed by the local allele index of the table
+    private final GenotypeProbabilityTable _genotypeTable;
+    private final int[] _tableAlleleCounts;
+    private final int[] _localTableAlleleCounts;
+
+    // The replicate probabilities by the signature of the alleles of the unknowns, and the codes for the signature
+    private final ConcurrentLongDoubleMap _signatureProbabilities;
+    private final int[] _signatureCodes;
 
     LocusProbabilityJob(final String locusName, final Collection<Sample> crimesceneProfiles, final Hypothesis hypothesis) {
         this(locusName, null, crimesceneProfiles, hypothesis);
     }
 
     LocusProbabilityJob(final String locusName, final PermutationIterator permutationIterator, final Collection<Sample> replicates, final Hypothesis hypothesis) {
-        if (locusName == null) {
-            throw new IllegalArgumentException("No locus name specified!");
-        }
+        this(new CompiledLocus(locusName, replicates, hypothesis, false), null, null, permutationIterator, null, null, hypothesis);
+    }
 
-        if (replicates == null || replicates.isEmpty()) {
-            throw new IllegalArgumentException("No replicates specified!");
-        }
+    /**
+     * Creates a job that binds a candidate to a compiled locus.
+     *
+     * @param compiledLocus the compiled locus
+     * @param candidate the candidate contributor or non-contributor if the compiled locus leaves the candidate out,
+     *            <code>null</code> otherwise
+     * @param candidateAlleleIds the ids of the alleles of the candidate at the locus, or <code>null</code>
+     * @param permutationIterator the iterator over the genotypes of the unknowns, or <code>null</code> if there are no unknowns
+     * @param genotypeTable the probabilities of the genotypes of the unknowns, indexed like the genotypes of the
+     *            permutation iterator, or <code>null</code> to take them from the population statistics
+     * @param replicateProbabilities the replicate probabilities shared with the other jobs for the same alleles of the
+     *            known contributors, or <code>null</code>. Only used with a genotype table.
+     * @param hypothesis the hypothesis
+     */
+    LocusProbabilityJob(final CompiledLocus compiledLocus, final BoundCandidate candidate, final int[] candidateAlleleIds, final PermutationIterator permutationIterator, final GenotypeProbabilityTable genotypeTable, final ConcurrentLongDoubleMap replicateProbabilities, final Hypothesis hypothesis) {
+        this(compiledLocus, candidate, candidateAlleleIds, permutationIterator, null, genotypeTable, replicateProbabilities, hypothesis);
+    }
 
-        _locusProbabilities = new HashMap<>(replicates.size());
+    /**
+     * Creates a job that binds a candidate to a compiled locus and works on the chunks of a partition until none are left.
+     *
+     * @param compiledLocus the compiled locus
+     * @param candidate the candidate contributor or non-contributor if the compiled locus leaves the candidate out,
+     *            <code>null</code> otherwise
+     * @param candidateAlleleIds the ids of the alleles of the candidate at the locus, or <code>null</code>
+     * @param partition the partition of the genotypes of the unknowns
+     * @param genotypeTable the probabilities of the genotypes of the unknowns, indexed like the genotypes of the
+     *            partition
+     * @param replicateProbabilities the replicate probabilities shared with the other jobs for the same alleles of the
+     *            known contributors, or <code>null</code>
+     * @param hypothesis the hypothesis
+     */
+    LocusProbabilityJob(final CompiledLocus compiledLocus, final BoundCandidate candidate, final int[] candidateAlleleIds, final PartitionedLocusProbability partition, final GenotypeProbabilityTable genotypeTable, final ConcurrentLongDoubleMap replicateProbabilities, final Hypothesis hypothesis) {
+        this(compiledLocus, candidate, candidateAlleleIds, null, partition, genotypeTable, replicateProbabilities, hypothesis);
+    }
+
+    private LocusProbabilityJob(final CompiledLocus compiledLocus, final BoundCandidate candidate, final int[] candidateAlleleIds, final PermutationIterator permutationIterator, final PartitionedLocusProbability partition, final GenotypeProbabilityTable genotypeTable, final ConcurrentLongDoubleMap replicateProbabilities, final Hypothesis hypothesis) {
+        _partition = partition;
         _permutationIterator = permutationIterator;
-        _replicateLoci = new ArrayList<>();
-        for (final Sample replicate : replicates) {
-            Locus locus = replicate.getLocus(locusName);
-            if (locus == null) {
-                locus = new Locus(locusName);
-                locus.setSample(replicate);
-            }
-            _replicateLoci.add(locus);
+        _compiledReplicates = compiledLocus.getCompiledReplicates();
+        _firstIdenticalReplicates = new int[_compiledReplicates.length];
+        _dropInFactors = new double[_compiledReplicates.length][];
+        for (int idx = 0; idx < _compiledReplicates.length; idx++) {
+            _firstIdenticalReplicates[idx] = compiledLocus.getFirstIdenticalReplicate(idx);
+            _dropInFactors[idx] = compiledLocus.getDropInFactors(idx);
         }
-        _hypothesis = hypothesis;
-        _locusName = locusName;
-        _locusProbability = new LocusProbability(hypothesis, locusName);
+        _noDropInFactor = compiledLocus.getNoDropInFactor();
+        _replicateProbabilities = new double[_compiledReplicates.length];
+        final int maxReplicateAlleleCount = compiledLocus.getMaxReplicateAlleleCount();
+        _presentBProbabilities = new double[maxReplicateAlleleCount];
+        _presentB = new long[(maxReplicateAlleleCount + 63) >>> 6];
+        _droppedInC = new int[maxReplicateAlleleCount];
+        _droppedInCPositions = new int[maxReplicateAlleleCount];
+        _locusName = compiledLocus.getLocusName();
+        _locusProbability = new LocusProbability(hypothesis, _locusName);
 
         _dropOutProbability = hypothesis.getUnknownDropoutProbability();
         _dropOutProbabilityHomozygote = _dropOutProbability * _dropOutProbability;
-        _presentMultipleProbability = _dropOutProbability;
-        _presentMultipleProbabilityHomozygote = _dropOutProbabilityHomozygote;
-
-        _genotypeCalculator = GenotypeProbabilityCalculatorFactory.getUnrelatedGenotypeProbabilityCalculator(hypothesis);
-
-        // Build allele count table
-        for (final Contributor contributor : hypothesis.getContributors()) {
-            Locus locus = contributor.getSample().getLocus(locusName);
 
-            if (locus == null) {
-                locus = new Locus(locusName);
+        // The alleles of the candidate, the other contributors and the unknowns, so the size does not depend on the
+        // number of registered alleles
+        final int[] contributorAlleleIds = compiledLocus.getContributorAlleleIds();
+        final int maxAlleleCount = (candidateAlleleIds == null ? 0 : candidateAlleleIds.length) + contributorAlleleIds.length + hypothesis.getUnknownCount() * 2;
+        _allAlleleIds = new int[maxAlleleCount];
+        _allAlleleDropouts = new double[maxAlleleCount];
+
+        _genotypeTable = genotypeTable;
+        if (genotypeTable != null) {
+            // Count the alleles of the known contributors and the candidate that can occur in the genotypes of the unknowns
+            _tableAlleleCounts = new int[genotypeTable.getAlleleCount()];
+            _localTableAlleleCounts = new int[_tableAlleleCounts.length];
+            final LocalAlleleIndex knownAlleles = compiledLocus.getKnownAlleles();
+            final int[] knownAlleleCounts = compiledLocus.getKnownAlleleCounts();
+            for (int idx = 0; idx < knownAlleleCounts.length; idx++) {
+                final int tableIndex = genotypeTable.getLocalIndex(knownAlleles.getAlleleId(idx));
+                if (tableIndex >= 0) {
+                    _tableAlleleCounts[tableIndex] += knownAlleleCounts[idx];
+                }
             }
-
-            boolean skipHomozygotes = false;
-            for (final Allele allele : locus.getAlleles()) {
-                _alleleCounts[allele.getId()]++;
-                _totalAlleleCount++;
-                if (!skipHomozygotes) {
-                    _allAlleles[_allAlleleCount++] = allele;
-                    skipHomozygotes = allele.isHomozygote();
+            if (candidateAlleleIds != null) {
+                for (final int alleleId : candidateAlleleIds) {
+                    final int tableIndex = genotypeTable.getLocalIndex(alleleId);
+                    if (tableIndex >= 0) {
+                        _tableAlleleCounts[tableIndex]++;
+                    }
                 }
             }
+            _alleleCounts = null;
+            _localAlleleCounts = null;
+            _genotypeCalculator = null;
         }
-        for (final Contributor nonContributor : hypothesis.getNonContributors()) {
-            Locus locus = nonContributor.getSample().getLocus(locusName);
-
-            if (locus == null) {
-                locus = new Locus(locusName);
-//                throw new IllegalArgumentException("Input error: profile " + nonContributor.getSample().getName() + " does not contain locus " + locusName);
+        else if (hypothesis.getUnknownCount() > 0) {
+            // Without a table, the calculators take the population statistics and counts indexed by allele id
+            _tableAlleleCounts = null;
+            _localTableAlleleCounts = null;
+            _alleleCounts = new int[Allele.getRegisteredAlleleCount()];
+            _localAlleleCounts = new int[_alleleCounts.length];
+            final LocalAlleleIndex knownAlleles = compiledLocus.getKnownAlleles();
+            final int[] knownAlleleCounts = compiledLocus.getKnownAlleleCounts();
+            for (int idx = 0; idx < knownAlleleCounts.length; idx++) {
+                _alleleCounts[knownAlleles.getAlleleId(idx)] = knownAlleleCounts[idx];
             }
-            for (final Allele allele : locus.getAlleles()) {
-                _alleleCounts[allele.getId()]++;
-                _totalAlleleCount++;
+            if (candidateAlleleIds != null) {
+                for (final int alleleId : candidateAlleleIds) {
+                    _alleleCounts[alleleId]++;
+                }
             }
+            _genotypeCalculator = GenotypeProbabilityCalculatorFactory.getUnrelatedGenotypeProbabilityCalculator(hypothesis);
+        }
+        else {
+            _tableAlleleCounts = null;
+            _localTableAlleleCounts = null;
+            _alleleCounts = null;
+            _localAlleleCounts = null;
+            _genotypeCalculator = null;
         }
 
-        _denominator = 1;
-        if (hypothesis.getThetaCorrection() > 0) {
-            for (int i = _totalAlleleCount; i < _totalAlleleCount + hypothesis.getUnknownCount() * 2; i++) {
-                _denominator *= (1 + (i - 1) * hypothesis.getThetaCorrection());
+        // Bind the alleles of the candidate, which is the first contributor, and add those of the other contributors.
+        // A candidate that is a non-contributor only adds to the allele counts. A contributing candidate has two alleles,
+        // which are added once for a homozygote.
+        if (candidateAlleleIds != null && compiledLocus.isCandidateContributing()) {
+            final boolean homozygote = candidateAlleleIds[0] == candidateAlleleIds[1];
+            _allAlleleDropouts[_allAlleleCount] = candidate.getDropOutProbability(homozygote);
+            _allAlleleIds[_allAlleleCount++] = candidateAlleleIds[0];
+            if (!homozygote) {
+                _allAlleleDropouts[_allAlleleCount] = candidate.getDropOutProbability(false);
+                _allAlleleIds[_allAlleleCount++] = candidateAlleleIds[1];
             }
         }
+        System.arraycopy(contributorAlleleIds, 0, _allAlleleIds, _allAlleleCount, contributorAlleleIds.length);
+        System.arraycopy(compiledLocus.getContributorDropouts(candidate), 0, _allAlleleDropouts, _allAlleleCount, contributorAlleleIds.length);
+        _allAlleleCount += contributorAlleleIds.length;
+
+        _denominator = compiledLocus.getDenominator(candidateAlleleIds);
+
+        // The signature of the alleles of the unknowns must fit in a long
+        final boolean signaturesFit = hypothesis.getUnknownCount() <= MAX_SIGNATURE_UNKNOWNS && genotypeTable != null && genotypeTable.getAlleleCount() < (1 << (SIGNATURE_CODE_BITS - 1)) - 1;
+        _signatureProbabilities = signaturesFit ? replicateProbabilities : null;
+        _signatureCodes = new int[hypothesis.getUnknownCount() * 2];
     }
 
     @Override
     public LocusProbability call() throws Exception {
         LOG.debug("Started {}", _locusName);
+        final TaskGroup group = TaskGroup.current();
         try {
-            if (_permutationIterator == null) {
+            if (_partition != null) {
+                calculatePartition(group);
+            }
+            else if (_permutationIterator == null) {
                 _locusProbability.setValue(calculateSingleLocusProbability());
             }
             else {
-                Permutation permutation;
-                while ((permutation = _permutationIterator.next()) != null) {
-                    if (_interrupted)
-                        return _locusProbability;
+                while (_permutationIterator.advance()) {
+                    if (group != null && group.isCancelled()) {
+                        throw new CancellationException();
+                    }
 
-                    final double replicateProbability = calculateReplicateProbability(permutation.getLoci());
-                    final double genotypeProbability = calculateGenotypeProbability(permutation.getLoci());
+                    final double replicateProbability = calculateReplicateProbability(_permutationIterator);
+                    final double genotypeProbability = calculateGenotypeProbability(_permutationIterator);
                     final double prob = genotypeProbability * replicateProbability;
-                    _locusProbability.addValue(permutation.getPermutationFactor() * prob);
+                    _locusProbability.addValue(_permutationIterator.getCurrentPermutationFactor() * prob);
                 }
 
             }
         }
-        catch (final NoSuchElementException e) {
-            // Can happen if multiple thread share a permutation iterator object. Nothing to worry about.
-            LOG.debug("No Such Element", e);
+        catch (final CancellationException ce) {
+            LOG.debug("Calculations for locus {} were cancelled", _locusName);
+            if (_partition != null) {
+                _partition.cancel(false);
+            }
+            throw ce;
         }
-//        catch (final InterruptedException ie) {
-//            LOG.debug("Calculations for locus {} were interrupted!", _locusName);
-//            throw ie;
-//        }
         catch (final Exception e) {
-            throw new Exception("Error in Locus Probability calculation for " + _locusName, e);
+            final Exception failure = new Exception("Error in Locus Probability calculation for " + _locusName, e);
+            if (_partition != null) {
+                _partition.fail(failure);
+            }
+            throw failure;
+        }
+        catch (final Error e) {
+            if (_partition != null) {
+                _partition.fail(e);
+            }
+            throw e;
         }
 
         return _locusProbability;
     }
 
+    /**
+     * Claims chunks of the partition and reports the terms of their genotypes until all chunks have been claimed.
+     *
+     * @param group the group of the task running this job, or <code>null</code> if the job is not run as a task
+     */
+    private void calculatePartition(final TaskGroup group) {
+        int chunk;
+        while ((chunk = _partition.claimChunk()) >= 0) {
+            final PermutationIterator permutationIterator = _partition.getIterator(chunk);
+            final double[] terms = new double[(int) permutationIterator.size()];
+            int termIndex = 0;
+            while (permutationIterator.advance()) {
+                if (group != null && group.isCancelled()) {
+                    throw new CancellationException();
+                }
+
+                final double replicateProbability = calculateReplicateProbability(permutationIterator);
+                final double genotypeProbability = calculateGenotypeProbability(permutationIterator);
+                final double prob = genotypeProbability * replicateProbability;
+                terms[termIndex++] = permutationIterator.getCurrentPermutationFactor() * prob;
+            }
+            _partition.complete(chunk, terms);
+        }
+    }
+
     public double calculateSingleLocusProbability() {
         return calculateReplicateProbability(new Locus[]{});
     }
 
     public double calculateReplicateProbability(final Locus[] unknowns) {
-        _locusProbabilities.clear();
-        double replicateProbability = 1;
-
         _currentAlleleCount = _allAlleleCount;
         if (unknowns != null) {
             for (final Locus unknown : unknowns) {
                 boolean skipHomozygotes = false;
                 for (final Allele allele : unknown.getAlleles()) {
                     if (!skipHomozygotes) {
-                        _allAlleles[_currentAlleleCount++] = allele;
+                        _allAlleleDropouts[_currentAlleleCount] = getUnknownDropout(allele);
+                        _allAlleleIds[_currentAlleleCount++] = allele.getId();
                         skipHomozygotes = allele.isHomozygote();
                     }
                 }
             }
         }
+        return calculateReplicateProbability();
+    }
+
+    /**
+     * Calculates the replicate probability of the current permutation of an iterator. With a genotype table, the
+     * probability only depends on the alleles of the unknowns and on whether they come from a homozygote. It is
+     * calculated once for each signature of these alleles and shared with the other jobs through the replicate
+     * probability map. To get the same result regardless of the permutation that calculates it, the alleles of the
+     * unknowns are added in the order of the signature.
+     */
+    private double calculateReplicateProbability(final PermutationIterator permutationIterator) {
+        if (_signatureProbabilities == null) {
+            return calculateReplicateProbability(permutationIterator.getCurrentLoci());
+        }
+
+        // Collect the codes of the alleles of the unknowns in ascending order. Homozygotes add their allele once.
+        final int[] genotypeIndices = permutationIterator.getCurrentIndices();
+        int codeCount = 0;
+        for (int idx = 0; idx < genotypeIndices.length; idx++) {
+            final int first = _genotypeTable.getFirstAllele(genotypeIndices[idx]);
+            final int second = _genotypeTable.getSecondAllele(genotypeIndices[idx]);
+            if (first == second) {
+                codeCount = addSignatureCode(codeCount, ((first << 1) | 1) + 1);
+            }
+            else {
+                codeCount = addSignatureCode(codeCount, (first << 1) + 1);
+                codeCount = addSignatureCode(codeCount, (second << 1) + 1);
+            }
+        }
+        long signature = 0;
+        for (int idx = 0; idx < codeCount; idx++) {
+            signature = (signature << SIGNATURE_CODE_BITS) | _signatureCodes[idx];
+        }
 
-        for (final Locus replicateLocus : _replicateLoci) {
-            Double precalculated = _locusProbabilities.get(replicateLocus);
-            if (precalculated == null) {
-                precalculated = calculateReplicateProbability(replicateLocus);
-                _locusProbabilities.put(replicateLocus, precalculated);
+        double replicateProbability = _signatureProbabilities.get(signature);
+        if (Double.isNaN(replicateProbability)) {
+            _currentAlleleCount = _allAlleleCount;
+            for (int idx = 0; idx < codeCount; idx++) {
+                final int code = _signatureCodes[idx] - 1;
+                _allAlleleDropouts[_currentAlleleCount] = (code & 1) != 0 ? _dropOutProbabilityHomozygote : _dropOutProbability;
+                _allAlleleIds[_currentAlleleCount++] = _genotypeTable.getAlleleId(code >>> 1);
             }
-            replicateProbability *= precalculated;
+            replicateProbability = calculateReplicateProbability();
+            _signatureProbabilities.put(signature, replicateProbability);
         }
         return replicateProbability;
     }
 
-    private double calculateReplicateProbability(final Locus replicateLocus) {
-        double returnValue = 1.0;
-
-        final boolean[] presentFlags = new boolean[Allele.getRegisteredAlleleCount()];
-
-        classifyAlleles(replicateLocus, presentFlags);
+    /**
+     * Inserts a code into the sorted codes of the signature.
+     *
+     * @return the new number of codes
+     */
+    private int addSignatureCode(final int codeCount, final int code) {
+        int idx = codeCount;
+        while (idx > 0 && _signatureCodes[idx - 1] > code) {
+            _signatureCodes[idx] = _signatureCodes[idx - 1];
+            idx--;
+        }
+        _signatureCodes[idx] = code;
+        return codeCount + 1;
+    }
 
-        for (int idx = 0; idx < _droppedOutACount; idx++) {
-            final Allele a = _droppedOutA[idx];
-            if (a.getLocus().getSample() == null) {
-                returnValue *= a.isHomozygote() ? _dropOutProbabilityHomozygote : _dropOutProbability;
-            }
-            else {
-                returnValue *= _hypothesis.getContributor(a).getDropOutProbability(a.isHomozygote());
+    /**
+     * Calculates the product of the probabilities of all replicates for the alleles in {@link #_allAlleleIds}. Identical
+     * replicates are only calculated once.
+     */
+    private double calculateReplicateProbability() {
+        double replicateProbability = 1;
+        for (int idx = 0; idx < _compiledReplicates.length; idx++) {
+            final int first = _firstIdenticalReplicates[idx];
+            if (first == idx) {
+                _replicateProbabilities[idx] = calculateReplicateProbability(_compiledReplicates[idx], _dropInFactors[idx]);
             }
+            replicateProbability *= _replicateProbabilities[first];
         }
+        return replicateProbability;
+    }
+
+    private double calculateReplicateProbability(final CompiledReplicate replicate, final double[] dropInFactors) {
+        // Set A is the drop-out set. These alleles are present in the reference sample, but not the replicate.
+        // Their dropout probabilities are multiplied into the return value while classifying.
+        double returnValue = classifyAlleles(replicate);
 
-        for (int idx = _presentMinId; idx <= _presentMaxId; idx++) {
-            if (presentFlags[idx]) {
-                returnValue *= 1 - _presentBProbabilities[idx];
+        for (int localIndex = 0; localIndex < replicate.size(); localIndex++) {
+            if ((_presentB[localIndex >>> 6] & (1L << localIndex)) != 0) {
+                returnValue *= 1 - _presentBProbabilities[localIndex];
             }
         }
 
         if (_droppedInCCount == 0) {
-            returnValue *= 1 - _hypothesis.getDropInProbability();
+            returnValue *= _noDropInFactor;
         }
         else {
             for (int idx = 0; idx < _droppedInCCount; idx++) {
-                final Allele a = _droppedInC[idx];
-                returnValue *= _hypothesis.getDropInProbability() * _hypothesis.getPopulationStatistics().getProbability(replicateLocus, a);
+                returnValue *= dropInFactors[_droppedInC[idx]];
             }
         }
 
         return returnValue;
     }
 
-    private void classifyAlleles(final Locus replicateLocus, final boolean[] presentFlags) {
-        _droppedOutACount = 0;
-        _droppedInCCount = 0;
-
-        _presentMinId = _presentBProbabilities.length - 1;
-        _presentMaxId = 0;
+    /**
+     * Classifies the alleles of all contributors and unknowns against the alleles in a replicate.
+     *
+     * @param replicate the compiled replicate
+     * @return the product of the dropout probabilities of all alleles that are not present in the replicate
+     */
+    private double classifyAlleles(final CompiledReplicate replicate) {
+        double droppedOutProbability = 1.0;
 
         // Assume all alleles have dropped in. We will move the alleles out of this set as appropriate.
         // Note that alleles from homozygote loci only get added once
-        for (final Allele allele : replicateLocus.getAlleles()) {
-            if (!contains(_droppedInC, _droppedInCCount, allele)) {
-                _droppedInC[_droppedInCCount++] = allele;
-            }
-            _presentBProbabilities[allele.getId()] = 1.0;
-            presentFlags[allele.getId()] = false;
-            if (allele.getId() < _presentMinId) {
-                _presentMinId = allele.getId();
-            }
-            if (allele.getId() > _presentMaxId) {
-                _presentMaxId = allele.getId();
-            }
+        _droppedInCCount = replicate.size();
+        for (int idx = 0; idx < _droppedInCCount; idx++) {
+            final int localIndex = replicate.getOrderOfAppearance(idx);
+            _droppedInC[idx] = localIndex;
+            _droppedInCPositions[localIndex] = idx;
+            _presentBProbabilities[idx] = 1.0;
         }
+        Arrays.fill(_presentB, 0);
 
         for (int alleleIndex = 0; alleleIndex < _currentAlleleCount; alleleIndex++) {
-            final Allele allele = _allAlleles[alleleIndex];
+            final int localIndex = replicate.getLocalIndex(_allAlleleIds[alleleIndex]);
             // If this allele is not present in the replicate, it goes into set A
-            if (!replicateLocus.getAlleles().contains(allele)) {
-                _droppedOutA[_droppedOutACount++] = allele;
+            if (localIndex < 0) {
+                droppedOutProbability *= _allAlleleDropouts[alleleIndex];
             }
             else {
-                // Remove this allele from the Dropped In set C
-                final int cIndex = indexOf(_droppedInC, _droppedInCCount, allele);
+                // Remove this allele from the Dropped In set C by moving the last element of the set into its place
+                final int cIndex = _droppedInCPositions[localIndex];
                 if (cIndex >= 0) {
-                    remove(_droppedInC, _droppedInCCount--, cIndex);
+                    final int last = _droppedInC[--_droppedInCCount];
+                    _droppedInC[cIndex] = last;
+                    _droppedInCPositions[last] = cIndex;
+                    _droppedInCPositions[localIndex] = -1;
                 }
 
-                presentFlags[allele.getId()] = true;
+                _presentB[localIndex >>> 6] |= 1L << localIndex;
 
                 // Update the product of dropout probabilities for this allele
-                if (allele.getLocus().getSample() == null) {
-                    _presentBProbabilities[allele.getId()] *= allele.isHomozygote() ? _presentMultipleProbabilityHomozygote : _presentMultipleProbability;
-                }
-                else {
-                    _presentBProbabilities[allele.getId()] *= _hypothesis.getContributor(allele).getDropOutProbability(allele.isHomozygote());
-                }
+                _presentBProbabilities[localIndex] *= _allAlleleDropouts[alleleIndex];
             }
         }
+        return droppedOutProbability;
     }
 
-    private Allele remove(final Allele[] array, final int size, final int index) {
-        final Allele a = array[index];
-        array[index] = array[size - 1];
-        return a;
-    }
+    public double calculateGenotypeProbability(final Locus[] genotypeSetForUnknowns) {
+        double genotypeProbability = 1;
+        if (genotypeSetForUnknowns.length > 0) {
+            System.arraycopy(_alleleCounts, 0, _localAlleleCounts, 0, _alleleCounts.length);
 
-    private int indexOf(final Allele[] array, final int size, final Allele allele) {
-        for (int idx = 0; idx < size; idx++) {
-            if (array[idx].getId() == allele.getId()) {
-                return idx;
+            // Calculate the genotype probability for the first unknown contributor
+            for (int idx = 0; idx < genotypeSetForUnknowns.length; idx++) {
+                genotypeProbability *= _genotypeCalculator.calculate(_localAlleleCounts, genotypeSetForUnknowns[idx]);
             }
         }
-        return -1;
+
+        return genotypeProbability / _denominator;
     }
 
-    private boolean contains(final Allele[] array, final int size, final Allele allele) {
-        for (int idx = 0; idx < size; idx++) {
-            if (array[idx].getId() == allele.getId()) {
-                return true;
-            }
+    /**
+     * Calculates the genotype probability of the current permutation of an iterator. With a genotype table, the
+     * genotypes are looked up by their index instead of through the alleles of their loci.
+     */
+    private double calculateGenotypeProbability(final PermutationIterator permutationIterator) {
+        if (_genotypeTable == null) {
+            return calculateGenotypeProbability(permutationIterator.getCurrentLoci());
         }
-        return false;
-    }
 
-    public double calculateGenotypeProbability(final Locus[] genotypeSetForUnknowns) {
         double genotypeProbability = 1;
-        System.arraycopy(_alleleCounts, 0, _localAlleleCounts, 0, _alleleCounts.length);
-
-        // Calculate the genotype probability for the first unknown contributor
-        for (int idx = 0; idx < genotypeSetForUnknowns.length; idx++) {
-            genotypeProbability *= _genotypeCalculator.calculate(_localAlleleCounts, genotypeSetForUnknowns[idx]);
+        System.arraycopy(_tableAlleleCounts, 0, _localTableAlleleCounts, 0, _tableAlleleCounts.length);
+        final int[] genotypeIndices = permutationIterator.getCurrentIndices();
+        for (int idx = 0; idx < genotypeIndices.length; idx++) {
+            genotypeProbability *= _genotypeTable.calculate(_localTableAlleleCounts, genotypeIndices[idx]);
         }
 
         return genotypeProbability / _denominator;
     }
 
-    public void interrupt() {
-        _interrupted = true;
+    private double getUnknownDropout(final Allele allele) {
+        return allele.isHomozygote() ? _dropOutProbabilityHomozygote : _dropOutProbability;
     }
 }
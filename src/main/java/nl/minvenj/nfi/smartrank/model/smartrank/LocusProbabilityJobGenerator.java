@@ -53,4 +53,67 @@ public class LocusProbabilityJobGenerator {
         }
         return retval;
     }
+
+    /**
+     * Generates the jobs that bind a candidate to a compiled locus.
+     *
+     * @param compiledLocus the compiled locus
+     * @param candidate the candidate contributor or non-contributor if the compiled locus leaves the candidate out, null otherwise
+     * @param candidateAlleleIds the ids of the alleles of the candidate at the locus, or null
+     * @param hypothesis the hypothesis
+     * @return a list of jobs that together calculate the probability of the locus
+     */
+    static ArrayList<LocusProbabilityJob> generate(final CompiledLocus compiledLocus, final BoundCandidate candidate, final int[] candidateAlleleIds, final Hypothesis hypothesis) {
+        final ArrayList<LocusProbabilityJob> retval = new ArrayList<>();
+        if (hypothesis.getUnknownCount() > 0) {
+            final CompiledLocus.AlleleCombinations combinations = compiledLocus.getCombinations(candidateAlleleIds);
+            final ConcurrentLongDoubleMap replicateProbabilities = getReplicateProbabilities(compiledLocus, candidate, combinations);
+            for (int idx = 0; idx < combinations.getLoci().length; idx++) {
+                final PermutationIterator permutationIterator = new PermutationIteratorPlain(hypothesis.getUnknownCount(), combinations.getLoci(), idx);
+                retval.add(new LocusProbabilityJob(compiledLocus, candidate, candidateAlleleIds, permutationIterator, combinations.getGenotypeTable(), replicateProbabilities, hypothesis));
+            }
+        }
+        else {
+            LOG.debug("Locus {} under {} has no unknowns.", compiledLocus.getLocusName(), hypothesis.getId());
+            retval.add(new LocusProbabilityJob(compiledLocus, candidate, candidateAlleleIds, (PermutationIterator) null, null, null, hypothesis));
+        }
+        return retval;
+    }
+
+    /**
+     * Divides the genotypes of the unknowns at a compiled locus into equal chunks, and generates the jobs that share
+     * these chunks.
+     *
+     * @param compiledLocus the compiled locus
+     * @param candidate the candidate contributor or non-contributor if the compiled locus leaves the candidate out, null otherwise
+     * @param candidateAlleleIds the ids of the alleles of the candidate at the locus, or null
+     * @param hypothesis the hypothesis, which must have at least one unknown contributor
+     * @param parallelism the number of threads available for the calculation
+     * @return the partition that calculates the probability of the locus, or null if there are no genotypes for the
+     *         unknowns
+     */
+    static PartitionedLocusProbability partition(final CompiledLocus compiledLocus, final BoundCandidate candidate, final int[] candidateAlleleIds, final Hypothesis hypothesis, final int parallelism) {
+        final CompiledLocus.AlleleCombinations combinations = compiledLocus.getCombinations(candidateAlleleIds);
+        if (combinations.getLoci().length == 0) {
+            return null;
+        }
+        final PartitionedLocusProbability partition = new PartitionedLocusProbability(hypothesis, compiledLocus.getLocusName(), combinations.getLoci(), parallelism);
+        final ConcurrentLongDoubleMap replicateProbabilities = getReplicateProbabilities(compiledLocus, candidate, combinations);
+        for (int idx = 0; idx < partition.getWorkerCount(); idx++) {
+            partition.addJob(new LocusProbabilityJob(compiledLocus, candidate, candidateAlleleIds, partition, combinations.getGenotypeTable(), replicateProbabilities, hypothesis));
+        }
+        return partition;
+    }
+
+    /**
+     * Gets the map in which the jobs for a candidate share their replicate probabilities. If the candidate contributes,
+     * the probabilities depend on its alleles and are only shared by the jobs for this candidate. Otherwise they are
+     * shared by all jobs for the allele combinations.
+     */
+    private static ConcurrentLongDoubleMap getReplicateProbabilities(final CompiledLocus compiledLocus, final BoundCandidate candidate, final CompiledLocus.AlleleCombinations combinations) {
+        if (candidate != null && compiledLocus.isCandidateContributing()) {
+            return new ConcurrentLongDoubleMap();
+        }
+        return combinations.getReplicateProbabilities();
+    }
 }
@@ -0,0 +1,267 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.smartrank.model.smartrank;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.minvenj.nfi.smartrank.domain.Hypothesis;
+import nl.minvenj.nfi.smartrank.domain.Locus;
+
+/**
+ * The probability of a locus, calculated by several jobs that divide the combinations of the unknown contributors
+ * between them. The combinations are split into chunks of equal size by rank. Jobs claim the chunks in order until none
+ * are left, so a job that finishes early simply takes more chunks.
+ * <p>
+ * The terms of each chunk are added in rank order as soon as all preceding chunks are done. A running sum is restarted
+ * at each first index of the combinations and added to the locus total, so the result is identical to that of one job
+ * per first index whose results are summed in order.
+ */
+final class PartitionedLocusProbability implements Future<LocusProbability> {
+
+    // The number of chunks per worker, so that jobs that are slowed down do not hold up the others
+    private static final int CHUNKS_PER_WORKER = 8;
+    private static final long MIN_CHUNK_SIZE = 16;
+    private static final long MAX_CHUNK_SIZE = 16384;
+
+    private final LocusProbability _locusProbability;
+    private final int _unknownCount;
+    private final Locus[] _combinations;
+    private final long _size;
+    private final long _chunkSize;
+    private final int _chunkCount;
+    private final int _workerCount;
+    private final long[] _batchStartRanks;
+    private final AtomicInteger _nextChunk = new AtomicInteger();
+    private final ArrayList<LocusProbabilityJob> _jobs = new ArrayList<>();
+
+    // The state of the ordered summation, guarded by this
+    private final double[][] _completedChunks;
+    private int _nextChunkToAdd;
+    private long _rank;
+    private int _batch;
+    private double _batchSum;
+    private double _total;
+    private volatile boolean _done;
+    private boolean _cancelled;
+    private Throwable _failure;
+    private BlockingQueue<Future<LocusProbability>> _completionQueue;
+
+    /**
+     * Creates a partition of the combinations of the unknown contributors at a locus.
+     *
+     * @param hypothesis the hypothesis
+     * @param locusName the name of the locus
+     * @param combinations the allele combinations available to each unknown
+     * @param parallelism the number of threads that can work on the locus
+     */
+    PartitionedLocusProbability(final Hypothesis hypothesis, final String locusName, final Locus[] combinations, final int parallelism) {
+        _locusProbability = new LocusProbability(hypothesis, locusName);
+        _unknownCount = hypothesis.getUnknownCount();
+        _combinations = combinations;
+        _size = PermutationIteratorPlain.getTotalSize(_unknownCount, combinations.length);
+
+        final long chunkCount = Math.max(1, (long) parallelism * CHUNKS_PER_WORKER);
+        _chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, (_size + chunkCount - 1) / chunkCount));
+        _chunkCount = (int) ((_size + _chunkSize - 1) / _chunkSize);
+        _workerCount = Math.max(1, Math.min(parallelism, _chunkCount));
+        _completedChunks = new double[_chunkCount][];
+
+        _batchStartRanks = new long[combinations.length];
+        for (int idx = 1; idx < combinations.length; idx++) {
+            _batchStartRanks[idx] = _batchStartRanks[idx - 1] + PermutationIteratorPlain.getBatchSize(_unknownCount, combinations.length, idx - 1);
+        }
+
+        if (_chunkCount == 0) {
+            _done = true;
+        }
+    }
+
+    /**
+     * @return the number of jobs that should work on this partition
+     */
+    int getWorkerCount() {
+        return _workerCount;
+    }
+
+    /**
+     * @return the jobs that work on this partition
+     */
+    synchronized List<LocusProbabilityJob> getJobs() {
+        return new ArrayList<>(_jobs);
+    }
+
+    /**
+     * Registers a job that works on this partition.
+     *
+     * @param job the job
+     */
+    synchronized void addJob(final LocusProbabilityJob job) {
+        _jobs.add(job);
+    }
+
+    /**
+     * Sets the queue that receives this partition when its calculation completes, fails or is cancelled. If the
+     * calculation is already done, the partition is added right away.
+     *
+     * @param completionQueue the queue
+     */
+    synchronized void setCompletionQueue(final BlockingQueue<Future<LocusProbability>> completionQueue) {
+        _completionQueue = completionQueue;
+        if (_done) {
+            _completionQueue.add(this);
+        }
+    }
+
+    /**
+     * Claims the next chunk of combinations.
+     *
+     * @return the index of the chunk, or -1 if all chunks have been claimed or the calculation has failed or was
+     *         cancelled
+     */
+    int claimChunk() {
+        if (_done) {
+            return -1;
+        }
+        final int chunk = _nextChunk.getAndIncrement();
+        return chunk < _chunkCount ? chunk : -1;
+    }
+
+    /**
+     * Creates an iterator over the combinations of a chunk.
+     *
+     * @param chunk the index of the chunk
+     * @return an iterator over the combinations in the chunk
+     */
+    PermutationIterator getIterator(final int chunk) {
+        final long first = chunk * _chunkSize;
+        return new PermutationIteratorPlain(_unknownCount, _combinations, first, Math.min(_size, first + _chunkSize));
+    }
+
+    /**
+     * Reports the terms of a chunk. The terms are added as soon as those of all preceding chunks have been added.
+     *
+     * @param chunk the index of the chunk
+     * @param terms the terms of all combinations in the chunk, in rank order
+     */
+    synchronized void complete(final int chunk, final double[] terms) {
+        if (_done) {
+            return;
+        }
+        _completedChunks[chunk] = terms;
+        while (_nextChunkToAdd < _chunkCount && _completedChunks[_nextChunkToAdd] != null) {
+            final double[] chunkTerms = _completedChunks[_nextChunkToAdd];
+            _completedChunks[_nextChunkToAdd++] = null;
+            for (final double term : chunkTerms) {
+                if (_batch + 1 < _batchStartRanks.length && _rank == _batchStartRanks[_batch + 1]) {
+                    addBatchSum();
+                    _batch++;
+                }
+                _batchSum += term;
+                _rank++;
+            }
+        }
+        if (_nextChunkToAdd == _chunkCount) {
+            addBatchSum();
+            _locusProbability.setValue(_total);
+            signalDone();
+        }
+    }
+
+    private void signalDone() {
+        _done = true;
+        notifyAll();
+        if (_completionQueue != null) {
+            _completionQueue.add(this);
+        }
+    }
+
+    private void addBatchSum() {
+        _total = _batch == 0 ? _batchSum : _total + _batchSum;
+        _batchSum = 0;
+    }
+
+    /**
+     * Reports that a job working on this partition has failed. The other jobs stop when they finish their current chunk.
+     *
+     * @param failure the cause of the failure
+     */
+    synchronized void fail(final Throwable failure) {
+        if (!_done) {
+            _failure = failure;
+            signalDone();
+        }
+    }
+
+    @Override
+    public synchronized boolean cancel(final boolean mayInterruptIfRunning) {
+        if (_done) {
+            return false;
+        }
+        _cancelled = true;
+        signalDone();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return _cancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return _done;
+    }
+
+    @Override
+    public synchronized LocusProbability get() throws InterruptedException, ExecutionException {
+        while (!_done) {
+            wait();
+        }
+        return getResult();
+    }
+
+    @Override
+    public synchronized LocusProbability get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!_done) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return getResult();
+    }
+
+    private LocusProbability getResult() throws ExecutionException {
+        if (_cancelled) {
+            throw new CancellationException();
+        }
+        if (_failure != null) {
+            throw new ExecutionException(_failure);
+        }
+        return _locusProbability;
+    }
+}
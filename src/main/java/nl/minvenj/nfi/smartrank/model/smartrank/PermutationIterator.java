@@ -19,6 +19,8 @@ package nl.minvenj.nfi.smartrank.model.smartrank;
 
 import java.util.Iterator;
 
+import nl.minvenj.nfi.smartrank.domain.Locus;
+
 public interface PermutationIterator extends Iterator<Permutation> {
 
     /**
@@ -38,4 +40,36 @@ public interface PermutationIterator extends Iterator<Permutation> {
      */
     long size();
 
+    /**
+     * Moves the iterator to the next permutation without allocating any objects. After a successful call, the
+     * current permutation can be read through {@link #getCurrentIndices()}, {@link #getCurrentLoci()} and
+     * {@link #getCurrentPermutationFactor()}. The arrays returned by these methods are reused, so their contents are
+     * only valid until the next call to this method or to {@link #next()}.
+     *
+     * @return true if the iterator was moved to a new permutation, false if no
+     * more permutations are available.
+     */
+    boolean advance();
+
+    /**
+     * Gets the indices of the allele combinations in the current permutation.
+     *
+     * @return an array containing an index into the allele combinations for each unknown contributor
+     */
+    int[] getCurrentIndices();
+
+    /**
+     * Gets the allele combinations in the current permutation.
+     *
+     * @return an array containing the allele combination for each unknown contributor
+     */
+    Locus[] getCurrentLoci();
+
+    /**
+     * Gets the number of equivalent orderings of the current permutation.
+     *
+     * @return the permutation factor for the current permutation
+     */
+    int getCurrentPermutationFactor();
+
 }
@@ -19,54 +19,114 @@ package nl.minvenj.nfi.smartrank.model.smartrank;
 
 import java.util.Arrays;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import nl.minvenj.nfi.smartrank.domain.Locus;
 
+/**
+ * Enumerates the combinations of allele combinations for a number of unknown contributors. The combinations are
+ * enumerated as non-decreasing sequences of indices in lexicographic order, so each combination has a rank in the full
+ * enumeration. An iterator covers either all combinations starting with a given index, or a range of ranks. An
+ * iterator is meant to be owned by a single job and is not thread-safe.
+ */
 public class PermutationIteratorPlain implements PermutationIterator {
 
-    private static final Logger LOG = LoggerFactory.getLogger(PermutationIteratorPlain.class);
     private static final int[] FACTORIALS = {1, 1, 2, 6, 24, 120, 720, 5040, 40320, 362880, 3628800, 39916800, 479001600};
     private final int[] _indices;
     private final Locus[] _loci;
-    private final int _batchEnd;
-    private final int[] _locusCount;
     private final int _n;
     private final long _size;
+    private long _remaining;
+    private final int[] _currentIndices;
+    private final Locus[] _currentLoci;
+    private int _currentPermutationFactor;
 
     public PermutationIteratorPlain(int unknownCount, Locus[] possibleAlleleCombinations, int batchStart) {
         _indices = new int[unknownCount];
         Arrays.fill(_indices, batchStart);
         _loci = possibleAlleleCombinations;
-        _locusCount = new int[_loci.length];
+        _currentIndices = new int[unknownCount];
+        _currentLoci = new Locus[unknownCount];
 
         // Get the number of permutations for the total n!
         _n = FACTORIALS[_indices.length];
 
-        _batchEnd = batchStart + 1;
-        if (_indices.length > 0) {
-            _indices[0] = batchStart;
-        }
-
-        _size = doSum(_indices.length, _loci.length - batchStart);
+        _size = getBatchSize(unknownCount, _loci.length, batchStart);
+        _remaining = _size;
     }
 
-    private long doSum(int depth, int range) {
-        if (depth == 0) {
-            return 0;
+    /**
+     * Creates an iterator over a range of ranks in the enumeration of all combinations.
+     *
+     * @param unknownCount the number of unknown contributors
+     * @param possibleAlleleCombinations the allele combinations available to each unknown
+     * @param firstRank the rank of the first combination to return
+     * @param endRank the rank following the last combination to return
+     */
+    public PermutationIteratorPlain(final int unknownCount, final Locus[] possibleAlleleCombinations, final long firstRank, final long endRank) {
+        _indices = new int[unknownCount];
+        _loci = possibleAlleleCombinations;
+        _currentIndices = new int[unknownCount];
+        _currentLoci = new Locus[unknownCount];
+        _n = FACTORIALS[_indices.length];
+
+        final long total = getTotalSize(unknownCount, _loci.length);
+        if (firstRank < 0 || endRank < firstRank || endRank > total) {
+            throw new IllegalArgumentException("Invalid range " + firstRank + " - " + endRank + " for " + total + " combinations!");
         }
-        if (depth == 1) {
-            return 1;
+
+        // Find the indices of the first combination in the range
+        long rank = firstRank;
+        int value = 0;
+        for (int idx = 0; idx < _indices.length; idx++) {
+            long count = countSequences(_indices.length - idx - 1, _loci.length - value);
+            while (rank >= count) {
+                rank -= count;
+                value++;
+                count = countSequences(_indices.length - idx - 1, _loci.length - value);
+            }
+            _indices[idx] = value;
         }
-        if (depth == 2) {
-            return range;
+
+        _size = endRank - firstRank;
+        _remaining = _size;
+    }
+
+    /**
+     * Gets the number of combinations for a number of unknowns.
+     *
+     * @param unknownCount the number of unknown contributors
+     * @param alleleCombinationCount the number of allele combinations available to each unknown
+     * @return the number of combinations in the full enumeration
+     */
+    public static long getTotalSize(final int unknownCount, final int alleleCombinationCount) {
+        return unknownCount == 0 ? 0 : countSequences(unknownCount, alleleCombinationCount);
+    }
+
+    /**
+     * Gets the number of combinations that start with a given index. This is the size of an iterator created with that
+     * index as batch start.
+     *
+     * @param unknownCount the number of unknown contributors
+     * @param alleleCombinationCount the number of allele combinations available to each unknown
+     * @param batchStart the first index of the combinations
+     * @return the number of combinations starting with the index
+     */
+    public static long getBatchSize(final int unknownCount, final int alleleCombinationCount, final int batchStart) {
+        return unknownCount == 0 ? 0 : countSequences(unknownCount - 1, alleleCombinationCount - batchStart);
+    }
+
+    /**
+     * Counts the non-decreasing sequences of a given length over a range of values, i.e. the binomial coefficient
+     * (range + length - 1) over length.
+     */
+    private static long countSequences(final int length, final int range) {
+        if (range <= 0) {
+            return length == 0 ? 1 : 0;
         }
-        long size = 0;
-        for (int count = 1; count <= range; count++) {
-            size += doSum(depth - 1, count);
+        long count = 1;
+        for (int idx = 1; idx <= length; idx++) {
+            count = count * (range - 1 + idx) / idx;
         }
-        return size;
+        return count;
     }
 
     @Override
@@ -76,25 +136,30 @@ public class PermutationIteratorPlain implements PermutationIterator {
 
     @Override
     public boolean hasNext() {
-        if (_indices.length == 0) {
-            return false;
-        }
-        return _indices[0] < _batchEnd;
+        return _remaining > 0;
     }
 
     @Override
-    public synchronized Permutation next() {
-        if (_indices.length == 0 || _indices[0] >= _batchEnd) {
+    public Permutation next() {
+        if (!advance()) {
             return null;
         }
+        return new Permutation(Arrays.copyOf(_currentLoci, _currentLoci.length), _currentPermutationFactor);
+    }
+
+    @Override
+    public boolean advance() {
+        if (_remaining <= 0) {
+            return false;
+        }
+        _remaining--;
 
-        // Prepare return value
-        Locus[] permutationLoci = new Locus[_indices.length];
-        Arrays.fill(_locusCount, 0);
+        // Prepare the current permutation
         for (int idx = 0; idx < _indices.length; idx++) {
-            _locusCount[_indices[idx]]++;
-            permutationLoci[idx] = _loci[_indices[idx]];
+            _currentIndices[idx] = _indices[idx];
+            _currentLoci[idx] = _loci[_indices[idx]];
         }
+        _currentPermutationFactor = calculatePermutationFactor();
 
         // Update the index values for the next iteration
         int indicesIndex = _indices.length - 1;
@@ -107,10 +172,22 @@ public class PermutationIteratorPlain implements PermutationIterator {
 
         // Do not return equivalent combinations of loci
         Arrays.fill(_indices, indicesIndex + 1, _indices.length, _indices[indicesIndex]);
+        return true;
+    }
 
-        int permutationFactor = calculatePermutationFactor();
-//        LOG.info("Indices: {} factor {}", signature, permutationFactor);
-        return new Permutation(permutationLoci, permutationFactor);
+    @Override
+    public int[] getCurrentIndices() {
+        return _currentIndices;
+    }
+
+    @Override
+    public Locus[] getCurrentLoci() {
+        return _currentLoci;
+    }
+
+    @Override
+    public int getCurrentPermutationFactor() {
+        return _currentPermutationFactor;
     }
 
     @Override
@@ -126,11 +203,19 @@ public class PermutationIteratorPlain implements PermutationIterator {
     private int calculatePermutationFactor() {
         // Divide the total number of permutations by the number of equivalent permutations of each of the components
         // n! / PRODUCT<i=1;k>(Ci!) where n is the number of elements in the signature, k is the number of distinct elements in the signature and Ci is the number of times element i of k is used.
+        // The indices never decrease, so equal elements are always adjacent.
         int k = 1;
-
-        for (int idx = 0; idx < _locusCount.length; idx++) {
-            k *= FACTORIALS[_locusCount[idx]];
+        int runLength = 1;
+        for (int idx = 1; idx < _currentIndices.length; idx++) {
+            if (_currentIndices[idx] == _currentIndices[idx - 1]) {
+                runLength++;
+            }
+            else {
+                k *= FACTORIALS[runLength];
+                runLength = 1;
+            }
         }
+        k *= FACTORIALS[runLength];
 
         return _n / k;
     }
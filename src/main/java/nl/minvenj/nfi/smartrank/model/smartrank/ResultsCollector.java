@@ -17,13 +17,18 @@
  */
 package nl.minvenj.nfi.smartrank.model.smartrank;
 
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import nl.minvenj.nfi.smartrank.analysis.scheduler.ComputeScheduler;
 import nl.minvenj.nfi.smartrank.domain.LocusLikelihoods;
 import nl.minvenj.nfi.smartrank.messages.status.ErrorStringMessage;
 import nl.minvenj.nfi.smartrank.messages.status.PercentReadyMessage;
@@ -32,77 +37,103 @@ import nl.minvenj.nfi.smartrank.raven.messages.MessageBus;
 
 /**
  * Collects the results of a set of likelihood calculation jobs for a
- * hypothesis.
+ * hypothesis. Jobs report their completion through a queue, so the
+ * results are processed as soon as they are available. The results of
+ * each locus are still added in the order in which the jobs were added,
+ * so the likelihoods do not depend on the order of completion.
  */
-public class ResultsCollector extends Thread {
+public class ResultsCollector {
 
     private static final Logger LOG = LoggerFactory.getLogger(ResultsCollector.class);
-    private final Collection<Future<LocusProbability>> _futures;
+    private final BlockingQueue<Future<LocusProbability>> _completionQueue = new LinkedBlockingQueue<>();
+    private final ArrayList<Future<LocusProbability>> _futures = new ArrayList<>();
+    private final IdentityHashMap<Future<LocusProbability>, Integer> _indexes = new IdentityHashMap<>();
     private final LocusLikelihoods _likelihoods;
-    private boolean _interrupted;
     private final boolean _reportProgress;
 
     /**
      * Constructor.
      *
-     * @param futures a collection of Futures representing the calculation jobs.
+     * @param reportProgress true to report the progress of the calculation on the message bus
      */
-    public ResultsCollector(final Collection<Future<LocusProbability>> futures, final boolean reportProgress) {
-        _futures = NullUtils.argNotNull(futures, "futures");
+    public ResultsCollector(final boolean reportProgress) {
         _reportProgress = reportProgress;
         _likelihoods = new LocusLikelihoods();
-        setName("ResultsCollector");
     }
 
     /**
-     * Constructor.
+     * @return the queue to which the jobs must add their future when they complete
+     */
+    BlockingQueue<Future<LocusProbability>> getCompletionQueue() {
+        return _completionQueue;
+    }
+
+    /**
+     * Adds the future of a job that will be added to the completion queue when it completes.
+     *
+     * @param future the future of the job
+     */
+    public void add(final Future<LocusProbability> future) {
+        _indexes.put(NullUtils.argNotNull(future, "future"), _futures.size());
+        _futures.add(future);
+    }
+
+    /**
+     * Adds the future of a result that is already available.
      *
-     * @param futures a collection of Futures representing the calculation jobs.
+     * @param future the completed future
      */
-    public ResultsCollector(final Collection<Future<LocusProbability>> futures) {
-        this(futures, false);
+    public void addCompleted(final Future<LocusProbability> future) {
+        add(future);
+        _completionQueue.add(future);
     }
 
-    @Override
-    public void run() {
+    /**
+     * Waits for all jobs to complete and adds their results. If a job fails or is cancelled, the remaining jobs are
+     * cancelled.
+     *
+     * @return the likelihoods of the loci
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    public LocusLikelihoods collect() throws InterruptedException {
+        final boolean[] completed = new boolean[_futures.size()];
+        int completedCount = 0;
+        int nextToAdd = 0;
         try {
-            int idx = 0;
-            for (final Future<LocusProbability> f : _futures) {
-                final LocusProbability prob = f.get();
-                Double current = _likelihoods.getLocusProbability(prob.getLocusName());
-                if (current == null) {
-                    current = prob.getValue();
-                }
-                else {
-                    current += prob.getValue();
-                }
+            while (nextToAdd < _futures.size()) {
+                final Future<LocusProbability> future = ComputeScheduler.take(_completionQueue);
+                completed[_indexes.get(future)] = true;
+                future.get();
                 if (_reportProgress) {
-                    MessageBus.getInstance().send(this, new PercentReadyMessage((idx++ * 100) / _futures.size()));
+                    MessageBus.getInstance().send(this, new PercentReadyMessage((completedCount++ * 100) / _futures.size()));
                 }
-                _likelihoods.addLocusProbability(prob.getLocusName(), current);
 
+                while (nextToAdd < _futures.size() && completed[nextToAdd]) {
+                    final LocusProbability prob = _futures.get(nextToAdd++).get();
+                    _likelihoods.addToLocusProbability(prob.getLocusName(), prob.getValue());
+                }
             }
             LOG.debug("Done! " + _likelihoods);
         }
         catch (final CancellationException ce) {
-            // Ignored
             LOG.debug("Analysis was cancelled", ce);
+            cancel();
         }
-        catch (final Throwable t) {
-            if (!_interrupted) {
-                LOG.error("Analysis encountered an error", t);
-                MessageBus.getInstance().send(this, new ErrorStringMessage(t.getMessage()));
-            }
+        catch (final ExecutionException e) {
+            cancel();
+            LOG.error("Analysis encountered an error", e);
+            MessageBus.getInstance().send(this, new ErrorStringMessage(e.getMessage()));
         }
+        return _likelihoods;
     }
 
-    @Override
-    public void interrupt() {
-        _interrupted = true;
+    /**
+     * Cancels all jobs that have not completed yet.
+     */
+    public void cancel() {
         for (final Future<LocusProbability> f : _futures) {
-            f.cancel(true);
+            f.cancel(false);
         }
-        super.interrupt();
     }
 
     public LocusLikelihoods getLikelihoods() {
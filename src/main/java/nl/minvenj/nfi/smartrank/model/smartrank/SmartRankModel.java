@@ -16,26 +16,20 @@
  */
 package nl.minvenj.nfi.smartrank.model.smartrank;
 
-import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import nl.minvenj.nfi.smartrank.domain.Allele;
+import nl.minvenj.nfi.smartrank.analysis.scheduler.ComputeScheduler;
+import nl.minvenj.nfi.smartrank.analysis.scheduler.TaskGroup;
 import nl.minvenj.nfi.smartrank.domain.AnalysisParameters;
-import nl.minvenj.nfi.smartrank.domain.Contributor;
+import nl.minvenj.nfi.smartrank.domain.CandidateProfile;
 import nl.minvenj.nfi.smartrank.domain.Hypothesis;
 import nl.minvenj.nfi.smartrank.domain.Locus;
 import nl.minvenj.nfi.smartrank.domain.LocusLikelihoods;
-import nl.minvenj.nfi.smartrank.domain.Sample;
 import nl.minvenj.nfi.smartrank.messages.data.EnabledLociMessage;
 import nl.minvenj.nfi.smartrank.model.StatisticalModel;
 import nl.minvenj.nfi.smartrank.raven.messages.MessageBus;
@@ -43,75 +37,115 @@ import nl.minvenj.nfi.smartrank.raven.messages.MessageBus;
 public final class SmartRankModel implements StatisticalModel {
 
     private static final Logger LOG = LoggerFactory.getLogger(SmartRankModel.class);
-    private static final ExecutorService SERVICE = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-    private ResultsCollector _resultsCollector;
-    private final Locus[][] _possibleAlleleCombinationsPerLocus = new Locus[Locus.getRegisteredLocusCount()][];
-    private final double[][][] _resultCache;
+    private volatile TaskGroup _group;
+    private final HashMap<String, CompiledHypothesis> _compiledHypotheses = new HashMap<>();
+    private final GenotypeResultCache _resultCache;
 
+    /**
+     * Creates a model with a private result cache.
+     */
     public SmartRankModel() {
-        _resultCache = new double[Locus.getRegisteredLocusCount() + 1][500][500];
+        this(new GenotypeResultCache());
+    }
+
+    /**
+     * Creates a model that stores the per-locus results for candidate genotypes in the supplied cache. The cache can be
+     * shared by several models that evaluate candidates concurrently.
+     *
+     * @param resultCache the cache to use
+     */
+    public SmartRankModel(final GenotypeResultCache resultCache) {
+        _resultCache = resultCache;
     }
 
     @Override
     public LocusLikelihoods calculateLikelihood(final Hypothesis hypothesis, final AnalysisParameters parameters) throws InterruptedException {
-        final ArrayList<Future<LocusProbability>> futures = new ArrayList<>();
-        final ArrayList<LocusProbabilityJob> jobs = new ArrayList<>();
-        try {
+        return calculateLikelihood(hypothesis, BoundCandidate.of(hypothesis), parameters);
+    }
+
+    @Override
+    public LocusLikelihoods calculateLikelihood(final Hypothesis hypothesis, final CandidateProfile candidate, final AnalysisParameters parameters) throws InterruptedException {
+        return calculateLikelihood(hypothesis, BoundCandidate.of(hypothesis, candidate), parameters);
+    }
 
-            // Only evaluate loci that are present in the crime stain and the current candidate
+    private LocusLikelihoods calculateLikelihood(final Hypothesis hypothesis, final BoundCandidate boundCandidate, final AnalysisParameters parameters) throws InterruptedException {
+        final ComputeScheduler scheduler = ComputeScheduler.getInstance(parameters);
+        final TaskGroup group = scheduler.createGroup();
+        _group = group;
+        final ResultsCollector collector = new ResultsCollector(!hypothesis.hasCandidate() && parameters.isCalculateHdOnce());
+        try {
             final List<String> enabledLoci = MessageBus.getInstance().query(EnabledLociMessage.class);
-            final ArrayList<String> commonLoci = new ArrayList<>();
-            final Sample candidate = hypothesis.getCandidate();
-            if (candidate != null) {
-                for (final String locusName : enabledLoci) {
-                    if (candidate.hasLocus(locusName)) {
-                        commonLoci.add(locusName);
+
+            // The candidate is either a contributor, or a non-contributor when Pr(E|Hd) is calculated for each candidate.
+            // Either way, the per-locus results only depend on its genotype and are cached for the whole search.
+            final CompiledHypothesis compiledHypothesis = getCompiledHypothesis(hypothesis, parameters);
+            final int fingerprintId = boundCandidate == null ? 0 : compiledHypothesis.getFingerprintId();
+            final ArrayList<String> calculatedLoci = new ArrayList<>();
+            final ArrayList<int[]> calculatedGenotypes = new ArrayList<>();
+            for (final String locusName : enabledLoci) {
+                final int locusId = Locus.getId(locusName);
+                final int[] candidateAlleleIds = boundCandidate == null ? null : boundCandidate.getAlleleIds(locusId);
+
+                // Only evaluate loci that are present in the crime stain and the current candidate. Like Sample.hasLocus,
+                // which selected these loci before, this does not find the locus of a candidate with a single locus.
+                // CandidatePrefilter relies on the same selection.
+                if (hypothesis.hasCandidate()) {
+                    if (candidateAlleleIds == null || boundCandidate.getLocusCount() < 2) {
+                        continue;
+                    }
+                    if (candidateAlleleIds.length != 2) {
+                        throw new IllegalArgumentException("Cannot process locus " + locusName + " of sample " + boundCandidate.getName() + ". Expected 2 alleles but found " + candidateAlleleIds.length);
                     }
                 }
-            }
-            else {
-                commonLoci.addAll(enabledLoci);
-            }
 
-            for (final String locusName : commonLoci) {
+                // A non-contributor can lack the locus or have any number of alleles, which is not cached
                 boolean generateJobs = true;
-                if (candidate != null) {
-                    final Locus candidateLocus = candidate.getLocus(locusName);
-                    final double[][] locusCache = _resultCache[candidateLocus.getId()];
-                    if (candidateLocus.size() != 2) {
-                        throw new IllegalArgumentException("Cannot process locus " + locusName + " of sample " + candidate.getName() + ". Expected 2 alleles but found " + candidateLocus.size() + ": " + candidateLocus.getAlleles());
-                    }
-                    final Allele[] alleles = candidateLocus.getAlleles().toArray(new Allele[0]);
-                    final Allele firstAllele = alleles[0];
-                    final Allele secondAllele = alleles[1];
-                    if (locusCache[firstAllele.getId()][secondAllele.getId()] != 0) {
-                        futures.add(new FixedResultJob(hypothesis, locusName, locusCache[firstAllele.getId()][secondAllele.getId()]));
+                if (candidateAlleleIds != null && candidateAlleleIds.length == 2) {
+                    final double cached = _resultCache.get(fingerprintId, locusId, candidateAlleleIds[0], candidateAlleleIds[1]);
+                    if (!Double.isNaN(cached)) {
+                        collector.addCompleted(new FixedResultJob(hypothesis, locusName, cached));
                         generateJobs = false;
                     }
+                    else {
+                        calculatedLoci.add(locusName);
+                        calculatedGenotypes.add(candidateAlleleIds);
+                    }
                 }
 
                 if (generateJobs) {
-                    final Locus[] possibleAlleleCombinations = composePossibleAlleleCombinations(locusName, parameters, hypothesis);
-                    for (final LocusProbabilityJob job : LocusProbabilityJobGenerator.generate(locusName, parameters, possibleAlleleCombinations, hypothesis)) {
-                        futures.add(SERVICE.submit(job));
-                        jobs.add(job);
+                    final CompiledLocus compiledLocus = compiledHypothesis.getLocus(locusName, hypothesis, parameters);
+                    final BoundCandidate jobCandidate = compiledLocus.isCandidateBound() ? boundCandidate : null;
+                    final int[] jobCandidateAlleleIds = jobCandidate == null ? null : candidateAlleleIds;
+                    if (hypothesis.getUnknownCount() > 0) {
+                        // The genotypes of the unknowns are divided into equal chunks that are shared by the jobs
+                        final PartitionedLocusProbability partition = LocusProbabilityJobGenerator.partition(compiledLocus, jobCandidate, jobCandidateAlleleIds, hypothesis, scheduler.getParallelism());
+                        if (partition != null) {
+                            for (final LocusProbabilityJob job : partition.getJobs()) {
+                                group.submit(job);
+                            }
+                            group.add(partition);
+                            collector.add(partition);
+                            partition.setCompletionQueue(collector.getCompletionQueue());
+                        }
+                    }
+                    else {
+                        for (final LocusProbabilityJob job : LocusProbabilityJobGenerator.generate(compiledLocus, jobCandidate, jobCandidateAlleleIds, hypothesis)) {
+                            collector.add(group.submit(job, collector.getCompletionQueue()));
+                        }
                     }
                 }
             }
 
-            _resultsCollector = new ResultsCollector(futures, !hypothesis.hasCandidate() && parameters.isCalculateHdOnce());
-            _resultsCollector.start();
-            _resultsCollector.join();
-            final LocusLikelihoods result = _resultsCollector.getLikelihoods();
-
-            if (candidate != null) {
-                for (final String locusName : result.getLoci()) {
-                    final Locus candidateLocus = candidate.getLocus(locusName);
-                    final Allele[] alleles = candidateLocus.getAlleles().toArray(new Allele[0]);
-                    final Allele firstAllele = alleles[0];
-                    final Allele secondAllele = alleles[1];
-                    final double[][] locusCache = _resultCache[candidateLocus.getId()];
-                    locusCache[firstAllele.getId()][secondAllele.getId()] = result.getLocusProbability(locusName);
+            final LocusLikelihoods result = collector.collect();
+            if (group.isCancelled()) {
+                throw new InterruptedException("The calculation was cancelled");
+            }
+
+            for (int idx = 0; idx < calculatedLoci.size(); idx++) {
+                final Double locusProbability = result.getLocusProbability(calculatedLoci.get(idx));
+                if (locusProbability != null) {
+                    final int[] candidateAlleleIds = calculatedGenotypes.get(idx);
+                    _resultCache.put(fingerprintId, Locus.getId(calculatedLoci.get(idx)), candidateAlleleIds[0], candidateAlleleIds[1], locusProbability);
                 }
             }
             return result;
@@ -124,12 +158,27 @@ public final class SmartRankModel implements StatisticalModel {
             throw t;
         }
         finally {
-            for (final LocusProbabilityJob job : jobs) {
-                job.interrupt();
-            }
+            group.close();
         }
     }
 
+    /**
+     * Gets the compiled form of a hypothesis. The compiled hypothesis is kept for as long as the fingerprint of the
+     * hypothesis does not change, so it is compiled once per search for a hypothesis that only differs by candidate.
+     *
+     * @param hypothesis the hypothesis being evaluated
+     * @param parameters the parameters of the current analysis
+     * @return the compiled hypothesis
+     */
+    private CompiledHypothesis getCompiledHypothesis(final Hypothesis hypothesis, final AnalysisParameters parameters) {
+        CompiledHypothesis compiledHypothesis = _compiledHypotheses.get(hypothesis.getId());
+        if (compiledHypothesis == null || !compiledHypothesis.isValidFor(hypothesis, parameters)) {
+            compiledHypothesis = new CompiledHypothesis(hypothesis, parameters, _resultCache);
+            _compiledHypotheses.put(hypothesis.getId(), compiledHypothesis);
+        }
+        return compiledHypothesis;
+    }
+
     @Override
     public String getModelName() {
         return "SmartRankModel";
@@ -137,104 +186,14 @@ public final class SmartRankModel implements StatisticalModel {
 
     @Override
     public void interrupt() {
-        if (_resultsCollector != null) {
-            _resultsCollector.interrupt();
-        }
-    }
-
-    private Locus[] composePossibleAlleleCombinations(final String locusName, final AnalysisParameters parameters, final Hypothesis hypothesis) {
-        Locus[] alleleCombinations = _possibleAlleleCombinationsPerLocus[Locus.getId(locusName)];
-        if (alleleCombinations == null) {
-
-            // Create the set of all possible allele combinations at the current locus
-            final HashMap<String, Locus> possibleAlleleCombinations = new HashMap<>();
-            final Collection<String> alleleCollection = new ArrayList<>();
-
-            // Add alleles present in the crimescene profiles
-            for (final Sample replicate : parameters.getEnabledCrimesceneProfiles()) {
-                final Locus replicateLocus = replicate.getLocus(locusName);
-                if (replicateLocus != null) {
-                    for (final Allele replicateAllele : replicateLocus.getAlleles()) {
-                        if (!alleleCollection.contains(replicateAllele.getAllele())) {
-                            alleleCollection.add(replicateAllele.getAllele());
-                        }
-                    }
-                }
-            }
-
-            // If Q is not shut down, add other alleles
-            if (!hypothesis.isQDesignationShutdown()) {
-                // Add alleles in the contributor samples (only non-rare alleles)
-                for (final Contributor con : hypothesis.getContributors()) {
-                    Locus conLocus = con.getSample().getLocus(locusName);
-                    if (conLocus == null) {
-                        conLocus = new Locus(locusName);
-                        conLocus.setSample(con.getSample());
-                    }
-                    for (final Allele conAllele : conLocus.getAlleles()) {
-                        if (!alleleCollection.contains(conAllele.getAllele()) && !hypothesis.getPopulationStatistics().isRareAllele(conAllele)) {
-                            alleleCollection.add(conAllele.getAllele());
-                        }
-                    }
-                }
-
-                // Add alleles in the non-contributor samples (only non-rare alleles)
-                for (final Contributor nonCon : hypothesis.getNonContributors()) {
-                    Locus nonConLocus = nonCon.getSample().getLocus(locusName);
-                    if (nonConLocus == null) {
-                        nonConLocus = new Locus(locusName);
-                        nonConLocus.setSample(nonCon.getSample());
-                    }
-                    for (final Allele nonConAllele : nonConLocus.getAlleles()) {
-                        if (!alleleCollection.contains(nonConAllele.getAllele()) && !hypothesis.getPopulationStatistics().isRareAllele(nonConAllele)) {
-                            alleleCollection.add(nonConAllele.getAllele());
-                        }
-                    }
-                }
-
-                // Add a single allele that has the combined probabilities of all alleles not in the samples and profiles
-                Double otherFrequency = 0.0;
-                for (final String allele : hypothesis.getPopulationStatistics().getAlleles(locusName)) {
-                    if (!allele.endsWith("-other") && !alleleCollection.contains(allele)) {
-                        otherFrequency += hypothesis.getPopulationStatistics().getProbability(locusName, allele);
-                    }
-                }
-
-                // Do not add the combined allele if its frequency is not a number, infinity or zero
-                if (!otherFrequency.isInfinite() && !otherFrequency.isNaN() && otherFrequency > 0) {
-                    alleleCollection.add(locusName + "-other");
-                    hypothesis.getPopulationStatistics().addStatistic(locusName, locusName + "-other", new BigDecimal(otherFrequency));
-                }
-            }
-
-            // Convert the collection of allele values to a list of Locus classes
-            final String[] alleles = alleleCollection.toArray(new String[0]);
-            Arrays.sort(alleles);
-            for (int allele1Idx = 0; allele1Idx < alleles.length; allele1Idx++) {
-                for (int allele2Idx = allele1Idx; allele2Idx < alleles.length; allele2Idx++) {
-                    final String name = allele1Idx + "." + allele2Idx;
-                    if (!possibleAlleleCombinations.containsKey(name)) {
-                        final Locus newLocus = new Locus(locusName);
-                        newLocus.addAllele(new Allele(alleles[allele1Idx]));
-                        newLocus.addAllele(new Allele(alleles[allele2Idx]));
-                        possibleAlleleCombinations.put(name, newLocus);
-                    }
-                }
-            }
-
-            alleleCombinations = possibleAlleleCombinations.values().toArray(new Locus[possibleAlleleCombinations.size()]);
-
-            LOG.debug("Possible Allele Combinations: {}", (Object) alleleCombinations);
-            _possibleAlleleCombinationsPerLocus[Locus.getId(locusName)] = alleleCombinations;
+        final TaskGroup group = _group;
+        if (group != null) {
+            group.cancel();
         }
-
-        return alleleCombinations;
     }
 
     @Override
     public void reset() {
-        for (int idx = 0; idx < _possibleAlleleCombinationsPerLocus.length; idx++) {
-            _possibleAlleleCombinationsPerLocus[idx] = null;
-        }
+        _compiledHypotheses.clear();
     }
 }
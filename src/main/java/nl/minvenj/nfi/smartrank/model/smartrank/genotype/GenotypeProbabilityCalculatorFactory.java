@@ -17,6 +17,7 @@
 package nl.minvenj.nfi.smartrank.model.smartrank.genotype;
 
 import nl.minvenj.nfi.smartrank.domain.Hypothesis;
+import nl.minvenj.nfi.smartrank.domain.Locus;
 
 /**
  *
@@ -43,4 +44,19 @@ public class GenotypeProbabilityCalculatorFactory {
         }
         return new SplitDropGenotypeProbabilityCalculator(hypothesis);
     }
+
+    /**
+     * Factory method for a table of genotype probabilities for unrelated
+     * unknowns that can have a fixed set of genotypes.
+     *
+     * @param theta The theta correction
+     * @param genotypes The genotypes available to the unknowns
+     * @param alleles The alleles in the genotypes
+     * @param frequencies The frequencies of the alleles in the genotypes,
+     * indexed by their local index in the alleles
+     * @return A table for the supplied genotypes
+     */
+    public static GenotypeProbabilityTable getGenotypeProbabilityTable(double theta, Locus[] genotypes, LocalAlleleIndex alleles, double[] frequencies) {
+        return new GenotypeProbabilityTable(theta, genotypes, alleles, frequencies);
+    }
 }
@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2013-2105 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.smartrank.model.smartrank.genotype;
+
+import nl.minvenj.nfi.smartrank.domain.Allele;
+import nl.minvenj.nfi.smartrank.domain.Locus;
+
+/**
+ * Calculates genotype probabilities for a fixed set of genotypes at a single locus. The frequencies of the alleles in
+ * the genotypes are stored in dense arrays indexed by the {@link LocalAlleleIndex} of the table, so the probability of a genotype can be
+ * calculated from its index without looking up the population statistics. Without theta correction the probability of
+ * each genotype is calculated up front, as in {@link HardyWeinbergGenotypeProbabilityCalculator}. With theta
+ * correction the term (1 - theta) * frequency is calculated up front for each allele, and the allele counts are
+ * applied as in {@link SplitDropGenotypeProbabilityCalculator}.
+ * <p>
+ * The allele counts passed to {@link #calculate(int[], int)} are indexed by local allele index, so their size only
+ * depends on the number of alleles in the genotypes. A table can be shared by several threads, as long as each uses its
+ * own allele counts.
+ */
+public final class GenotypeProbabilityTable implements GenotypeProbabilityCalculator {
+
+    private final double _theta;
+    private final boolean _hardyWeinberg;
+
+    // The alleles in the genotypes
+    private final LocalAlleleIndex _alleles;
+    // The frequency of each allele multiplied by 1 - theta, indexed by local index
+    private final double[] _weightedFrequencies;
+
+    // The local indices of the alleles of each genotype and the factor for heterozygotes
+    private final int[] _firstAlleles;
+    private final int[] _secondAlleles;
+    private final double[] _heterozygoteFactors;
+    // The probability of each genotype if there is no theta correction
+    private final double[] _genotypeProbabilities;
+
+    /**
+     * Creates a table for a set of genotypes.
+     *
+     * @param theta the theta correction
+     * @param genotypes the genotypes, each with two alleles
+     * @param alleles the alleles in the genotypes
+     * @param frequencies the frequencies of the alleles in the genotypes, indexed by local allele index
+     * @throws IllegalArgumentException if a genotype does not have two alleles, or has an allele that is not in the
+     *             index
+     */
+    GenotypeProbabilityTable(final double theta, final Locus[] genotypes, final LocalAlleleIndex alleles, final double[] frequencies) {
+        _theta = theta;
+        _hardyWeinberg = theta == 0;
+        _alleles = alleles;
+
+        _firstAlleles = new int[genotypes.length];
+        _secondAlleles = new int[genotypes.length];
+        _heterozygoteFactors = new double[genotypes.length];
+        for (int genotypeIndex = 0; genotypeIndex < genotypes.length; genotypeIndex++) {
+            final Locus genotype = genotypes[genotypeIndex];
+            if (genotype.size() != 2) {
+                throw new IllegalArgumentException("Expected 2 alleles in genotype " + genotype + " but found " + genotype.size());
+            }
+            int alleleIndex = 0;
+            for (final Allele allele : genotype.getAlleles()) {
+                final int localIndex = getLocalIndex(allele);
+                if (alleleIndex++ == 0) {
+                    _firstAlleles[genotypeIndex] = localIndex;
+                }
+                else {
+                    _secondAlleles[genotypeIndex] = localIndex;
+                }
+            }
+            _heterozygoteFactors[genotypeIndex] = genotype.isHomozygote() ? 1 : 2;
+        }
+
+        _weightedFrequencies = new double[alleles.size()];
+        for (int localIndex = 0; localIndex < _weightedFrequencies.length; localIndex++) {
+            _weightedFrequencies[localIndex] = (1.0 - theta) * frequencies[localIndex];
+        }
+
+        _genotypeProbabilities = new double[genotypes.length];
+        for (int genotypeIndex = 0; genotypeIndex < genotypes.length; genotypeIndex++) {
+            _genotypeProbabilities[genotypeIndex] = _heterozygoteFactors[genotypeIndex] * frequencies[_firstAlleles[genotypeIndex]] * frequencies[_secondAlleles[genotypeIndex]];
+        }
+    }
+
+    /**
+     * @return the number of distinct alleles in the genotypes
+     */
+    public int getAlleleCount() {
+        return _alleles.size();
+    }
+
+    /**
+     * @param localIndex the local index of an allele
+     * @return the id of the allele with the local index
+     */
+    public int getAlleleId(final int localIndex) {
+        return _alleles.getAlleleId(localIndex);
+    }
+
+    /**
+     * @param alleleId the id of an allele
+     * @return the local index of the allele, or -1 if the allele is not in any of the genotypes
+     */
+    public int getLocalIndex(final int alleleId) {
+        return _alleles.getLocalIndex(alleleId);
+    }
+
+    /**
+     * @param genotypeIndex the index of a genotype in the genotypes of the table
+     * @return the local index of the first allele of the genotype
+     */
+    public int getFirstAllele(final int genotypeIndex) {
+        return _firstAlleles[genotypeIndex];
+    }
+
+    /**
+     * @param genotypeIndex the index of a genotype in the genotypes of the table
+     * @return the local index of the second allele of the genotype, which is the same as the first for homozygotes
+     */
+    public int getSecondAllele(final int genotypeIndex) {
+        return _secondAlleles[genotypeIndex];
+    }
+
+    /**
+     * Calculates the probability of a genotype in the table and adds its alleles to the allele counts.
+     *
+     * @param localAlleleCounts the allele counts indexed by local allele index
+     * @param genotypeIndex the index of the genotype in the genotypes of the table
+     * @return the probability of observing the genotype
+     */
+    public double calculate(final int[] localAlleleCounts, final int genotypeIndex) {
+        if (_hardyWeinberg) {
+            return _genotypeProbabilities[genotypeIndex];
+        }
+        final int first = _firstAlleles[genotypeIndex];
+        final int second = _secondAlleles[genotypeIndex];
+        double genotypeProbability = _heterozygoteFactors[genotypeIndex];
+        genotypeProbability *= localAlleleCounts[first] * _theta + _weightedFrequencies[first];
+        localAlleleCounts[first]++;
+        genotypeProbability *= localAlleleCounts[second] * _theta + _weightedFrequencies[second];
+        localAlleleCounts[second]++;
+        return genotypeProbability;
+    }
+
+    /**
+     * Calculates the probability of a genotype whose alleles are in the table.
+     *
+     * @param alleleCounts the allele counts indexed by allele id
+     * @param locus the genotype
+     * @return the probability of observing the genotype
+     * @throws IllegalArgumentException if an allele of the genotype is not in the table
+     */
+    @Override
+    public double calculate(final int[] alleleCounts, final Locus locus) {
+        double genotypeProbability = 1;
+        if (!locus.isHomozygote()) {
+            genotypeProbability = 2;
+        }
+        for (final Allele allele : locus.getAlleles()) {
+            final int localIndex = getLocalIndex(allele);
+            genotypeProbability *= alleleCounts[allele.getId()] * _theta + _weightedFrequencies[localIndex];
+            alleleCounts[allele.getId()]++;
+        }
+        return genotypeProbability;
+    }
+
+    private int getLocalIndex(final Allele allele) {
+        final int localIndex = _alleles.getLocalIndex(allele.getId());
+        if (localIndex < 0) {
+            throw new IllegalArgumentException("Allele " + allele + " is not in the genotype probability table!");
+        }
+        return localIndex;
+    }
+}
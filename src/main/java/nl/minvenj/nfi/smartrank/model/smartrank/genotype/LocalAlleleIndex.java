@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2013-2105 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.smartrank.model.smartrank.genotype;
+
+import java.util.Arrays;
+
+import nl.minvenj.nfi.smartrank.domain.Allele;
+import nl.minvenj.nfi.smartrank.domain.Locus;
+
+/**
+ * A dense index of the alleles that occur at a single locus. Each allele gets a local index from 0 to the number of
+ * alleles, in the order of the global allele ids. Arrays indexed by local index only hold the few alleles of the locus,
+ * so their size does not depend on the number of alleles registered by the database. Instances are immutable.
+ */
+public final class LocalAlleleIndex {
+
+    // The global ids of the alleles, in ascending order
+    private final int[] _alleleIds;
+
+    /**
+     * Creates an index of a set of alleles.
+     *
+     * @param alleleIds the global ids of the alleles, in any order. Duplicate ids are indexed once.
+     */
+    public LocalAlleleIndex(final int[] alleleIds) {
+        final int[] sorted = alleleIds.clone();
+        Arrays.sort(sorted);
+        int count = 0;
+        for (int idx = 0; idx < sorted.length; idx++) {
+            if (count == 0 || sorted[count - 1] != sorted[idx]) {
+                sorted[count++] = sorted[idx];
+            }
+        }
+        _alleleIds = Arrays.copyOf(sorted, count);
+    }
+
+    /**
+     * Creates an index of the alleles of a set of loci.
+     *
+     * @param loci the loci. Elements can be <code>null</code>.
+     * @return an index of all alleles of the loci
+     */
+    public static LocalAlleleIndex of(final Locus... loci) {
+        int alleleCount = 0;
+        for (final Locus locus : loci) {
+            alleleCount += locus == null ? 0 : locus.size();
+        }
+        final int[] alleleIds = new int[alleleCount];
+        int idx = 0;
+        for (final Locus locus : loci) {
+            if (locus != null) {
+                for (final Allele allele : locus.getAlleles()) {
+                    alleleIds[idx++] = allele.getId();
+                }
+            }
+        }
+        return new LocalAlleleIndex(alleleIds);
+    }
+
+    /**
+     * @return the number of alleles in the index
+     */
+    public int size() {
+        return _alleleIds.length;
+    }
+
+    /**
+     * Gets the local index of an allele.
+     *
+     * @param alleleId the global id of the allele
+     * @return the local index of the allele, or -1 if the allele is not in the index
+     */
+    public int getLocalIndex(final int alleleId) {
+        // The index of a locus holds few alleles, so a binary search takes only a few steps
+        int low = 0;
+        int high = _alleleIds.length - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int id = _alleleIds[mid];
+            if (id < alleleId) {
+                low = mid + 1;
+            }
+            else if (id > alleleId) {
+                high = mid - 1;
+            }
+            else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param localIndex the local index of an allele
+     * @return the global id of the allele
+     */
+    public int getAlleleId(final int localIndex) {
+        return _alleleIds[localIndex];
+    }
+}
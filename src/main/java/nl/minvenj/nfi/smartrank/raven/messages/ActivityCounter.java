@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2015 Netherlands Forensic Institute
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package nl.minvenj.nfi.smartrank.raven.messages;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the pending work of the {@link MessageBus} and wakes up the threads waiting on a monitor when the count drops
+ * to zero.
+ */
+final class ActivityCounter {
+
+    private final AtomicInteger _count = new AtomicInteger();
+    private final Object _monitor;
+
+    ActivityCounter(final Object monitor) {
+        _monitor = monitor;
+    }
+
+    void increment() {
+        _count.incrementAndGet();
+    }
+
+    /**
+     * Decrements the count and notifies the monitor if the count has become zero.
+     *
+     * @return the new count
+     */
+    int decrement() {
+        final int count = _count.decrementAndGet();
+        if (count == 0) {
+            synchronized (_monitor) {
+                _monitor.notifyAll();
+            }
+        }
+        return count;
+    }
+
+    boolean isZero() {
+        return _count.get() == 0;
+    }
+}
@@ -20,7 +20,6 @@ package nl.minvenj.nfi.smartrank.raven.messages;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ConcurrentModificationException;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,9 +33,9 @@ public class DeliveryBoy implements Runnable {
     private final Object _source;
     private final Subscription _subscription;
     private final RavenMessage<?> _message;
-    private final AtomicInteger _outstandingMessages;
+    private final ActivityCounter _outstandingMessages;
 
-    public DeliveryBoy(final Object source, final Subscription subscription, final RavenMessage<?> message, final AtomicInteger outstandingMessages) {
+    DeliveryBoy(final Object source, final Subscription subscription, final RavenMessage<?> message, final ActivityCounter outstandingMessages) {
         _source = source;
         _subscription = subscription;
         _message = message;
@@ -82,7 +81,7 @@ public class DeliveryBoy implements Runnable {
             MessageBus.getInstance().send(instance, new ErrorStringMessage(ex.getLocalizedMessage()));
         }
         finally {
-            LOG.debug("Outstanding messages: {}", _outstandingMessages.decrementAndGet());
+            LOG.debug("Outstanding messages: {}", _outstandingMessages.decrement());
         }
     }
 }
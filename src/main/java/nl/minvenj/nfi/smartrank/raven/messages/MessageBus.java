@@ -2,13 +2,13 @@ package nl.minvenj.nfi.smartrank.raven.messages;
 
 import java.awt.EventQueue;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,10 +22,13 @@ public class MessageBus {
 
     private static MessageBus _me;
 
-    private final HashMap<Class<? extends RavenMessage<?>>, CurrentValue> _currentValues;
-    private final ReentrantReadWriteLock _lock;
     private final ExecutorService _notificationService;
-    private final HashMap<Class<? extends RavenMessage<?>>, ArrayList<Subscription>> _subscriptions;
+    private volatile Thread _notificationThread;
+    private final ConcurrentHashMap<Class<? extends RavenMessage<?>>, CopyOnWriteArrayList<Subscription>> _subscriptions;
+    private final Object _idleMonitor;
+    private final ActivityCounter _queuedMessages;
+    private final ActivityCounter _notifierDeliveries;
+    private final ActivityCounter _edtDeliveries;
     private final MessageQueue _messageQueue;
     private final MessagePump _messagePump;
 
@@ -52,54 +55,90 @@ public class MessageBus {
         }
     }
 
+    /**
+     * A queue that holds at most one pending message per message class. Messages are taken in the order in which their
+     * class first became pending, so a newer message of a class that is already pending replaces the pending message,
+     * or is merged into it if coalescing is enabled, without changing its position.
+     */
     private class MessageQueue {
-        ArrayList<PendingMessage> _messages;
+        private final ConcurrentHashMap<Class<?>, MessageSlot> _slots = new ConcurrentHashMap<>();
+        private final LinkedBlockingQueue<MessageSlot> _readySlots = new LinkedBlockingQueue<>();
 
-        public MessageQueue(final int capacity) {
-            _messages = new ArrayList<MessageBus.PendingMessage>(capacity);
+        public PendingMessage take() throws InterruptedException {
+            return _readySlots.take().takePending();
         }
 
-        public PendingMessage take() throws InterruptedException {
-            Thread.sleep(10);
-            while (_messages.size() == 0) {
-                Thread.sleep(10);
+        public void put(final PendingMessage pendingMessage, final boolean current) {
+            final MessageSlot slot = getSlot(pendingMessage.getMessage().getClass());
+            if (slot.offer(pendingMessage, current)) {
+                _queuedMessages.increment();
+                _readySlots.add(slot);
             }
+        }
 
-            synchronized (_messages) {
-                return _messages.remove(0);
+        public CurrentValue getCurrentValue(final Class<?> messageClass) {
+            final MessageSlot slot = _slots.get(messageClass);
+            return slot == null ? null : slot.getCurrentValue();
+        }
+
+        private MessageSlot getSlot(final Class<?> messageClass) {
+            MessageSlot slot = _slots.get(messageClass);
+            if (slot == null) {
+                final MessageSlot newSlot = new MessageSlot();
+                slot = _slots.putIfAbsent(messageClass, newSlot);
+                if (slot == null) {
+                    slot = newSlot;
+                }
             }
+            return slot;
         }
+    }
 
+    /**
+     * Holds the current value and the pending message of a single message class.
+     */
+    private class MessageSlot {
+        private volatile CurrentValue _currentValue;
+        private PendingMessage _pending;
+
+        /**
+         * Offers a message to this slot.
+         *
+         * @param pendingMessage the message
+         * @param current <b>true</b> if the message also becomes the current value of its class
+         * @return <b>true</b> if the slot was empty and must be added to the queue
+         */
         @SuppressWarnings({"unchecked", "rawtypes"})
-        public void put(final PendingMessage pendingMessage) {
-            synchronized (_messages) {
-                for (int idx = 0; idx < _messages.size(); idx++) {
-                    final PendingMessage msg = _messages.get(idx);
-                    if (msg.getMessage().getClass() == pendingMessage.getMessage().getClass()) {
-                        if (pendingMessage.getMessage().isCoalescingEnabled()) {
-                            final List msgList = (List) msg.getMessage().get();
-                            final List pendingList = (List) pendingMessage.getMessage().get();
-                            for (final Object o : pendingList) {
-                                msgList.add(o);
-                            }
-                        }
-                        else {
-                            _messages.remove(idx);
-                            _messages.add(idx, pendingMessage);
-                        }
-                        return;
-                    }
+        public synchronized boolean offer(final PendingMessage pendingMessage, final boolean current) {
+            if (current) {
+                _currentValue = new CurrentValue(pendingMessage.getSource(), pendingMessage.getMessage());
+            }
+            if (_pending == null) {
+                _pending = pendingMessage;
+                return true;
+            }
+            if (pendingMessage.getMessage().isCoalescingEnabled()) {
+                final List msgList = (List) _pending.getMessage().get();
+                final List pendingList = (List) pendingMessage.getMessage().get();
+                for (final Object o : pendingList) {
+                    msgList.add(o);
                 }
-                _messages.add(pendingMessage);
             }
+            else {
+                _pending = pendingMessage;
+            }
+            return false;
         }
 
-        public boolean isEmpty() {
-            synchronized (_messages) {
-                return _messages.isEmpty();
-            }
+        public synchronized PendingMessage takePending() {
+            final PendingMessage pending = _pending;
+            _pending = null;
+            return pending;
         }
 
+        public CurrentValue getCurrentValue() {
+            return _currentValue;
+        }
     }
 
     private class CurrentValue {
@@ -156,8 +195,6 @@ public class MessageBus {
 
     private class MessagePump extends Thread {
 
-        AtomicInteger _outstandingMessages = new AtomicInteger();
-
         public MessagePump() {
             setName("MessagePump");
         }
@@ -168,27 +205,28 @@ public class MessageBus {
                 while (!isInterrupted()) {
                     final PendingMessage pendingMessage = _messageQueue.take();
                     try {
-                        _lock.readLock().lock();
-                        final ArrayList<Subscription> subscriptions = _subscriptions.get(pendingMessage.getMessage().getClass());
+                        final List<Subscription> subscriptions = _subscriptions.get(pendingMessage.getMessage().getClass());
                         if (subscriptions != null) {
                             for (final Subscription subscription : subscriptions) {
+                                final ActivityCounter deliveries = subscription.executeOnEDT() ? _edtDeliveries : _notifierDeliveries;
                                 try {
-                                    _outstandingMessages.incrementAndGet();
+                                    deliveries.increment();
                                     if (subscription.executeOnEDT()) {
-                                        EventQueue.invokeLater(new DeliveryBoy(pendingMessage.getSource(), subscription, pendingMessage.getMessage(), _outstandingMessages));
+                                        EventQueue.invokeLater(new DeliveryBoy(pendingMessage.getSource(), subscription, pendingMessage.getMessage(), deliveries));
                                     }
                                     else {
-                                        _notificationService.submit(new DeliveryBoy(pendingMessage.getSource(), subscription, pendingMessage.getMessage(), _outstandingMessages));
+                                        _notificationService.submit(new DeliveryBoy(pendingMessage.getSource(), subscription, pendingMessage.getMessage(), deliveries));
                                     }
                                 }
                                 catch (final Throwable t) {
+                                    deliveries.decrement();
                                     LOG.error("Error Dispatching {} from {} to {}", pendingMessage.getMessage().get(), (pendingMessage.getSource() instanceof String ? pendingMessage.getSource() : pendingMessage.getSource().getClass().getSimpleName()), subscription, t);
                                 }
                             }
                         }
                     }
                     finally {
-                        _lock.readLock().unlock();
+                        _queuedMessages.decrement();
                     }
                 }
             }
@@ -200,20 +238,23 @@ public class MessageBus {
             }
             LOG.info("Message pump stopped");
         }
-
-        public void waitIdle(final long toWait) {
-            final long start = System.currentTimeMillis();
-            while ((System.currentTimeMillis() - start < toWait) && !_messageQueue.isEmpty() && _outstandingMessages.get() > 0) {
-            }
-        }
     }
 
     private MessageBus() {
-        _currentValues = new HashMap<Class<? extends RavenMessage<?>>, CurrentValue>();
-        _lock = new ReentrantReadWriteLock();
-        _notificationService = Executors.newSingleThreadExecutor();
-        _messageQueue = new MessageQueue(100);
-        _subscriptions = new HashMap<Class<? extends RavenMessage<?>>, ArrayList<Subscription>>();
+        _idleMonitor = new Object();
+        _queuedMessages = new ActivityCounter(_idleMonitor);
+        _notifierDeliveries = new ActivityCounter(_idleMonitor);
+        _edtDeliveries = new ActivityCounter(_idleMonitor);
+        _notificationService = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "MessageBusNotifier");
+                _notificationThread = thread;
+                return thread;
+            }
+        });
+        _messageQueue = new MessageQueue();
+        _subscriptions = new ConcurrentHashMap<Class<? extends RavenMessage<?>>, CopyOnWriteArrayList<Subscription>>();
         _messagePump = new MessagePump();
         _messagePump.start();
     }
@@ -225,8 +266,7 @@ public class MessageBus {
      * @throws InterruptedException
      */
     public void registerSubscriber(final Object instance) {
-        _lock.writeLock().lock();
-        try {
+        synchronized (_subscriptions) {
             Class<?> instanceClass = instance.getClass();
             while (instanceClass != null) {
                 for (final Method m : instanceClass.getDeclaredMethods()) {
@@ -238,9 +278,9 @@ public class MessageBus {
                             addMessageSubscription(instance, m, eoset, messageClass);
 
                             // Notify then new subscriber of any value already set
-                            final CurrentValue currentValue = _currentValues.get(messageClass);
+                            final CurrentValue currentValue = _messageQueue.getCurrentValue(messageClass);
                             if (currentValue != null) {
-                                _messageQueue.put(new PendingMessage(currentValue.getSource(), currentValue.getMessage()));
+                                _messageQueue.put(new PendingMessage(currentValue.getSource(), currentValue.getMessage()), false);
                             }
                         }
                     }
@@ -248,15 +288,12 @@ public class MessageBus {
                 instanceClass = instanceClass.getSuperclass();
             }
         }
-        finally {
-            _lock.writeLock().unlock();
-        }
     }
 
     private void addMessageSubscription(final Object instance, final Method m, final ExecuteOnSwingEventThread eoset, final Class<? extends RavenMessage<?>> messageClass) {
-        ArrayList<Subscription> subscriptions = _subscriptions.get(messageClass);
+        CopyOnWriteArrayList<Subscription> subscriptions = _subscriptions.get(messageClass);
         if (subscriptions == null) {
-            subscriptions = new ArrayList<Subscription>();
+            subscriptions = new CopyOnWriteArrayList<Subscription>();
             _subscriptions.put(messageClass, subscriptions);
         }
 
@@ -267,28 +304,21 @@ public class MessageBus {
     }
 
     /**
-     * Sends a message to the subscribed methods.
+     * Sends a message to the subscribed methods. Senders do not block each other, unless they send messages of the same
+     * class at the same time.
      *
      * @param source
      * @param message
-     * @throws InterruptedException
      */
-    @SuppressWarnings("unchecked")
     public void send(final Object source, final RavenMessage<?> message) {
-        _lock.writeLock().lock();
         try {
             if (message.isWaitForIdleBus())
                 waitIdle(3000);
-            final CurrentValue newValue = new CurrentValue(source, message);
-            _currentValues.put((Class<? extends RavenMessage<?>>) message.getClass(), newValue);
-            _messageQueue.put(new PendingMessage(source, message));
+            _messageQueue.put(new PendingMessage(source, message), true);
         }
         catch (final Throwable t) {
             LOG.error("Error sending message! sender={}, message={}", source instanceof String ? source : source.getClass().getSimpleName(), message, t);
         }
-        finally {
-            _lock.writeLock().unlock();
-        }
     }
 
     /**
@@ -299,25 +329,36 @@ public class MessageBus {
      */
     @SuppressWarnings("unchecked")
     public <T>T query(final Class<? extends RavenMessage<T>> subjectClass) {
-        _lock.readLock().lock();
-        try {
-            final CurrentValue currentValue = _currentValues.get(subjectClass);
-            if (currentValue != null)
-                return (T) currentValue.getMessage().get();
-            LOG.info("No value available for {} on messagebus {}", subjectClass.getSimpleName(), this);
-            return null;
-        }
-        finally {
-            _lock.readLock().unlock();
-        }
+        final CurrentValue currentValue = _messageQueue.getCurrentValue(subjectClass);
+        if (currentValue != null)
+            return (T) currentValue.getMessage().get();
+        LOG.info("No value available for {} on messagebus {}", subjectClass.getSimpleName(), this);
+        return null;
     }
 
     /**
      * Waits for the message bus to be idle, i.e. without pending messages or running notification threads.
+     * Notifications that can only run on the calling thread (because it is the Swing event thread or the notification
+     * thread) are not waited for, as they cannot complete before this method returns.
      *
      * @param toWait the number of milliseconds to wait. The method will return when the message bus is idle or when the set time has expired, whichever comes first.
      */
     public void waitIdle(final long toWait) {
-        _messagePump.waitIdle(toWait);
+        final boolean onEDT = EventQueue.isDispatchThread();
+        final boolean onNotificationThread = Thread.currentThread() == _notificationThread;
+        final long deadline = System.currentTimeMillis() + toWait;
+        synchronized (_idleMonitor) {
+            long remaining = toWait;
+            while (remaining > 0 && !(_queuedMessages.isZero() && (onEDT || _edtDeliveries.isZero()) && (onNotificationThread || _notifierDeliveries.isZero()))) {
+                try {
+                    _idleMonitor.wait(remaining);
+                }
+                catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+        }
     }
 }
@@ -220,7 +220,7 @@ public class JasperDataSource implements JRDataSource {
             case LRS_OVER_THRESHOLD:
                 return getSafePositiveLRs(getSearchResults().getParameters().getLrThreshold());
             case NUMBER_OF_LRS_OVER_THRESHOLD:
-                return getSafePositiveLRs(getSearchResults().getParameters().getLrThreshold()).size();
+                return getSearchResults().getNumberOfLRsOverThreshold();
             case LR_THRESHOLD:
                 return getSearchResults().getParameters().getLrThreshold();
             case MAXLR:
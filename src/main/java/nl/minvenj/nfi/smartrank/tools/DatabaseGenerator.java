@@ -17,6 +17,7 @@
  */
 package nl.minvenj.nfi.smartrank.tools;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -90,7 +91,7 @@ public class DatabaseGenerator {
         new Kit("Other", Double.NaN, Arrays.asList(ALL_LOCI))
     };
 
-    private static String generateRandomProfileName(final SecureRandom random, final String kitName, final int idx) {
+    private static String generateRandomProfileName(final Random random, final String kitName, final int idx) {
         final StringBuilder id = new StringBuilder();
         for (int curchar = 0; curchar < 4; curchar++) {
             id.append(CHARACTERS.charAt((int) (random.nextDouble() * 26)));
@@ -124,8 +125,8 @@ public class DatabaseGenerator {
             print(text + "\n");
         }
 
-        private void close() throws IOException {
-            _os.close();
+        private void flush() throws IOException {
+            _os.flush();
         }
     }
 
@@ -137,7 +138,25 @@ public class DatabaseGenerator {
         final File db = new File(outputFolder, "database_generated_" + recordCount + ".csv");
         db.delete();
 
-        final TextWriter w = new TextWriter(db);
+        try (final OutputStream os = new FileOutputStream(db)) {
+            generate(stats, recordCount, SecureRandom.getInstance("SHA1PRNG"), os);
+        }
+        System.out.println("Generated database: " + db.getAbsolutePath());
+    }
+
+    /**
+     * Writes a generated database in CODIS format to the supplied stream. The alleles of each profile are drawn from
+     * the supplied statistics, and the loci of each profile are those of a kit chosen at random according to the
+     * distribution of kits in an actual database. Supplying a seeded {@link Random} gives a reproducible database.
+     *
+     * @param stats the population statistics to draw the alleles from
+     * @param recordCount the number of profiles to generate
+     * @param random the source of randomness
+     * @param os the stream to write the database to. The stream is not closed by this method.
+     * @throws IOException if an error occurs writing to the stream
+     */
+    public static void generate(final PopulationStatistics stats, final int recordCount, final Random random, final OutputStream os) throws IOException {
+        final TextWriter w = new TextWriter(new BufferedOutputStream(os));
         w.print("specimenId");
 
         for (final String locus : ALL_LOCI) {
@@ -163,11 +182,9 @@ public class DatabaseGenerator {
                 lastFeedbackTime = LocalDateTime.now();
                 System.out.println("Record #" + idx);
             }
-            final SecureRandom secureRandom = SecureRandom.getInstance("SHA1PRNG");
-
-            final Kit randomKit = getRandomKit(secureRandom);
+            final Kit randomKit = getRandomKit(random);
 
-            final String profileName = generateRandomProfileName(secureRandom, randomKit._name, idx);
+            final String profileName = generateRandomProfileName(random, randomKit._name, idx);
             w.print(profileName);
 
             // Create a random profile
@@ -177,11 +194,11 @@ public class DatabaseGenerator {
                 while (lociInProfile.size() < 4) {
                     for (final String locus : randomKit._loci) {
                         // For a random kit, include a locus with 5% probability
-                        if (secureRandom.nextDouble() < 0.05 && !lociInProfile.containsKey(locus)) {
+                        if (random.nextDouble() < 0.05 && !lociInProfile.containsKey(locus)) {
                             final HashMap<String, Double> alleleProbabilities = myStats.get(locus);
                             final List<String> alleles = lociInProfile.getOrDefault(locus, new ArrayList<>());
-                            addRandomAllele(secureRandom, alleleProbabilities, locus, alleles);
-                            addRandomAllele(secureRandom, alleleProbabilities, locus, alleles);
+                            addRandomAllele(random, alleleProbabilities, locus, alleles);
+                            addRandomAllele(random, alleleProbabilities, locus, alleles);
                             Collections.sort(alleles);
                             lociInProfile.put(locus, alleles);
                         }
@@ -193,8 +210,8 @@ public class DatabaseGenerator {
                     // For a random kit, include a locus with 5% probability
                     final HashMap<String, Double> alleleProbabilities = myStats.get(locus);
                     final List<String> alleles = lociInProfile.getOrDefault(locus, new ArrayList<>());
-                    addRandomAllele(secureRandom, alleleProbabilities, locus, alleles);
-                    addRandomAllele(secureRandom, alleleProbabilities, locus, alleles);
+                    addRandomAllele(random, alleleProbabilities, locus, alleles);
+                    addRandomAllele(random, alleleProbabilities, locus, alleles);
                     Collections.sort(alleles);
                     lociInProfile.put(locus, alleles);
                 }
@@ -215,8 +232,7 @@ public class DatabaseGenerator {
             }
             w.println("");
         }
-        w.close();
-        System.out.println("Generated database: " + db.getAbsolutePath());
+        w.flush();
     }
 
     private static Kit getRandomKit(final Random random) {
@@ -233,7 +249,7 @@ public class DatabaseGenerator {
         return null;
     }
 
-    private static void addRandomAllele(final Random random, final Map<String, Double> alleleProbabilities, final String locusName, final List<String> alleles) throws NoSuchAlgorithmException {
+    private static void addRandomAllele(final Random random, final Map<String, Double> alleleProbabilities, final String locusName, final List<String> alleles) {
         final String randomAllele = generateRandomAllele(random, locusName, alleleProbabilities);
         // 5% of all homozygotic loci are represented by a single allele
         if (random.nextInt(100) < 5 || !alleles.contains(randomAllele)) {
@@ -241,7 +257,7 @@ public class DatabaseGenerator {
         }
     }
 
-    private static String generateRandomAllele(final Random random, final String locusName, final Map<String, Double> alleleProbabilities) throws NoSuchAlgorithmException {
+    private static String generateRandomAllele(final Random random, final String locusName, final Map<String, Double> alleleProbabilities) {
         final String[] fractions = {"", ".0", ".1", ".2", ".3"};
 
         double d = random.nextDouble();
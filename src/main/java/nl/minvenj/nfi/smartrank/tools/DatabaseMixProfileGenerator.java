@@ -12,6 +12,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 public class DatabaseMixProfileGenerator {
     private static class TextWriter {
@@ -51,14 +54,84 @@ public class DatabaseMixProfileGenerator {
         final SecureRandom sr = new SecureRandom();
         sr.setSeed(System.currentTimeMillis());
 
-        final String[] loci;
-        int numberOfProfiles = 0;
+        final String[] loci = readLoci(dbFile);
+        final List<String> donors = selectDonors(dbFile, donorCount, sr);
+        final String mixProfileName = getMixProfileName(donors);
+        final Map<String, ArrayList<String>> mixProfile = composeMixProfile(loci, donors, dropouts, sr);
+
+        // Save mix profile
+        final File profile = new File(dbFile.getParent(), mixProfileName + ".csv");
+        profile.delete();
+        final TextWriter w = new TextWriter(profile);
+        w.println("SampleName,Marker,Allele1,Allele2,Allele3,Allele4,Allele5,Allele6,Allele7,Allele8");
+        for (final String locus : mixProfile.keySet()) {
+            w.print(mixProfileName + "," + locus);
+            int alleleCount = 0;
+            final ArrayList<String> alleleList = mixProfile.get(locus);
+            Collections.sort(alleleList, new Comparator<String>() {
+                @Override
+                public int compare(final String o1, final String o2) {
+                    Double d1 = null;
+                    Double d2 = null;
+                    try {
+                        d1 = new Double(o1);
+                    }
+                    catch (final NumberFormatException nfe) {
+                    }
+                    try {
+                        d2 = new Double(o2);
+                    }
+                    catch (final NumberFormatException nfe) {
+                    }
+                    if (d1 == null && d2 == null)
+                        return 0;
+                    if (d1 == null)
+                        return -1;
+                    if (d2 == null)
+                        return 1;
+                    return new Double(o1).compareTo(new Double(o2));
+                }
+            });
+            for (final String allele : alleleList) {
+                alleleCount++;
+                w.print("," + allele);
+            }
+            w.println(",,,,,,,,".substring(alleleCount));
+        }
+
+        System.out.println("Mix profile generated: " + profile);
+    }
+
+    /**
+     * Reads the locus names from the header of a database file in CODIS format. The returned array contains a locus
+     * name for each allele column in the file, so a locus can occur more than once.
+     *
+     * @param dbFile the database file
+     * @return an array containing the locus name of each allele column
+     * @throws IOException if an error occurs reading the file
+     */
+    public static String[] readLoci(final File dbFile) throws IOException {
         try (final BufferedReader r = new BufferedReader(new FileReader(dbFile))) {
             String headerLine = r.readLine();
             final String separator = determineSeparator(headerLine);
             headerLine = headerLine.substring(headerLine.indexOf(separator) + 1).replaceAll(" ", "").replaceAll("_\\d", "");
-            loci = headerLine.split(separator);
+            return headerLine.split(separator);
+        }
+    }
 
+    /**
+     * Selects distinct records at random from a database file in CODIS format.
+     *
+     * @param dbFile the database file
+     * @param donorCount the number of records to select
+     * @param random the source of randomness
+     * @return a list containing the selected records as they appear in the file
+     * @throws IOException if an error occurs reading the file
+     */
+    public static List<String> selectDonors(final File dbFile, final int donorCount, final Random random) throws IOException {
+        int numberOfProfiles = 0;
+        try (final BufferedReader r = new BufferedReader(new FileReader(dbFile))) {
+            r.readLine(); // Skip header
             while (r.readLine() != null) {
                 numberOfProfiles++;
             }
@@ -75,25 +148,48 @@ public class DatabaseMixProfileGenerator {
                 String line;
                 r.readLine(); // Skip header
                 while (donors.size() < donorCount && (line = r.readLine()) != null) {
-                    if (sr.nextDouble() < factor)
+                    if (random.nextDouble() < factor)
                         if (!donors.contains(line))
                             donors.add(line);
                 }
             }
         }
+        return donors;
+    }
 
-        // Compose mix profile
+    /**
+     * Composes the name of a mixed profile from the names of its donors.
+     *
+     * @param donors the records of the donors
+     * @return the names of the donors, separated by dashes
+     */
+    public static String getMixProfileName(final List<String> donors) {
         String mixProfileName = "";
+        for (final String donor : donors) {
+            final String separator = determineSeparator(donor);
+            if (!mixProfileName.isEmpty())
+                mixProfileName += "-";
+            mixProfileName += donor.substring(0, donor.indexOf(separator)).trim();
+        }
+        return mixProfileName;
+    }
+
+    /**
+     * Composes a mixed profile from the records of its donors. Each allele of a donor drops out with the dropout
+     * probability of that donor.
+     *
+     * @param loci the locus names of the allele columns, as returned by {@link #readLoci(File)}
+     * @param donors the records of the donors
+     * @param dropouts the dropout probability for each donor
+     * @param random the source of randomness
+     * @return a map from locus name to the alleles observed at that locus. Loci without alleles are not present.
+     */
+    public static Map<String, ArrayList<String>> composeMixProfile(final String[] loci, final List<String> donors, final double[] dropouts, final Random random) {
         final HashMap<String, ArrayList<String>> mixProfile = new HashMap<>();
         int donorIdx = 0;
         for (final String donor : donors) {
             final String separator = determineSeparator(donor);
 
-            final String donorName = donor.substring(0, donor.indexOf(separator)).trim();
-            if (!mixProfile.isEmpty())
-                mixProfileName += "-";
-            mixProfileName += donorName;
-
             final String[] donorAlleles = donor.substring(donor.indexOf(separator) + 1).split(separator);
             for (int idx = 0; idx < donorAlleles.length; idx++) {
 
@@ -105,7 +201,7 @@ public class DatabaseMixProfileGenerator {
                     mixLocusAlleles = new ArrayList<String>();
                 }
 
-                if (!allele.equalsIgnoreCase("NULL") && sr.nextDouble() > dropouts[donorIdx] && !mixLocusAlleles.contains(allele)) {
+                if (!allele.equalsIgnoreCase("NULL") && random.nextDouble() > dropouts[donorIdx] && !mixLocusAlleles.contains(allele)) {
                     mixLocusAlleles.add(allele);
                 }
 
@@ -115,48 +211,7 @@ public class DatabaseMixProfileGenerator {
             }
             donorIdx++;
         }
-
-        // Save mix profile
-        final File profile = new File(dbFile.getParent(), mixProfileName + ".csv");
-        profile.delete();
-        final TextWriter w = new TextWriter(profile);
-        w.println("SampleName,Marker,Allele1,Allele2,Allele3,Allele4,Allele5,Allele6,Allele7,Allele8");
-        for (final String locus : mixProfile.keySet()) {
-            w.print(mixProfileName + "," + locus);
-            int alleleCount = 0;
-            final ArrayList<String> alleleList = mixProfile.get(locus);
-            Collections.sort(alleleList, new Comparator<String>() {
-                @Override
-                public int compare(final String o1, final String o2) {
-                    Double d1 = null;
-                    Double d2 = null;
-                    try {
-                        d1 = new Double(o1);
-                    }
-                    catch (final NumberFormatException nfe) {
-                    }
-                    try {
-                        d2 = new Double(o2);
-                    }
-                    catch (final NumberFormatException nfe) {
-                    }
-                    if (d1 == null && d2 == null)
-                        return 0;
-                    if (d1 == null)
-                        return -1;
-                    if (d2 == null)
-                        return 1;
-                    return new Double(o1).compareTo(new Double(o2));
-                }
-            });
-            for (final String allele : alleleList) {
-                alleleCount++;
-                w.print("," + allele);
-            }
-            w.println(",,,,,,,,".substring(alleleCount));
-        }
-
-        System.out.println("Mix profile generated: " + profile);
+        return mixProfile;
     }
 
     private static String determineSeparator(final String line) {
@@ -46,7 +46,7 @@ public class ReadTest {
                                 locus = new Locus(locusName);
                                 sample.addLocus(locus);
                             }
-                            if (allele.matches(CodisRecordValidator.VALID_ALLELE_REGEX)) {
+                            if (CodisRecordValidator.isValidAllele(allele)) {
                                 locus.addAllele(new Allele(allele));
                             }
                         }
@@ -0,0 +1,162 @@
+package nl.minvenj.nfi.smartrank.analysis;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.minvenj.nfi.smartrank.domain.Allele;
+import nl.minvenj.nfi.smartrank.domain.AnalysisParameters;
+import nl.minvenj.nfi.smartrank.domain.CandidateProfile;
+import nl.minvenj.nfi.smartrank.domain.DefenseHypothesis;
+import nl.minvenj.nfi.smartrank.domain.LikelihoodRatio;
+import nl.minvenj.nfi.smartrank.domain.Locus;
+import nl.minvenj.nfi.smartrank.domain.LocusLikelihoods;
+import nl.minvenj.nfi.smartrank.domain.PopulationStatistics;
+import nl.minvenj.nfi.smartrank.domain.ProsecutionHypothesis;
+import nl.minvenj.nfi.smartrank.domain.Sample;
+import nl.minvenj.nfi.smartrank.messages.data.EnabledLociMessage;
+import nl.minvenj.nfi.smartrank.model.smartrank.SmartRankModel;
+import nl.minvenj.nfi.smartrank.raven.messages.MessageBus;
+
+public class CandidatePrefilterTest {
+
+    private static final String LOCUS1 = "PREFILTERLOCUS1";
+    private static final String LOCUS2 = "PREFILTERLOCUS2";
+    private static final List<String> LOCI = Arrays.asList(LOCUS1, LOCUS2);
+
+    private PopulationStatistics _statistics;
+    private AnalysisParameters _parameters;
+    private List<Sample> _candidates;
+
+    @Before
+    public void setUp() {
+        _statistics = new PopulationStatistics("");
+        for (final String locus : LOCI) {
+            for (int allele = 1; allele <= 8; allele++) {
+                _statistics.addStatistic(locus, "" + allele, new BigDecimal(0.05 + allele * 0.02));
+            }
+        }
+
+        _parameters = new AnalysisParameters();
+        _parameters.setCalculateHdOnce(true);
+        _parameters.setEnabledCrimesceneProfiles(Arrays.asList(
+            sample("Replicate1", "1", "2", "3", "4", "5", "6"),
+            sample("Replicate2", "1", "2", "3", "4", "5")));
+
+        _candidates = new ArrayList<>();
+        _candidates.add(sample("Donor", "1", "2", "3", "4"));
+        _candidates.add(sample("OtherDonor", "3", "6", "5", "6"));
+        _candidates.add(sample("Partial", "1", "7", "4", "8"));
+        _candidates.add(sample("Homozygote", "1", "1", "6", "6"));
+        _candidates.add(sample("NonContributor", "7", "8", "7", "7"));
+        final Sample oneLocus = new Sample("OneLocus");
+        oneLocus.addLocus(locus(LOCUS1, "2", "8"));
+        _candidates.add(oneLocus);
+
+        MessageBus.getInstance().send("CandidatePrefilterTest", new EnabledLociMessage(LOCI));
+    }
+
+    @Test
+    public void testBoundIsNotSmallerThanLR() throws InterruptedException {
+        for (final double theta : new double[]{0, 0.05}) {
+            for (final double dropout : new double[]{0, 0.1, 0.4}) {
+                for (final int unknownCount : new int[]{0, 1, 2}) {
+                    final ProsecutionHypothesis hp = createHp(theta, dropout, unknownCount);
+                    final LocusLikelihoods prD = new SmartRankModel().calculateLikelihood(createHd(theta, unknownCount), _parameters);
+                    final CandidatePrefilter prefilter = CandidatePrefilter.create(hp, _parameters, LOCI, prD);
+                    assertNotNull(prefilter);
+
+                    for (final Sample candidate : _candidates) {
+                        final double ratio = calculateRatio(hp, prD, candidate);
+                        final CandidateProfile profile = CandidateProfile.of(candidate);
+                        final double bound = prefilter.getLog10UpperBound(profile);
+                        final String message = candidate.getName() + " theta=" + theta + " dropout=" + dropout + " unknowns=" + unknownCount;
+                        assertTrue(message + " LR=" + ratio + " bound=" + bound, Math.log10(ratio) <= bound + 1.0E-9);
+                        if (prefilter.isBelowThreshold(profile)) {
+                            assertTrue(message, ratio <= _parameters.getLrThreshold());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIsBelowThreshold() throws InterruptedException {
+        final ProsecutionHypothesis hp = createHp(0.01, 0.1, 1);
+        final LocusLikelihoods prD = new SmartRankModel().calculateLikelihood(createHd(0.01, 1), _parameters);
+        _parameters.setLrThreshold(1000);
+        final CandidatePrefilter prefilter = CandidatePrefilter.create(hp, _parameters, LOCI, prD);
+
+        assertFalse(prefilter.isBelowThreshold(CandidateProfile.of(_candidates.get(0))));
+        assertTrue(prefilter.isBelowThreshold(CandidateProfile.of(_candidates.get(4))));
+    }
+
+    @Test
+    public void testNotCreatedWithoutBound() throws InterruptedException {
+        final ProsecutionHypothesis hp = createHp(0, 0.1, 1);
+        assertNull(CandidatePrefilter.create(hp, _parameters, LOCI, null));
+
+        final LocusLikelihoods prD = new SmartRankModel().calculateLikelihood(createHd(0, 1), _parameters);
+        hp.setQDesignationShutdown(false);
+        assertNull(CandidatePrefilter.create(hp, _parameters, LOCI, prD));
+    }
+
+    private ProsecutionHypothesis createHp(final double theta, final double dropout, final int unknownCount) {
+        final ProsecutionHypothesis hp = new ProsecutionHypothesis();
+        hp.setStatistics(_statistics);
+        hp.setThetaCorrection(theta);
+        hp.setDropInProbability(0.05);
+        hp.setUnknownCount(unknownCount);
+        hp.setUnknownDropoutProbability(0.1);
+        hp.setCandidateDropout(dropout);
+        hp.setQDesignationShutdown(true);
+        return hp;
+    }
+
+    private DefenseHypothesis createHd(final double theta, final int unknownCount) {
+        final DefenseHypothesis hd = new DefenseHypothesis();
+        hd.setStatistics(_statistics);
+        hd.setThetaCorrection(theta);
+        hd.setDropInProbability(0.05);
+        hd.setUnknownCount(unknownCount + 1);
+        hd.setUnknownDropoutProbability(0.1);
+        return hd;
+    }
+
+    private double calculateRatio(final ProsecutionHypothesis hp, final LocusLikelihoods prD, final Sample candidate) throws InterruptedException {
+        hp.setCandidate(candidate);
+        try {
+            final LocusLikelihoods prP = new SmartRankModel().calculateLikelihood(hp, _parameters);
+            return new LikelihoodRatio(candidate, prP, prD).getOverallRatio().getRatio();
+        }
+        finally {
+            hp.reset();
+        }
+    }
+
+    private static Sample sample(final String name, final String... alleles) {
+        final Sample sample = new Sample(name);
+        final int half = alleles.length / 2;
+        sample.addLocus(locus(LOCUS1, Arrays.copyOfRange(alleles, 0, half)));
+        sample.addLocus(locus(LOCUS2, Arrays.copyOfRange(alleles, half, alleles.length)));
+        return sample;
+    }
+
+    private static Locus locus(final String name, final String... alleles) {
+        final Locus locus = new Locus(name);
+        for (final String allele : alleles) {
+            locus.addAllele(new Allele(allele));
+        }
+        return locus;
+    }
+}
@@ -0,0 +1,109 @@
+package nl.minvenj.nfi.smartrank.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.math3.stat.descriptive.rank.Percentile;
+import org.junit.Test;
+
+public class LRDistributionTest {
+
+    @Test
+    public void testExact() {
+        final LRDistribution distribution = new LRDistribution();
+        final double[] values = {1.2, 0.8, 1697.1428571428569, 0, 3.5};
+        for (final double value : values) {
+            distribution.add(value);
+        }
+
+        assertTrue(distribution.isExact());
+        assertEquals(5, distribution.getCount());
+        assertEquals(3, distribution.getCountOver1());
+        assertEquals(0, distribution.getMin(), 0);
+        assertEquals(1697.1428571428569, distribution.getMax(), 0);
+        assertEquals(Arrays.asList(1.2, 0.8, 1697.1428571428569, 0.0, 3.5), distribution.getValues());
+        for (final int percentile : new int[]{1, 10, 50, 70, 99}) {
+            assertEquals(percentile(values, percentile), distribution.getPercentile(percentile), 0);
+        }
+    }
+
+    @Test
+    public void testHistogram() {
+        final Random random = new Random(20151109L);
+        final int count = LRDistribution.EXACT_CAPACITY * 3;
+        final double[] values = new double[count];
+        final LRDistribution distribution = new LRDistribution();
+        for (int idx = 0; idx < count; idx++) {
+            values[idx] = Math.pow(10, random.nextGaussian() * 8);
+            distribution.add(values[idx]);
+        }
+
+        assertFalse(distribution.isExact());
+        assertEquals(count, distribution.getCount());
+        assertEquals(min(values), distribution.getMin(), 0);
+        assertEquals(max(values), distribution.getMax(), 0);
+        for (final int percentile : new int[]{1, 5, 25, 50, 75, 95, 99}) {
+            final double expected = percentile(values, percentile);
+            assertEquals("Percentile " + percentile, 1, distribution.getPercentile(percentile) / expected, 0.012);
+        }
+
+        final List<Double> quantiles = distribution.getValues();
+        assertEquals(LRDistribution.EXACT_CAPACITY, quantiles.size());
+        assertEquals(1, quantiles.get(0) / min(values), 0.012);
+        assertEquals(1, quantiles.get(quantiles.size() - 1) / max(values), 0.012);
+    }
+
+    @Test
+    public void testMerge() {
+        final Random random = new Random(42);
+        final LRDistribution all = new LRDistribution();
+        final LRDistribution first = new LRDistribution();
+        final LRDistribution second = new LRDistribution();
+        for (int idx = 0; idx < LRDistribution.EXACT_CAPACITY + 1000; idx++) {
+            final double value = idx % 100 == 0 ? 0 : Math.pow(10, random.nextGaussian() * 4);
+            all.add(value);
+            (idx % 3 == 0 ? first : second).add(value);
+        }
+        first.add(Double.NaN);
+        all.add(Double.NaN);
+
+        assertTrue(first.isExact());
+        first.merge(second);
+        assertFalse(first.isExact());
+        assertEquals(all.getCount(), first.getCount());
+        assertEquals(all.getCountOver1(), first.getCountOver1());
+        assertEquals(all.getMin(), first.getMin(), 0);
+        assertEquals(all.getMax(), first.getMax(), 0);
+        for (final int percentile : new int[]{1, 50, 99, 100}) {
+            assertEquals(all.getPercentile(percentile), first.getPercentile(percentile), 0);
+        }
+        assertTrue(Double.isNaN(first.getPercentile(100)));
+    }
+
+    private static double percentile(final double[] values, final int percentile) {
+        final double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return new Percentile(percentile).evaluate(sorted);
+    }
+
+    private static double min(final double[] values) {
+        double min = Double.MAX_VALUE;
+        for (final double value : values) {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+    private static double max(final double[] values) {
+        double max = Double.MIN_VALUE;
+        for (final double value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+}
@@ -5,11 +5,13 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.Collection;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import nl.minvenj.nfi.smartrank.domain.AnalysisParameters;
 import nl.minvenj.nfi.smartrank.domain.DatabaseConfiguration;
 import nl.minvenj.nfi.smartrank.domain.LikelihoodRatio;
 import nl.minvenj.nfi.smartrank.domain.Locus;
@@ -149,6 +151,25 @@ public class SearchResultsTest {
         assertEquals(1697.1428571428569, results.getPercentile(99), 0.00000001);
     }
 
+    @Test
+    public final void testPositiveLRsAreBounded() {
+        final AnalysisParameters parameters = new AnalysisParameters();
+        parameters.setLrThreshold(1);
+        parameters.setMaxReturnedResults(1);
+        final SearchResults results = new SearchResults(null);
+        results.setParameters(parameters);
+        results.addLR(_lr1);
+        results.addLR(_lr2);
+        results.addLR(_lr3);
+
+        assertEquals(3, results.getNumberOfLRs());
+        assertEquals(2, results.getNumberOfLRsOver1());
+        assertEquals(2, results.getNumberOfLRsOverThreshold());
+        assertEquals(Arrays.asList(_lr3), results.getPositiveLRs());
+        assertEquals(2, results.getResultsPerNumberOfLoci(1).size());
+        assertEquals(0.8, results.getMinRatio(), 0.00000001);
+    }
+
     public final void testGetDatabaseConfigurationNull() {
         final SearchResults results = new SearchResults(null);
         assertNull(results.getDatabaseConfiguration());
@@ -0,0 +1,97 @@
+package nl.minvenj.nfi.smartrank.analysis.parameterestimation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import org.apache.commons.math3.stat.descriptive.rank.Percentile;
+import org.junit.Test;
+
+public class DropoutPercentileTrackerTest {
+
+    private static BigDecimal dropout(final int step) {
+        return DropoutSimulation.getDropout(step);
+    }
+
+    @Test
+    public void testEmpty() {
+        final DropoutPercentileTracker tracker = new DropoutPercentileTracker();
+        tracker.add(Collections.<BigDecimal>emptyList());
+        assertEquals(1, tracker.getIterationCount());
+        assertTrue(Double.isNaN(tracker.getPercentile(95)));
+        assertEquals(Double.POSITIVE_INFINITY, tracker.getConfidenceIntervalWidth(95), 0.0);
+    }
+
+    @Test
+    public void testPercentile() {
+        final DropoutPercentileTracker tracker = new DropoutPercentileTracker();
+        for (int step = 1; step <= 20; step++) {
+            tracker.add(Arrays.asList(dropout(step)));
+        }
+        assertEquals(20, tracker.getIterationCount());
+        assertEquals(0.01, tracker.getPercentile(0), 0.0);
+        assertEquals(0.10, tracker.getPercentile(50), 0.0);
+        assertEquals(0.19, tracker.getPercentile(95), 0.0);
+        assertEquals(0.20, tracker.getPercentile(100), 0.0);
+    }
+
+    @Test
+    public void testSingleValueHasNoWidth() {
+        final DropoutPercentileTracker tracker = new DropoutPercentileTracker();
+        for (int iteration = 0; iteration < 10; iteration++) {
+            tracker.add(Arrays.asList(dropout(30), dropout(30)));
+        }
+        assertEquals(0.0, tracker.getConfidenceIntervalWidth(95), 0.0);
+    }
+
+    @Test
+    public void testWidthShrinksWithIterations() {
+        final Random rnd = new Random(1234);
+        final DropoutPercentileTracker tracker = new DropoutPercentileTracker();
+        final ArrayList<Double> values = new ArrayList<>();
+        final double[] widths = new double[5];
+        for (int batch = 0; batch < widths.length; batch++) {
+            for (int iteration = 0; iteration < 2000; iteration++) {
+                final BigDecimal value = dropout(Math.max(0, Math.min(DropoutSimulation.STEPS - 1, (int) (rnd.nextGaussian() * 10 + 40))));
+                tracker.add(Arrays.asList(value));
+                values.add(value.doubleValue());
+            }
+            widths[batch] = tracker.getConfidenceIntervalWidth(95);
+        }
+        assertTrue(Arrays.toString(widths), widths[4] < widths[0]);
+        assertTrue(Arrays.toString(widths), widths[4] <= 0.02);
+
+        // The tracked percentile agrees with the percentile over all values
+        final double[] data = new double[values.size()];
+        for (int idx = 0; idx < data.length; idx++) {
+            data[idx] = values.get(idx);
+        }
+        assertEquals(new Percentile(95).evaluate(data), tracker.getPercentile(95), 0.01);
+    }
+
+    @Test
+    public void testIterationsWithoutDropoutsWidenInterval() {
+        final DropoutPercentileTracker dense = new DropoutPercentileTracker();
+        final DropoutPercentileTracker sparse = new DropoutPercentileTracker();
+        for (int iteration = 0; iteration < 100; iteration++) {
+            final ArrayList<BigDecimal> dropouts = new ArrayList<>();
+            for (int step = 0; step < 50; step++) {
+                dropouts.add(dropout(step));
+            }
+            dense.add(dropouts);
+            if (iteration < 10) {
+                sparse.add(dropouts);
+            }
+            else {
+                sparse.add(Collections.<BigDecimal>emptyList());
+            }
+        }
+        // Only iterations that produced dropouts count towards the precision
+        assertTrue(sparse.getConfidenceIntervalWidth(95) > dense.getConfidenceIntervalWidth(95));
+    }
+}
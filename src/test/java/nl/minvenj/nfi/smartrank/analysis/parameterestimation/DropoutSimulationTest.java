@@ -0,0 +1,166 @@
+package nl.minvenj.nfi.smartrank.analysis.parameterestimation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.minvenj.nfi.smartrank.domain.Allele;
+import nl.minvenj.nfi.smartrank.domain.DefenseHypothesis;
+import nl.minvenj.nfi.smartrank.domain.Locus;
+import nl.minvenj.nfi.smartrank.domain.LocusFrequencies;
+import nl.minvenj.nfi.smartrank.domain.PopulationStatistics;
+import nl.minvenj.nfi.smartrank.domain.Sample;
+
+public class DropoutSimulationTest {
+
+    private static final List<String> LOCI = Arrays.asList("DROPOUTLOCUSA", "DROPOUTLOCUSB");
+
+    private PopulationStatistics _statistics;
+    private DefenseHypothesis _hypothesis;
+
+    @Before
+    public void setUp() {
+        _statistics = new PopulationStatistics("DropoutSimulationTest");
+        _statistics.addStatistic("DROPOUTLOCUSA", "91.1", new BigDecimal("0.5"));
+        _statistics.addStatistic("DROPOUTLOCUSA", "92.1", new BigDecimal("0.3"));
+        _statistics.addStatistic("DROPOUTLOCUSA", "93.1", new BigDecimal("0.2"));
+        _statistics.addStatistic("DROPOUTLOCUSB", "94.1", new BigDecimal("0.6"));
+        _statistics.addStatistic("DROPOUTLOCUSB", "95.1", new BigDecimal("0.4"));
+
+        final Sample contributor = new Sample("DropoutContributor");
+        addLocus(contributor, "DROPOUTLOCUSA", "91.1", "96.1");
+        addLocus(contributor, "DROPOUTLOCUSB", "95.1", "95.1");
+
+        _hypothesis = new DefenseHypothesis();
+        _hypothesis.setStatistics(_statistics);
+        _hypothesis.addContributor(contributor, 0.1);
+    }
+
+    private static void addLocus(final Sample sample, final String name, final String... alleles) {
+        final Locus locus = new Locus(name);
+        for (final String allele : alleles) {
+            locus.addAllele(new Allele(allele));
+        }
+        sample.addLocus(locus);
+    }
+
+    @Test
+    public void testPositions() {
+        // Five alleles from the statistics and one contributor allele that is not in the statistics
+        assertEquals(6, new DropoutSimulation(_hypothesis, LOCI).getPositionCount());
+    }
+
+    @Test
+    public void testKnownContributorOnly() {
+        final DropoutSimulation simulation = new DropoutSimulation(_hypothesis, LOCI);
+        final int[] counts = new int[DropoutSimulation.STEPS];
+        simulation.simulate(new SplittableRandom(42), counts);
+        assertEquals(3, counts[0]);
+        for (int step = 1; step < DropoutSimulation.STEPS; step++) {
+            assertTrue(counts[step] <= counts[step - 1]);
+        }
+    }
+
+    @Test
+    public void testReproducible() {
+        _hypothesis.setUnknownCount(2);
+        _hypothesis.setDropInProbability(0.05);
+        final DropoutSimulation simulation = new DropoutSimulation(_hypothesis, LOCI);
+        final int[] first = new int[DropoutSimulation.STEPS];
+        final int[] second = new int[DropoutSimulation.STEPS];
+        simulation.simulate(new SplittableRandom(1234), first);
+        simulation.simulate(new SplittableRandom(1234), second);
+        assertArrayEquals(first, second);
+    }
+
+    @Test
+    public void testGetDropout() {
+        assertEquals(new BigDecimal("0.37"), DropoutSimulation.getDropout(37));
+        assertEquals(0, DropoutSimulation.getDropout(0).signum());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLocusWithoutFrequencies() {
+        _hypothesis.setUnknownCount(1);
+        new DropoutSimulation(_hypothesis, Arrays.asList("DROPOUTLOCUSA", "DROPOUTLOCUSC"));
+    }
+
+    @Test
+    public void testMatchesStepwiseSimulation() {
+        _hypothesis.setUnknownCount(1);
+        _hypothesis.setDropInProbability(0.05);
+        final int iterations = 4000;
+
+        final DropoutSimulation simulation = new DropoutSimulation(_hypothesis, LOCI);
+        final SplittableRandom rnd = new SplittableRandom(7);
+        final double[] expected = new double[DropoutSimulation.STEPS];
+        final double[] actual = new double[DropoutSimulation.STEPS];
+        final int[] counts = new int[DropoutSimulation.STEPS];
+        final Random random = new Random(7);
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            simulation.simulate(rnd.split(), counts);
+            simulateStepwise(random, counts.length, expected);
+            for (int step = 0; step < counts.length; step++) {
+                actual[step] += counts[step];
+            }
+        }
+        for (final int step : new int[]{0, 10, 30, 50, 70, 90, 99}) {
+            assertEquals("Step " + step, expected[step] / iterations, actual[step] / iterations, 0.1);
+        }
+    }
+
+    /**
+     * Draws dropout again at every step, as the estimation used to do, and adds the surviving allele counts.
+     */
+    private void simulateStepwise(final Random random, final int steps, final double[] totals) {
+        final HashSet<String> survivingAlleles = new HashSet<>();
+        final String[] unknown = new String[LOCI.size() * 2];
+        for (int locusIndex = 0; locusIndex < LOCI.size(); locusIndex++) {
+            unknown[2 * locusIndex] = LOCI.get(locusIndex) + "." + getRandomAllele(random, LOCI.get(locusIndex));
+            unknown[2 * locusIndex + 1] = LOCI.get(locusIndex) + "." + getRandomAllele(random, LOCI.get(locusIndex));
+        }
+        final String[] contributor = {"DROPOUTLOCUSA.91.1", "DROPOUTLOCUSA.96.1", "DROPOUTLOCUSB.95.1", "DROPOUTLOCUSB.95.1"};
+        for (int step = 0; step < steps; step++) {
+            final double dropout = step / 100.0;
+            survivingAlleles.clear();
+            int count = 0;
+            for (final String[] profile : new String[][]{unknown, contributor}) {
+                for (final String allele : profile) {
+                    if (random.nextDouble() > dropout && survivingAlleles.add(allele)) {
+                        count++;
+                    }
+                }
+            }
+            for (final String locus : LOCI) {
+                if (random.nextDouble() < _hypothesis.getDropInProbability() && !survivingAlleles.contains(locus + "." + getRandomAllele(random, locus))) {
+                    count++;
+                }
+            }
+            totals[step] += count;
+        }
+    }
+
+    private String getRandomAllele(final Random random, final String locus) {
+        final LocusFrequencies frequencies = _statistics.getLocusFrequencies(locus);
+        while (true) {
+            final double value = random.nextDouble();
+            double threshold = 0;
+            for (int idx = 0; idx < frequencies.size(); idx++) {
+                threshold += frequencies.getFrequency(idx);
+                if (value <= threshold) {
+                    return frequencies.getAllele(idx);
+                }
+            }
+        }
+    }
+}
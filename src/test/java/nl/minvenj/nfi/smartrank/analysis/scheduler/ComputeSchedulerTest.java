@@ -0,0 +1,150 @@
+package nl.minvenj.nfi.smartrank.analysis.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ComputeSchedulerTest {
+
+    @Test
+    public void testParallelismFollowsThreadCount() {
+        assertEquals(2, ComputeScheduler.getInstance(2).getParallelism());
+        assertSame(ComputeScheduler.getInstance(2), ComputeScheduler.getInstance(2));
+        assertEquals(Runtime.getRuntime().availableProcessors(), ComputeScheduler.getInstance(0).getParallelism());
+    }
+
+    @Test
+    public void testTaskSeesItsGroup() throws Exception {
+        final TaskGroup group = ComputeScheduler.getInstance(1).createGroup();
+        assertNull(TaskGroup.current());
+        final Future<TaskGroup> future = group.submit(new Callable<TaskGroup>() {
+            @Override
+            public TaskGroup call() throws Exception {
+                return TaskGroup.current();
+            }
+        });
+        assertSame(group, future.get(5, TimeUnit.SECONDS));
+        group.close();
+    }
+
+    @Test
+    public void testCancellingParentCancelsNestedGroup() throws Exception {
+        final ComputeScheduler scheduler = ComputeScheduler.getInstance(2);
+        final TaskGroup parent = scheduler.createGroup();
+        final CountDownLatch started = new CountDownLatch(1);
+        final Future<Boolean> future = parent.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                final TaskGroup nested = scheduler.createGroup();
+                final CompletableFuture<Void> cancellation = new CompletableFuture<>();
+                nested.add(cancellation);
+                started.countDown();
+                // Throws a CancellationException once cancelling the parent has cancelled the nested group
+                cancellation.get(5, TimeUnit.SECONDS);
+                return false;
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        parent.cancel();
+        assertTrue(parent.isCancelled());
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("The task was not cancelled");
+        }
+        catch (final CancellationException e) {
+            // Expected
+        }
+        assertTrue(future.isCancelled());
+    }
+
+    @Test
+    public void testSubmitToCancelledGroup() {
+        final TaskGroup group = ComputeScheduler.getInstance(1).createGroup();
+        group.cancel();
+        final Future<Boolean> future = group.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return true;
+            }
+        });
+        assertTrue(future.isCancelled());
+        assertTrue(group.createChild().isCancelled());
+    }
+
+    @Test
+    public void testFailureIsReported() throws InterruptedException {
+        final TaskGroup group = ComputeScheduler.getInstance(1).createGroup();
+        final Future<Boolean> future = group.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                throw new IllegalStateException("failed");
+            }
+        });
+        try {
+            ComputeScheduler.await(future);
+            fail("The failure of the task was not reported");
+        }
+        catch (final ExecutionException e) {
+            assertEquals("failed", e.getCause().getMessage());
+        }
+        assertFalse(future.isCancelled());
+        group.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testAwaitInsideSingleThreadedPool() throws Exception {
+        final TaskGroup group = ComputeScheduler.getInstance(1).createGroup();
+        final Future<Integer> outer = group.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                final Future<Integer> inner = TaskGroup.current().submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return 21;
+                    }
+                });
+                return 2 * ComputeScheduler.await(inner);
+            }
+        });
+        assertEquals(Integer.valueOf(42), outer.get());
+        group.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testCompletionQueue() throws Exception {
+        final TaskGroup group = ComputeScheduler.getInstance(2).createGroup();
+        final LinkedBlockingQueue<Future<Integer>> queue = new LinkedBlockingQueue<>();
+        final Future<Integer> future = group.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return 42;
+            }
+        }, queue);
+        assertSame(future, ComputeScheduler.take(queue));
+        assertEquals(Integer.valueOf(42), future.get());
+
+        group.cancel();
+        final Future<Integer> cancelled = group.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return 42;
+            }
+        }, queue);
+        assertSame(cancelled, ComputeScheduler.take(queue));
+        assertTrue(cancelled.isCancelled());
+    }
+}
@@ -7,6 +7,16 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -118,4 +128,51 @@ public class AlleleTest {
         assertFalse(a1.equals("Some Arbitrary Object"));
     }
 
+    @Test
+    public final void testGetIdConcurrently() throws Exception {
+        final int nameCount = 500;
+        final int baseLine = Allele.getRegisteredAlleleCount();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<int[]>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                final Random random = new Random(thread);
+                futures.add(executor.submit(new Callable<int[]>() {
+                    @Override
+                    public int[] call() {
+                        final List<Integer> order = new ArrayList<>();
+                        for (int idx = 0; idx < nameCount; idx++) {
+                            order.add(idx);
+                        }
+                        Collections.shuffle(order, random);
+                        final int[] ids = new int[nameCount];
+                        for (final int idx : order) {
+                            ids[idx] = new Allele("concurrent" + idx + ".0").getId();
+                        }
+                        return ids;
+                    }
+                }));
+            }
+
+            final int[] expected = futures.get(0).get();
+            for (final Future<int[]> future : futures) {
+                final int[] ids = future.get();
+                for (int idx = 0; idx < nameCount; idx++) {
+                    assertEquals(expected[idx], ids[idx]);
+                    assertEquals(expected[idx], Allele.getId("concurrent" + idx));
+                }
+            }
+            final HashSet<Integer> distinct = new HashSet<>();
+            for (final int id : expected) {
+                assertTrue(id < Allele.getRegisteredAlleleCount());
+                distinct.add(id);
+            }
+            assertEquals(nameCount, distinct.size());
+            assertEquals(baseLine + nameCount, Allele.getRegisteredAlleleCount());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
 }
@@ -9,6 +9,7 @@ import static org.mockito.Mockito.when;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Properties;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -69,6 +70,19 @@ public class AnalysisParametersTest {
         assertEquals(1234, params.getThreadCount());
     }
 
+    @Test
+    public final void testCopyConstructor() {
+        final AnalysisParameters params = new AnalysisParameters();
+        params.setThreadCount(3);
+        final Properties properties = new Properties();
+        properties.setProperty("key", "value");
+        params.setProperties(properties);
+
+        final AnalysisParameters copy = new AnalysisParameters(params);
+        assertEquals(3, copy.getThreadCount());
+        assertEquals("value", copy.getProperties().getProperty("key"));
+    }
+
     @Test
     public final void testEnabledCrimesceneProfiles() {
         final AnalysisParameters params = new AnalysisParameters();
@@ -0,0 +1,89 @@
+package nl.minvenj.nfi.smartrank.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CandidateProfileTest {
+
+    private Sample _sample;
+
+    @Before
+    public void setUp() {
+        _sample = new Sample("ProfileSample");
+        _sample.setAdditionalData("Profile data");
+        addLocus(_sample, "ProfileLocusA", "61.1", "62.1");
+        addLocus(_sample, "ProfileLocusB", "63.1", "63.1");
+    }
+
+    private static void addLocus(final Sample sample, final String name, final String... alleles) {
+        final Locus locus = new Locus(name);
+        for (final String allele : alleles) {
+            locus.addAllele(new Allele(allele));
+        }
+        sample.addLocus(locus);
+    }
+
+    @Test
+    public void testOf() {
+        final CandidateProfile profile = CandidateProfile.of(_sample);
+        assertEquals("ProfileSample", profile.getName());
+        assertEquals(2, profile.getLocusCount());
+
+        final int locusA = profile.indexOf(Locus.getId("ProfileLocusA"));
+        assertEquals(Allele.getId("61.1"), profile.getAlleleId(locusA, 0));
+        assertEquals(Allele.getId("62.1"), profile.getAlleleId(locusA, 1));
+        assertFalse(profile.isHomozygote(locusA));
+
+        final int locusB = profile.indexOf(Locus.getId("ProfileLocusB"));
+        assertEquals(Locus.getId("ProfileLocusB"), profile.getLocusId(locusB));
+        assertTrue(profile.isHomozygote(locusB));
+    }
+
+    @Test
+    public void testIndexOfMissingLocus() {
+        assertEquals(-1, CandidateProfile.of(_sample).indexOf(Locus.getId("ProfileLocusMissing")));
+    }
+
+    @Test
+    public void testToSample() {
+        final Sample sample = CandidateProfile.of(_sample).toSample();
+        assertEquals("ProfileSample", sample.getName());
+        assertEquals("Profile data", sample.getAdditionalData());
+        assertEquals(2, sample.size());
+
+        final Locus locusA = sample.getLocus("PROFILELOCUSA");
+        assertNotNull(locusA);
+        assertEquals(2, locusA.size());
+        assertFalse(locusA.isHomozygote());
+        assertTrue(locusA.hasAllele("61.1"));
+        assertTrue(locusA.hasAllele("62.1"));
+
+        final Locus locusB = sample.getLocus("PROFILELOCUSB");
+        assertNotNull(locusB);
+        assertEquals(2, locusB.size());
+        assertTrue(locusB.isHomozygote());
+        assertTrue(locusB.hasAllele("63.1"));
+    }
+
+    @Test
+    public void testGetNameForId() {
+        assertEquals("PROFILELOCUSA", Locus.getNameForId(Locus.getId("ProfileLocusA")));
+        assertEquals("61.1", Allele.getNameForId(Allele.getId("61.1")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOfTriAllelic() {
+        addLocus(_sample, "ProfileLocusC", "64.1", "65.1", "66.1");
+        CandidateProfile.of(_sample);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAlleleIdCountMismatch() {
+        new CandidateProfile("ProfileSample", null, new int[]{Locus.getId("ProfileLocusA")}, new int[]{Allele.getId("61.1")});
+    }
+}
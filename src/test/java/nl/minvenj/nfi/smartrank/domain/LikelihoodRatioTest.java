@@ -3,10 +3,10 @@ package nl.minvenj.nfi.smartrank.domain;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Locale;
 
@@ -21,13 +21,9 @@ public class LikelihoodRatioTest {
 
     @Mock
     private Sample _profile;
-    @Mock
     private LocusLikelihoods _likelihoods1;
-    @Mock
     private LocusLikelihoods _likelihoods2;
-    @Mock
     private LocusLikelihoods _likelihoods3;
-    @Mock
     private LocusLikelihoods _likelihoods4;
     @Mock
     private Ratio _ratioRatioNull;
@@ -38,33 +34,10 @@ public class LikelihoodRatioTest {
 
     @Before
     public void setUp() throws Exception {
-        when(_likelihoods1.getLoci()).thenReturn(Arrays.asList("Locus1", "Locus2", "Locus3"));
-        when(_likelihoods1.getLocusProbability("Locus1")).thenReturn(0.11);
-        when(_likelihoods1.getLocusProbability("Locus2")).thenReturn(0.12);
-        when(_likelihoods1.getLocusProbability("Locus3")).thenReturn(0.13);
-        when(_likelihoods1.getLocusProbability("Locus4")).thenReturn(null);
-
-        when(_likelihoods2.getLoci()).thenReturn(Arrays.asList("Locus2", "Locus3", "Locus4"));
-        when(_likelihoods2.getLocusProbability("Locus1")).thenReturn(null);
-        when(_likelihoods2.getLocusProbability("Locus2")).thenReturn(0.22);
-        when(_likelihoods2.getLocusProbability("Locus3")).thenReturn(0.23);
-        when(_likelihoods2.getLocusProbability("Locus4")).thenReturn(0.24);
-
-        when(_likelihoods3.getLoci()).thenReturn(Arrays.asList("Locus5", "Locus6"));
-        when(_likelihoods3.getLocusProbability("Locus1")).thenReturn(null);
-        when(_likelihoods3.getLocusProbability("Locus2")).thenReturn(null);
-        when(_likelihoods3.getLocusProbability("Locus3")).thenReturn(null);
-        when(_likelihoods3.getLocusProbability("Locus4")).thenReturn(null);
-        when(_likelihoods3.getLocusProbability("Locus5")).thenReturn(0.35);
-        when(_likelihoods3.getLocusProbability("Locus6")).thenReturn(0.36);
-
-        when(_likelihoods4.getLoci()).thenReturn(Arrays.asList("Locus6"));
-        when(_likelihoods4.getLocusProbability("Locus1")).thenReturn(null);
-        when(_likelihoods4.getLocusProbability("Locus2")).thenReturn(null);
-        when(_likelihoods4.getLocusProbability("Locus3")).thenReturn(null);
-        when(_likelihoods4.getLocusProbability("Locus4")).thenReturn(null);
-        when(_likelihoods4.getLocusProbability("Locus5")).thenReturn(null);
-        when(_likelihoods4.getLocusProbability("Locus6")).thenReturn(0.46);
+        _likelihoods1 = createLikelihoods("Locus1", 0.11, "Locus2", 0.12, "Locus3", 0.13);
+        _likelihoods2 = createLikelihoods("Locus2", 0.22, "Locus3", 0.23, "Locus4", 0.24);
+        _likelihoods3 = createLikelihoods("Locus5", 0.35, "Locus6", 0.36);
+        _likelihoods4 = createLikelihoods("Locus6", 0.46);
 
         when(_ratioRatioNull.getLocusName()).thenReturn("RatioNull");
         when(_ratioRatioNull.getProsecutionProbability()).thenReturn(0.01);
@@ -82,6 +55,14 @@ public class LikelihoodRatioTest {
         when(_ratioPrDNull.getRatio()).thenReturn(1.0);
     }
 
+    private static LocusLikelihoods createLikelihoods(final Object... lociAndProbabilities) {
+        final LocusLikelihoods likelihoods = new LocusLikelihoods();
+        for (int idx = 0; idx < lociAndProbabilities.length; idx += 2) {
+            likelihoods.addLocusProbability((String) lociAndProbabilities[idx], (Double) lociAndProbabilities[idx + 1]);
+        }
+        return likelihoods;
+    }
+
     @Test
     public final void testLikelihoodRatio() {
         final LikelihoodRatio lr = new LikelihoodRatio(_profile, _likelihoods1, _likelihoods2);
@@ -155,6 +136,19 @@ public class LikelihoodRatioTest {
         assertEquals((0.12d / 0.22d) * (0.13d / 0.23d), lr.getOverallRatio().getRatio(), 0.00000001);
     }
 
+    @Test
+    public final void testGetOverallRatioValue() {
+        final LikelihoodRatio lr = new LikelihoodRatio(_profile, _likelihoods1, _likelihoods2);
+        assertEquals(lr.getOverallRatio().getRatio(), lr.getOverallRatioValue(), 0.0);
+        assertEquals(Math.log10(0.12d / 0.22d) + Math.log10(0.13d / 0.23d), lr.getLog10OverallRatio(), 0.00000001);
+
+        // Replacing a locus recalculates the overall values
+        lr.add(createLikelihoods("Locus2", 0.44), _likelihoods2);
+        assertEquals(2, lr.getLocusCount());
+        assertEquals((0.44d / 0.22d) * (0.13d / 0.23d), lr.getOverallRatioValue(), 0.00000001);
+        assertEquals(Math.log10(0.44d / 0.22d) + Math.log10(0.13d / 0.23d), lr.getLog10OverallRatio(), 0.00000001);
+    }
+
     @Test
     public final void testGetRatios() {
         final LikelihoodRatio lr = new LikelihoodRatio(_profile, _likelihoods1, _likelihoods2);
@@ -172,6 +166,18 @@ public class LikelihoodRatioTest {
         assertEquals(_profile, lr.getProfile());
     }
 
+    @Test
+    public final void testGetProfileOfCandidate() {
+        final CandidateProfile candidate = new CandidateProfile("candidate", null, new int[]{new Locus("Locus1").getId()}, new int[]{new Allele("10").getId(), new Allele("11").getId()});
+        final LikelihoodRatio lr = new LikelihoodRatio(candidate, _likelihoods1, _likelihoods2);
+        assertEquals(1, lr.getProfileLocusCount());
+        final Sample profile = lr.getProfile();
+        assertEquals("candidate", profile.getName());
+        assertEquals(2, profile.getLocus("LOCUS1").size());
+        assertSame(profile, lr.getProfile());
+        assertEquals(1, lr.getProfileLocusCount());
+    }
+
     @Test
     public final void testCompareTo() {
         final LikelihoodRatio lr1 = new LikelihoodRatio(_profile, _likelihoods1, _likelihoods2);
@@ -0,0 +1,59 @@
+package nl.minvenj.nfi.smartrank.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class LocusFrequenciesTest {
+
+    private static LocusFrequencies createFrequencies() {
+        return new LocusFrequencies("FREQUENCYLOCUS")
+            .withFrequency("81.1", Allele.getId("81.1"), 0.25)
+            .withFrequency("82.1", Allele.getId("82.1"), 0.5)
+            .withFrequency("83.1", Allele.getId("83.1"), 0.125);
+    }
+
+    @Test
+    public void testWithFrequency() {
+        final LocusFrequencies frequencies = createFrequencies();
+        assertEquals("FREQUENCYLOCUS", frequencies.getLocusName());
+        assertEquals(3, frequencies.size());
+        assertEquals(Arrays.asList("81.1", "82.1", "83.1"), frequencies.getAlleles());
+        assertEquals(Allele.getId("82.1"), frequencies.getAlleleId(1));
+        assertEquals(0.5, frequencies.getFrequency(1), 0.0);
+        assertEquals(0.875, frequencies.getCumulativeFrequency(2), 0.0);
+    }
+
+    @Test
+    public void testWithFrequencyReplaces() {
+        final LocusFrequencies frequencies = createFrequencies();
+        final LocusFrequencies replaced = frequencies.withFrequency("82.1", Allele.getId("82.1"), 0.125);
+        assertNotSame(frequencies, replaced);
+        assertEquals(3, replaced.size());
+        assertEquals(0.125, replaced.getFrequency(1), 0.0);
+        assertEquals(0.5, replaced.getCumulativeFrequency(2), 0.0);
+        assertEquals(0.5, frequencies.getFrequency(1), 0.0);
+    }
+
+    @Test
+    public void testIndexOf() {
+        final LocusFrequencies frequencies = createFrequencies();
+        assertEquals(0, frequencies.indexOf(Allele.getId("81.1")));
+        assertEquals(2, frequencies.indexOf(Allele.getId("83.1")));
+        assertEquals(-1, frequencies.indexOf(Allele.getId("84.1")));
+    }
+
+    @Test
+    public void testIndexOfCumulativeFrequency() {
+        final LocusFrequencies frequencies = createFrequencies();
+        assertEquals(0, frequencies.indexOfCumulativeFrequency(0.0));
+        assertEquals(0, frequencies.indexOfCumulativeFrequency(0.25));
+        assertEquals(1, frequencies.indexOfCumulativeFrequency(0.26));
+        assertEquals(2, frequencies.indexOfCumulativeFrequency(0.875));
+        assertEquals(-1, frequencies.indexOfCumulativeFrequency(0.9));
+        assertEquals(-1, new LocusFrequencies("FREQUENCYLOCUS").indexOfCumulativeFrequency(0.0));
+    }
+}
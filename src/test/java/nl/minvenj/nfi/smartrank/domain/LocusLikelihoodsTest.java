@@ -2,6 +2,7 @@ package nl.minvenj.nfi.smartrank.domain;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -48,6 +49,22 @@ public class LocusLikelihoodsTest {
         assertTrue(loci3.containsAll(Arrays.asList(LOCUS_NAME_1, LOCUS_NAME_2)));
     }
 
+    @Test
+    public final void testAddToLocusProbability() {
+        final LocusLikelihoods loli = new LocusLikelihoods();
+        loli.addToLocusProbability(LOCUS_NAME_1, LOCUS_PROBABILITY_1);
+        loli.addToLocusProbability(LOCUS_NAME_1, LOCUS_PROBABILITY_2);
+        assertEquals(LOCUS_PROBABILITY_1 + LOCUS_PROBABILITY_2, loli.getLocusProbability(LOCUS_NAME_1), 0.0);
+        assertEquals(1, loli.getLocusCount());
+
+        final int locusId = loli.getLocusId(0);
+        assertTrue(loli.hasLocus(locusId));
+        assertEquals(LOCUS_NAME_1, loli.getLocusName(locusId));
+        assertEquals(LOCUS_PROBABILITY_1 + LOCUS_PROBABILITY_2, loli.getLocusProbability(locusId), 0.0);
+        assertNull(loli.getLocusProbability(LOCUS_NAME_2));
+        assertTrue(Double.isNaN(loli.getLocusProbability(Locus.getId(LOCUS_NAME_2))));
+    }
+
     @Test
     public final void testGetGlobalProbability() {
         final LocusLikelihoods loli = new LocusLikelihoods();
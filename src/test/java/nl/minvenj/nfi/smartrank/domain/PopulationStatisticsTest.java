@@ -168,4 +168,28 @@ public class PopulationStatisticsTest {
         assertTrue(stats.isRareAllele(_rareAllele));
         assertFalse(stats.isRareAllele(_allele1));
     }
+
+    @Test
+    public final void testGetAllelesOfLocusWithPrefix() {
+        final PopulationStatistics stats = new PopulationStatistics(FILE_NAME);
+        stats.addStatistic(LOCUSNAME_1, ALLELE_1, new BigDecimal(0.15));
+        stats.addStatistic(LOCUSNAME_1 + "0", ALLELE_2, new BigDecimal(0.01));
+        stats.addStatistic(LOCUSNAME_1, ALLELE_1, new BigDecimal(0.25));
+        final Collection<String> alleles = stats.getAlleles(LOCUSNAME_1);
+        assertEquals(1, alleles.size());
+        assertEquals(ALLELE_1, alleles.iterator().next());
+        assertEquals(0.25, stats.getProbability(LOCUSNAME_1, ALLELE_1), 0.0000001);
+        assertEquals(0, stats.getAlleles(LOCUSNAME_2).size());
+    }
+
+    @Test
+    public final void testCopyIsIndependent() {
+        final PopulationStatistics stats = new PopulationStatistics(FILE_NAME);
+        stats.addStatistic(LOCUSNAME_1, ALLELE_1, new BigDecimal(0.15));
+        final PopulationStatistics copy = new PopulationStatistics(stats);
+        copy.addStatistic(LOCUSNAME_1, ALLELE_2, new BigDecimal(0.01));
+        assertEquals(1, stats.getLocusFrequencies(LOCUSNAME_1).size());
+        assertEquals(2, copy.getLocusFrequencies(LOCUSNAME_1).size());
+        assertEquals(0.15, copy.getProbability(LOCUSNAME_1, ALLELE_1), 0.0000001);
+    }
 }
@@ -4,6 +4,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -17,8 +18,8 @@ import org.junit.runners.Parameterized.Parameters;
 
 import nl.minvenj.nfi.smartrank.analysis.ExcludedProfile;
 import nl.minvenj.nfi.smartrank.domain.AnalysisParameters;
+import nl.minvenj.nfi.smartrank.domain.CandidateProfile;
 import nl.minvenj.nfi.smartrank.domain.ProsecutionHypothesis;
-import nl.minvenj.nfi.smartrank.domain.Sample;
 import nl.minvenj.nfi.smartrank.io.CSVReader;
 import nl.minvenj.nfi.smartrank.messages.data.AnalysisParametersMessage;
 import nl.minvenj.nfi.smartrank.messages.data.EnabledLociMessage;
@@ -26,7 +27,7 @@ import nl.minvenj.nfi.smartrank.messages.data.ProsecutionHypothesisMessage;
 import nl.minvenj.nfi.smartrank.raven.messages.MessageBus;
 
 @RunWith(Parameterized.class)
-public class CodisSampleIteratorTest {
+public class CodisProfileIteratorTest {
 
     @Parameters
     public static Iterable<Object[]> parameters() {
@@ -46,21 +47,41 @@ public class CodisSampleIteratorTest {
     }
 
     @Test
-    public final void testLoopOverSamples() throws IOException {
+    public final void testLoopOverProfiles() throws IOException {
         MessageBus.getInstance().send("DNADatabaseTest", new EnabledLociMessage(Arrays.asList("D10S1248", "VWA", "Dummy")));
         MessageBus.getInstance().send("DNADatabaseTest", new AnalysisParametersMessage(new AnalysisParameters()));
         MessageBus.getInstance().send("DNADatabaseTest", new ProsecutionHypothesisMessage(new ProsecutionHypothesis()));
-        final CodisSampleIterator iterator = new CodisSampleIterator(new CSVReader(getClass().getResource(_fileName).getFile()), _expectedCount, new ArrayList<ExcludedProfile>());
+        final CodisProfileIterator iterator = new CodisProfileIterator(new CSVReader(getClass().getResource(_fileName).getFile()), _expectedCount, new ArrayList<ExcludedProfile>());
 
         final ArrayList<String> names = new ArrayList<>();
 
         int count = 0;
         while (iterator.hasNext()) {
-            final Sample sample = iterator.next();
+            final CandidateProfile profile = iterator.next();
 
-            assertNotNull("CodisSampleIterator.next() returned null!");
-            assertFalse("Encountered duplicate sample being returned: " + sample.getName(), names.contains(sample.getName()));
-            names.add(sample.getName());
+            assertNotNull("CodisProfileIterator.next() returned null!");
+            assertFalse("Encountered duplicate profile being returned: " + profile.getName(), names.contains(profile.getName()));
+            names.add(profile.getName());
+            count++;
+        }
+        assertEquals(_expectedCount, count);
+    }
+
+    @Test
+    public final void testLoopOverProfilesMapped() throws Exception {
+        MessageBus.getInstance().send("DNADatabaseTest", new EnabledLociMessage(Arrays.asList("D10S1248", "VWA", "Dummy")));
+        MessageBus.getInstance().send("DNADatabaseTest", new AnalysisParametersMessage(new AnalysisParameters()));
+        MessageBus.getInstance().send("DNADatabaseTest", new ProsecutionHypothesisMessage(new ProsecutionHypothesis()));
+        final File file = new File(getClass().getResource(_fileName).toURI());
+        final CodisProfileIterator iterator = new CodisProfileIterator(new MappedCodisFile(file), _expectedCount, new ArrayList<ExcludedProfile>());
+
+        final CSVReader reader = new CSVReader(file);
+        reader.readFields();
+
+        int count = 0;
+        while (iterator.hasNext()) {
+            final CandidateProfile profile = iterator.next();
+            assertEquals("Profile returned out of file order!", reader.readFields()[0], profile.getName());
             count++;
         }
         assertEquals(_expectedCount, count);
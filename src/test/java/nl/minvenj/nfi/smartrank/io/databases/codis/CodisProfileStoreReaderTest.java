@@ -0,0 +1,183 @@
+package nl.minvenj.nfi.smartrank.io.databases.codis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nl.minvenj.nfi.smartrank.analysis.ExcludedProfile;
+import nl.minvenj.nfi.smartrank.domain.Allele;
+import nl.minvenj.nfi.smartrank.domain.AnalysisParameters;
+import nl.minvenj.nfi.smartrank.domain.Locus;
+import nl.minvenj.nfi.smartrank.domain.ProblemLocation;
+import nl.minvenj.nfi.smartrank.domain.ProsecutionHypothesis;
+import nl.minvenj.nfi.smartrank.domain.Sample;
+import nl.minvenj.nfi.smartrank.io.databases.DatabaseReader;
+import nl.minvenj.nfi.smartrank.io.databases.DatabaseValidationEventListener;
+import nl.minvenj.nfi.smartrank.messages.data.AnalysisParametersMessage;
+import nl.minvenj.nfi.smartrank.messages.data.EnabledLociMessage;
+import nl.minvenj.nfi.smartrank.messages.data.ProsecutionHypothesisMessage;
+import nl.minvenj.nfi.smartrank.raven.messages.MessageBus;
+
+public class CodisProfileStoreReaderTest {
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        MessageBus.getInstance().send("CodisProfileStoreReaderTest", new EnabledLociMessage(Arrays.asList("D10S1248", "VWA", "TH01", "FGA", "D21S11")));
+        MessageBus.getInstance().send("CodisProfileStoreReaderTest", new AnalysisParametersMessage(new AnalysisParameters()));
+        MessageBus.getInstance().send("CodisProfileStoreReaderTest", new ProsecutionHypothesisMessage(new ProsecutionHypothesis()));
+    }
+
+    @Test
+    public void testGeneratedDatabases() throws Exception {
+        for (final String name : new String[]{"database_codis_generated_44.csv", "database_codis_generated_10.csv", "database_codis_generated_10_6fields.csv"}) {
+            assertSameAsCodisDatabaseReader(new File(getClass().getResource(name).toURI()));
+        }
+    }
+
+    @Test
+    public void testIrregularRecords() throws Exception {
+        final File file = _folder.newFile("irregular.csv");
+        try (OutputStream os = new FileOutputStream(file)) {
+            os.write(("specimenId,VWA_1,VWA_2,TH01_1,TH01_2,FGA_1,FGA_2\n"
+                + "A1,12,13,9.3,6,20,21\n"
+                + "A2,\"14\",15,6,7,NULL,null\n"
+                + "A3;16;;7;8;19;20\n"
+                + "A4,17,18,19\n"
+                + "A5,X,13,6,6,20,21\n"
+                + "Spécimen,12,13,6,7,20,21\n").getBytes(StandardCharsets.UTF_8));
+        }
+        assertSameAsCodisDatabaseReader(file);
+    }
+
+    @Test
+    public void testInvalidStoreIsRebuilt() throws Exception {
+        final File file = new File(getClass().getResource("database_codis_generated_10.csv").toURI());
+        final File storeFolder = _folder.newFolder();
+        new CodisProfileStoreReader(file, storeFolder).validate(new RecordingListener());
+        final File storeFile = storeFolder.listFiles()[0];
+
+        try (RandomAccessFile raf = new RandomAccessFile(storeFile, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+
+        final CodisProfileStoreReader reader = new CodisProfileStoreReader(file, storeFolder);
+        reader.validate(new RecordingListener());
+        assertEquals(1, storeFolder.listFiles().length);
+        assertEquals(10, reader.getRecordCount());
+        assertEquals(describe(readAll(validatedCodisReader(file))), describe(readAll(reader)));
+    }
+
+    private void assertSameAsCodisDatabaseReader(final File file) throws Exception {
+        final File storeFolder = _folder.newFolder();
+        final RecordingListener expectedProblems = new RecordingListener();
+        final CodisDatabaseReader expected = new CodisDatabaseReader(file);
+        expected.validate(expectedProblems);
+
+        // The first reader builds the store, the second one reads it
+        final RecordingListener buildProblems = new RecordingListener();
+        final CodisProfileStoreReader builder = new CodisProfileStoreReader(file, storeFolder);
+        builder.validate(buildProblems);
+        final File[] storeFiles = storeFolder.listFiles();
+        assertEquals(1, storeFiles.length);
+        assertTrue(storeFiles[0].getName().endsWith(CodisProfileStore.EXTENSION));
+        assertTrue(storeFiles[0].setLastModified(1000L));
+
+        final RecordingListener storeProblems = new RecordingListener();
+        final CodisProfileStoreReader reader = new CodisProfileStoreReader(file, storeFolder);
+        reader.validate(storeProblems);
+        assertEquals("Store was rebuilt", 1000L, storeFiles[0].lastModified());
+
+        for (final DatabaseReader actual : new DatabaseReader[]{builder, reader}) {
+            assertEquals(expected.getContentHash(), actual.getContentHash());
+            assertEquals(expected.getRecordCount(), actual.getRecordCount());
+            assertEquals(expected.getFormatName(), actual.getFormatName());
+            assertEquals(expected.getSpecimenCountPerNumberOfLoci(), actual.getSpecimenCountPerNumberOfLoci());
+            assertEquals(expected.getSpecimenCountsPerLocus(), actual.getSpecimenCountsPerLocus());
+
+            final List<String> expectedSamples = describe(readAll(expected));
+            assertFalse(expectedSamples.isEmpty());
+            assertEquals(expectedSamples, describe(readAll(actual)));
+            assertEquals(describeExcluded(expected.getBadRecordList()), describeExcluded(actual.getBadRecordList()));
+        }
+        assertEquals(expectedProblems.getProblems(), buildProblems.getProblems());
+        assertEquals(expectedProblems.getProblems(), storeProblems.getProblems());
+    }
+
+    private static CodisDatabaseReader validatedCodisReader(final File file) throws IOException, InterruptedException {
+        final CodisDatabaseReader reader = new CodisDatabaseReader(file);
+        reader.validate(new RecordingListener());
+        return reader;
+    }
+
+    private static List<Sample> readAll(final DatabaseReader reader) {
+        final List<Sample> samples = new ArrayList<>();
+        final Iterator<Sample> iterator = reader.iterator();
+        while (iterator.hasNext()) {
+            samples.add(iterator.next());
+        }
+        return samples;
+    }
+
+    private static List<String> describe(final List<Sample> samples) {
+        final List<String> descriptions = new ArrayList<>();
+        for (final Sample sample : samples) {
+            final StringBuilder description = new StringBuilder(sample.getName());
+            for (final Locus locus : sample.getLoci()) {
+                description.append(' ').append(locus.getName()).append('=');
+                for (final Allele allele : locus.getAlleles()) {
+                    description.append(allele.getAllele()).append('/');
+                }
+            }
+            descriptions.add(description.toString());
+        }
+        return descriptions;
+    }
+
+    private static List<String> describeExcluded(final List<ExcludedProfile> excluded) {
+        final List<String> descriptions = new ArrayList<>();
+        for (final ExcludedProfile profile : excluded) {
+            descriptions.add(profile.getSampleName() + " " + profile.getReason());
+        }
+        return descriptions;
+    }
+
+    private static class RecordingListener implements DatabaseValidationEventListener {
+        private final List<String> _problems = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void onProgress(final long current, final long max) {
+        }
+
+        @Override
+        public void onProblem(final String specimen, final String locus, final String message) {
+            final ProblemLocation problem = new ProblemLocation(specimen, locus, message);
+            _problems.add(problem.getSpecimen() + "/" + problem.getLocus() + "/" + problem.getDescription());
+        }
+
+        List<String> getProblems() {
+            final List<String> problems = new ArrayList<>(_problems);
+            Collections.sort(problems);
+            return problems;
+        }
+    }
+}
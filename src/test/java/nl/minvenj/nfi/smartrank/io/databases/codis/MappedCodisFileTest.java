@@ -0,0 +1,130 @@
+package nl.minvenj.nfi.smartrank.io.databases.codis;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nl.minvenj.nfi.smartrank.io.CSVReader;
+import nl.minvenj.nfi.smartrank.io.FieldReader;
+
+public class MappedCodisFileTest {
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    @Test
+    public void testGeneratedDatabases() throws Exception {
+        for (final String name : new String[]{"database_codis_generated_44.csv", "database_codis_generated_10.csv", "database_codis_generated_10_6fields.csv"}) {
+            final File file = new File(getClass().getResource(name).toURI());
+            for (final int regionSize : new int[]{1, 100, 1 << 20}) {
+                assertSameAsCSVReader(file, regionSize);
+            }
+        }
+    }
+
+    @Test
+    public void testByteOrderMark() throws Exception {
+        final File file = new File(getClass().getResource("/nl/minvenj/nfi/smartrank/domain/database_codis_2records_utf8withBOM.csv").toURI());
+        assertSameAsCSVReader(file, 1 << 20);
+        assertEquals("specimenId", new MappedCodisFile(file).getHeaders()[0]);
+    }
+
+    @Test
+    public void testIrregularLines() throws Exception {
+        final File file = write("specimenId,VWA_1,VWA_2,TH01_1\r\n"
+            + "\r\n"
+            + "A1 , 12 ,13,9.3\r\n"
+            + "A2,\"14\",15,6\n"
+            + "A3;16;;7\n"
+            + "A4\t17\t18\t19\r"
+            + "A5,,NULL,  \n"
+            + "   \n"
+            + "A6,1\\2,3,4\n"
+            + "Ä7,12,13,6\n"
+            + "A8,12,13,6");
+        for (final int regionSize : new int[]{1, 7, 1 << 20}) {
+            assertSameAsCSVReader(file, regionSize);
+        }
+    }
+
+    @Test
+    public void testHashOfNonAsciiFile() throws Exception {
+        final File file = write("specimenId,VWA_1,VWA_2\nSpécimen,12,13\n");
+        assertSameAsCSVReader(file, 1 << 20);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoHeader() throws Exception {
+        new MappedCodisFile(write("\r\n\n"));
+    }
+
+    @Test
+    public void testIsValidAllele() {
+        for (final String value : new String[]{"", "1", "12", "123", "1.2", "12.3", "123.4", "1.23", ".5", ".", "1.", "A", "1A", "X.1", "12.", "1.A", "١٢"}) {
+            assertEquals(value, value.matches(CodisRecordValidator.VALID_ALLELE_REGEX), CodisRecordValidator.isValidAllele(value));
+        }
+    }
+
+    private File write(final String content) throws IOException {
+        final File file = _folder.newFile();
+        try (OutputStream os = new FileOutputStream(file)) {
+            os.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+
+    private void assertSameAsCSVReader(final File file, final int regionSize) throws Exception {
+        final CSVReader csvReader = new CSVReader(file);
+        final List<String[]> expected = new ArrayList<>();
+        String[] fields;
+        while ((fields = readFields(csvReader)) != null) {
+            expected.add(fields);
+        }
+
+        final MappedCodisFile mappedFile = new MappedCodisFile(file);
+        final List<String[]> actual = new ArrayList<>();
+        actual.add(mappedFile.getHeaders());
+        final List<MappedCodisFile.Region> regions = mappedFile.getRegions(regionSize);
+        long totalLength = 0;
+        for (final MappedCodisFile.Region region : regions) {
+            final FieldReader reader = region.open();
+            while ((fields = readFields(reader)) != null) {
+                actual.add(fields);
+            }
+            assertNull(reader.readFields());
+            totalLength += region.getLength();
+        }
+        assertTrue(totalLength < file.length());
+
+        assertEquals(file.getName() + " record count", expected.size(), actual.size());
+        for (int idx = 0; idx < expected.size(); idx++) {
+            assertArrayEquals(file.getName() + " record " + idx, expected.get(idx), actual.get(idx));
+        }
+        assertEquals(csvReader.getFileHash(), mappedFile.computeHash());
+    }
+
+    /**
+     * Reads the next record, returning the error message for lines that cannot be parsed.
+     */
+    private static String[] readFields(final FieldReader reader) throws IOException {
+        try {
+            return reader.readFields();
+        }
+        catch (final IllegalArgumentException e) {
+            return new String[]{"error", e.getMessage()};
+        }
+    }
+}
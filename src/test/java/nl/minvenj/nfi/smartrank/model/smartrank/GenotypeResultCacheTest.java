@@ -0,0 +1,140 @@
+package nl.minvenj.nfi.smartrank.model.smartrank;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class GenotypeResultCacheTest {
+
+    @Test
+    public void testGetFingerprintId() {
+        final GenotypeResultCache cache = new GenotypeResultCache();
+        final int id = cache.getFingerprintId("GenotypeResultCacheTest/1");
+        assertTrue(id > 0);
+        assertEquals(id, cache.getFingerprintId("GenotypeResultCacheTest/1"));
+        assertNotEquals(id, cache.getFingerprintId("GenotypeResultCacheTest/2"));
+    }
+
+    @Test
+    public void testFingerprintIdsArePerCache() {
+        final GenotypeResultCache cache = new GenotypeResultCache();
+        final GenotypeResultCache otherCache = new GenotypeResultCache();
+        assertEquals(1, cache.getFingerprintId("GenotypeResultCacheTest/perCache"));
+        assertEquals(1, otherCache.getFingerprintId("GenotypeResultCacheTest/otherCache"));
+        assertEquals(2, otherCache.getFingerprintId("GenotypeResultCacheTest/perCache"));
+    }
+
+    @Test
+    public void testPutAndGet() {
+        final GenotypeResultCache cache = new GenotypeResultCache();
+        final int fingerprint = cache.getFingerprintId("GenotypeResultCacheTest/putAndGet");
+        assertTrue(Double.isNaN(cache.get(fingerprint, 1, 2, 3)));
+        cache.put(fingerprint, 1, 2, 3, 0.25);
+        assertEquals(0.25, cache.get(fingerprint, 1, 2, 3), 0.0);
+        assertTrue(Double.isNaN(cache.get(fingerprint, 2, 2, 3)));
+        assertTrue(Double.isNaN(cache.get(fingerprint + 1, 1, 2, 3)));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testAlleleOrderDoesNotMatter() {
+        final GenotypeResultCache cache = new GenotypeResultCache();
+        final int fingerprint = cache.getFingerprintId("GenotypeResultCacheTest/alleleOrder");
+        cache.put(fingerprint, 1, 3, 2, 0.25);
+        assertEquals(0.25, cache.get(fingerprint, 1, 2, 3), 0.0);
+        assertEquals(0.25, cache.get(fingerprint, 1, 3, 2), 0.0);
+        cache.put(fingerprint, 1, 2, 3, 0.5);
+        assertEquals(0.5, cache.get(fingerprint, 1, 3, 2), 0.0);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testZeroIsCached() {
+        final GenotypeResultCache cache = new GenotypeResultCache();
+        final int fingerprint = cache.getFingerprintId("GenotypeResultCacheTest/zero");
+        cache.put(fingerprint, 0, 0, 0, 0.0);
+        assertEquals(0.0, cache.get(fingerprint, 0, 0, 0), 0.0);
+    }
+
+    @Test
+    public void testUncacheableKeys() {
+        final GenotypeResultCache cache = new GenotypeResultCache();
+        final int fingerprint = cache.getFingerprintId("GenotypeResultCacheTest/uncacheable");
+        cache.put(0, 1, 2, 3, 0.5);
+        cache.put(fingerprint, 1, 2, 1 << 16, 0.5);
+        cache.put(fingerprint, 1 << 12, 2, 3, 0.5);
+        cache.put(fingerprint, 1, 2, 3, Double.NaN);
+        assertEquals(0, cache.size());
+        assertTrue(Double.isNaN(cache.get(0, 1, 2, 3)));
+    }
+
+    @Test
+    public void testGrowth() {
+        final GenotypeResultCache cache = new GenotypeResultCache();
+        final int fingerprint = cache.getFingerprintId("GenotypeResultCacheTest/growth");
+        for (int locus = 0; locus < 30; locus++) {
+            for (int allele1 = 0; allele1 < 40; allele1++) {
+                for (int allele2 = allele1; allele2 < 40; allele2++) {
+                    cache.put(fingerprint, locus, allele1, allele2, locus * 10000 + allele1 * 100 + allele2);
+                }
+            }
+        }
+        assertEquals(30 * 820, cache.size());
+        for (int locus = 0; locus < 30; locus++) {
+            for (int allele1 = 0; allele1 < 40; allele1++) {
+                for (int allele2 = allele1; allele2 < 40; allele2++) {
+                    assertEquals(locus * 10000 + allele1 * 100 + allele2, cache.get(fingerprint, locus, allele1, allele2), 0.0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final GenotypeResultCache cache = new GenotypeResultCache();
+        final int fingerprint = cache.getFingerprintId("GenotypeResultCacheTest/concurrent");
+        final ExecutorService service = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Boolean>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                futures.add(service.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        boolean consistent = true;
+                        for (int allele1 = 50; allele1 < 250; allele1++) {
+                            for (int allele2 = 0; allele2 < 50; allele2++) {
+                                final double value = cache.get(fingerprint, 7, allele1, allele2);
+                                if (Double.isNaN(value)) {
+                                    cache.put(fingerprint, 7, allele1, allele2, allele1 * 1000 + allele2);
+                                }
+                                else {
+                                    consistent &= value == allele1 * 1000 + allele2;
+                                }
+                            }
+                        }
+                        return consistent;
+                    }
+                }));
+            }
+            for (final Future<Boolean> future : futures) {
+                assertTrue(future.get());
+            }
+        }
+        finally {
+            service.shutdown();
+        }
+        assertEquals(200 * 50, cache.size());
+        assertEquals(8 * 200 * 50, cache.getHitCount() + cache.getMissCount());
+    }
+}
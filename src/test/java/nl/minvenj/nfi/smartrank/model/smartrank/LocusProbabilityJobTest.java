@@ -18,10 +18,13 @@
 
 package nl.minvenj.nfi.smartrank.model.smartrank;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.when;
 
+import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.Collection;
 
@@ -36,6 +39,7 @@ import nl.minvenj.nfi.smartrank.domain.Contributor;
 import nl.minvenj.nfi.smartrank.domain.Hypothesis;
 import nl.minvenj.nfi.smartrank.domain.Locus;
 import nl.minvenj.nfi.smartrank.domain.PopulationStatistics;
+import nl.minvenj.nfi.smartrank.domain.ProsecutionHypothesis;
 import nl.minvenj.nfi.smartrank.domain.Sample;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -152,4 +156,92 @@ public class LocusProbabilityJobTest {
     public void testLocusHypothesisNull() throws Exception {
         new LocusProbabilityJob(LOCUSNAME, _profiles, null);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCall() throws Exception {
+        final PopulationStatistics stats = new PopulationStatistics("LocusProbabilityJobTest");
+        stats.addStatistic(LOCUSNAME, "10", new BigDecimal("0.1"));
+        stats.addStatistic(LOCUSNAME, "11", new BigDecimal("0.2"));
+        stats.addStatistic(LOCUSNAME, "12", new BigDecimal("0.3"));
+        stats.addStatistic(LOCUSNAME, "13", new BigDecimal("0.15"));
+
+        final ProsecutionHypothesis hypothesis = new ProsecutionHypothesis();
+        hypothesis.setStatistics(stats);
+        hypothesis.setCandidate(createSample("candidate", "10", "13"));
+        hypothesis.setCandidateDropout(0.1);
+        hypothesis.addContributor(createSample("known", "11", "11"), 0.05);
+        hypothesis.setUnknownCount(2);
+        hypothesis.setUnknownDropoutProbability(0.2);
+        hypothesis.setDropInProbability(0.05);
+        hypothesis.setThetaCorrection(0.01);
+
+        final Collection<Sample> replicates = Arrays.asList(createSample("rep1", "10", "11", "12"), createSample("rep2", "10", "12", "14"), createSample("rep3", "10", "11", "12"));
+        final String[] alleles = {"10", "11", "12", "14"};
+        final Locus[] combinations = new Locus[10];
+        int combinationCount = 0;
+        for (int allele1 = 0; allele1 < alleles.length; allele1++) {
+            for (int allele2 = allele1; allele2 < alleles.length; allele2++) {
+                combinations[combinationCount] = new Locus(LOCUSNAME);
+                combinations[combinationCount].addAllele(new Allele(alleles[allele1]));
+                combinations[combinationCount++].addAllele(new Allele(alleles[allele2]));
+            }
+        }
+
+        final double[] expected = {1.8325275899693482E-13, 1.2800108595531256E-13, 1.6093297465472193E-12, 5.249549724814672E-13, 1.8295689449423447E-14,
+                                   3.9601448302532716E-13, 1.4019940465814865E-13, 1.2737456642977363E-12, 1.5733728601425121E-15, 1.951347845796673E-26};
+        for (int batchStart = 0; batchStart < combinations.length; batchStart++) {
+            final LocusProbabilityJob job = new LocusProbabilityJob(LOCUSNAME, new PermutationIteratorPlain(2, combinations, batchStart), replicates, hypothesis);
+            assertEquals(expected[batchStart], job.call().getValue(), 0.0);
+        }
+
+        final LocusProbabilityJob singleJob = new LocusProbabilityJob(LOCUSNAME, replicates, hypothesis);
+        assertEquals(7.338394791198295E-17, singleJob.call().getValue(), 0.0);
+    }
+
+    @Test
+    public void testReplicateProbabilitiesAreShared() throws Exception {
+        final PopulationStatistics stats = new PopulationStatistics("LocusProbabilityJobTest");
+        stats.addStatistic(LOCUSNAME, "10", new BigDecimal("0.1"));
+        stats.addStatistic(LOCUSNAME, "11", new BigDecimal("0.2"));
+        stats.addStatistic(LOCUSNAME, "12", new BigDecimal("0.3"));
+        stats.addStatistic(LOCUSNAME, "13", new BigDecimal("0.15"));
+
+        final ProsecutionHypothesis hypothesis = new ProsecutionHypothesis();
+        hypothesis.setStatistics(stats);
+        hypothesis.addContributor(createSample("known", "11", "11"), 0.05);
+        hypothesis.setUnknownCount(3);
+        hypothesis.setUnknownDropoutProbability(0.2);
+        hypothesis.setDropInProbability(0.05);
+        hypothesis.setThetaCorrection(0.01);
+        hypothesis.setQDesignationShutdown(true);
+
+        final Collection<Sample> replicates = Arrays.asList(createSample("rep1", "10", "11", "12"), createSample("rep2", "10", "12", "14"), createSample("rep3", "10", "11", "12"));
+        final CompiledLocus compiledLocus = new CompiledLocus(LOCUSNAME, replicates, hypothesis, true);
+        final CompiledLocus.AlleleCombinations combinations = compiledLocus.getCombinations(null);
+
+        double expected = 0;
+        double actual = 0;
+        for (int batchStart = 0; batchStart < combinations.getLoci().length; batchStart++) {
+            expected += new LocusProbabilityJob(LOCUSNAME, new PermutationIteratorPlain(3, combinations.getLoci(), batchStart), replicates, hypothesis).call().getValue();
+        }
+        for (final LocusProbabilityJob job : LocusProbabilityJobGenerator.generate(compiledLocus, null, null, hypothesis)) {
+            actual += job.call().getValue();
+        }
+        assertEquals(expected, actual, expected * 1E-12);
+
+        // Every distinct set of alleles of the unknowns is calculated once
+        final int signatureCount = combinations.getReplicateProbabilities().size();
+        assertTrue(signatureCount > 0);
+        assertTrue(signatureCount < PermutationIteratorPlain.getTotalSize(3, combinations.getLoci().length));
+    }
+
+    private Sample createSample(final String name, final String... alleles) {
+        final Sample sample = new Sample(name);
+        final Locus locus = new Locus(LOCUSNAME);
+        for (final String allele : alleles) {
+            locus.addAllele(new Allele(allele));
+        }
+        sample.addLocus(locus);
+        return sample;
+    }
+}
@@ -0,0 +1,121 @@
+package nl.minvenj.nfi.smartrank.model.smartrank;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import nl.minvenj.nfi.smartrank.domain.Hypothesis;
+import nl.minvenj.nfi.smartrank.domain.Locus;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PartitionedLocusProbabilityTest {
+
+    private static final int UNKNOWNS = 3;
+    private static final int COMBINATIONS = 12;
+
+    @Mock
+    private Hypothesis _hypothesis;
+
+    private final Locus[] _combinations = new Locus[COMBINATIONS];
+    private double[] _terms;
+
+    @Before
+    public void setUp() {
+        when(_hypothesis.getUnknownCount()).thenReturn(UNKNOWNS);
+        final Random random = new Random(42);
+        _terms = new double[(int) PermutationIteratorPlain.getTotalSize(UNKNOWNS, COMBINATIONS)];
+        for (int idx = 0; idx < _terms.length; idx++) {
+            _terms[idx] = random.nextDouble() * Math.pow(10, -random.nextInt(12));
+        }
+    }
+
+    /**
+     * Sums the terms as one job per first index would, with the job results added in order.
+     */
+    private double getSequentialSum() {
+        Double total = null;
+        int rank = 0;
+        for (int batchStart = 0; batchStart < COMBINATIONS; batchStart++) {
+            final LocusProbability job = new LocusProbability(_hypothesis, "locus");
+            for (long idx = 0; idx < PermutationIteratorPlain.getBatchSize(UNKNOWNS, COMBINATIONS, batchStart); idx++) {
+                job.addValue(_terms[rank++]);
+            }
+            total = total == null ? job.getValue() : total + job.getValue();
+        }
+        return total;
+    }
+
+    private double[] getChunkTerms(final PartitionedLocusProbability partition, final int chunk, final int[] firstRank) {
+        final PermutationIterator iterator = partition.getIterator(chunk);
+        final double[] terms = new double[(int) iterator.size()];
+        System.arraycopy(_terms, firstRank[chunk], terms, 0, terms.length);
+        return terms;
+    }
+
+    private int[] claimAll(final PartitionedLocusProbability partition) {
+        int chunkCount = 0;
+        while (partition.claimChunk() >= 0) {
+            chunkCount++;
+        }
+        final int[] firstRank = new int[chunkCount];
+        for (int chunk = 1; chunk < chunkCount; chunk++) {
+            firstRank[chunk] = firstRank[chunk - 1] + (int) partition.getIterator(chunk - 1).size();
+        }
+        assertEquals(_terms.length, firstRank[chunkCount - 1] + partition.getIterator(chunkCount - 1).size());
+        return firstRank;
+    }
+
+    @Test
+    public void testOutOfOrderChunksGiveSequentialSum() throws Exception {
+        for (final int parallelism : new int[]{1, 2, 4, 64}) {
+            final PartitionedLocusProbability partition = new PartitionedLocusProbability(_hypothesis, "locus", _combinations, parallelism);
+            final int[] firstRank = claimAll(partition);
+            for (int chunk = firstRank.length - 1; chunk >= 0; chunk--) {
+                assertFalse(partition.isDone());
+                partition.complete(chunk, getChunkTerms(partition, chunk, firstRank));
+            }
+            assertTrue(partition.isDone());
+            assertEquals(getSequentialSum(), partition.get().getValue(), 0.0);
+        }
+    }
+
+    @Test
+    public void testWorkerCount() {
+        assertEquals(4, new PartitionedLocusProbability(_hypothesis, "locus", _combinations, 4).getWorkerCount());
+        assertEquals(1, new PartitionedLocusProbability(_hypothesis, "locus", new Locus[1], 64).getWorkerCount());
+    }
+
+    @Test
+    public void testClaimChunkAfterLastChunk() {
+        final PartitionedLocusProbability partition = new PartitionedLocusProbability(_hypothesis, "locus", new Locus[1], 4);
+        assertEquals(0, partition.claimChunk());
+        assertEquals(-1, partition.claimChunk());
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void testFailure() throws Exception {
+        final PartitionedLocusProbability partition = new PartitionedLocusProbability(_hypothesis, "locus", _combinations, 4);
+        partition.fail(new IllegalStateException("failed"));
+        assertTrue(partition.isDone());
+        partition.get();
+    }
+
+    @Test(expected = CancellationException.class)
+    public void testCancel() throws Exception {
+        final PartitionedLocusProbability partition = new PartitionedLocusProbability(_hypothesis, "locus", _combinations, 4);
+        assertTrue(partition.cancel(true));
+        assertTrue(partition.isCancelled());
+        partition.get();
+    }
+}
@@ -21,6 +21,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.when;
@@ -153,4 +154,88 @@ public class PermutationIteratorPlainTest {
         instance.remove();
     }
 
+    @Test
+    public void testAdvanceMatchesNext() {
+        for (int batchStart = 0; batchStart < _possibleAlleleCombinations.length; batchStart++) {
+            PermutationIteratorPlain iterator = new PermutationIteratorPlain(3, _possibleAlleleCombinations, batchStart);
+            PermutationIteratorPlain cursor = new PermutationIteratorPlain(3, _possibleAlleleCombinations, batchStart);
+            long count = 0;
+            while (cursor.advance()) {
+                Permutation p = iterator.next();
+                assertNotNull(p);
+                assertTrue(Arrays.equals(p.getLoci(), cursor.getCurrentLoci()));
+                assertEquals(p.getPermutationFactor(), cursor.getCurrentPermutationFactor());
+                for (int idx = 0; idx < 3; idx++) {
+                    assertSame(_possibleAlleleCombinations[cursor.getCurrentIndices()[idx]], cursor.getCurrentLoci()[idx]);
+                }
+                count++;
+            }
+            assertNull(iterator.next());
+            assertEquals(cursor.size(), count);
+        }
+    }
+
+    @Test
+    public void testAdvanceReusesBuffers() {
+        PermutationIteratorPlain instance = new PermutationIteratorPlain(2, _possibleAlleleCombinations, 0);
+        assertTrue(instance.advance());
+        int[] indices = instance.getCurrentIndices();
+        Locus[] loci = instance.getCurrentLoci();
+        assertTrue(instance.advance());
+        assertSame(indices, instance.getCurrentIndices());
+        assertSame(loci, instance.getCurrentLoci());
+    }
+
+    @Test
+    public void testAdvance0Unknowns() {
+        PermutationIteratorPlain instance = new PermutationIteratorPlain(0, _possibleAlleleCombinations, 0);
+        assertFalse(instance.advance());
+    }
+
+    @Test
+    public void testPermutationFactorsCoverAllOrderings() {
+        long total = 0;
+        for (int batchStart = 0; batchStart < _possibleAlleleCombinations.length; batchStart++) {
+            PermutationIteratorPlain instance = new PermutationIteratorPlain(3, _possibleAlleleCombinations, batchStart);
+            while (instance.advance()) {
+                total += instance.getCurrentPermutationFactor();
+            }
+        }
+        assertEquals(6 * 6 * 6, total);
+    }
+
+    @Test
+    public void testRangesMatchBatches() {
+        for (int unknowns = 1; unknowns <= 4; unknowns++) {
+            StringBuilder batches = new StringBuilder();
+            long total = 0;
+            for (int batchStart = 0; batchStart < _possibleAlleleCombinations.length; batchStart++) {
+                PermutationIteratorPlain instance = new PermutationIteratorPlain(unknowns, _possibleAlleleCombinations, batchStart);
+                assertEquals(PermutationIteratorPlain.getBatchSize(unknowns, _possibleAlleleCombinations.length, batchStart), instance.size());
+                total += instance.size();
+                while (instance.advance()) {
+                    batches.append(Arrays.toString(instance.getCurrentIndices())).append(instance.getCurrentPermutationFactor());
+                }
+            }
+            assertEquals(total, PermutationIteratorPlain.getTotalSize(unknowns, _possibleAlleleCombinations.length));
+
+            StringBuilder ranges = new StringBuilder();
+            for (long first = 0; first < total; first += 5) {
+                PermutationIteratorPlain instance = new PermutationIteratorPlain(unknowns, _possibleAlleleCombinations, first, Math.min(total, first + 5));
+                long count = 0;
+                while (instance.advance()) {
+                    ranges.append(Arrays.toString(instance.getCurrentIndices())).append(instance.getCurrentPermutationFactor());
+                    count++;
+                }
+                assertEquals(instance.size(), count);
+                assertFalse(instance.hasNext());
+            }
+            assertEquals(batches.toString(), ranges.toString());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRangeOutOfBounds() {
+        new PermutationIteratorPlain(2, _possibleAlleleCombinations, 0L, 22L);
+    }
 }
@@ -19,11 +19,10 @@ package nl.minvenj.nfi.smartrank.model.smartrank;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -51,6 +50,9 @@ public class ResultsCollectorTest {
     @Mock
     Future<LocusProbability> _cancelledFuture;
 
+    @Mock
+    Future<LocusProbability> _failedFuture;
+
     @Mock
     private LocusProbability _probability1;
 
@@ -78,32 +80,32 @@ public class ResultsCollectorTest {
     }
 
     @Test(expected = IllegalArgumentException.class)
-    public void testRunNull() {
-        final ResultsCollector instance = new ResultsCollector(null);
-        instance.run();
+    public void testAddNull() {
+        final ResultsCollector instance = new ResultsCollector(false);
+        instance.add(null);
     }
 
     @Test
-    public void testRunNonNull() throws InterruptedException, ExecutionException {
-        final ResultsCollector instance = new ResultsCollector(Arrays.asList(_future1, _future2));
-        instance.run();
-        verify(_future1).get();
-        verify(_future2).get();
+    public void testCollectNonNull() throws InterruptedException, ExecutionException {
+        final ResultsCollector instance = new ResultsCollector(false);
+        instance.addCompleted(_future1);
+        instance.addCompleted(_future2);
+        final LocusLikelihoods result = instance.collect();
+        verify(_future1, atLeastOnce()).get();
+        verify(_future2, atLeastOnce()).get();
 
-        final LocusLikelihoods result = instance.getLikelihoods();
         assertNotNull(result);
         assertEquals(2, result.getLoci().size());
     }
 
     @Test
-    public void testRun() throws InterruptedException, ExecutionException {
-        final ResultsCollector instance = new ResultsCollector(Arrays.asList(_future1, _future2, _future3));
-        instance.run();
-        verify(_future1).get();
-        verify(_future2).get();
-        verify(_future3).get();
+    public void testCollect() throws InterruptedException, ExecutionException {
+        final ResultsCollector instance = new ResultsCollector(false);
+        instance.addCompleted(_future1);
+        instance.addCompleted(_future2);
+        instance.addCompleted(_future3);
+        final LocusLikelihoods result = instance.collect();
 
-        final LocusLikelihoods result = instance.getLikelihoods();
         assertNotNull(result);
         assertEquals(2, result.getLoci().size());
 
@@ -112,22 +114,54 @@ public class ResultsCollectorTest {
     }
 
     @Test
-    public void testRunCancelled() {
-        final ResultsCollector instance = new ResultsCollector(Arrays.asList(_cancelledFuture));
-        instance.run();
+    public void testCollectOutOfOrder() throws InterruptedException {
+        final ResultsCollector instance = new ResultsCollector(false);
+        instance.add(_future1);
+        instance.add(_future2);
+        instance.add(_future3);
+        instance.getCompletionQueue().add(_future3);
+        instance.getCompletionQueue().add(_future2);
+        instance.getCompletionQueue().add(_future1);
+        final LocusLikelihoods result = instance.collect();
+
+        assertEquals(0.01 + 0.13, result.getLocusProbability("Locus1"), 0.0);
+        assertEquals(0.005, result.getLocusProbability("Locus2"), 0.0);
+    }
+
+    @Test
+    public void testCollectCancelled() throws InterruptedException {
+        final ResultsCollector instance = new ResultsCollector(false);
+        instance.add(_future1);
+        instance.addCompleted(_cancelledFuture);
+        instance.collect();
+        verify(_future1).cancel(false);
+    }
+
+    @Test
+    public void testCollectFailed() throws InterruptedException, ExecutionException {
+        when(_failedFuture.get()).thenThrow(new ExecutionException("Job failed", new IllegalStateException()));
+        final ResultsCollector instance = new ResultsCollector(false);
+        instance.add(_future1);
+        instance.add(_future2);
+        instance.addCompleted(_failedFuture);
+        instance.collect();
+        verify(_future1).cancel(false);
+        verify(_future2).cancel(false);
     }
 
     @Test
-    public void testInterrupt() {
-        final ResultsCollector instance = new ResultsCollector(Arrays.asList(_future1, _future2));
-        instance.interrupt();
-        verify(_future1).cancel(true);
-        verify(_future2).cancel(true);
+    public void testCancel() {
+        final ResultsCollector instance = new ResultsCollector(false);
+        instance.add(_future1);
+        instance.add(_future2);
+        instance.cancel();
+        verify(_future1).cancel(false);
+        verify(_future2).cancel(false);
     }
 
     @Test
     public void testGetLikelihoods() {
-        final ResultsCollector instance = new ResultsCollector(new ArrayList<Future<LocusProbability>>());
+        final ResultsCollector instance = new ResultsCollector(false);
         final LocusLikelihoods result = instance.getLikelihoods();
         assertNotNull(result);
         assertNotNull(result.getLoci());
@@ -13,6 +13,7 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import nl.minvenj.nfi.smartrank.domain.Allele;
 import nl.minvenj.nfi.smartrank.domain.AnalysisParameters;
+import nl.minvenj.nfi.smartrank.domain.CandidateProfile;
 import nl.minvenj.nfi.smartrank.domain.DefenseHypothesis;
 import nl.minvenj.nfi.smartrank.domain.Locus;
 import nl.minvenj.nfi.smartrank.domain.LocusLikelihoods;
@@ -137,6 +138,99 @@ public class SmartRankModelTest {
         assertEquals(calculatedLikelihood.getGlobalProbability(), calculatedLikelihood2.getGlobalProbability(), 0.0000000000000001);
     }
 
+    @Test
+    public final void testSharedResultCache() throws InterruptedException {
+        final GenotypeResultCache cache = new GenotypeResultCache();
+        _hp.setThetaCorrection(0.1);
+        final LocusLikelihoods calculatedLikelihood = new SmartRankModel(cache).calculateLikelihood(_hp, _parameters);
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.size());
+
+        final ProsecutionHypothesis otherHp = (ProsecutionHypothesis) _hp.copy();
+        final LocusLikelihoods calculatedLikelihood2 = new SmartRankModel(cache).calculateLikelihood(otherHp, _parameters);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(calculatedLikelihood.getGlobalProbability(), calculatedLikelihood2.getGlobalProbability(), 0.0);
+
+        otherHp.setThetaCorrection(0);
+        final LocusLikelihoods calculatedLikelihood3 = new SmartRankModel(cache).calculateLikelihood(otherHp, _parameters);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.size());
+        assertEquals(4.1292896687783985E-5, calculatedLikelihood3.getGlobalProbability(), 0.0000000000000001);
+    }
+
+    @Test
+    public final void testCompiledHypothesisIsReusedForCandidates() throws InterruptedException {
+        _hp.setThetaCorrection(0.1);
+        final SmartRankModel model = new SmartRankModel();
+        final double first = model.calculateLikelihood(_hp, _parameters).getGlobalProbability();
+        _hp.setCandidate(_candidate2);
+        final double second = model.calculateLikelihood(_hp, _parameters).getGlobalProbability();
+        _hp.setCandidate(_candidate);
+        assertEquals(first, model.calculateLikelihood(_hp, _parameters).getGlobalProbability(), 0.0);
+
+        _hp.setCandidate(_candidate2);
+        assertEquals(second, new SmartRankModel().calculateLikelihood(_hp, _parameters).getGlobalProbability(), 0.0);
+
+        // The frequency of the '-other' allele is not registered in the population statistics
+        assertEquals(3, _hp.getPopulationStatistics().getAlleles(LOCUS_NAME).size());
+    }
+
+    @Test
+    public final void testCompiledHypothesisFollowsHypothesisChanges() throws InterruptedException {
+        final SmartRankModel model = new SmartRankModel();
+        _hp.setThetaCorrection(0.1);
+        model.calculateLikelihood(_hp, _parameters);
+        _hp.setThetaCorrection(0);
+        assertEquals(new SmartRankModel().calculateLikelihood(_hp, _parameters).getGlobalProbability(), model.calculateLikelihood(_hp, _parameters).getGlobalProbability(), 0.0);
+        _hp.setUnknownDropoutProbability(0.2);
+        assertEquals(new SmartRankModel().calculateLikelihood(_hp, _parameters).getGlobalProbability(), model.calculateLikelihood(_hp, _parameters).getGlobalProbability(), 0.0);
+    }
+
+    @Test
+    public final void testCandidateNonContributorIsCachedByGenotype() throws InterruptedException {
+        _hd.setThetaCorrection(0.01);
+        final GenotypeResultCache cache = new GenotypeResultCache();
+        final SmartRankModel model = new SmartRankModel(cache);
+        for (final Sample candidate : Arrays.asList(_candidate, _candidate2, _candidate)) {
+            final DefenseHypothesis expectedHd = (DefenseHypothesis) _hd.copy();
+            expectedHd.addNonContributor(candidate, 0);
+            final double expected = new SmartRankModel().calculateLikelihood(expectedHd, _parameters).getGlobalProbability();
+
+            final DefenseHypothesis hd = (DefenseHypothesis) _hd.copy();
+            hd.addCandidateNonContributor(candidate, 0);
+            assertEquals(expected, model.calculateLikelihood(hd, _parameters).getGlobalProbability(), 0.0);
+        }
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public final void testCandidateProfileMatchesSample() throws InterruptedException {
+        _hd.setThetaCorrection(0.01);
+        for (final boolean qDesignationShutdown : new boolean[]{false, true}) {
+            _hp.setQDesignationShutdown(qDesignationShutdown);
+            final SmartRankModel model = new SmartRankModel();
+            for (final Sample candidate : Arrays.asList(_candidate, _candidate2, _noncontributor)) {
+                final ProsecutionHypothesis hp = (ProsecutionHypothesis) _hp.copy();
+                hp.setCandidate(candidate);
+                final double expectedHp = new SmartRankModel().calculateLikelihood(hp, _parameters).getGlobalProbability();
+                assertEquals(expectedHp, model.calculateLikelihood(_hp, CandidateProfile.of(candidate), _parameters).getGlobalProbability(), 0.0);
+
+                final DefenseHypothesis hd = (DefenseHypothesis) _hd.copy();
+                hd.addCandidateNonContributor(candidate, 0.04);
+                final double expectedHd = new SmartRankModel().calculateLikelihood(hd, _parameters).getGlobalProbability();
+                final DefenseHypothesis placeholderHd = (DefenseHypothesis) _hd.copy();
+                placeholderHd.addCandidateNonContributor(new Sample("placeholder"), 0.04);
+                assertEquals(expectedHd, model.calculateLikelihood(placeholderHd, CandidateProfile.of(candidate), _parameters).getGlobalProbability(), 0.0);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testCandidateProfileNeedsCandidate() throws InterruptedException {
+        new SmartRankModel().calculateLikelihood(_hd, CandidateProfile.of(_candidate), _parameters);
+    }
+
     @Test
     public final void testInterrupt() throws InterruptedException {
         final SmartRankModel model = new SmartRankModel();
@@ -0,0 +1,108 @@
+package nl.minvenj.nfi.smartrank.model.smartrank.genotype;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import nl.minvenj.nfi.smartrank.domain.Allele;
+import nl.minvenj.nfi.smartrank.domain.Hypothesis;
+import nl.minvenj.nfi.smartrank.domain.Locus;
+import nl.minvenj.nfi.smartrank.domain.PopulationStatistics;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GenotypeProbabilityTableTest {
+
+    @Mock
+    private Hypothesis _hypothesis;
+
+    @Mock
+    private PopulationStatistics _populationStatistics;
+
+    private Locus[] _genotypes;
+    private LocalAlleleIndex _alleles;
+    private double[] _frequencies;
+
+    @Before
+    public void setup() {
+        final String[][] genotypes = {{"40.1", "41.1"}, {"40.1", "40.1"}, {"41.1", "42.1"}, {"42.1", "42.1"}};
+        _genotypes = new Locus[genotypes.length];
+        for (int idx = 0; idx < genotypes.length; idx++) {
+            _genotypes[idx] = new Locus("TableLocus");
+            _genotypes[idx].addAllele(new Allele(genotypes[idx][0]));
+            _genotypes[idx].addAllele(new Allele(genotypes[idx][1]));
+        }
+
+        _alleles = LocalAlleleIndex.of(_genotypes);
+        _frequencies = new double[_alleles.size()];
+        _frequencies[_alleles.getLocalIndex(Allele.getId("40.1"))] = 0.15;
+        _frequencies[_alleles.getLocalIndex(Allele.getId("41.1"))] = 0.35;
+        _frequencies[_alleles.getLocalIndex(Allele.getId("42.1"))] = 0.05;
+        for (final Locus genotype : _genotypes) {
+            for (final Allele allele : genotype.getAlleles()) {
+                when(_populationStatistics.getProbability(any(Locus.class), eq(allele))).thenReturn(_frequencies[_alleles.getLocalIndex(allele.getId())]);
+            }
+        }
+        when(_hypothesis.getPopulationStatistics()).thenReturn(_populationStatistics);
+    }
+
+    @Test
+    public void testAlleleCount() {
+        final GenotypeProbabilityTable table = GenotypeProbabilityCalculatorFactory.getGenotypeProbabilityTable(0.01, _genotypes, _alleles, _frequencies);
+        assertEquals(3, table.getAlleleCount());
+        assertEquals(Allele.getId("41.1"), table.getAlleleId(table.getLocalIndex(Allele.getId("41.1"))));
+        assertEquals(-1, table.getLocalIndex(Allele.getId("43.1")));
+    }
+
+    @Test
+    public void testHardyWeinberg() {
+        when(_hypothesis.getThetaCorrection()).thenReturn(0.0);
+        assertSameAsCalculator(new HardyWeinbergGenotypeProbabilityCalculator(_hypothesis), 0.0);
+    }
+
+    @Test
+    public void testSplitDrop() {
+        when(_hypothesis.getThetaCorrection()).thenReturn(0.03);
+        assertSameAsCalculator(new SplitDropGenotypeProbabilityCalculator(_hypothesis), 0.03);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCalculateUnknownAllele() {
+        final GenotypeProbabilityTable table = GenotypeProbabilityCalculatorFactory.getGenotypeProbabilityTable(0.01, _genotypes, _alleles, _frequencies);
+        final Locus genotype = new Locus("TableLocus");
+        genotype.addAllele(new Allele("43.1"));
+        genotype.addAllele(new Allele("40.1"));
+        table.calculate(new int[Allele.getRegisteredAlleleCount()], genotype);
+    }
+
+    private void assertSameAsCalculator(final GenotypeProbabilityCalculator calculator, final double theta) {
+        final GenotypeProbabilityTable table = GenotypeProbabilityCalculatorFactory.getGenotypeProbabilityTable(theta, _genotypes, _alleles, _frequencies);
+
+        // Start from counts of the known contributors, and add the genotypes of two unknowns in every order
+        final int[] alleleCounts = new int[Allele.getRegisteredAlleleCount()];
+        alleleCounts[Allele.getId("40.1")] = 2;
+        alleleCounts[Allele.getId("42.1")] = 1;
+        for (int first = 0; first < _genotypes.length; first++) {
+            for (int second = 0; second < _genotypes.length; second++) {
+                final int[] expectedCounts = alleleCounts.clone();
+                final double expected = calculator.calculate(expectedCounts, _genotypes[first]) * calculator.calculate(expectedCounts, _genotypes[second]);
+
+                final int[] localCounts = new int[table.getAlleleCount()];
+                for (int localIndex = 0; localIndex < localCounts.length; localIndex++) {
+                    localCounts[localIndex] = alleleCounts[table.getAlleleId(localIndex)];
+                }
+                final double actual = table.calculate(localCounts, first) * table.calculate(localCounts, second);
+                assertEquals(expected, actual, 0.0);
+
+                final int[] globalCounts = alleleCounts.clone();
+                assertEquals(expected, table.calculate(globalCounts, _genotypes[first]) * table.calculate(globalCounts, _genotypes[second]), 0.0);
+            }
+        }
+    }
+}
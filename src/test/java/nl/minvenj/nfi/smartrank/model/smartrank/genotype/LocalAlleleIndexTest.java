@@ -0,0 +1,47 @@
+package nl.minvenj.nfi.smartrank.model.smartrank.genotype;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import nl.minvenj.nfi.smartrank.domain.Allele;
+import nl.minvenj.nfi.smartrank.domain.Locus;
+
+public class LocalAlleleIndexTest {
+
+    @Test
+    public void testIndex() {
+        final LocalAlleleIndex index = new LocalAlleleIndex(new int[]{412, 17, 412, 3});
+        assertEquals(3, index.size());
+        assertEquals(0, index.getLocalIndex(3));
+        assertEquals(1, index.getLocalIndex(17));
+        assertEquals(2, index.getLocalIndex(412));
+        assertEquals(17, index.getAlleleId(1));
+        assertEquals(-1, index.getLocalIndex(18));
+        assertEquals(-1, index.getLocalIndex(1000));
+    }
+
+    @Test
+    public void testEmpty() {
+        final LocalAlleleIndex index = new LocalAlleleIndex(new int[0]);
+        assertEquals(0, index.size());
+        assertEquals(-1, index.getLocalIndex(0));
+    }
+
+    @Test
+    public void testOf() {
+        final Locus first = new Locus("IndexLocus");
+        first.addAllele(new Allele("71.1"));
+        first.addAllele(new Allele("72.1"));
+        final Locus second = new Locus("IndexLocus");
+        second.addAllele(new Allele("72.1"));
+        second.addAllele(new Allele("73.1"));
+
+        final LocalAlleleIndex index = LocalAlleleIndex.of(first, null, second);
+        assertEquals(3, index.size());
+        for (final String allele : new String[]{"71.1", "72.1", "73.1"}) {
+            final int localIndex = index.getLocalIndex(Allele.getId(allele));
+            assertEquals(Allele.getId(allele), index.getAlleleId(localIndex));
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package nl.minvenj.nfi.smartrank.raven.messages;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.minvenj.nfi.smartrank.raven.annotations.RavenMessageHandler;
+
+public class MessageBusTest {
+
+    public static class ValueMessage extends RavenMessage<Integer> {
+        public ValueMessage(final Integer value) {
+            super(value);
+        }
+    }
+
+    public static class BlockMessage extends RavenMessage<String> {
+        public BlockMessage() {
+            super("block");
+        }
+    }
+
+    public static class ListMessage extends RavenMessage<List<String>> {
+        public ListMessage(final String... values) {
+            super(new ArrayList<String>(Arrays.asList(values)), true);
+        }
+    }
+
+    public static class Receiver {
+        private final CountDownLatch _blocked = new CountDownLatch(1);
+        private final CountDownLatch _release = new CountDownLatch(1);
+        private final List<Object> _received = Collections.synchronizedList(new ArrayList<Object>());
+
+        @RavenMessageHandler(BlockMessage.class)
+        public void onBlock() throws InterruptedException {
+            _blocked.countDown();
+            _release.await(5, TimeUnit.SECONDS);
+        }
+
+        @RavenMessageHandler(ValueMessage.class)
+        public void onValue(final Integer value) {
+            _received.add(value);
+        }
+
+        @RavenMessageHandler(ListMessage.class)
+        public void onList(final List<String> values) {
+            _received.add(new ArrayList<String>(values));
+        }
+    }
+
+    private MessageBus _bus;
+
+    @Before
+    public void setUp() {
+        MessageBus.reset();
+        _bus = MessageBus.getInstance();
+    }
+
+    @After
+    public void tearDown() {
+        MessageBus.reset();
+    }
+
+    @Test
+    public void testPendingMessagesAreReplacedOrCoalesced() throws InterruptedException {
+        final Receiver receiver = new Receiver();
+        _bus.registerSubscriber(receiver);
+
+        // Keep the notification thread busy so the following messages stay pending
+        _bus.send(this, new BlockMessage());
+        assertTrue(receiver._blocked.await(5, TimeUnit.SECONDS));
+
+        _bus.send(this, new ValueMessage(1));
+        _bus.send(this, new ListMessage("a"));
+        _bus.send(this, new ValueMessage(2));
+        _bus.send(this, new ListMessage("b", "c"));
+        receiver._release.countDown();
+        _bus.waitIdle(5000);
+
+        // The message pump may take a message before the next one is sent, so messages are not always combined. Every
+        // value must still arrive in order, and the latest value must be delivered last.
+        final List<Object> values = new ArrayList<>();
+        final List<Object> items = new ArrayList<>();
+        synchronized (receiver._received) {
+            for (final Object received : receiver._received) {
+                if (received instanceof List) {
+                    items.addAll((List<?>) received);
+                }
+                else {
+                    values.add(received);
+                }
+            }
+        }
+        assertEquals(Arrays.<Object>asList("a", "b", "c"), items);
+        assertEquals(2, values.get(values.size() - 1));
+        assertTrue(values.size() <= 2);
+        assertEquals(Integer.valueOf(2), _bus.query(ValueMessage.class));
+    }
+
+    @Test
+    public void testNewSubscriberReceivesCurrentValue() {
+        assertNull(_bus.query(ValueMessage.class));
+        _bus.send(this, new ValueMessage(42));
+        final Receiver receiver = new Receiver();
+        _bus.registerSubscriber(receiver);
+        _bus.waitIdle(5000);
+
+        assertEquals(Arrays.<Object>asList(42), receiver._received);
+    }
+
+    @Test
+    public void testConcurrentSenders() throws InterruptedException {
+        final Receiver receiver = new Receiver();
+        _bus.registerSubscriber(receiver);
+
+        final Thread[] senders = new Thread[4];
+        for (int idx = 0; idx < senders.length; idx++) {
+            final String name = "sender" + idx;
+            senders[idx] = new Thread() {
+                @Override
+                public void run() {
+                    for (int value = 0; value < 1000; value++) {
+                        _bus.send(name, new ListMessage(name));
+                    }
+                }
+            };
+            senders[idx].start();
+        }
+        for (final Thread sender : senders) {
+            sender.join();
+        }
+        _bus.waitIdle(5000);
+
+        int total = 0;
+        synchronized (receiver._received) {
+            for (final Object received : receiver._received) {
+                total += ((List<?>) received).size();
+            }
+        }
+        assertEquals(4000, total);
+    }
+}
@@ -0,0 +1,213 @@
+package nl.minvenj.nfi.smartrank.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import nl.minvenj.nfi.smartrank.SmartRankManager;
+import nl.minvenj.nfi.smartrank.analysis.ExclusionReason;
+import nl.minvenj.nfi.smartrank.analysis.SearchResults;
+import nl.minvenj.nfi.smartrank.domain.DefenseHypothesis;
+import nl.minvenj.nfi.smartrank.domain.LikelihoodRatio;
+import nl.minvenj.nfi.smartrank.domain.ProsecutionHypothesis;
+import nl.minvenj.nfi.smartrank.io.WritableFileSource;
+import nl.minvenj.nfi.smartrank.messages.commands.StartAnalysisCommand;
+import nl.minvenj.nfi.smartrank.messages.commands.WritableFileSourceMessage;
+import nl.minvenj.nfi.smartrank.messages.data.AddCrimeSceneFilesMessage;
+import nl.minvenj.nfi.smartrank.messages.data.DatabaseFileMessage;
+import nl.minvenj.nfi.smartrank.messages.data.DefenseHypothesisMessage;
+import nl.minvenj.nfi.smartrank.messages.data.LRThresholdMessage;
+import nl.minvenj.nfi.smartrank.messages.data.PopulationStatisticsFileMessage;
+import nl.minvenj.nfi.smartrank.messages.data.ProsecutionHypothesisMessage;
+import nl.minvenj.nfi.smartrank.messages.data.RareAlleleFrequencyMessage;
+import nl.minvenj.nfi.smartrank.messages.status.ApplicationStatusMessage;
+import nl.minvenj.nfi.smartrank.messages.status.ErrorStringMessage;
+import nl.minvenj.nfi.smartrank.messages.status.SearchAbortedMessage;
+import nl.minvenj.nfi.smartrank.messages.status.SearchCompletedMessage;
+import nl.minvenj.nfi.smartrank.raven.ApplicationStatus;
+import nl.minvenj.nfi.smartrank.raven.annotations.RavenMessageHandler;
+import nl.minvenj.nfi.smartrank.raven.messages.MessageBus;
+
+/**
+ * Checks that a search with several workers gives the same ranking, exclusions and case log results as a search with a
+ * single worker.
+ */
+public class ConcurrentSearchTest {
+
+    private static final String DATABASE = "SMARTRANK-42-database.csv";
+    private static final String CRIME_SAMPLE = "SMARTRANK-42-sample.csv";
+    private static final String STATISTICS = "str_base_validation_file.xml";
+
+    private volatile SearchResults _results;
+    private volatile String _message;
+    private MessageBus _messageBus;
+
+    @After
+    public void tearDown() {
+        System.clearProperty("searchWorkerCount");
+        System.clearProperty("searchMaximumCandidatesInFlight");
+        System.clearProperty("searchPrefilterEnabled");
+        System.clearProperty("qDesignationShutdown");
+    }
+
+    @Test(timeout = 240000)
+    public void testConcurrentSearchMatchesSequentialSearch() throws Exception {
+        final SearchOutcome sequential = search(1, 1);
+        final SearchOutcome concurrent = search(4, 3);
+
+        assertFalse("The search found no results", sequential._ranking.isEmpty());
+        assertFalse("The search excluded no profiles", sequential._excludedProfiles.isEmpty());
+        assertFalse("The search logged no results", sequential._loggedResults.isEmpty());
+
+        assertEquals(sequential._ranking, concurrent._ranking);
+        assertEquals(sequential._excludedProfiles, concurrent._excludedProfiles);
+        assertEquals(sequential._loggedResults, concurrent._loggedResults);
+    }
+
+    private SearchOutcome search(final int workerCount, final int maximumInFlight) throws Exception {
+        System.setProperty("searchWorkerCount", "" + workerCount);
+        System.setProperty("searchMaximumCandidatesInFlight", "" + maximumInFlight);
+        // The prefilter excludes candidates without evaluating them, so skipped and evaluated candidates are mixed
+        System.setProperty("searchPrefilterEnabled", "true");
+        System.setProperty("qDesignationShutdown", "true");
+
+        final Logger caseLogger = ((LoggerContext) LoggerFactory.getILoggerFactory()).getLogger("CaseLogger");
+        final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+        appender.setContext(caseLogger.getLoggerContext());
+        appender.start();
+        caseLogger.addAppender(appender);
+
+        try {
+            _results = null;
+            _message = null;
+
+            MessageBus.getInstance().waitIdle(5000);
+            MessageBus.reset();
+            SmartRankManager.reset();
+            assertNotNull(SmartRankManager.getInstance());
+            _messageBus = MessageBus.getInstance();
+            _messageBus.registerSubscriber(this);
+            _messageBus.send(this, new WritableFileSourceMessage(new WritableFileSource() {
+                @Override
+                public String getWritableFile(final String fileName) {
+                    return fileName;
+                }
+            }));
+            _messageBus.send(this, new LRThresholdMessage(1000));
+
+            while (_message == null && _results == null) {
+                Thread.sleep(100);
+            }
+            if (_message != null) {
+                fail(_message);
+            }
+            assertTrue("Search with " + workerCount + " workers failed", _results.isSucceeded());
+            return new SearchOutcome(_results, appender.list);
+        }
+        finally {
+            caseLogger.detachAppender(appender);
+            appender.stop();
+        }
+    }
+
+    @RavenMessageHandler(ApplicationStatusMessage.class)
+    private void onApplicationStateChange(final ApplicationStatus status) throws Exception {
+        switch (status) {
+            case WAIT_DB:
+                _messageBus.send(this, new DatabaseFileMessage(new File(getClass().getResource(DATABASE).toURI())));
+                break;
+            case WAIT_CRIMESCENE_PROFILES:
+                _messageBus.send(this, new AddCrimeSceneFilesMessage(new File(getClass().getResource(CRIME_SAMPLE).toURI())));
+                break;
+            case WAIT_POPULATION_STATISTICS:
+                _messageBus.send(this, new PopulationStatisticsFileMessage(new File(getClass().getResource(STATISTICS).toURI())));
+                _messageBus.send(this, new RareAlleleFrequencyMessage(0.0001));
+                break;
+            case READY_FOR_ANALYSIS:
+                if (_results == null) {
+                    final DefenseHypothesis def = _messageBus.query(DefenseHypothesisMessage.class);
+                    def.setDropInProbability(0.05);
+                    def.setThetaCorrection(0.01);
+                    def.setUnknownCount(2);
+                    def.setUnknownDropoutProbability(0.03);
+                    final ProsecutionHypothesis pro = _messageBus.query(ProsecutionHypothesisMessage.class);
+                    pro.setDropInProbability(0.05);
+                    pro.setThetaCorrection(0.01);
+                    pro.setUnknownCount(1);
+                    pro.setUnknownDropoutProbability(0.03);
+                    _messageBus.send(this, new StartAnalysisCommand());
+                }
+                break;
+            default:
+        }
+    }
+
+    @RavenMessageHandler(ErrorStringMessage.class)
+    private void onErrorMessage(final String message) {
+        _message = message;
+    }
+
+    @RavenMessageHandler({SearchCompletedMessage.class, SearchAbortedMessage.class})
+    private void onSearchCompleted(final SearchResults results) {
+        _results = results;
+    }
+
+    /**
+     * The parts of a search that must not depend on the number of workers.
+     */
+    private static final class SearchOutcome {
+        private final List<String> _ranking = new ArrayList<>();
+        private final List<String> _excludedProfiles = new ArrayList<>();
+        private final List<String> _loggedResults = new ArrayList<>();
+
+        SearchOutcome(final SearchResults results, final List<ILoggingEvent> caseLogEvents) {
+            final List<LikelihoodRatio> lrs = new ArrayList<>(results.getPositiveLRs());
+            Collections.sort(lrs, new Comparator<LikelihoodRatio>() {
+                @Override
+                public int compare(final LikelihoodRatio o1, final LikelihoodRatio o2) {
+                    return -o1.compareTo(o2);
+                }
+            });
+            for (final LikelihoodRatio lr : lrs) {
+                _ranking.add(lr.getProfile().getName() + "=" + lr.getOverallRatio().getRatio());
+            }
+
+            for (final ExclusionReason reason : ExclusionReason.values()) {
+                for (final String name : results.getExcludedProfileNames(reason)) {
+                    _excludedProfiles.add(reason + ":" + name);
+                }
+            }
+
+            // The results are logged in full, but the header and footer hold times that differ between searches
+            boolean inResult = false;
+            for (final ILoggingEvent event : caseLogEvents) {
+                final String message = event.getFormattedMessage();
+                if (message.startsWith("=========== ")) {
+                    inResult = true;
+                }
+                else if (message.startsWith("=")) {
+                    inResult = false;
+                }
+                if (inResult) {
+                    _loggedResults.add(message);
+                }
+            }
+        }
+    }
+}